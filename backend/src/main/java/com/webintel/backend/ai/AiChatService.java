@@ -1,43 +1,324 @@
 package com.webintel.backend.ai;
 
+import com.webintel.backend.ai.ConversationStore.Conversation;
+import com.webintel.backend.ai.LlmScheduler.Priority;
+import com.webintel.backend.ai.LocalAiClient.Reply;
+import com.webintel.backend.domain.ChatResponse;
 import com.webintel.backend.domain.PageResult;
+import com.webintel.backend.vector.Embedding;
+import com.webintel.backend.vector.QueryVectorCache;
+import com.webintel.backend.vector.VectorNamespaces;
+import com.webintel.backend.vector.VectorStore;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
+/**
+ * Answers questions about one preview result (retrieval-augmented).
+ *
+ * Guarantees:
+ * - The prompt carries only the passages most relevant to the question,
+ *   packed best-first into CONTEXT_TOKEN_BUDGET — prompt size and LLM
+ *   latency stay the same however large the crawl was
+ * - Passages come from the result's own vector namespace (BM25 + cosine)
+ * - Without vectors (embedding failed, namespace expired) the page text
+ *   is packed into the same budget in page order instead
+ * - Follow-up questions continue from the model state of the previous
+ *   turn and send only the new question and unseen passages, so prompt
+ *   evaluation per turn does not grow with the conversation
+ */
 @Service
-public class AiChatService {
+public class AiChatService implements AutoCloseable {
+
+    /* =========================
+       CONTEXT BUDGET
+       ========================= */
+
+    // Leaves room in num_ctx (4096) for instructions, question and answer
+    private static final int CONTEXT_TOKEN_BUDGET = 1_500;
+
+    // Rough average for English text with llama tokenizers
+    private static final int CHARS_PER_TOKEN = 4;
+
+    // Ranked candidates considered for packing
+    private static final int RETRIEVAL_CANDIDATES = 16;
+
+    // Fallback passages are cut to about one chunk
+    private static final int MAX_FALLBACK_PASSAGE_CHARS = 600;
+
+    // Room left in num_ctx for the answer when continuing a conversation
+    private static final int ANSWER_RESERVE_TOKENS = 512;
+
+    // Concurrent streamed answers; more wait in the pool's queue
+    private static final int MAX_STREAMING_CHATS = 4;
 
     private final LocalAiClient ai;
+    private final VectorNamespaces vectorNamespaces;
+    private final QueryVectorCache queryVectors;
+    private final ConversationStore conversations;
+
+    private final ExecutorService streamPool =
+            Executors.newFixedThreadPool(MAX_STREAMING_CHATS, new ChatThreadFactory());
 
-    public AiChatService(LocalAiClient ai) {
+    public AiChatService(
+            LocalAiClient ai,
+            VectorNamespaces vectorNamespaces,
+            QueryVectorCache queryVectors,
+            ConversationStore conversations
+    ) {
         this.ai = ai;
+        this.vectorNamespaces = vectorNamespaces;
+        this.queryVectors = queryVectors;
+        this.conversations = conversations;
     }
 
-    public String chat(String question, List<PageResult> pages) {
+    /**
+     * Answer plus the passages it was given as sources. Turns with the same
+     * resultId and conversationId form one conversation; without a
+     * conversationId the turn stands alone.
+     */
+    public ChatResponse chat(String resultId, String conversationId, String question, List<PageResult> pages) {
 
-        StringBuilder context = new StringBuilder();
+        List<String> passages = retrieve(resultId, question, pages);
+        String answer = converse(conversationKey(resultId, conversationId), question, passages, null);
+
+        ChatResponse response = new ChatResponse();
+        response.setAnswer(answer.isBlank() ? "AI answer could not be generated." : answer);
+        response.setSources(passages);
+        return response;
+    }
+
+    /**
+     * The passages for the question, most relevant first, within budget.
+     * {@code pages} is the fallback when the result has no vectors.
+     */
+    public List<String> retrieve(String resultId, String question, List<PageResult> pages) {
+
+        VectorStore store = vectorNamespaces.get(resultId);
+
+        if (store != null && !store.isEmpty()) {
+            List<String> ranked = new ArrayList<>();
+            for (Embedding hit : store.hybridSearch(
+                    question, queryVectors.get(question),
+                    RETRIEVAL_CANDIDATES, VectorStore.DEFAULT_LEXICAL_WEIGHT)) {
+                ranked.add(hit.getText());
+            }
+
+            List<String> packed = pack(ranked, CONTEXT_TOKEN_BUDGET);
+            if (!packed.isEmpty()) {
+                return packed;
+            }
+        }
+
+        return pack(pageText(pages), CONTEXT_TOKEN_BUDGET);
+    }
+
+    /**
+     * Answers on a background thread from the given passages, handing
+     * tokens to {@code onToken} as they are generated. Completes with the
+     * full answer ("" on failure). If {@code onToken} throws, generation stops early.
+     */
+    public CompletableFuture<String> chatStream(
+            String resultId,
+            String conversationId,
+            String question,
+            List<String> passages,
+            Consumer<String> onToken
+    ) {
+        String key = conversationKey(resultId, conversationId);
+        return CompletableFuture.supplyAsync(() -> converse(key, question, passages, onToken), streamPool);
+    }
+
+    @Override
+    public void close() {
+        streamPool.shutdownNow();
+    }
+
+    /* ============================================================
+       CONVERSATION
+       ============================================================ */
+
+    /**
+     * One turn (streamed if {@code onToken} is set). A known conversation
+     * continues from its saved model state; otherwise — or when the state
+     * would no longer fit num_ctx — it starts over with the full prompt.
+     * A null key is stateless: nothing is loaded or saved.
+     */
+    private String converse(String key, String question, List<String> passages, Consumer<String> onToken) {
+
+        Conversation previous = key == null ? null : conversations.get(key);
+
+        Set<String> sent = new HashSet<>();
+        int[] context = null;
+        String backend = null;
+        int turns = 0;
+        String prompt = null;
+
+        if (previous != null) {
+            List<String> unseen = new ArrayList<>();
+            for (String passage : passages) {
+                if (!previous.getSentPassages().contains(passage)) unseen.add(passage);
+            }
+
+            String followUp = followUpPrompt(question, unseen, previous.getSentPassages().size());
+            int needed = previous.getContext().length + estimateTokens(followUp) + ANSWER_RESERVE_TOKENS;
+
+            if (needed <= LocalAiClient.NUM_CTX) {
+                sent.addAll(previous.getSentPassages());
+                sent.addAll(unseen);
+                context = previous.getContext();
+                backend = previous.getBackend(); // where that state is loaded
+                turns = previous.getTurns();
+                prompt = followUp;
+            }
+        }
+
+        if (prompt == null) {
+            sent.addAll(passages);
+            prompt = prompt(question, passages);
+        }
+
+        Reply reply = onToken == null
+                ? ai.generate(prompt, context, backend, Priority.INTERACTIVE)
+                : ai.generateStream(prompt, context, backend, Priority.INTERACTIVE, onToken);
+
+        if (key != null && reply.getContext() != null && !reply.getAnswer().isBlank()) {
+            conversations.save(key, new Conversation(reply.getContext(), sent, turns + 1, reply.getBackend()));
+        }
+
+        return reply.getAnswer();
+    }
+
+    /**
+     * Null without a conversationId: id-less callers must never continue
+     * each other's turns.
+     */
+    private static String conversationKey(String resultId, String conversationId) {
+        if (conversationId == null || conversationId.isBlank()) {
+            return null;
+        }
+        return resultId + '\u0000' + conversationId;
+    }
+
+    /* ============================================================
+       PACKING
+       ============================================================ */
+
+    /**
+     * Takes passages in the given (relevance) order while they fit the
+     * token budget; one that does not fit is skipped, as a shorter one
+     * further down may still fit. Duplicates are dropped.
+     */
+    static List<String> pack(List<String> ranked, int tokenBudget) {
+
+        List<String> packed = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        int used = 0;
+
+        for (String passage : ranked) {
+            if (passage == null || passage.isBlank()) continue;
+
+            String text = passage.trim();
+            if (!seen.add(text)) continue;
+
+            int cost = estimateTokens(text);
+            if (used + cost > tokenBudget) continue;
+
+            packed.add(text);
+            used += cost;
+        }
+
+        return packed;
+    }
+
+    static int estimateTokens(String text) {
+        return (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    private static List<String> pageText(List<PageResult> pages) {
+
+        List<String> passages = new ArrayList<>();
+        if (pages == null) {
+            return passages;
+        }
 
         for (PageResult page : pages) {
             if (page.getHeadings() != null) {
-                page.getHeadings().forEach(h -> context.append(h).append("\n"));
+                page.getHeadings().forEach(h -> passages.add(cut(h)));
             }
             if (page.getParagraphs() != null) {
-                page.getParagraphs().forEach(p -> context.append(p).append("\n"));
+                page.getParagraphs().forEach(p -> passages.add(cut(p)));
             }
         }
+        return passages;
+    }
+
+    private static String cut(String text) {
+        return text != null && text.length() > MAX_FALLBACK_PASSAGE_CHARS
+                ? text.substring(0, MAX_FALLBACK_PASSAGE_CHARS)
+                : text;
+    }
+
+    private static String prompt(String question, List<String> passages) {
+
+        StringBuilder context = new StringBuilder();
+        for (int i = 0; i < passages.size(); i++) {
+            context.append('[').append(i + 1).append("] ").append(passages.get(i)).append("\n");
+        }
 
-        String prompt = """
-        Answer the question using ONLY the information below.
+        return """
+        Answer the question using ONLY the numbered passages below.
         If the answer is not present, say so clearly.
 
         Question:
         %s
 
-        Context:
+        Passages:
         %s
         """.formatted(question, context);
+    }
 
-        return ai.generate(prompt);
+    /**
+     * Only what the model has not seen: the question and new passages,
+     * numbered on from the earlier ones.
+     */
+    private static String followUpPrompt(String question, List<String> unseen, int alreadySent) {
+
+        StringBuilder more = new StringBuilder();
+        if (!unseen.isEmpty()) {
+            more.append("More passages:\n");
+            for (int i = 0; i < unseen.size(); i++) {
+                more.append('[').append(alreadySent + i + 1).append("] ").append(unseen.get(i)).append("\n");
+            }
+            more.append("\n");
+        }
+
+        return """
+        Follow-up question. Answer it the same way, using ONLY the numbered passages.
+
+        %sQuestion:
+        %s
+        """.formatted(more, question);
+    }
+
+    private static final class ChatThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger COUNTER = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "ai-chat-" + COUNTER.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
     }
 }
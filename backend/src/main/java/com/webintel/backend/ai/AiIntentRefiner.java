@@ -1,14 +1,66 @@
 package com.webintel.backend.ai;
 
+import com.webintel.backend.ai.LlmScheduler.Priority;
+import com.webintel.backend.vector.BoundedCache;
 import org.springframework.stereotype.Service;
 
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Turns the user's request into an instruction for IntentInterpreter.
+ *
+ * Guarantees:
+ * - Prompts the keyword rules read unambiguously never reach the LLM
+ * - Each normalized prompt is sent to the LLM at most once: concurrent
+ *   requests share the call, later ones hit the cache
+ * - {@link #begin} never blocks, so callers can start crawling on the
+ *   likely intent while the LLM is still thinking
+ * - AI failure never blocks scraping
+ */
 @Service
-public class AiIntentRefiner {
+public class AiIntentRefiner implements AutoCloseable {
+
+    private static final String DEFAULT_INSTRUCTION = "Extract headings and paragraphs from the page.";
+
+    /* =========================
+       FAST PATH / SPECULATION
+       ========================= */
+
+    // Explicit types and scope, short, no negation (see IntentInterpreter.confidence): skip the LLM
+    public static final double FAST_PATH_CONFIDENCE = 1.0;
+
+    // Rules probably right: worth crawling on them while the LLM confirms
+    public static final double SPECULATE_CONFIDENCE = 0.5;
+
+    /* =========================
+       MEMOIZATION
+       ========================= */
+    private static final int MAX_CACHED_REFINEMENTS = 256;
+    private static final int MAX_PARALLEL_REFINEMENTS = 4;
 
     private final LocalAiClient ai;
+    private final IntentInterpreter interpreter;
+
+    private final BoundedCache<String, String> cache = new BoundedCache<>(MAX_CACHED_REFINEMENTS);
+
+    // Prompts with an LLM call running — concurrent requests share it
+    private final Map<String, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+
+    private final ExecutorService llmPool =
+            Executors.newFixedThreadPool(MAX_PARALLEL_REFINEMENTS, new RefinerThreadFactory());
 
-    public AiIntentRefiner(LocalAiClient ai) {
+    public AiIntentRefiner(LocalAiClient ai, IntentInterpreter interpreter) {
         this.ai = ai;
+        this.interpreter = interpreter;
     }
 
     /**
@@ -20,12 +72,83 @@ public class AiIntentRefiner {
      * - AI failure must NEVER block scraping
      */
     public String refine(String userInput) {
+        return begin(userInput).await();
+    }
+
+    /**
+     * Starts refinement without waiting for it.
+     *
+     * The result is settled at once for blank, cached and unambiguous
+     * prompts; otherwise the LLM call runs in the background and
+     * {@link Refinement#guess()} is the rule-based reading meanwhile.
+     */
+    public Refinement begin(String userInput) {
 
         // Absolute safety fallback
         if (userInput == null || userInput.isBlank()) {
-            return "Extract headings and paragraphs from the page.";
+            return Refinement.settled(DEFAULT_INSTRUCTION);
+        }
+
+        String key = normalize(userInput);
+
+        String cached = cache.get(key);
+        if (cached != null) {
+            return Refinement.settled(cached);
+        }
+
+        double confidence = interpreter.confidence(userInput);
+        String guess = interpreter.describe(interpreter.interpret(userInput));
+
+        if (confidence >= FAST_PATH_CONFIDENCE) {
+            return Refinement.settled(guess);
+        }
+
+        return new Refinement(guess, confidence, callShared(key, userInput));
+    }
+
+    @Override
+    public void close() {
+        llmPool.shutdownNow();
+    }
+
+    /* ============================================================
+       LLM
+       ============================================================ */
+
+    /**
+     * One LLM call per normalized prompt at a time; successful answers
+     * are cached. Completes with null on failure, never exceptionally.
+     */
+    private CompletableFuture<String> callShared(String key, String userInput) {
+
+        CompletableFuture<String> created = new CompletableFuture<>();
+        CompletableFuture<String> existing = pending.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        try {
+            llmPool.execute(() -> {
+                String refined = callLlm(userInput);
+                if (refined != null) {
+                    cache.put(key, refined);
+                }
+                pending.remove(key, created);
+                created.complete(refined);
+            });
+        } catch (RejectedExecutionException e) {
+            pending.remove(key, created);
+            created.complete(null);
         }
 
+        return created;
+    }
+
+    /**
+     * The sanitized instruction, or null if the LLM gave nothing usable.
+     */
+    private String callLlm(String userInput) {
+
         String prompt = """
 You are a web scraping instruction generator.
 
@@ -55,23 +178,99 @@ User request:
 """.formatted(userInput);
 
         try {
-            String response = ai.generate(prompt);
+            String response = ai.generate(prompt, Priority.INTERACTIVE);
 
-            // AI failed → fallback safely
+            // AI failed → caller falls back to the rules
             if (response == null || response.isBlank()) {
-                return userInput;
+                return null;
             }
 
             // HARD sanitization (LLMs are noisy)
-            return response
+            String refined = response
                     .replaceAll("[\\r\\n]+", " ")
                     .replaceAll("[\"']", "")
                     .replaceAll("\\s{2,}", " ")
                     .trim();
 
+            return refined.isEmpty() ? null : refined;
+
         } catch (Exception e) {
             // NEVER block scraping due to AI failure
-            return userInput;
+            return null;
+        }
+    }
+
+    private static String normalize(String prompt) {
+        return prompt
+                .toLowerCase(Locale.ROOT)
+                .replaceAll("\\s+", " ")
+                .trim();
+    }
+
+    /* ============================================================
+       RESULT
+       ============================================================ */
+
+    /**
+     * A refinement that may still be running.
+     */
+    public static final class Refinement {
+
+        private final String guess;
+        private final double confidence;
+        private final CompletableFuture<String> llm;
+
+        private Refinement(String guess, double confidence, CompletableFuture<String> llm) {
+            this.guess = guess;
+            this.confidence = confidence;
+            this.llm = llm;
+        }
+
+        static Refinement settled(String instruction) {
+            return new Refinement(instruction, 1.0, CompletableFuture.completedFuture(instruction));
+        }
+
+        /** Rule-based instruction — the answer if the LLM is skipped or fails. */
+        public String guess() {
+            return guess;
+        }
+
+        /** No LLM call left to wait for. */
+        public boolean isSettled() {
+            return llm.isDone();
+        }
+
+        /** The rules are probably right — safe to act on {@link #guess()} early. */
+        public boolean isLikely() {
+            return confidence >= SPECULATE_CONFIDENCE;
+        }
+
+        /**
+         * The final instruction. Falls back to the guess if the LLM failed
+         * or the caller is interrupted (the interrupt flag is kept).
+         */
+        public String await() {
+            try {
+                String refined = llm.get();
+                return refined != null ? refined : guess;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return guess;
+            } catch (ExecutionException e) {
+                return guess;
+            }
+        }
+    }
+
+    private static final class RefinerThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger COUNTER = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "ai-intent-" + COUNTER.incrementAndGet());
+            t.setDaemon(true);
+            return t;
         }
     }
 }
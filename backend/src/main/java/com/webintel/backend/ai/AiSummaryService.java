@@ -1,18 +1,56 @@
 package com.webintel.backend.ai;
 
+import com.webintel.backend.ai.LlmScheduler.Priority;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
 @Service
-public class AiSummaryService {
+public class AiSummaryService implements AutoCloseable {
 
     private final LocalAiClient ai;
+    private final LlmScheduler scheduler;
 
     // HARD safety limits (frontend + LLM protection)
     private static final int MAX_INPUT_CHARS = 8000;
     private static final int MAX_OUTPUT_CHARS = 1200;
 
-    public AiSummaryService(LocalAiClient ai) {
+    /* =========================
+       MAP-REDUCE (whole crawl)
+       ========================= */
+
+    // Text per map call — one page, or several small ones packed together
+    private static final int MAP_INPUT_CHARS = 6_000;
+    private static final int MAP_OUTPUT_CHARS = 800;
+
+    // Bounds total LLM work: larger crawls are trimmed evenly per page
+    private static final int MAX_MAP_CALLS = 24;
+
+    // Concurrent LLM calls for one service (map and reduce alike),
+    // further capped by the scheduler's in-flight limit
+    private static final int MAX_PARALLEL_CALLS = 4;
+
+    private final ExecutorService llmPool;
+
+    public AiSummaryService(LocalAiClient ai, LlmScheduler scheduler) {
         this.ai = ai;
+        this.scheduler = scheduler;
+
+        // More threads than the scheduler admits would only wait in its queue
+        int parallelism = Math.max(1, Math.min(MAX_PARALLEL_CALLS, scheduler.maxInFlight()));
+        this.llmPool = Executors.newFixedThreadPool(parallelism, new SummaryThreadFactory());
     }
 
     /**
@@ -20,6 +58,15 @@ public class AiSummaryService {
      * GUARANTEED not to break UI or freeze rendering.
      */
     public String summarize(String content) {
+        return summarize(content, null);
+    }
+
+    /**
+     * Same summary, with the raw tokens streamed to {@code onToken} while
+     * they are generated (null for none). The return value is the final,
+     * cleaned text.
+     */
+    public String summarize(String content, Consumer<String> onToken) {
 
         if (content == null || content.isBlank()) {
             return "No meaningful text was found to generate a summary.";
@@ -48,28 +95,289 @@ CONTENT:
 """.formatted(trimmedContent);
 
         try {
-            String response = ai.generate(prompt);
+            String response = onToken == null
+                    ? ai.generate(prompt, Priority.BATCH)
+                    : ai.generateStream(prompt, Priority.BATCH, onToken);
 
             // Absolute safety fallback
             if (response == null || response.isBlank()) {
                 return "Summary could not be generated.";
             }
 
-            // 🔧 Normalize output for UI stability
-            String cleaned = response
-                    .replaceAll("[\\r\\n]{3,}", "\n\n")
-                    .replaceAll("\\s{2,}", " ")
-                    .trim();
+            return clean(response, MAX_OUTPUT_CHARS);
+
+        } catch (Exception e) {
+            return "AI summary generation failed.";
+        }
+    }
+
+    /**
+     * Hierarchical summary covering every document (e.g. every crawled page).
+     *
+     * Map: documents are packed into groups of about MAP_INPUT_CHARS and
+     * each group is summarized in parallel (at most MAX_PARALLEL_CALLS at a time).
+     * Reduce: the partial summaries are merged by {@link #summarize(String)};
+     * if they do not fit one call, they are reduced group-wise first.
+     *
+     * Map calls share one scheduling deadline sized for the whole round,
+     * so the scheduler queues rather than sheds them. A group that still
+     * fails is named in a note under the summary, never dropped silently.
+     *
+     * Wall time is about one map round plus one reduce call, where a round
+     * takes ceil(groups / maxInFlight) call times.
+     * Input that fits one call is summarized directly, as before.
+     */
+    public String summarizeAll(List<String> documents) {
+        return summarizeAll(documents, null);
+    }
+
+    /**
+     * Same summary; the final call's tokens are streamed to {@code onToken}
+     * (map calls are not — their output is intermediate).
+     */
+    public String summarizeAll(List<String> documents, Consumer<String> onToken) {
 
-            // 🔒 HARD cap output length
-            if (cleaned.length() > MAX_OUTPUT_CHARS) {
-                cleaned = cleaned.substring(0, MAX_OUTPUT_CHARS) + "...";
+        List<String> groups = pack(documents);
+
+        if (groups.isEmpty()) {
+            return "No meaningful text was found to generate a summary.";
+        }
+
+        if (groups.size() == 1) {
+            return summarize(groups.get(0), onToken);
+        }
+
+        List<String> partials = new ArrayList<>();
+        int missed = 0;
+        for (String partial : mapInParallel(groups, "web content")) {
+            if (partial.isBlank()) {
+                missed++;
+            } else {
+                partials.add(partial);
             }
+        }
 
-            return cleaned;
+        // More partials than one reduce call takes: reduce in passes
+        while (partials.size() > 1 && totalLength(partials) > MAX_INPUT_CHARS) {
+            List<String> inputs = group(partials, MAX_INPUT_CHARS);
+            List<String> reduced = mapInParallel(inputs, "partial summaries");
 
-        } catch (Exception e) {
+            // A failed reduction keeps its input — nothing is lost, only not condensed
+            List<String> next = new ArrayList<>(inputs.size());
+            for (int i = 0; i < inputs.size(); i++) {
+                next.add(reduced.get(i).isBlank() ? inputs.get(i) : reduced.get(i));
+            }
+
+            if (next.size() >= partials.size()) {
+                break; // no progress — let the final call trim
+            }
+            partials = next;
+        }
+
+        if (partials.isEmpty()) {
             return "AI summary generation failed.";
         }
+
+        String summary = summarize(String.join("\n\n", partials), onToken);
+
+        if (missed > 0) {
+            summary += "\n\nNote: %d of %d page groups could not be summarized in time and are not covered."
+                    .formatted(missed, groups.size());
+        }
+        return summary;
+    }
+
+    @Override
+    public void close() {
+        llmPool.shutdownNow();
+    }
+
+    /* ============================================================
+       MAP
+       ============================================================ */
+
+    /**
+     * Summarizes each input concurrently. The result is aligned with the
+     * inputs: "" where a call failed or was shed. An interrupt cancels the
+     * calls not yet finished: queued ones never start, running ones are
+     * interrupted, which ends their wait for a slot or their HTTP call.
+     */
+    private List<String> mapInParallel(List<String> inputs, String kind) {
+
+        // One deadline for the round: the last call may start rounds later
+        Duration deadline = scheduler.deadlineFor(Priority.BATCH, inputs.size());
+
+        // Pool futures, not CompletableFutures: only these interrupt on cancel
+        List<Future<String>> calls = new ArrayList<>(inputs.size());
+        for (String input : inputs) {
+            try {
+                calls.add(llmPool.submit(() -> condense(input, kind, deadline)));
+            } catch (RejectedExecutionException e) {
+                calls.add(CompletableFuture.completedFuture(""));
+            }
+        }
+
+        List<String> partials = new ArrayList<>(inputs.size());
+        for (Future<String> call : calls) {
+            try {
+                partials.add(call.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                // Queued calls first, or a freed worker would start the next one
+                for (int i = calls.size() - 1; i >= 0; i--) {
+                    calls.get(i).cancel(true);
+                }
+                break;
+            } catch (ExecutionException | CancellationException e) {
+                partials.add(""); // one failed group never fails the summary
+            }
+        }
+
+        while (partials.size() < inputs.size()) {
+            partials.add("");
+        }
+        return partials;
+    }
+
+    private String condense(String content, String kind, Duration deadline) {
+
+        String prompt = """
+You are condensing %s for a later combined summary.
+
+TASK:
+List the key facts, figures, names and ideas in the content below.
+
+STRICT RULES:
+- Short bullet points only
+- Keep concrete details (numbers, names, prices, dates)
+- Do NOT add introductions or conclusions
+- Do NOT mention AI or summarization
+
+CONTENT:
+%s
+""".formatted(kind, content);
+
+        try {
+            String response = ai.generate(prompt, Priority.BATCH, deadline);
+            return response == null ? "" : clean(response, MAP_OUTPUT_CHARS);
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    /* ============================================================
+       PACKING
+       ============================================================ */
+
+    /**
+     * Trims documents to a fair share of the total budget (short ones keep
+     * everything), then packs them into map-sized groups in order.
+     */
+    private static List<String> pack(List<String> documents) {
+
+        List<String> docs = new ArrayList<>();
+        if (documents != null) {
+            for (String doc : documents) {
+                if (doc != null && !doc.isBlank()) {
+                    docs.add(doc.trim());
+                }
+            }
+        }
+
+        int budget = MAX_MAP_CALLS * MAP_INPUT_CHARS;
+        if (totalLength(docs) > budget) {
+            int share = fairShare(docs, budget);
+            docs.replaceAll(doc -> doc.length() > share ? doc.substring(0, share) : doc);
+        }
+
+        return group(docs, MAP_INPUT_CHARS);
+    }
+
+    /**
+     * Largest per-document cap that keeps the total within budget.
+     */
+    private static int fairShare(List<String> docs, int budget) {
+
+        List<Integer> lengths = new ArrayList<>(docs.size());
+        for (String doc : docs) {
+            lengths.add(doc.length());
+        }
+        lengths.sort(null);
+
+        int remaining = budget;
+        for (int i = 0; i < lengths.size(); i++) {
+            int share = remaining / (lengths.size() - i);
+            if (lengths.get(i) > share) {
+                return Math.max(1, share);
+            }
+            remaining -= lengths.get(i);
+        }
+        return Integer.MAX_VALUE;
+    }
+
+    /**
+     * Concatenates texts in order into groups of at most {@code limit}
+     * characters; longer texts are split across groups.
+     */
+    private static List<String> group(List<String> texts, int limit) {
+
+        List<String> groups = new ArrayList<>();
+        StringBuilder current = new StringBuilder();
+
+        for (String text : texts) {
+            int from = 0;
+            while (from < text.length()) {
+                if (current.length() >= limit) {
+                    groups.add(current.toString());
+                    current.setLength(0);
+                }
+                int take = Math.min(text.length() - from, limit - current.length());
+                current.append(text, from, from + take);
+                from += take;
+            }
+            current.append("\n\n");
+        }
+
+        if (!current.toString().isBlank()) {
+            groups.add(current.toString().trim());
+        }
+        return groups;
+    }
+
+    private static int totalLength(List<String> texts) {
+        int total = 0;
+        for (String text : texts) {
+            total += text.length();
+        }
+        return total;
+    }
+
+    /**
+     * 🔧 Normalize output for UI stability, then hard-cap its length.
+     */
+    private static String clean(String response, int maxChars) {
+
+        String cleaned = response
+                .replaceAll("[\\r\\n]{3,}", "\n\n")
+                .replaceAll("\\s{2,}", " ")
+                .trim();
+
+        if (cleaned.length() > maxChars) {
+            cleaned = cleaned.substring(0, maxChars) + "...";
+        }
+
+        return cleaned;
+    }
+
+    private static final class SummaryThreadFactory implements ThreadFactory {
+
+        private static final AtomicInteger COUNTER = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "ai-summary-" + COUNTER.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
     }
 }
@@ -0,0 +1,98 @@
+package com.webintel.backend.ai;
+
+import com.webintel.backend.domain.TtlStore;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Keeps the model state of recent chat conversations, so a follow-up
+ * question sends only the new turn instead of the whole history.
+ *
+ * Guarantees:
+ * - Entries expire after TTL without a new turn
+ * - Total estimated heap use stays under a byte budget (LRU eviction)
+ */
+@Component
+public class ConversationStore {
+
+    /* =========================
+       LIMITS
+       ========================= */
+
+    // Matches the model keep-alive: past it, the state would be re-evaluated anyway
+    private static final Duration TTL = Duration.ofMinutes(30);
+    private static final long MAX_BYTES = 32L * 1024 * 1024;
+
+    private static final int OBJECT_OVERHEAD = 40;
+
+    private final TtlStore<String, Conversation> store =
+            new TtlStore<>(TTL, MAX_BYTES, ConversationStore::estimateBytes);
+
+    public void save(String conversationKey, Conversation conversation) {
+        store.put(conversationKey, conversation);
+    }
+
+    /**
+     * Returns the conversation, or null if unknown or expired.
+     */
+    public Conversation get(String conversationKey) {
+        return store.get(conversationKey);
+    }
+
+    public void remove(String conversationKey) {
+        store.remove(conversationKey);
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    public long totalBytes() {
+        return store.totalBytes();
+    }
+
+    private static long estimateBytes(Conversation conversation) {
+        long bytes = OBJECT_OVERHEAD + 4L * conversation.getContext().length;
+        for (String passage : conversation.getSentPassages()) {
+            bytes += OBJECT_OVERHEAD + 2L * passage.length();
+        }
+        return bytes;
+    }
+
+    /**
+     * Model state after the last turn, the passages already in it, and
+     * the instance that produced it (null if unknown).
+     */
+    public static final class Conversation {
+
+        private final int[] context;
+        private final Set<String> sentPassages;
+        private final int turns;
+        private final String backend;
+
+        public Conversation(int[] context, Set<String> sentPassages, int turns, String backend) {
+            this.context = context;
+            this.sentPassages = Set.copyOf(sentPassages);
+            this.turns = turns;
+            this.backend = backend;
+        }
+
+        public int[] getContext() {
+            return context;
+        }
+
+        public Set<String> getSentPassages() {
+            return sentPassages;
+        }
+
+        public int getTurns() {
+            return turns;
+        }
+
+        public String getBackend() {
+            return backend;
+        }
+    }
+}
@@ -3,7 +3,10 @@ package com.webintel.backend.ai;
 import com.webintel.backend.domain.CrawlIntent;
 import org.springframework.stereotype.Service;
 
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -13,6 +16,49 @@ import java.util.Set;
 @Service
 public class IntentInterpreter {
 
+    private static final String[] MULTI_PAGE_PHRASES = {
+            "entire website",
+            "entire site",
+            "whole site",
+            "all pages",
+            "all the pages",
+            "every page",
+            "all sections",
+            "full website",
+            "crawl site",
+            "crawl website",
+            "from the website",
+            "from this site",
+            "across pages"
+    };
+
+    // confidence() matches scope phrases on whole words: "the pages" is not "the page"
+    private static final String[] SINGLE_PAGE_PHRASES = {
+            "this page",
+            "the page",
+            "single page",
+            "one page",
+            "current page",
+            "home page",
+            "homepage"
+    };
+
+    // Words that name a content type outright ("content", "main" are too vague)
+    private static final Set<String> EXPLICIT_TYPE_WORDS = Set.of(
+            "heading", "headings", "title", "titles",
+            "paragraph", "paragraphs", "text",
+            "image", "images", "photo", "photos", "picture", "pictures",
+            "link", "links", "url", "urls"
+    );
+
+    // Keyword rules read "without links" as links — leave these to the LLM
+    private static final Set<String> NEGATION_WORDS = Set.of(
+            "not", "no", "without", "except", "excluding", "exclude", "don", "never"
+    );
+
+    // Longer requests tend to carry nuance the keyword rules miss
+    private static final int MAX_PLAIN_WORDS = 16;
+
     public CrawlIntent interpret(String prompt) {
 
         CrawlIntent intent = new CrawlIntent();
@@ -61,20 +107,8 @@ public class IntentInterpreter {
            MULTI-PAGE DETECTION
            ========================= */
 
-        boolean multiPage = containsAny(
-                text,
-                "entire website",
-                "entire site",
-                "whole site",
-                "all pages",
-                "all sections",
-                "full website",
-                "crawl site",
-                "crawl website",
-                "from the website",
-                "from this site",
-                "across pages"
-        );
+        // Substring match on purpose: "crawl websites" and "from the websites" count too
+        boolean multiPage = containsAny(text, MULTI_PAGE_PHRASES);
 
         intent.setMultiPage(multiPage);
 
@@ -91,6 +125,70 @@ public class IntentInterpreter {
         return intent;
     }
 
+    /**
+     * How sure the keyword rules are about this raw user prompt, 0 to 1.
+     *
+     * 1.0 means explicit content types, an explicit page scope, a short
+     * request and no negation — {@link #interpret} then reads it exactly
+     * as a refined instruction would.
+     */
+    public double confidence(String prompt) {
+
+        if (prompt == null || prompt.isBlank()) {
+            return 0.0;
+        }
+
+        String text = normalize(prompt);
+        // Words repeat ("the", "and") — Set.of would reject duplicates
+        Set<String> words = new HashSet<>(Arrays.asList(text.split(" ")));
+
+        for (String word : words) {
+            if (NEGATION_WORDS.contains(word)) {
+                return 0.0;
+            }
+        }
+
+        double score = 0.0;
+
+        for (String word : words) {
+            if (EXPLICIT_TYPE_WORDS.contains(word)) {
+                score += 0.5;
+                break;
+            }
+        }
+
+        // Exactly one scope stated
+        if (containsPhrase(text, MULTI_PAGE_PHRASES) != containsPhrase(text, SINGLE_PAGE_PHRASES)) {
+            score += 0.3;
+        }
+
+        if (text.split(" ").length <= MAX_PLAIN_WORDS) {
+            score += 0.2;
+        }
+
+        return score;
+    }
+
+    /**
+     * The intent as a one-sentence instruction, in the refiner's style —
+     * {@link #interpret} maps it back to the same intent.
+     */
+    public String describe(CrawlIntent intent) {
+
+        List<String> types = intent.getContentTypes();
+
+        StringBuilder sb = new StringBuilder("Extract ");
+        for (int i = 0; i < types.size(); i++) {
+            if (i > 0) {
+                sb.append(i == types.size() - 1 ? " and " : ", ");
+            }
+            sb.append(types.get(i));
+        }
+
+        sb.append(intent.isMultiPage() ? " from the entire website." : " from the page.");
+        return sb.toString();
+    }
+
     /* ============================================================
        HELPERS
        ============================================================ */
@@ -121,6 +219,19 @@ public class IntentInterpreter {
         return false;
     }
 
+    /**
+     * Whole-word match of any phrase in normalized text.
+     */
+    private boolean containsPhrase(String text, String... phrases) {
+        String padded = " " + text + " ";
+        for (String p : phrases) {
+            if (padded.contains(" " + p + " ")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private String buildExplanation(CrawlIntent intent) {
 
         StringBuilder sb = new StringBuilder("Extracting ");
@@ -0,0 +1,370 @@
+package com.webintel.backend.ai;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Admission control in front of the local model.
+ *
+ * Guarantees:
+ * - At most maxInFlight LLM calls run at once (per model instance, so
+ *   adding instances adds capacity); the rest wait in one queue
+ * - Hedged duplicates take a slot too, and only an idle one
+ * - Interactive calls (intent, chat) go ahead of batch calls (summaries)
+ *   queued up to INTERACTIVE_HEAD_START earlier — so batch work is
+ *   delayed, never starved
+ * - Every call carries a deadline; a call is shed (never sent) once it
+ *   could no longer finish in time, judged by the average call duration
+ * - Queue depth, wait and call times are exposed for monitoring
+ */
+@Component
+public class LlmScheduler {
+
+    public enum Priority {
+        INTERACTIVE(Duration.ofSeconds(60)),
+        BATCH(Duration.ofSeconds(180));
+
+        private final Duration defaultDeadline;
+
+        Priority(Duration defaultDeadline) {
+            this.defaultDeadline = defaultDeadline;
+        }
+
+        public Duration defaultDeadline() {
+            return defaultDeadline;
+        }
+    }
+
+    /* =========================
+       TUNING
+       ========================= */
+    public static final int DEFAULT_MAX_IN_FLIGHT = 2;
+
+    private static final long INTERACTIVE_HEAD_START_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    // Call-time estimate before the first call completes
+    private static final long INITIAL_SERVICE_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    // Weight of the newest sample in the moving averages
+    private static final double EWMA_ALPHA = 0.2;
+
+    // Batch deadlines allow this multiple of the estimated drain time
+    private static final int BATCH_DEADLINE_SLACK = 2;
+
+    private final int maxInFlight;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // Ordered by virtual time: enqueue time, minus the head start if interactive
+    private final PriorityQueue<Ticket> queue = new PriorityQueue<>();
+
+    private int inFlight = 0;
+    private long sequence = 0;
+
+    /* ===== metrics (guarded by lock) ===== */
+    private long admitted = 0;
+    private long shed = 0;
+    private long spare = 0;
+    private double avgWaitNanos = 0;
+    private long maxWaitNanos = 0;
+    private double avgServiceNanos = INITIAL_SERVICE_NANOS;
+
+    @Autowired
+    public LlmScheduler(
+            @Value("${ai.local.maxInFlight:" + DEFAULT_MAX_IN_FLIGHT + "}") int maxInFlightPerInstance,
+            OllamaPool pool
+    ) {
+        this(Math.max(1, maxInFlightPerInstance) * Math.max(1, pool.size()));
+    }
+
+    public LlmScheduler(int maxInFlight) {
+        this.maxInFlight = Math.max(1, maxInFlight);
+    }
+
+    /**
+     * Waits for a call slot within the priority's default deadline.
+     *
+     * @return a permit to close when the call ends, or null if shed
+     */
+    public Permit acquire(Priority priority) {
+        return acquire(priority, priority.defaultDeadline());
+    }
+
+    /**
+     * Waits for a call slot. Returns null (the call must not be made) if the
+     * deadline is lost before a slot frees up, or the thread is interrupted.
+     */
+    public Permit acquire(Priority priority, Duration deadline) {
+
+        long now = System.nanoTime();
+        long deadlineNanos = now + deadline.toNanos();
+
+        lock.lock();
+        try {
+            Ticket ticket = new Ticket(priority, now, deadlineNanos, sequence++);
+
+            // Fast path: free slot and nobody waiting
+            if (inFlight < maxInFlight && queue.isEmpty()) {
+                return admit(ticket, now);
+            }
+
+            if (estimatedStart(ticket, now) + (long) avgServiceNanos > deadlineNanos) {
+                shed++;
+                return null; // would miss its deadline anyway
+            }
+
+            queue.add(ticket);
+
+            try {
+                while (true) {
+                    if (ticket.granted) {
+                        return new Permit(this, System.nanoTime(), true);
+                    }
+
+                    long remaining = latestStart(ticket) - System.nanoTime();
+                    if (remaining <= 0) {
+                        if (queue.remove(ticket)) {
+                            shed++; // else grantNext already counted it
+                        }
+                        grantNext(); // its turn may have been next
+                        return null;
+                    }
+
+                    changed.awaitNanos(remaining);
+                }
+            } catch (InterruptedException e) {
+                if (ticket.granted) {
+                    release(0); // slot was ours — hand it on
+                } else {
+                    queue.remove(ticket);
+                }
+                Thread.currentThread().interrupt();
+                return null;
+            }
+
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A slot for work that only makes sense on idle capacity (a hedged
+     * duplicate): granted at once if a slot is free and nobody is waiting,
+     * else null. Never queues, and its duration is not sampled.
+     */
+    public Permit tryAcquire() {
+        lock.lock();
+        try {
+            if (inFlight < maxInFlight && queue.isEmpty()) {
+                inFlight++;
+                spare++;
+                return new Permit(this, System.nanoTime(), false);
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * A deadline for a batch of {@code calls} calls submitted together:
+     * long enough for them to run after everything already queued or in
+     * flight, by the average call time (with slack), and never shorter
+     * than the priority's default. Without it, the tail of a batch larger
+     * than maxInFlight would be shed.
+     */
+    public Duration deadlineFor(Priority priority, int calls) {
+        lock.lock();
+        try {
+            long ahead = (long) queue.size() + inFlight + Math.max(0, calls);
+            long rounds = (ahead + maxInFlight - 1) / maxInFlight;
+            long drainNanos = BATCH_DEADLINE_SLACK * rounds * (long) avgServiceNanos;
+
+            Duration drain = Duration.ofNanos(drainNanos);
+            return drain.compareTo(priority.defaultDeadline()) > 0 ? drain : priority.defaultDeadline();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int maxInFlight() {
+        return maxInFlight;
+    }
+
+    /* ============================================================
+       METRICS
+       ============================================================ */
+
+    public Map<String, Object> stats() {
+        lock.lock();
+        try {
+            int interactive = 0;
+            for (Ticket t : queue) {
+                if (t.priority == Priority.INTERACTIVE) interactive++;
+            }
+
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("maxInFlight", maxInFlight);
+            stats.put("inFlight", inFlight);
+            stats.put("queued", queue.size());
+            stats.put("queuedInteractive", interactive);
+            stats.put("queuedBatch", queue.size() - interactive);
+            stats.put("admitted", admitted);
+            stats.put("shed", shed);
+            stats.put("spare", spare);
+            stats.put("avgWaitMs", TimeUnit.NANOSECONDS.toMillis((long) avgWaitNanos));
+            stats.put("maxWaitMs", TimeUnit.NANOSECONDS.toMillis(maxWaitNanos));
+            stats.put("avgCallMs", TimeUnit.NANOSECONDS.toMillis((long) avgServiceNanos));
+            return stats;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int queueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /* ============================================================
+       INTERNAL (lock held)
+       ============================================================ */
+
+    private Permit admit(Ticket ticket, long now) {
+        inFlight++;
+        recordWait(now - ticket.enqueuedAt);
+        return new Permit(this, now, true);
+    }
+
+    /**
+     * Hands free slots to the best waiting tickets, shedding lost ones.
+     */
+    private void grantNext() {
+
+        long now = System.nanoTime();
+
+        while (inFlight < maxInFlight && !queue.isEmpty()) {
+            Ticket next = queue.poll();
+
+            if (latestStart(next) <= now) {
+                shed++;
+                continue; // its waiter sees the missed deadline and leaves
+            }
+
+            next.granted = true;
+            inFlight++;
+            recordWait(now - next.enqueuedAt);
+        }
+
+        changed.signalAll();
+    }
+
+    private void release(long serviceNanos) {
+        inFlight--;
+        if (serviceNanos > 0) {
+            avgServiceNanos += EWMA_ALPHA * (serviceNanos - avgServiceNanos);
+        }
+        grantNext();
+    }
+
+    /**
+     * Last moment a call can start and still finish by its deadline.
+     */
+    private long latestStart(Ticket ticket) {
+        return ticket.deadline - (long) avgServiceNanos;
+    }
+
+    /**
+     * When the ticket would get a slot, given the tickets ahead of it.
+     */
+    private long estimatedStart(Ticket ticket, long now) {
+
+        int ahead = 0;
+        for (Ticket t : queue) {
+            if (t.compareTo(ticket) < 0) ahead++;
+        }
+
+        // Whole "rounds" of maxInFlight calls before ours can start
+        int rounds = (ahead + inFlight - maxInFlight) / maxInFlight + 1;
+        return now + Math.max(0, rounds) * (long) avgServiceNanos;
+    }
+
+    private void recordWait(long waitNanos) {
+        admitted++;
+        avgWaitNanos += EWMA_ALPHA * (waitNanos - avgWaitNanos);
+        maxWaitNanos = Math.max(maxWaitNanos, waitNanos);
+    }
+
+    /* ============================================================
+       INTERNAL MODEL
+       ============================================================ */
+
+    /**
+     * One admitted call. Close exactly once, when the call has ended.
+     */
+    public static final class Permit implements AutoCloseable {
+
+        private final LlmScheduler scheduler;
+        private final long startedAt;
+        private final boolean sampled; // counts toward the average call time
+        private boolean closed;
+
+        private Permit(LlmScheduler scheduler, long startedAt, boolean sampled) {
+            this.scheduler = scheduler;
+            this.startedAt = startedAt;
+            this.sampled = sampled;
+        }
+
+        @Override
+        public void close() {
+            scheduler.lock.lock();
+            try {
+                if (!closed) {
+                    closed = true;
+                    scheduler.release(sampled ? System.nanoTime() - startedAt : 0);
+                }
+            } finally {
+                scheduler.lock.unlock();
+            }
+        }
+    }
+
+    private static final class Ticket implements Comparable<Ticket> {
+        final Priority priority;
+        final long enqueuedAt;
+        final long deadline;
+        final long virtualTime;
+        final long sequence;
+        boolean granted;
+
+        Ticket(Priority priority, long enqueuedAt, long deadline, long sequence) {
+            this.priority = priority;
+            this.enqueuedAt = enqueuedAt;
+            this.deadline = deadline;
+            this.sequence = sequence;
+            this.virtualTime = priority == Priority.INTERACTIVE
+                    ? enqueuedAt - INTERACTIVE_HEAD_START_NANOS
+                    : enqueuedAt;
+        }
+
+        @Override
+        public int compareTo(Ticket other) {
+            int byTime = Long.compare(virtualTime, other.virtualTime);
+            return byTime != 0 ? byTime : Long.compare(sequence, other.sequence);
+        }
+    }
+}
@@ -2,13 +2,24 @@ package com.webintel.backend.ai;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.webintel.backend.ai.LlmScheduler.Permit;
+import com.webintel.backend.ai.LlmScheduler.Priority;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
 import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
 
 @Service
 public class LocalAiClient {
@@ -16,20 +27,38 @@ public class LocalAiClient {
     // =========================
     // CONFIG
     // =========================
-    private static final String OLLAMA_URL = "http://localhost:11434/api/generate";
+    private static final String GENERATE_PATH = "/api/generate";
     private static final String MODEL = "llama3";
 
+    // Model context window, in tokens
+    public static final int NUM_CTX = 4096;
+
     // Hard safety limits
     private static final int MAX_PROMPT_CHARS = 12000;
     private static final Duration TIMEOUT = Duration.ofSeconds(120);
 
-    private final HttpClient client;
+    // Longest silence between two streamed lines before the instance
+    // counts as stalled (TIMEOUT only covers the response headers)
+    private static final Duration STREAM_IDLE_TIMEOUT = Duration.ofSeconds(60);
+
+    // Latency class of conversation turns; one-shot calls are classed by
+    // priority (intent refinement vs summaries), so each hedges on its own p95
+    private static final String CONVERSATION_LATENCY = "conversation";
+
     private final ObjectMapper mapper;
+    private final LlmScheduler scheduler;
+    private final OllamaPool pool;
+    private final Duration streamIdleTimeout;
+
+    @Autowired
+    public LocalAiClient(LlmScheduler scheduler, OllamaPool pool) {
+        this(scheduler, pool, STREAM_IDLE_TIMEOUT);
+    }
 
-    public LocalAiClient() {
-        this.client = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
+    LocalAiClient(LlmScheduler scheduler, OllamaPool pool, Duration streamIdleTimeout) {
+        this.scheduler = scheduler;
+        this.pool = pool;
+        this.streamIdleTimeout = streamIdleTimeout;
         this.mapper = new ObjectMapper();
     }
 
@@ -38,70 +67,323 @@ public class LocalAiClient {
      * Fully safe for large content and UI stability.
      */
     public String generate(String prompt) {
+        return generate(prompt, Priority.INTERACTIVE);
+    }
+
+    /**
+     * Same call, queued behind the scheduler at the given priority.
+     * Returns "" if the call was shed because its deadline was lost.
+     */
+    public String generate(String prompt, Priority priority) {
+        return generate(prompt, priority, priority.defaultDeadline());
+    }
+
+    /**
+     * Same call with an explicit scheduling deadline (see
+     * {@link LlmScheduler#deadlineFor}). Returns "" if shed.
+     */
+    public String generate(String prompt, Priority priority, Duration deadline) {
+        return generate(prompt, null, null, priority, deadline, priority.name().toLowerCase(Locale.ROOT)).getAnswer();
+    }
+
+    /**
+     * One conversation turn: {@code context} is the token state returned by
+     * the previous turn (null to start fresh), so only the new prompt is
+     * sent. {@code backend} is the instance that served that turn (see
+     * {@link Reply#getBackend}); the turn goes back to it while it is up,
+     * where the state is still loaded. The reply carries both for the next turn.
+     */
+    public Reply generate(String prompt, int[] context, String backend, Priority priority) {
+        return generate(prompt, context, backend, priority, priority.defaultDeadline(), CONVERSATION_LATENCY);
+    }
+
+    private Reply generate(String prompt, int[] context, String backend, Priority priority, Duration deadline,
+                           String latencyClass) {
 
         if (prompt == null || prompt.isBlank()) {
-            return "";
+            return Reply.EMPTY;
         }
 
+        try (Permit permit = scheduler.acquire(priority, deadline)) {
+            if (permit == null) {
+                return Reply.EMPTY;
+            }
+
+            // Idempotent — a stalled instance may be hedged around, if a slot
+            // is spare. Not a follow-up: a duplicate on another instance would
+            // re-evaluate the whole context there.
+            OllamaPool.HedgeBudget hedging = context == null ? scheduler::tryAcquire : OllamaPool.HedgeBudget.NONE;
+
+            HttpResponse<String> response =
+                    pool.send(GENERATE_PATH, body(prompt, context, false), TIMEOUT, HttpResponse.BodyHandlers.ofString(),
+                            hedging, backend, latencyClass);
+
+            if (response.statusCode() != 200 || response.body() == null) {
+                return Reply.EMPTY;
+            }
+
+            JsonNode json = mapper.readTree(response.body());
+
+            return new Reply(clean(json.path("response").asText("")), contextOf(json), pool.endpointOf(response));
+
+        } catch (Exception e) {
+            // Never crash backend
+            return Reply.EMPTY;
+        }
+    }
+
+    /**
+     * Streaming variant: reads Ollama's NDJSON stream line by line and hands
+     * each token to {@code onToken} (on the calling thread) as soon as it
+     * arrives — the first token after a few hundred ms instead of the full answer.
+     *
+     * Returns the whole answer, cleaned like {@link #generate}; "" on failure.
+     * If {@code onToken} throws (e.g. the client went away), the stream is
+     * closed, which stops generation, and the answer so far is returned.
+     * The same happens when no line arrives for STREAM_IDLE_TIMEOUT, or
+     * when the calling thread is interrupted.
+     */
+    public String generateStream(String prompt, Consumer<String> onToken) {
+        return generateStream(prompt, Priority.INTERACTIVE, onToken);
+    }
+
+    public String generateStream(String prompt, Priority priority, Consumer<String> onToken) {
+        return generateStream(prompt, null, null, priority, onToken).getAnswer();
+    }
+
+    /**
+     * Streamed conversation turn, pinned like {@link #generate(String, int[], String, Priority)}.
+     * The reply's context is null unless the stream ran to the end — a
+     * cut-off answer cannot be continued.
+     */
+    public Reply generateStream(String prompt, int[] context, String backend, Priority priority, Consumer<String> onToken) {
+
+        if (prompt == null || prompt.isBlank()) {
+            return Reply.EMPTY;
+        }
+
+        StringBuilder answer = new StringBuilder();
+        int[] nextContext = null;
+        String servedBy = null;
+
+        try (Permit permit = scheduler.acquire(priority)) {
+            if (permit == null) {
+                return Reply.EMPTY;
+            }
+
+            // Never hedged: tokens go straight to the listener
+            HttpResponse<Flow.Publisher<List<ByteBuffer>>> response =
+                    pool.send(GENERATE_PATH, body(prompt, context, true), TIMEOUT, HttpResponse.BodyHandlers.ofPublisher(),
+                            OllamaPool.HedgeBudget.NONE, backend);
+            servedBy = pool.endpointOf(response);
+
+            try (LineStream lines = new LineStream(response.body())) {
+
+                if (response.statusCode() != 200) {
+                    return Reply.EMPTY;
+                }
+
+                String line;
+                while ((line = lines.next(streamIdleTimeout)) != null) {
+
+                    if (line.isBlank()) continue;
+
+                    JsonNode json = mapper.readTree(line);
+                    String token = json.path("response").asText("");
+
+                    if (!token.isEmpty()) {
+                        answer.append(token);
+                        try {
+                            onToken.accept(token);
+                        } catch (RuntimeException listenerGone) {
+                            break;
+                        }
+                    }
+
+                    if (json.path("done").asBoolean(false)) {
+                        nextContext = contextOf(json);
+                        break;
+                    }
+                }
+            }
+
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (TimeoutException stalled) {
+            // Instance went silent mid-answer — keep what arrived
+        } catch (Exception e) {
+            // Never crash backend — keep whatever arrived
+        }
+
+        return new Reply(clean(answer.toString()), nextContext, servedBy);
+    }
+
+    /**
+     * Builds the /api/generate body; {@code stream} selects NDJSON output.
+     */
+    private String body(String prompt, int[] context, boolean stream) throws Exception {
+
         // 🔒 Hard trim to protect Ollama & JVM
         String safePrompt = prompt.length() > MAX_PROMPT_CHARS
                 ? prompt.substring(0, MAX_PROMPT_CHARS)
                 : prompt;
 
-        try {
-            String body = """
-            {
-              "model": "%s",
-              "prompt": "%s",
-              "stream": false,
-              "options": {
-                "temperature": 0.2,
-                "top_p": 0.9,
-                "num_ctx": 4096
-              }
+        ObjectNode body = mapper.createObjectNode();
+        body.put("model", MODEL);
+        body.put("prompt", safePrompt);
+        body.put("stream", stream);
+
+        // Model stays loaded between turns — no reload before the next one
+        body.put("keep_alive", OllamaPool.KEEP_ALIVE);
+
+        if (context != null && context.length > 0) {
+            ArrayNode tokens = body.putArray("context");
+            for (int token : context) {
+                tokens.add(token);
             }
-            """.formatted(
-                    MODEL,
-                    escapeJson(safePrompt)
-            );
-
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(OLLAMA_URL))
-                    .timeout(TIMEOUT)
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(body))
-                    .build();
+        }
 
-            HttpResponse<String> response =
-                    client.send(request, HttpResponse.BodyHandlers.ofString());
+        ObjectNode options = body.putObject("options");
+        options.put("temperature", 0.2);
+        options.put("top_p", 0.9);
+        options.put("num_ctx", NUM_CTX);
 
-            if (response.statusCode() != 200 || response.body() == null) {
-                return "";
+        return mapper.writeValueAsString(body);
+    }
+
+    /**
+     * The "context" token array of a final response, or null.
+     */
+    private static int[] contextOf(JsonNode json) {
+
+        JsonNode node = json.path("context");
+        if (!node.isArray() || node.isEmpty()) {
+            return null;
+        }
+
+        int[] context = new int[node.size()];
+        for (int i = 0; i < context.length; i++) {
+            context[i] = node.get(i).asInt();
+        }
+        return context;
+    }
+
+    /**
+     * 🔧 Clean & normalize output
+     */
+    private static String clean(String output) {
+        return output
+                .replaceAll("[\\r\\n]{3,}", "\n\n")
+                .trim();
+    }
+
+    /**
+     * NDJSON body as lines, pulled one at a time with an idle deadline.
+     * Unlike {@code BodyHandlers.ofLines()}, a silent instance cannot block
+     * the reader forever, and an interrupt ends the wait. Closing cancels
+     * the body, which closes the connection and stops generation.
+     */
+    private static final class LineStream implements Flow.Subscriber<String>, AutoCloseable {
+
+        private static final Object END = new Object();
+
+        private final BlockingQueue<Object> lines = new LinkedBlockingQueue<>();
+        private Flow.Subscription subscription; // guarded by this
+        private boolean closed = false;         // guarded by this
+
+        LineStream(Flow.Publisher<List<ByteBuffer>> body) {
+            body.subscribe(HttpResponse.BodySubscribers.fromLineSubscriber(this));
+        }
+
+        /**
+         * The next line, or null at the end of the body.
+         *
+         * @throws TimeoutException if nothing arrived within {@code idle}
+         */
+        String next(Duration idle) throws InterruptedException, TimeoutException {
+
+            Object line = lines.poll(idle.toNanos(), TimeUnit.NANOSECONDS);
+
+            if (line == null) {
+                throw new TimeoutException("No line within " + idle);
+            }
+            if (line == END) {
+                lines.add(END); // stays at the end for later calls
+                return null;
             }
 
-            JsonNode json = mapper.readTree(response.body());
+            request();
+            return (String) line;
+        }
 
-            String output = json.path("response").asText("");
+        @Override
+        public synchronized void onSubscribe(Flow.Subscription subscription) {
+            if (closed) {
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            subscription.request(1);
+        }
 
-            // 🔧 Clean & normalize output
-            return output
-                    .replaceAll("[\\r\\n]{3,}", "\n\n")
-                    .trim();
+        @Override
+        public void onNext(String line) {
+            lines.add(line);
+        }
 
-        } catch (Exception e) {
-            // Never crash backend
-            return "";
+        @Override
+        public void onError(Throwable error) {
+            lines.add(END);
+        }
+
+        @Override
+        public void onComplete() {
+            lines.add(END);
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            if (subscription != null) {
+                subscription.cancel();
+            }
+        }
+
+        private synchronized void request() {
+            if (!closed && subscription != null) {
+                subscription.request(1);
+            }
         }
     }
 
     /**
-     * Escapes prompt safely for JSON.
+     * Answer text plus the model state to continue from and the instance
+     * holding it (null if none).
      */
-    private String escapeJson(String input) {
-        return input
-                .replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "");
+    public static final class Reply {
+
+        static final Reply EMPTY = new Reply("", null, null);
+
+        private final String answer;
+        private final int[] context;
+        private final String backend;
+
+        Reply(String answer, int[] context, String backend) {
+            this.answer = answer;
+            this.context = context;
+            this.backend = backend;
+        }
+
+        public String getAnswer() {
+            return answer;
+        }
+
+        public int[] getContext() {
+            return context;
+        }
+
+        public String getBackend() {
+            return backend;
+        }
     }
 }
@@ -0,0 +1,774 @@
+package com.webintel.backend.ai;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Ollama instances behind generation and embedding.
+ *
+ * Guarantees:
+ * - Each call goes to the healthy instance with the fewest outstanding
+ *   requests (a streamed call counts until its body is fully read)
+ * - A call that fails (connection error, timeout, 5xx) fails over to
+ *   another instance, at most MAX_ATTEMPTS instances per call
+ * - Hedging: a hedgeable call still unanswered after the p95 latency of
+ *   its endpoint and latency class is duplicated to a second instance;
+ *   the first answer wins and the other is cancelled. The duplicate
+ *   needs a slot from the caller's {@link HedgeBudget}, so it never
+ *   exceeds the caller's limits
+ * - Affinity: a call may name the instance it prefers (one that holds
+ *   its conversation's state); it goes there whenever that instance is
+ *   available, regardless of load, and fails over like any other call
+ * - Circuit breaker per instance: FAILURE_THRESHOLD consecutive failures
+ *   take it out of rotation for OPEN_DURATION, then one probe call
+ *   decides whether it comes back
+ */
+@Component
+public class OllamaPool implements AutoCloseable {
+
+    public static final String DEFAULT_ENDPOINT = "http://localhost:11434";
+
+    // Sent with every request: each one resets the model's unload timer,
+    // so one default (5m) request would cut it short for everyone
+    public static final String KEEP_ALIVE = "30m";
+
+    /* =========================
+       ROUTING
+       ========================= */
+    private static final int MAX_ATTEMPTS = 3;
+
+    /* =========================
+       HEDGING
+       ========================= */
+    private static final int LATENCY_WINDOW = 128;
+    private static final int MIN_LATENCY_SAMPLES = 20;
+    private static final double HEDGE_PERCENTILE = 0.95;
+
+    // Never hedge on noise — fast calls are not worth a duplicate
+    private static final long MIN_HEDGE_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    /* =========================
+       CIRCUIT BREAKER
+       ========================= */
+    private static final int FAILURE_THRESHOLD = 3;
+    private static final long OPEN_DURATION_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private final List<Backend> backends;
+    private final HttpClient client;
+    private final ScheduledExecutorService hedger;
+
+    // Per endpoint path and latency class — /api/generate and /api/embed differ
+    // by orders of magnitude, and so do a short intent call and a long summary
+    private final Map<String, LatencyWindow> latencies = new ConcurrentHashMap<>();
+
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong hedgesDenied = new AtomicLong();
+
+    // Rotates the scan start so ties spread evenly (guarded by this)
+    private int nextStart = 0;
+
+    public OllamaPool(@Value("${ai.local.endpoints:" + DEFAULT_ENDPOINT + "}") List<String> endpoints) {
+
+        List<Backend> list = new ArrayList<>();
+        for (String endpoint : endpoints) {
+            if (endpoint != null && !endpoint.isBlank()) {
+                list.add(new Backend(endpoint.trim().replaceAll("/+$", "")));
+            }
+        }
+        if (list.isEmpty()) {
+            list.add(new Backend(DEFAULT_ENDPOINT));
+        }
+        this.backends = List.copyOf(list);
+
+        this.client = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+
+        this.hedger = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "ollama-hedger");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Capacity for hedged duplicates: each one needs a slot, held until
+     * its request ends. {@code tryAcquire} returns null when none is free.
+     */
+    @FunctionalInterface
+    public interface HedgeBudget {
+
+        // Never hedge
+        HedgeBudget NONE = () -> null;
+
+        // Hedge freely — for cheap calls the caller does not meter
+        HedgeBudget UNLIMITED = () -> () -> { };
+
+        AutoCloseable tryAcquire();
+    }
+
+    /* ============================================================
+       PUBLIC API
+       ============================================================ */
+
+    /**
+     * POSTs a JSON body to {@code path} on the best instance.
+     *
+     * Completes with the first successful response; if every attempt failed,
+     * with the last error response, or exceptionally if none answered.
+     * Pass {@code hedge = false} for calls that must not run twice
+     * (streamed output goes straight to a user).
+     */
+    public <T> CompletableFuture<HttpResponse<T>> post(
+            String path,
+            String json,
+            Duration timeout,
+            HttpResponse.BodyHandler<T> handler,
+            boolean hedge
+    ) {
+        return post(path, json, timeout, handler, hedge ? HedgeBudget.UNLIMITED : HedgeBudget.NONE);
+    }
+
+    /**
+     * Same, with duplicates drawn from {@code hedgeBudget}: a stalled call
+     * is hedged only if the budget has a free slot at that moment.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> post(
+            String path,
+            String json,
+            Duration timeout,
+            HttpResponse.BodyHandler<T> handler,
+            HedgeBudget hedgeBudget
+    ) {
+        return post(path, json, timeout, handler, hedgeBudget, null);
+    }
+
+    /**
+     * Same, sent to the {@code affinity} instance (an endpoint, see
+     * {@link #endpointOf}) while it is available; null for the least loaded.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> post(
+            String path,
+            String json,
+            Duration timeout,
+            HttpResponse.BodyHandler<T> handler,
+            HedgeBudget hedgeBudget,
+            String affinity
+    ) {
+        return post(path, json, timeout, handler, hedgeBudget, affinity, null);
+    }
+
+    /**
+     * Same, timed under {@code latencyClass}: calls on one path whose
+     * durations differ widely (a short intent call, a long summary) each
+     * get their own p95 to hedge on. Null shares the path's window.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> post(
+            String path,
+            String json,
+            Duration timeout,
+            HttpResponse.BodyHandler<T> handler,
+            HedgeBudget hedgeBudget,
+            String affinity,
+            String latencyClass
+    ) {
+        boolean hedge = hedgeBudget != HedgeBudget.NONE;
+        String latencyKey = latencyKey(path, latencyClass);
+
+        Call<T> call = new Call<>(path, json, timeout, handler, hedgeBudget, affinity, latencyKey);
+        call.start();
+
+        if (hedge && backends.size() > 1) {
+            long delay = hedgeDelayNanos(latencyKey);
+            if (delay > 0) {
+                try {
+                    ScheduledFuture<?> timer = hedger.schedule(call::hedge, delay, TimeUnit.NANOSECONDS);
+                    call.result.whenComplete((r, e) -> timer.cancel(false));
+                } catch (RejectedExecutionException ignored) {
+                    // shutting down — no hedge
+                }
+            }
+        }
+
+        return call.result;
+    }
+
+    /**
+     * Blocking form of {@link #post}; interrupting the caller cancels the call.
+     */
+    public <T> HttpResponse<T> send(
+            String path,
+            String json,
+            Duration timeout,
+            HttpResponse.BodyHandler<T> handler,
+            boolean hedge
+    ) throws IOException, InterruptedException {
+        return send(path, json, timeout, handler, hedge ? HedgeBudget.UNLIMITED : HedgeBudget.NONE);
+    }
+
+    public <T> HttpResponse<T> send(
+            String path,
+            String json,
+            Duration timeout,
+            HttpResponse.BodyHandler<T> handler,
+            HedgeBudget hedgeBudget
+    ) throws IOException, InterruptedException {
+        return send(path, json, timeout, handler, hedgeBudget, null);
+    }
+
+    public <T> HttpResponse<T> send(
+            String path,
+            String json,
+            Duration timeout,
+            HttpResponse.BodyHandler<T> handler,
+            HedgeBudget hedgeBudget,
+            String affinity
+    ) throws IOException, InterruptedException {
+        return send(path, json, timeout, handler, hedgeBudget, affinity, null);
+    }
+
+    public <T> HttpResponse<T> send(
+            String path,
+            String json,
+            Duration timeout,
+            HttpResponse.BodyHandler<T> handler,
+            HedgeBudget hedgeBudget,
+            String affinity,
+            String latencyClass
+    ) throws IOException, InterruptedException {
+
+        CompletableFuture<HttpResponse<T>> result =
+                post(path, json, timeout, handler, hedgeBudget, affinity, latencyClass);
+        try {
+            return result.get();
+        } catch (InterruptedException e) {
+            result.cancel(true);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException io ? io : new IOException(cause);
+        }
+    }
+
+    /**
+     * Per-instance routing state plus hedging counters.
+     */
+    public Map<String, Object> stats() {
+
+        List<Map<String, Object>> instances = new ArrayList<>();
+        for (Backend b : backends) {
+            instances.add(b.stats());
+        }
+
+        Map<String, Object> p95 = new LinkedHashMap<>();
+        latencies.forEach((key, window) -> {
+            long nanos = window.percentile(HEDGE_PERCENTILE);
+            if (nanos >= 0) p95.put(key, TimeUnit.NANOSECONDS.toMillis(nanos));
+        });
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("backends", instances);
+        stats.put("hedges", hedges.get());
+        stats.put("hedgeWins", hedgeWins.get());
+        stats.put("hedgesDenied", hedgesDenied.get());
+        stats.put("p95Ms", p95);
+        return stats;
+    }
+
+    /**
+     * The endpoint of the instance that served {@code response}, or null
+     * if it is not one of ours.
+     */
+    public String endpointOf(HttpResponse<?> response) {
+
+        if (response == null) {
+            return null;
+        }
+
+        String uri = response.request().uri().toString();
+        for (Backend b : backends) {
+            if (uri.startsWith(b.endpoint + "/")) {
+                return b.endpoint;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Number of configured instances.
+     */
+    public int size() {
+        return backends.size();
+    }
+
+    @Override
+    public void close() {
+        hedger.shutdownNow();
+    }
+
+    /* ============================================================
+       ROUTING
+       ============================================================ */
+
+    /**
+     * The {@code affinity} instance if untried and available, else least
+     * outstanding requests among available instances not yet tried;
+     * marks the pick as dispatched. Null if none is available.
+     */
+    private synchronized Backend choose(Set<Backend> tried, String affinity) {
+
+        long now = System.nanoTime();
+        int n = backends.size();
+        int start = Math.floorMod(nextStart++, n);
+
+        Backend best = null;
+        for (int i = 0; i < n; i++) {
+            Backend b = backends.get((start + i) % n);
+            if (tried.contains(b) || !b.available(now)) continue;
+            if (b.endpoint.equals(affinity)) {
+                best = b;
+                break;
+            }
+            if (best == null || b.outstanding.get() < best.outstanding.get()) {
+                best = b;
+            }
+        }
+
+        if (best != null) {
+            best.dispatched();
+        }
+        return best;
+    }
+
+    private static String latencyKey(String path, String latencyClass) {
+        return latencyClass == null ? path : path + "#" + latencyClass;
+    }
+
+    private long hedgeDelayNanos(String latencyKey) {
+        LatencyWindow window = latencies.get(latencyKey);
+        long p95 = window == null ? -1 : window.percentile(HEDGE_PERCENTILE);
+        return p95 < 0 ? -1 : Math.max(MIN_HEDGE_DELAY_NANOS, p95);
+    }
+
+    /* ============================================================
+       ONE CALL — primary, failovers and hedge
+       ============================================================ */
+
+    private final class Call<T> {
+
+        final String path;
+        final String json;
+        final Duration timeout;
+        final HttpResponse.BodyHandler<T> handler;
+        final HedgeBudget hedgeBudget;
+        final boolean hedgeable;
+        final String affinity; // preferred endpoint, or null
+        final String latencyKey;
+
+        final CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+
+        // Guarded by this
+        private final Set<Backend> tried = new HashSet<>();
+        private final List<Attempt<T>> attempts = new ArrayList<>();
+        private int pending = 0;
+        private HttpResponse<T> lastResponse;
+        private Throwable lastError;
+
+        Call(String path, String json, Duration timeout, HttpResponse.BodyHandler<T> handler,
+             HedgeBudget hedgeBudget, String affinity, String latencyKey) {
+            this.path = path;
+            this.json = json;
+            this.timeout = timeout;
+            this.handler = handler;
+            this.hedgeBudget = hedgeBudget;
+            this.hedgeable = hedgeBudget != HedgeBudget.NONE;
+            this.affinity = affinity;
+            this.latencyKey = latencyKey;
+
+            // Caller gave up: stop everything still running
+            result.whenComplete((r, e) -> {
+                if (result.isCancelled()) abandonAll(null);
+            });
+        }
+
+        synchronized void start() {
+            if (!launch(false, null)) {
+                result.completeExceptionally(new IOException("No Ollama instance available"));
+            }
+        }
+
+        synchronized void hedge() {
+
+            if (result.isDone()) {
+                return;
+            }
+
+            AutoCloseable slot = hedgeBudget.tryAcquire();
+            if (slot == null) {
+                hedgesDenied.incrementAndGet(); // no spare capacity — keep waiting
+                return;
+            }
+
+            if (launch(true, slot)) {
+                hedges.incrementAndGet();
+            } else {
+                release(slot);
+            }
+        }
+
+        /**
+         * Sends one more attempt to an untried instance; false if none left.
+         * {@code slot} (may be null) is released when the attempt ends.
+         */
+        private boolean launch(boolean hedged, AutoCloseable slot) {
+
+            if (attempts.size() >= MAX_ATTEMPTS) {
+                return false;
+            }
+
+            Backend backend = choose(tried, affinity);
+            if (backend == null) {
+                return false;
+            }
+
+            tried.add(backend);
+            pending++;
+
+            Exchange exchange = new Exchange(backend, hedgeable ? latencyKey : null, slot);
+            CompletableFuture<HttpResponse<T>> future;
+            try {
+                HttpRequest request = HttpRequest.newBuilder()
+                        .uri(URI.create(backend.endpoint + path))
+                        .timeout(timeout)
+                        .header("Content-Type", "application/json")
+                        .POST(HttpRequest.BodyPublishers.ofString(json))
+                        .build();
+
+                future = client.sendAsync(request, exchange.track(handler));
+            } catch (Exception e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+
+            Attempt<T> attempt = new Attempt<>(exchange, future, hedged);
+            attempts.add(attempt);
+
+            future.whenComplete((response, error) -> {
+                if (error != null) exchange.failed(error);
+                settle(attempt, response, error);
+            });
+            return true;
+        }
+
+        private synchronized void settle(Attempt<T> attempt, HttpResponse<T> response, Throwable error) {
+
+            pending--;
+
+            boolean ok = error == null && response.statusCode() < 500;
+
+            if (result.isDone()) {
+                discard(response); // a loser that answered anyway
+                return;
+            }
+
+            if (ok) {
+                result.complete(response);
+                if (attempt.hedged) hedgeWins.incrementAndGet();
+                abandonAll(attempt);
+                return;
+            }
+
+            if (lastResponse != null) discard(lastResponse);
+            lastResponse = response;
+            lastError = error;
+
+            // Fail over only when nothing else is still running
+            if (pending == 0 && !launch(false, null)) {
+                if (lastResponse != null) {
+                    result.complete(lastResponse);
+                } else {
+                    result.completeExceptionally(lastError);
+                }
+            }
+        }
+
+        private synchronized void abandonAll(Attempt<T> winner) {
+            for (Attempt<T> a : attempts) {
+                if (a != winner && !a.future.isDone()) {
+                    a.exchange.abandoned();
+                    a.future.cancel(true);
+                }
+            }
+        }
+    }
+
+    private record Attempt<T>(Exchange exchange, CompletableFuture<HttpResponse<T>> future, boolean hedged) {}
+
+    private static void release(AutoCloseable slot) {
+        if (slot != null) {
+            try {
+                slot.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /**
+     * Unused responses may hold a connection open (e.g. a line stream).
+     */
+    private static void discard(HttpResponse<?> response) {
+        if (response != null && response.body() instanceof AutoCloseable body) {
+            try {
+                body.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    /* ============================================================
+       ONE REQUEST TO ONE INSTANCE
+       ============================================================ */
+
+    /**
+     * Tracks a request until its body ends, then reports the outcome
+     * to the instance's breaker exactly once.
+     */
+    private final class Exchange {
+
+        final Backend backend;
+        final String latencyKey; // null: not recorded
+        final AutoCloseable slot; // hedge capacity held, or null
+        final long startedAt = System.nanoTime();
+        final AtomicBoolean done = new AtomicBoolean();
+        volatile int status = -1;
+
+        Exchange(Backend backend, String latencyKey, AutoCloseable slot) {
+            this.backend = backend;
+            this.latencyKey = latencyKey;
+            this.slot = slot;
+        }
+
+        <T> HttpResponse.BodyHandler<T> track(HttpResponse.BodyHandler<T> handler) {
+            return info -> {
+                status = info.statusCode();
+                return new TrackedSubscriber<>(handler.apply(info), this);
+            };
+        }
+
+        /** Body fully read, or closed early by its reader. */
+        void finished() {
+            if (!done.compareAndSet(false, true)) return;
+            backend.outstanding.decrementAndGet();
+            release(slot);
+
+            if (status >= 500) {
+                backend.failure();
+                return;
+            }
+
+            backend.success();
+            if (latencyKey != null) {
+                latencies.computeIfAbsent(latencyKey, k -> new LatencyWindow())
+                        .record(System.nanoTime() - startedAt);
+            }
+        }
+
+        /** No response: connection error, timeout, or cancelled by us. */
+        void failed(Throwable error) {
+            if (!done.compareAndSet(false, true)) return;
+            backend.outstanding.decrementAndGet();
+            release(slot);
+
+            if (error instanceof CancellationException
+                    || error.getCause() instanceof CancellationException) {
+                backend.inconclusive();
+            } else {
+                backend.failure();
+            }
+        }
+
+        /** Lost to another attempt — says nothing about this instance. */
+        void abandoned() {
+            if (!done.compareAndSet(false, true)) return;
+            backend.outstanding.decrementAndGet();
+            release(slot);
+            backend.inconclusive();
+        }
+    }
+
+    /**
+     * Forwards everything to the real body subscriber and notices when the
+     * body ends — by completion, error, or the reader cancelling.
+     */
+    private static final class TrackedSubscriber<T> implements HttpResponse.BodySubscriber<T> {
+
+        private final HttpResponse.BodySubscriber<T> delegate;
+        private final Exchange exchange;
+
+        TrackedSubscriber(HttpResponse.BodySubscriber<T> delegate, Exchange exchange) {
+            this.delegate = delegate;
+            this.exchange = exchange;
+        }
+
+        @Override
+        public CompletionStage<T> getBody() {
+            return delegate.getBody();
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            delegate.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    subscription.request(n);
+                }
+
+                @Override
+                public void cancel() {
+                    subscription.cancel();
+                    exchange.finished();
+                }
+            });
+        }
+
+        @Override
+        public void onNext(List<ByteBuffer> item) {
+            delegate.onNext(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            exchange.failed(throwable);
+            delegate.onError(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            exchange.finished();
+            delegate.onComplete();
+        }
+    }
+
+    /* ============================================================
+       INTERNAL MODEL
+       ============================================================ */
+
+    private enum BreakerState { CLOSED, OPEN, HALF_OPEN }
+
+    private static final class Backend {
+
+        final String endpoint;
+        final AtomicInteger outstanding = new AtomicInteger();
+
+        // Guarded by this
+        private BreakerState state = BreakerState.CLOSED;
+        private int consecutiveFailures = 0;
+        private long openUntil = 0;
+        private long requests = 0;
+        private long failures = 0;
+
+        Backend(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        /** Closed, or open long enough that a probe may go. */
+        synchronized boolean available(long now) {
+            return state == BreakerState.CLOSED
+                    || (state == BreakerState.OPEN && now - openUntil >= 0);
+        }
+
+        synchronized void dispatched() {
+            requests++;
+            outstanding.incrementAndGet();
+            if (state == BreakerState.OPEN) {
+                state = BreakerState.HALF_OPEN; // this call is the probe
+            }
+        }
+
+        synchronized void success() {
+            state = BreakerState.CLOSED;
+            consecutiveFailures = 0;
+        }
+
+        synchronized void failure() {
+            failures++;
+            consecutiveFailures++;
+            if (state == BreakerState.HALF_OPEN || consecutiveFailures >= FAILURE_THRESHOLD) {
+                state = BreakerState.OPEN;
+                openUntil = System.nanoTime() + OPEN_DURATION_NANOS;
+            }
+        }
+
+        /** A cancelled probe proves nothing — let the next call probe. */
+        synchronized void inconclusive() {
+            if (state == BreakerState.HALF_OPEN) {
+                state = BreakerState.OPEN;
+            }
+        }
+
+        synchronized Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("endpoint", endpoint);
+            stats.put("state", state.name());
+            stats.put("outstanding", outstanding.get());
+            stats.put("requests", requests);
+            stats.put("failures", failures);
+            return stats;
+        }
+    }
+
+    /**
+     * Sliding window of the most recent successful call durations.
+     */
+    private static final class LatencyWindow {
+
+        private final long[] samples = new long[LATENCY_WINDOW];
+        private int count = 0;
+        private int next = 0;
+
+        synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        /** -1 until there are enough samples to trust. */
+        synchronized long percentile(double p) {
+            if (count < MIN_LATENCY_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return sorted[Math.max(0, (int) Math.ceil(p * count) - 1)];
+        }
+    }
+}
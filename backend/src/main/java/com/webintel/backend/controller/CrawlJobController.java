@@ -0,0 +1,119 @@
+package com.webintel.backend.controller;
+
+import com.webintel.backend.domain.CrawlJobStatus;
+import com.webintel.backend.domain.CrawlRequest;
+import com.webintel.backend.pipeline.CrawlJob;
+import com.webintel.backend.pipeline.CrawlJobService;
+import com.webintel.backend.pipeline.JobEvent;
+
+import org.springframework.http.*;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * Asynchronous preview jobs.
+ *
+ * Flow:
+ * - POST   /jobs              → job id (202)
+ * - GET    /jobs/{id}/events  → server-sent events: intent, page…, summary-token…, summary, done
+ * - GET    /jobs/{id}         → status (and result once done)
+ * - DELETE /jobs/{id}         → cancel
+ */
+@RestController
+@RequestMapping("/api/smart-scrape/jobs")
+@CrossOrigin(origins = "*")
+public class CrawlJobController {
+
+    // Long enough for a full crawl + summary; independent of spring.mvc.async.request-timeout
+    private static final long SSE_TIMEOUT_MS = 10 * 60 * 1000L;
+
+    private final CrawlJobService jobService;
+
+    public CrawlJobController(CrawlJobService jobService) {
+        this.jobService = jobService;
+    }
+
+    /* ============================================================
+       SUBMIT
+       ============================================================ */
+
+    @PostMapping
+    public ResponseEntity<CrawlJobStatus> submit(@RequestBody CrawlRequest req) {
+
+        if (req == null || req.getTargetUrl() == null || req.getTargetUrl().isBlank()) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        try {
+            CrawlJob job = jobService.submit(req);
+            return ResponseEntity.accepted().body(job.toStatus());
+
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
+        }
+    }
+
+    /* ============================================================
+       STATUS / CANCEL
+       ============================================================ */
+
+    @GetMapping("/{jobId}")
+    public ResponseEntity<CrawlJobStatus> status(@PathVariable String jobId) {
+        CrawlJob job = jobService.get(jobId);
+        return job != null
+                ? ResponseEntity.ok(job.toStatus())
+                : ResponseEntity.notFound().build();
+    }
+
+    @DeleteMapping("/{jobId}")
+    public ResponseEntity<CrawlJobStatus> cancel(@PathVariable String jobId) {
+        CrawlJob job = jobService.cancel(jobId);
+        return job != null
+                ? ResponseEntity.ok(job.toStatus())
+                : ResponseEntity.notFound().build();
+    }
+
+    /* ============================================================
+       EVENT STREAM
+       ============================================================ */
+
+    @GetMapping(value = "/{jobId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> events(@PathVariable String jobId) {
+
+        CrawlJob job = jobService.get(jobId);
+        if (job == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        SseEmitter emitter = new SseEmitter(SSE_TIMEOUT_MS);
+
+        Consumer<JobEvent> subscriber = event -> {
+            try {
+                emitter.send(
+                        SseEmitter.event()
+                                .id(Long.toString(event.getSequence()))
+                                .name(event.getName())
+                                .data(event.getData(), MediaType.APPLICATION_JSON)
+                );
+                if (event.isTerminal()) {
+                    emitter.complete();
+                }
+            } catch (Exception e) {
+                emitter.completeWithError(e);
+                throw new IllegalStateException(e);
+            }
+        };
+
+        emitter.onTimeout(() -> job.unsubscribe(subscriber));
+        emitter.onCompletion(() -> job.unsubscribe(subscriber));
+        emitter.onError(error -> job.unsubscribe(subscriber));
+
+        // Dropped for falling behind: end the stream, the client reconnects and replays
+        job.subscribe(subscriber, emitter::complete);
+
+        return ResponseEntity.ok(emitter);
+    }
+}
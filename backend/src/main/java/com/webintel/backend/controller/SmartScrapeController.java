@@ -1,16 +1,25 @@
 package com.webintel.backend.controller;
 
 import com.webintel.backend.ai.*;
+import com.webintel.backend.crawler.FetchSession;
 import com.webintel.backend.crawler.MultiPageCrawler;
+import com.webintel.backend.crawler.PageFetcher;
 import com.webintel.backend.domain.*;
 import com.webintel.backend.extractor.ContentExtractor;
 import com.webintel.backend.packaging.CsvWriter;
+import com.webintel.backend.packaging.ImagePrefetcher;
 import com.webintel.backend.packaging.PdfWriterUtil;
+import com.webintel.backend.pipeline.PreviewPipeline;
 import com.webintel.backend.vector.*;
 
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 @RestController
@@ -18,131 +27,75 @@ import java.util.*;
 @CrossOrigin(origins = "*")
 public class SmartScrapeController {
 
-    /* =========================
-       HARD SAFETY LIMITS
-       ========================= */
-    private static final int MAX_SUMMARY_CHARS = 9_000;
-    private static final int MAX_VECTOR_CHUNKS = 1_200;
-
-    /* =========================
-       SEARCH CACHE (FAST)
-       ========================= */
-    private String lastQuery = null;
-    private double[] lastQueryVector = null;
+    // A streamed answer rarely takes more than a couple of minutes
+    private static final long CHAT_SSE_TIMEOUT_MS = 3 * 60 * 1000L;
 
     private final IntentInterpreter intentInterpreter;
     private final MultiPageCrawler crawler;
+    private final PageFetcher pageFetcher;
     private final ContentExtractor extractor;
-    private final AiSummaryService summaryService;
     private final AiIntentRefiner intentRefiner;
+    private final PreviewPipeline previewPipeline;
+    private final SessionStore sessionStore;
+    private final ImagePrefetcher imagePrefetcher;
+    private final AiChatService chatService;
+    private final LlmScheduler llmScheduler;
+    private final OllamaPool ollamaPool;
 
-    private final VectorStore vectorStore;
-    private final EmbeddingService embeddingService;
-    private final ContentChunker chunker;
+    private final VectorNamespaces vectorNamespaces;
+    private final QueryVectorCache queryVectors;
 
     public SmartScrapeController(
             IntentInterpreter intentInterpreter,
             MultiPageCrawler crawler,
+            PageFetcher pageFetcher,
             ContentExtractor extractor,
-            AiSummaryService summaryService,
             AiIntentRefiner intentRefiner,
-            VectorStore vectorStore,
-            EmbeddingService embeddingService,
-            ContentChunker chunker
+            PreviewPipeline previewPipeline,
+            SessionStore sessionStore,
+            ImagePrefetcher imagePrefetcher,
+            AiChatService chatService,
+            LlmScheduler llmScheduler,
+            OllamaPool ollamaPool,
+            VectorNamespaces vectorNamespaces,
+            QueryVectorCache queryVectors
     ) {
         this.intentInterpreter = intentInterpreter;
         this.crawler = crawler;
+        this.pageFetcher = pageFetcher;
         this.extractor = extractor;
-        this.summaryService = summaryService;
         this.intentRefiner = intentRefiner;
-        this.vectorStore = vectorStore;
-        this.embeddingService = embeddingService;
-        this.chunker = chunker;
+        this.previewPipeline = previewPipeline;
+        this.sessionStore = sessionStore;
+        this.imagePrefetcher = imagePrefetcher;
+        this.chatService = chatService;
+        this.llmScheduler = llmScheduler;
+        this.ollamaPool = ollamaPool;
+        this.vectorNamespaces = vectorNamespaces;
+        this.queryVectors = queryVectors;
     }
 
     /* ============================================================
        PREVIEW — SCRAPE + VECTORIZE + AI SUMMARY
+       Response carries a resultId for the export endpoints.
        ============================================================ */
 
     @PostMapping("/preview")
     public ResponseEntity<CrawlResult> preview(@RequestBody CrawlRequest req) {
 
-        CrawlResult out = new CrawlResult();
-
         try {
-            vectorStore.clear();
-            lastQuery = null;
-            lastQueryVector = null;
-
-            /* 1️⃣ AI intent refinement */
-            String refinedIntent = intentRefiner.refine(req.getUserPrompt());
-            out.setInterpretedIntent(refinedIntent);
-
-            CrawlIntent intent = intentInterpreter.interpret(refinedIntent);
-
-            /* 2️⃣ Resolve pages */
-            List<String> pages = intent.isMultiPage()
-                    ? crawler.crawl(req.getTargetUrl())
-                    : List.of(req.getTargetUrl());
-
-            List<PageResult> results = new ArrayList<>();
-            StringBuilder summaryText = new StringBuilder();
-
-            int vectorCount = 0;
-            int pageIndex = 0;
-
-            /* 3️⃣ Extraction + vector ingestion */
-            outer:
-            for (String url : pages) {
-
-                PageResult page = extractor.extract(url, intent);
-                page.setPageIndex(pageIndex++);
-                results.add(page);
-
-                if (page.getParagraphs() == null) continue;
-
-                for (String paragraph : page.getParagraphs()) {
-
-                    if (paragraph == null || paragraph.isBlank()) continue;
-
-                    if (summaryText.length() < MAX_SUMMARY_CHARS) {
-                        summaryText.append(paragraph).append("\n");
-                    }
-
-                    if (vectorCount >= MAX_VECTOR_CHUNKS) break outer;
+            CrawlResult out = previewPipeline.run(req);
 
-                    for (String chunk : chunker.chunk(paragraph)) {
-
-                        if (vectorCount >= MAX_VECTOR_CHUNKS) break outer;
-                        if (chunk == null || chunk.isBlank()) continue;
-
-                        double[] vec = embeddingService.embed(chunk);
-                        if (vec.length == 0) continue;
-
-                        vectorStore.add(
-                                new Embedding(
-                                        UUID.randomUUID().toString(),
-                                        chunk,
-                                        vec
-                                )
-                        );
-                        vectorCount++;
-                    }
-                }
-            }
-
-            out.setPages(results);
-
-            /* 4️⃣ AI SUMMARY */
-            out.setSummary(
-                    summaryText.isEmpty()
-                            ? "No meaningful textual content was found to generate a summary."
-                            : summaryService.summarize(summaryText.toString())
-            );
+            // What the user asked for is what they are likely to search next
+            queryVectors.warm(List.of(
+                    Objects.requireNonNullElse(req.getUserPrompt(), ""),
+                    Objects.requireNonNullElse(out.getInterpretedIntent(), "")
+            ));
 
             return ResponseEntity.ok(out);
 
         } catch (Exception e) {
+            CrawlResult out = new CrawlResult();
             out.setPages(Collections.emptyList());
             out.setSummary("AI processing failed safely.");
             out.setInterpretedIntent(req.getUserPrompt());
@@ -160,25 +113,18 @@ public class SmartScrapeController {
 
         String query = body.get("query");
 
-        if (query == null || query.isBlank() || vectorStore.isEmpty()) {
-            return ResponseEntity.ok(List.of());
-        }
-
-        double[] qVec;
+        // Namespace = resultId returned by /preview
+        VectorStore vectorStore = vectorNamespaces.get(body.get("namespace"));
 
-        if (query.equalsIgnoreCase(lastQuery) && lastQueryVector != null) {
-            qVec = lastQueryVector;
-        } else {
-            qVec = embeddingService.embed(query);
-            lastQuery = query;
-            lastQueryVector = qVec;
-        }
-
-        if (qVec.length == 0) {
+        if (query == null || query.isBlank() || vectorStore == null || vectorStore.isEmpty()) {
             return ResponseEntity.ok(List.of());
         }
 
-        List<String> matches = vectorStore.search(qVec, 6)
+        // Repeated and warmed queries skip the embedding call
+        double[] qVec = queryVectors.get(query);
+
+        // Lexical candidates re-ranked by cosine; BM25 alone if embedding failed
+        List<String> matches = vectorStore.hybridSearch(query, qVec, 6, lexicalWeight(body))
                 .stream()
                 .map(Embedding::getText)
                 .filter(Objects::nonNull)
@@ -188,40 +134,138 @@ public class SmartScrapeController {
     }
 
     /* ============================================================
-       CSV EXPORT
+       CHAT — RETRIEVAL-AUGMENTED
+       The prompt holds only the top passages for the question, so its
+       size does not grow with the crawl. Follow-ups with the same
+       conversationId send only the new turn.
        ============================================================ */
 
-    @PostMapping("/export/csv")
-    public ResponseEntity<String> exportCsv(@RequestBody CrawlRequest req) {
+    @PostMapping("/chat")
+    public ResponseEntity<ChatResponse> chat(@RequestBody ChatRequest req) {
 
-        CrawlIntent intent =
-                intentInterpreter.interpret(
-                        intentRefiner.refine(req.getUserPrompt())
-                );
+        List<PageResult> pages = chatPages(req.getResultId());
 
-        List<String> pages = intent.isMultiPage()
-                ? crawler.crawl(req.getTargetUrl())
-                : List.of(req.getTargetUrl());
+        if (req.getQuestion() == null || req.getQuestion().isBlank() || pages == null) {
+            return ResponseEntity.badRequest().build();
+        }
 
-        List<PageResult> results = new ArrayList<>();
-        int pageIndex = 0;
+        return ResponseEntity.ok(chatService.chat(req.getResultId(), req.getConversationId(), req.getQuestion(), pages));
+    }
 
-        for (String p : pages) {
-            PageResult page = extractor.extract(p, intent);
-            page.setPageIndex(pageIndex++);
-            results.add(page);
+    /**
+     * Same answer streamed over SSE.
+     * Events: sources (the passages used), token… then done (full answer) or failed.
+     */
+    @PostMapping(value = "/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> chatStream(@RequestBody ChatRequest req) {
+
+        String question = req.getQuestion();
+        List<PageResult> pages = chatPages(req.getResultId());
+
+        if (question == null || question.isBlank() || pages == null) {
+            return ResponseEntity.badRequest().build();
         }
 
-        CrawlResult result = new CrawlResult();
-        result.setPages(results);
+        SseEmitter emitter = new SseEmitter(CHAT_SSE_TIMEOUT_MS);
+
+        List<String> passages = chatService.retrieve(req.getResultId(), question, pages);
+        try {
+            emitter.send(SseEmitter.event().name("sources").data(passages, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            // Client gone — nothing to answer; release the async request now
+            emitter.completeWithError(e);
+            return ResponseEntity.ok(emitter);
+        }
+
+        chatService.chatStream(req.getResultId(), req.getConversationId(), question, passages, token -> {
+            try {
+                emitter.send(SseEmitter.event().name("token").data(token, MediaType.APPLICATION_JSON));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // client gone — stops generation
+            }
+        }).whenComplete((answer, error) -> {
+            try {
+                if (error == null && !answer.isBlank()) {
+                    emitter.send(SseEmitter.event().name("done").data(answer, MediaType.APPLICATION_JSON));
+                } else {
+                    emitter.send(SseEmitter.event().name("failed").data("AI answer could not be generated.", MediaType.APPLICATION_JSON));
+                }
+                emitter.complete();
+            } catch (Exception e) {
+                emitter.completeWithError(e);
+            }
+        });
+
+        return ResponseEntity.ok(emitter);
+    }
+
+    /**
+     * Query-vector cache counters.
+     */
+    @GetMapping("/search/cache")
+    public ResponseEntity<Map<String, Object>> searchCacheStats() {
+
+        long hits = queryVectors.hits();
+        long misses = queryVectors.misses();
+
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", queryVectors.size());
+        stats.put("hits", hits);
+        stats.put("misses", misses);
+        stats.put("hitRate", hits + misses == 0 ? 0.0 : hits / (double) (hits + misses));
+        return ResponseEntity.ok(stats);
+    }
+
+    /**
+     * LLM queue: depth per priority, in-flight calls, shed calls, wait times.
+     */
+    @GetMapping("/llm/stats")
+    public ResponseEntity<Map<String, Object>> llmStats() {
+        return ResponseEntity.ok(llmScheduler.stats());
+    }
+
+    /**
+     * Ollama instances: breaker state, outstanding calls, hedging counters.
+     */
+    @GetMapping("/llm/backends")
+    public ResponseEntity<Map<String, Object>> llmBackends() {
+        return ResponseEntity.ok(ollamaPool.stats());
+    }
+
+    /**
+     * Optional "lexicalWeight" in [0, 1]; 0 ranks purely by cosine.
+     */
+    private static double lexicalWeight(Map<String, String> body) {
+        try {
+            String raw = body.get("lexicalWeight");
+            return raw == null ? VectorStore.DEFAULT_LEXICAL_WEIGHT : Double.parseDouble(raw);
+        } catch (NumberFormatException e) {
+            return VectorStore.DEFAULT_LEXICAL_WEIGHT;
+        }
+    }
+
+    /* ============================================================
+       CSV EXPORT
+       ============================================================ */
+
+    @PostMapping("/export/csv")
+    public ResponseEntity<StreamingResponseBody> exportCsv(@RequestBody CrawlRequest req) {
+
+        CrawlResult result = resolveResult(req);
+        if (result == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        // Rows are written straight to the response as they are encoded
+        StreamingResponseBody body = out -> CsvWriter.write(result, out);
 
         return ResponseEntity.ok()
                 .header(
                         HttpHeaders.CONTENT_DISPOSITION,
                         "attachment; filename=\"scraped_data.csv\""
                 )
-                .contentType(MediaType.TEXT_PLAIN)
-                .body(CsvWriter.toCsv(result));
+                .contentType(new MediaType("text", "csv", StandardCharsets.UTF_8))
+                .body(body);
     }
 
     /* ============================================================
@@ -229,37 +273,109 @@ public class SmartScrapeController {
        ============================================================ */
 
     @PostMapping("/export/pdf")
-    public ResponseEntity<byte[]> exportPdf(@RequestBody CrawlRequest req) {
+    public ResponseEntity<StreamingResponseBody> exportPdf(@RequestBody CrawlRequest req) {
+
+        CrawlResult result = resolveResult(req);
+        if (result == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        // Runs on the async executor, not the request thread
+        StreamingResponseBody body = out -> {
+            // Headers go out first, so the download starts while images are fetched
+            out.flush();
+
+            // All images fetched and downscaled in parallel before rendering
+            Map<String, byte[]> images = imagePrefetcher.prefetch(result);
+
+            // Pages reach the client as soon as they are laid out
+            PdfWriterUtil.write(result, images, out);
+        };
+
+        return ResponseEntity.ok()
+                .header(
+                        HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"web_intelligence_report.pdf\""
+                )
+                .contentType(MediaType.APPLICATION_PDF)
+                .body(body);
+    }
+
+    /**
+     * Fallback pages for chat retrieval. A result whose SessionStore entry
+     * is gone (expired, or lost in a restart) can still be chatted with
+     * while its vectors persist on disk — with no fallback pages.
+     * Null if the result is unknown.
+     */
+    private List<PageResult> chatPages(String resultId) {
+
+        CrawlResult stored = sessionStore.get(resultId);
+        if (stored != null) {
+            return stored.getPages();
+        }
+
+        VectorStore vectors = vectorNamespaces.get(resultId);
+        return vectors != null && !vectors.isEmpty() ? List.of() : null;
+    }
+
+    /* ============================================================
+       EXPORT SOURCE
+       ============================================================ */
+
+    /**
+     * Stored preview result when a valid resultId is given and it was made
+     * for the same targetUrl and userPrompt (no network, no LLM). Otherwise
+     * crawls again from targetUrl, or null if neither works.
+     */
+    private CrawlResult resolveResult(CrawlRequest req) {
+
+        CrawlResult stored = sessionStore.get(req.getResultId());
+        if (stored != null && sameRequest(stored, req)) {
+            return stored;
+        }
+
+        if (req.getTargetUrl() == null || req.getTargetUrl().isBlank()) {
+            return null;
+        }
 
         CrawlIntent intent =
                 intentInterpreter.interpret(
                         intentRefiner.refine(req.getUserPrompt())
                 );
 
+        FetchSession session = pageFetcher.openSession();
+
         List<String> pages = intent.isMultiPage()
-                ? crawler.crawl(req.getTargetUrl())
+                ? crawler.crawl(req.getTargetUrl(), session)
                 : List.of(req.getTargetUrl());
 
         List<PageResult> results = new ArrayList<>();
         int pageIndex = 0;
 
         for (String url : pages) {
-            PageResult page = extractor.extract(url, intent);
+            PageResult page = extractor.extract(url, intent, session);
             page.setPageIndex(pageIndex++);
             results.add(page);
         }
 
         CrawlResult result = new CrawlResult();
+        result.setTargetUrl(req.getTargetUrl());
+        result.setUserPrompt(req.getUserPrompt());
         result.setPages(results);
+        return result;
+    }
 
-        byte[] pdf = PdfWriterUtil.toPdf(result);
+    /**
+     * False when the request names a different URL or prompt than the stored
+     * result was made for, e.g. the inputs were edited after the preview.
+     * A field the request leaves out is not compared.
+     */
+    private static boolean sameRequest(CrawlResult stored, CrawlRequest req) {
+        return sameField(stored.getTargetUrl(), req.getTargetUrl())
+                && sameField(stored.getUserPrompt(), req.getUserPrompt());
+    }
 
-        return ResponseEntity.ok()
-                .header(
-                        HttpHeaders.CONTENT_DISPOSITION,
-                        "attachment; filename=\"web_intelligence_report.pdf\""
-                )
-                .contentType(MediaType.APPLICATION_PDF)
-                .body(pdf);
+    private static boolean sameField(String stored, String requested) {
+        return requested == null || requested.strip().equals(Objects.requireNonNullElse(stored, "").strip());
     }
 }
@@ -0,0 +1,59 @@
+package com.webintel.backend.crawler;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Request-scoped view over {@link PageFetcher}.
+ *
+ * Guarantees each URL is downloaded and parsed at most once per request,
+ * even when link discovery and extraction ask for it concurrently.
+ */
+public class FetchSession {
+
+    private final PageFetcher fetcher;
+    private final Map<String, CompletableFuture<FetchedPage>> pages = new ConcurrentHashMap<>();
+
+    FetchSession(PageFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
+    /**
+     * Returns the page for this URL, downloading it only on first request.
+     * NEVER throws — failures are reported on the returned page.
+     */
+    public FetchedPage fetch(String url) {
+
+        CompletableFuture<FetchedPage> created = new CompletableFuture<>();
+        CompletableFuture<FetchedPage> existing = pages.putIfAbsent(url, created);
+
+        if (existing != null) {
+            try {
+                return existing.join();
+            } catch (CompletionException e) {
+                return FetchedPage.failure(url, String.valueOf(e.getCause()));
+            }
+        }
+
+        FetchedPage page = null;
+        try {
+            page = fetcher.load(url);
+        } catch (RuntimeException e) {
+            page = FetchedPage.failure(url, e.getMessage());
+        } finally {
+            // Waiters are released even if load died with an Error
+            if (page != null) {
+                created.complete(page);
+            } else {
+                created.completeExceptionally(new IllegalStateException("Fetch aborted: " + url));
+            }
+        }
+        return page;
+    }
+
+    public int size() {
+        return pages.size();
+    }
+}
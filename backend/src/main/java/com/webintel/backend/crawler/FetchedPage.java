@@ -0,0 +1,107 @@
+package com.webintel.backend.crawler;
+
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+/**
+ * A single downloaded page: raw bytes plus a lazily parsed Document.
+ *
+ * The parsed Document is only kept for the lifetime of the owning
+ * {@link FetchSession}; the cross-request cache keeps raw bytes only.
+ */
+public final class FetchedPage {
+
+    private final String url;
+    private final String finalUrl; // after redirects — base for relative links
+    private final int statusCode;
+    private final String charset;
+    private final byte[] body;
+    private final String failure;
+
+    private Document document;
+
+    private FetchedPage(String url, String finalUrl, int statusCode, String charset, byte[] body, String failure) {
+        this.url = url;
+        this.finalUrl = finalUrl != null ? finalUrl : url;
+        this.statusCode = statusCode;
+        this.charset = charset;
+        this.body = body;
+        this.failure = failure;
+    }
+
+    static FetchedPage success(String url, String finalUrl, int statusCode, String charset, byte[] body) {
+        return new FetchedPage(url, finalUrl, statusCode, charset, body != null ? body : new byte[0], null);
+    }
+
+    static FetchedPage failure(String url, String failure) {
+        return new FetchedPage(url, url, 0, null, new byte[0], failure);
+    }
+
+    /**
+     * Same bytes, no parsed Document attached.
+     */
+    FetchedPage detached() {
+        return new FetchedPage(url, finalUrl, statusCode, charset, body, failure);
+    }
+
+    /* =========================
+       GETTERS
+       ========================= */
+
+    public String getUrl() {
+        return url;
+    }
+
+    /**
+     * Where the page was actually served from, after redirects.
+     */
+    public String getFinalUrl() {
+        return finalUrl;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    public String getCharset() {
+        return charset;
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+
+    public int getSizeBytes() {
+        return body.length;
+    }
+
+    /**
+     * True when the page was downloaded with a 2xx/3xx status.
+     */
+    public boolean isOk() {
+        return failure == null && statusCode > 0 && statusCode < 400;
+    }
+
+    /**
+     * Human-readable reason the page is unusable, or null when OK.
+     */
+    public String getFailure() {
+        if (failure != null) return failure;
+        if (statusCode >= 400) return "HTTP error fetching URL. Status=" + statusCode;
+        return null;
+    }
+
+    /**
+     * Parses the body on first access and reuses the result afterwards.
+     * Relative links resolve against the post-redirect URL.
+     */
+    public synchronized Document getDocument() throws IOException {
+        if (document == null) {
+            document = Jsoup.parse(new ByteArrayInputStream(body), charset, finalUrl);
+        }
+        return document;
+    }
+}
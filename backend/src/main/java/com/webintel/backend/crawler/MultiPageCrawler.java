@@ -1,12 +1,14 @@
 package com.webintel.backend.crawler;
 
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.springframework.stereotype.Component;
 
 import java.net.URI;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 /**
  * Discovers internal pages starting from a base URL.
@@ -16,10 +18,20 @@ import java.util.*;
  * - Depth-limited crawling
  * - Page-count limits
  * - No infinite loops
- * - Deterministic, stable output
+ * - Deterministic, stable output (sorted by depth, then URL)
+ *
+ * The crawl runs level by level: every page of depth d is fetched, with
+ * a fixed number of requests in flight, before any page of depth d+1 is
+ * admitted. Admission then follows the parents' admission order and each
+ * parent's sorted links, so which pages make the page limit never
+ * depends on network timing.
+ *
+ * Fetches run on one bounded pool shared by all crawls. Downloads go
+ * through {@link PageFetcher}, which applies per-host politeness and lets
+ * extraction reuse each page.
  */
 @Component
-public class MultiPageCrawler {
+public class MultiPageCrawler implements AutoCloseable {
 
     /* =========================
        HARD SAFETY LIMITS
@@ -27,82 +39,252 @@ public class MultiPageCrawler {
     private static final int DEFAULT_MAX_PAGES = 10;
     private static final int DEFAULT_MAX_DEPTH = 2;
 
+    /* =========================
+       CONCURRENCY / POLITENESS
+       ========================= */
+    private static final int DEFAULT_CONCURRENCY = 4;
+    private static final int MAX_CONCURRENCY = 16;
+
+    private final PageFetcher fetcher;
+
+    // Shared by every crawl; each crawl still caps its own in-flight fetches
+    private final ExecutorService fetchPool =
+            Executors.newFixedThreadPool(MAX_CONCURRENCY, new FetchThreadFactory());
+
+    public MultiPageCrawler(PageFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
     /**
      * Crawl using safe defaults.
      */
     public List<String> crawl(String startUrl) {
-        return crawl(startUrl, DEFAULT_MAX_PAGES, DEFAULT_MAX_DEPTH);
+        return crawl(startUrl, fetcher.openSession());
+    }
+
+    /**
+     * Crawl using safe defaults, sharing downloads with the given session.
+     */
+    public List<String> crawl(String startUrl, FetchSession session) {
+        return crawl(startUrl, DEFAULT_MAX_PAGES, DEFAULT_MAX_DEPTH, DEFAULT_CONCURRENCY, session);
+    }
+
+    /**
+     * Crawl using safe defaults, handing each URL to {@code onFetched}
+     * as soon as it has been downloaded (completion order).
+     */
+    public List<String> crawl(String startUrl, FetchSession session, Consumer<String> onFetched) {
+        return crawl(startUrl, DEFAULT_MAX_PAGES, DEFAULT_MAX_DEPTH, DEFAULT_CONCURRENCY, session, onFetched);
     }
 
     /**
      * Crawl using configurable limits.
      */
     public List<String> crawl(String startUrl, int maxPages, int maxDepth) {
+        return crawl(startUrl, maxPages, maxDepth, DEFAULT_CONCURRENCY, fetcher.openSession());
+    }
+
+    /**
+     * Crawl using configurable limits and a fixed number of in-flight fetches.
+     * A concurrency of 1 fetches pages strictly one after another.
+     */
+    public List<String> crawl(
+            String startUrl,
+            int maxPages,
+            int maxDepth,
+            int concurrency,
+            FetchSession session
+    ) {
+        return crawl(startUrl, maxPages, maxDepth, concurrency, session, url -> { });
+    }
 
-        if (startUrl == null || startUrl.isBlank()) {
+    /**
+     * Full form: configurable limits plus a per-page callback, invoked on the
+     * crawling thread. A slow callback slows admission of new fetches.
+     */
+    public List<String> crawl(
+            String startUrl,
+            int maxPages,
+            int maxDepth,
+            int concurrency,
+            FetchSession session,
+            Consumer<String> onFetched
+    ) {
+
+        if (startUrl == null || startUrl.isBlank() || maxPages <= 0) {
             return List.of();
         }
 
-        Set<String> visited = new LinkedHashSet<>();
-        Queue<CrawlNode> queue = new ArrayDeque<>();
-        List<String> result = new ArrayList<>();
-
         String baseDomain = extractDomain(startUrl);
-        if (baseDomain.isEmpty()) {
-            return result;
+        if (baseDomain == null || baseDomain.isEmpty()) {
+            return List.of();
         }
 
-        queue.add(new CrawlNode(canonicalize(startUrl), 0));
+        String start = canonicalize(startUrl);
+        if (start.isEmpty()) {
+            return List.of();
+        }
+
+        int parallelism = Math.max(1, Math.min(concurrency, MAX_CONCURRENCY));
 
-        while (!queue.isEmpty() && result.size() < maxPages) {
+        // Every URL ever scheduled — bounded by maxPages
+        Set<String> admitted = new HashSet<>();
+        admitted.add(start);
+
+        // Current level, in admission order
+        List<String> level = List.of(start);
+        List<String> result = new ArrayList<>();
 
-            CrawlNode node = queue.poll();
-            String currentUrl = node.url;
-            int depth = node.depth;
+        CompletionService<FetchOutcome> completions = new ExecutorCompletionService<>(fetchPool);
+        List<Future<FetchOutcome>> submitted = new ArrayList<>();
 
-            if (visited.contains(currentUrl) || depth > maxDepth) {
-                continue;
+        try {
+            for (int depth = 0; !level.isEmpty(); depth++) {
+
+                Map<String, List<String>> linksByPage = fetchLevel(
+                        level, parallelism, session, baseDomain, completions, submitted, onFetched, result);
+
+                if (depth >= maxDepth) {
+                    break;
+                }
+
+                level = admitNextLevel(level, linksByPage, admitted, maxPages);
             }
 
-            visited.add(currentUrl);
-            result.add(currentUrl);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException ignored) {
+            // fetchLinks never throws — defensive only
+        } finally {
+            // Only left running when interrupted
+            submitted.forEach(f -> f.cancel(true));
+        }
 
-            try {
-                Document document = Jsoup.connect(currentUrl)
-                        .userAgent("WebIntelBot/1.0")
-                        .timeout(12_000)
-                        .ignoreHttpErrors(true)
-                        .get();
+        return result;
+    }
 
-                // Collect links first to ensure deterministic ordering
-                List<String> discoveredLinks = new ArrayList<>();
+    @Override
+    public void close() {
+        fetchPool.shutdownNow();
+    }
 
-                for (Element link : document.select("a[href]")) {
+    /* ============================================================
+       LEVELS
+       ============================================================ */
 
-                    String abs = canonicalize(link.attr("abs:href"));
+    /**
+     * Fetches every page of one level, at most {@code parallelism} at a time,
+     * and appends them to {@code result} sorted by URL. Returns each page's links.
+     */
+    private Map<String, List<String>> fetchLevel(
+            List<String> level,
+            int parallelism,
+            FetchSession session,
+            String baseDomain,
+            CompletionService<FetchOutcome> completions,
+            List<Future<FetchOutcome>> submitted,
+            Consumer<String> onFetched,
+            List<String> result
+    ) throws InterruptedException, ExecutionException {
+
+        Map<String, List<String>> linksByPage = new HashMap<>();
+        List<String> fetched = new ArrayList<>(level.size());
+        int next = 0;
+        int inFlight = 0;
 
-                    if (abs.isEmpty()) continue;
-                    if (isJunkLink(abs)) continue;
-                    if (!isSameDomain(baseDomain, abs)) continue;
-                    if (visited.contains(abs)) continue;
+        try {
+            while (next < level.size() || inFlight > 0) {
 
-                    discoveredLinks.add(abs);
+                // Keep the pipe full
+                while (next < level.size() && inFlight < parallelism) {
+                    String url = level.get(next++);
+                    submitted.add(completions.submit(() -> new FetchOutcome(url, fetchLinks(session, url, baseDomain))));
+                    inFlight++;
                 }
 
-                // Sort links for deterministic crawl order
-                Collections.sort(discoveredLinks);
+                FetchOutcome outcome = completions.take().get();
+                inFlight--;
 
-                for (String next : discoveredLinks) {
-                    if (result.size() + queue.size() >= maxPages) break;
-                    queue.add(new CrawlNode(next, depth + 1));
-                }
+                linksByPage.put(outcome.url, outcome.links);
+                fetched.add(outcome.url);
+                onFetched.accept(outcome.url);
+            }
+
+            submitted.clear();
+
+        } finally {
+            // Completion order depends on network timing — restore a stable order
+            Collections.sort(fetched);
+            result.addAll(fetched);
+        }
+
+        return linksByPage;
+    }
 
-            } catch (Exception ignored) {
-                // Fail silently — crawler must never crash pipeline
+    /**
+     * The next level: parents in admission order, each parent's links in
+     * sorted order, until the page limit is reached.
+     */
+    private List<String> admitNextLevel(
+            List<String> level,
+            Map<String, List<String>> linksByPage,
+            Set<String> admitted,
+            int maxPages
+    ) {
+        List<String> nextLevel = new ArrayList<>();
+
+        for (String parent : level) {
+            for (String link : linksByPage.getOrDefault(parent, List.of())) {
+                if (admitted.size() >= maxPages) {
+                    return nextLevel;
+                }
+                if (admitted.add(link)) {
+                    nextLevel.add(link);
+                }
             }
         }
 
-        return result;
+        return nextLevel;
+    }
+
+    /* ============================================================
+       FETCH
+       ============================================================ */
+
+    /**
+     * Downloads a page and returns its crawlable same-domain links, sorted.
+     * Failures yield an empty list — crawler must never crash pipeline.
+     */
+    private List<String> fetchLinks(FetchSession session, String url, String baseDomain) {
+
+        FetchedPage page = session.fetch(url);
+        if (page.getFailure() != null && page.getSizeBytes() == 0) {
+            return List.of();
+        }
+
+        try {
+            Document document = page.getDocument();
+
+            // Deduplicate, then sort for deterministic admission order
+            Set<String> discoveredLinks = new TreeSet<>();
+
+            for (Element link : document.select("a[href]")) {
+
+                String abs = canonicalize(link.attr("abs:href"));
+
+                if (abs.isEmpty()) continue;
+                if (isJunkLink(abs)) continue;
+                if (!isSameDomain(baseDomain, abs)) continue;
+
+                discoveredLinks.add(abs);
+            }
+
+            return new ArrayList<>(discoveredLinks);
+
+        } catch (Exception ignored) {
+            // Fail silently — crawler must never crash pipeline
+            return List.of();
+        }
     }
 
     /* ============================================================
@@ -182,13 +364,24 @@ public class MultiPageCrawler {
        INTERNAL MODEL
        ============================================================ */
 
-    private static class CrawlNode {
+    private static class FetchOutcome {
         final String url;
-        final int depth;
+        final List<String> links;
 
-        CrawlNode(String url, int depth) {
+        FetchOutcome(String url, List<String> links) {
             this.url = url;
-            this.depth = depth;
+            this.links = links;
+        }
+    }
+
+    private static class FetchThreadFactory implements ThreadFactory {
+        private static final AtomicInteger COUNTER = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "crawler-fetch-" + COUNTER.incrementAndGet());
+            t.setDaemon(true);
+            return t;
         }
     }
 }
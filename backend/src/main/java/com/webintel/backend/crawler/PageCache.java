@@ -0,0 +1,45 @@
+package com.webintel.backend.crawler;
+
+import com.webintel.backend.domain.TtlStore;
+
+import java.time.Duration;
+
+/**
+ * Cross-request cache of raw page bytes.
+ *
+ * Guarantees:
+ * - Bounded by total body bytes (LRU eviction)
+ * - Entries expire after a fixed TTL
+ * - Oversized pages are never cached
+ */
+class PageCache {
+
+    private final long maxEntryBytes;
+    private final TtlStore<String, FetchedPage> entries;
+
+    PageCache(long maxBytes, long maxEntryBytes, long ttlMillis) {
+        this.maxEntryBytes = maxEntryBytes;
+        this.entries = new TtlStore<>(Duration.ofMillis(ttlMillis), maxBytes, FetchedPage::getSizeBytes);
+    }
+
+    FetchedPage get(String url) {
+        return entries.get(url);
+    }
+
+    void put(String url, FetchedPage page) {
+
+        if (page == null || !page.isOk() || page.getSizeBytes() > maxEntryBytes) {
+            return;
+        }
+
+        entries.put(url, page);
+    }
+
+    long totalBytes() {
+        return entries.totalBytes();
+    }
+
+    int size() {
+        return entries.size();
+    }
+}
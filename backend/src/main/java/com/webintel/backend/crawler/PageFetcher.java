@@ -0,0 +1,204 @@
+package com.webintel.backend.crawler;
+
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.springframework.stereotype.Component;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Single outbound HTTP layer for page downloads.
+ *
+ * Guarantees:
+ * - Per-host politeness (in-flight cap + minimum delay)
+ * - Idle hosts' throttles are evicted, so the table tracks active hosts
+ * - Cross-request byte cache with TTL and size-based eviction
+ * - Request-scoped sessions so a URL is fetched and parsed once
+ */
+@Component
+public class PageFetcher {
+
+    /* =========================
+       HTTP SETTINGS
+       ========================= */
+    private static final String USER_AGENT = "Mozilla/5.0 (WebIntelBot/1.0)";
+    private static final int TIMEOUT_MS = 15_000;
+
+    /* =========================
+       POLITENESS
+       ========================= */
+    // Applies across all crawls running on this node
+    private static final int PER_HOST_MAX_IN_FLIGHT = 4;
+    private static final long PER_HOST_MIN_DELAY_MS = 200;
+
+    // Idle hosts are dropped once the table outgrows this (and then twice its live size)
+    private static final int THROTTLE_SWEEP_MIN_HOSTS = 256;
+
+    /* =========================
+       CACHE LIMITS
+       ========================= */
+    private static final long CACHE_MAX_BYTES = 64L * 1024 * 1024;
+    private static final long CACHE_MAX_ENTRY_BYTES = 4L * 1024 * 1024;
+    private static final long CACHE_TTL_MS = TimeUnit.MINUTES.toMillis(10);
+
+    private final Map<String, HostThrottle> hostThrottles = new ConcurrentHashMap<>();
+    private final AtomicInteger throttleSweepAt = new AtomicInteger(THROTTLE_SWEEP_MIN_HOSTS);
+    private final PageCache cache = new PageCache(CACHE_MAX_BYTES, CACHE_MAX_ENTRY_BYTES, CACHE_TTL_MS);
+
+    /**
+     * Opens a request-scoped session. Share it between crawling and
+     * extraction so each page is downloaded once.
+     */
+    public FetchSession openSession() {
+        return new FetchSession(this);
+    }
+
+    /**
+     * Loads a page from the cache or the network.
+     * NEVER throws — failures are reported on the returned page.
+     */
+    FetchedPage load(String url) {
+
+        if (url == null || url.isBlank()) {
+            return FetchedPage.failure(url, "Empty URL");
+        }
+
+        FetchedPage cached = cache.get(url);
+        if (cached != null) {
+            return cached.detached();
+        }
+
+        // Registered as a user inside compute, so a sweep cannot drop it under us
+        HostThrottle throttle = hostThrottles.compute(hostOf(url), (h, existing) -> {
+            HostThrottle t = existing != null
+                    ? existing
+                    : new HostThrottle(PER_HOST_MAX_IN_FLIGHT, PER_HOST_MIN_DELAY_MS);
+            t.users.incrementAndGet();
+            return t;
+        });
+
+        if (hostThrottles.size() > throttleSweepAt.get()) {
+            sweepIdleThrottles();
+        }
+
+        try {
+            throttle.acquire();
+        } catch (InterruptedException e) {
+            throttle.users.decrementAndGet();
+            Thread.currentThread().interrupt();
+            return FetchedPage.failure(url, "Interrupted");
+        }
+
+        try {
+            Connection.Response response = Jsoup.connect(url)
+                    .userAgent(USER_AGENT)
+                    .timeout(TIMEOUT_MS)
+                    .ignoreHttpErrors(true)
+                    .execute();
+
+            FetchedPage page = FetchedPage.success(
+                    url,
+                    response.url().toExternalForm(),
+                    response.statusCode(),
+                    response.charset(),
+                    response.bodyAsBytes()
+            );
+
+            cache.put(url, page.detached());
+            return page;
+
+        } catch (Exception e) {
+            return FetchedPage.failure(url, e.getMessage());
+        } finally {
+            throttle.release();
+            throttle.users.decrementAndGet();
+        }
+    }
+
+    /* ============================================================
+       HELPERS
+       ============================================================ */
+
+    /**
+     * Drops throttles nobody holds or waits on whose delay has run out:
+     * a fresh one behaves the same, so politeness is unaffected.
+     */
+    private void sweepIdleThrottles() {
+
+        long now = System.nanoTime();
+        for (String host : hostThrottles.keySet()) {
+            hostThrottles.computeIfPresent(host, (h, t) -> t.isIdle(now) ? null : t);
+        }
+
+        throttleSweepAt.set(Math.max(THROTTLE_SWEEP_MIN_HOSTS, hostThrottles.size() * 2));
+    }
+
+    int throttledHosts() {
+        return hostThrottles.size();
+    }
+
+    private String hostOf(String url) {
+        try {
+            String host = new URI(url).getHost();
+            return host != null ? host.toLowerCase() : "";
+        } catch (Exception e) {
+            return "";
+        }
+    }
+
+    /* ============================================================
+       INTERNAL MODEL
+       ============================================================ */
+
+    /**
+     * Per-host politeness: caps concurrent requests and spaces
+     * request starts at least {@code minDelayMs} apart.
+     */
+    private static class HostThrottle {
+        private final Semaphore permits;
+        private final long minDelayNanos;
+        private long nextSlotNanos = System.nanoTime();
+
+        // Loads holding or waiting for a permit; incremented only inside a map compute
+        final AtomicInteger users = new AtomicInteger();
+
+        HostThrottle(int maxInFlight, long minDelayMs) {
+            this.permits = new Semaphore(maxInFlight, true);
+            this.minDelayNanos = TimeUnit.MILLISECONDS.toNanos(minDelayMs);
+        }
+
+        void acquire() throws InterruptedException {
+            permits.acquire();
+
+            long waitNanos;
+            synchronized (this) {
+                long now = System.nanoTime();
+                long slot = Math.max(now, nextSlotNanos);
+                nextSlotNanos = slot + minDelayNanos;
+                waitNanos = slot - now;
+            }
+
+            if (waitNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(waitNanos);
+                } catch (InterruptedException e) {
+                    permits.release();
+                    throw e;
+                }
+            }
+        }
+
+        void release() {
+            permits.release();
+        }
+
+        synchronized boolean isIdle(long now) {
+            return users.get() == 0 && nextSlotNanos - now <= 0;
+        }
+    }
+}
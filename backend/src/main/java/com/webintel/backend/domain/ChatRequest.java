@@ -4,6 +4,12 @@ public class ChatRequest {
 
     private String question;
 
+    // Preview result to ask about — also its vector namespace
+    private String resultId;
+
+    // Optional: turns with the same id continue one conversation; without one each turn stands alone
+    private String conversationId;
+
     public String getQuestion() {
         return question;
     }
@@ -11,4 +17,20 @@ public class ChatRequest {
     public void setQuestion(String question) {
         this.question = question;
     }
+
+    public String getResultId() {
+        return resultId;
+    }
+
+    public void setResultId(String resultId) {
+        this.resultId = resultId;
+    }
+
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(String conversationId) {
+        this.conversationId = conversationId;
+    }
 }
@@ -0,0 +1,90 @@
+package com.webintel.backend.domain;
+
+/**
+ * Snapshot of an asynchronous crawl job for polling clients.
+ */
+public class CrawlJobStatus {
+
+    private String jobId;
+
+    // QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED
+    private String state;
+
+    private int pagesExtracted;
+    private boolean summaryReady;
+    private String error;
+
+    private String createdAt;
+    private String finishedAt;
+
+    // Present once the job has completed
+    private CrawlResult result;
+
+    /* =========================
+       GETTERS & SETTERS
+       ========================= */
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public void setJobId(String jobId) {
+        this.jobId = jobId;
+    }
+
+    public String getState() {
+        return state;
+    }
+
+    public void setState(String state) {
+        this.state = state;
+    }
+
+    public int getPagesExtracted() {
+        return pagesExtracted;
+    }
+
+    public void setPagesExtracted(int pagesExtracted) {
+        this.pagesExtracted = pagesExtracted;
+    }
+
+    public boolean isSummaryReady() {
+        return summaryReady;
+    }
+
+    public void setSummaryReady(boolean summaryReady) {
+        this.summaryReady = summaryReady;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+
+    public String getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(String createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    public String getFinishedAt() {
+        return finishedAt;
+    }
+
+    public void setFinishedAt(String finishedAt) {
+        this.finishedAt = finishedAt;
+    }
+
+    public CrawlResult getResult() {
+        return result;
+    }
+
+    public void setResult(CrawlResult result) {
+        this.result = result;
+    }
+}
@@ -21,6 +21,9 @@ public class CrawlRequest {
     // 🧠 Optional: whether AI refinement is enabled
     private boolean useAi = true;
 
+    // ♻️ Optional: id of a stored preview result (exports render it directly)
+    private String resultId;
+
     /* =========================
        GETTERS & SETTERS
        ========================= */
@@ -65,6 +68,14 @@ public class CrawlRequest {
         this.useAi = useAi;
     }
 
+    public String getResultId() {
+        return resultId;
+    }
+
+    public void setResultId(String resultId) {
+        this.resultId = resultId;
+    }
+
     /* =========================
        VALIDATION HELPERS
        ========================= */
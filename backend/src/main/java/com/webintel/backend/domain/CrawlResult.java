@@ -13,6 +13,13 @@ public class CrawlResult {
        CORE DATA
        ========================= */
 
+    // Id for later exports (see SessionStore)
+    private String resultId;
+
+    // Request this result answers; exports only reuse it for the same one
+    private String targetUrl;
+    private String userPrompt;
+
     // Extracted pages
     private List<PageResult> pages;
 
@@ -42,6 +49,30 @@ public class CrawlResult {
        GETTERS & SETTERS
        ========================= */
 
+    public String getResultId() {
+        return resultId;
+    }
+
+    public void setResultId(String resultId) {
+        this.resultId = resultId;
+    }
+
+    public String getTargetUrl() {
+        return targetUrl;
+    }
+
+    public void setTargetUrl(String targetUrl) {
+        this.targetUrl = targetUrl;
+    }
+
+    public String getUserPrompt() {
+        return userPrompt;
+    }
+
+    public void setUserPrompt(String userPrompt) {
+        this.userPrompt = userPrompt;
+    }
+
     public List<PageResult> getPages() {
         return pages;
     }
@@ -1,17 +1,87 @@
 package com.webintel.backend.domain;
 
-import java.util.concurrent.ConcurrentHashMap;
+import org.springframework.stereotype.Component;
 
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Keeps recent crawl results so exports can render them by id
+ * instead of crawling again.
+ *
+ * Guarantees:
+ * - Entries expire after a fixed TTL
+ * - Total estimated heap use stays under a byte budget (LRU eviction)
+ */
+@Component
 public class SessionStore {
 
-    private static final ConcurrentHashMap<String, CrawlResult> STORE =
-            new ConcurrentHashMap<>();
+    /* =========================
+       LIMITS
+       ========================= */
+    private static final Duration TTL = Duration.ofMinutes(30);
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+
+    // Rough per-object overhead for String / list bookkeeping
+    private static final int OBJECT_OVERHEAD = 40;
+
+    private final TtlStore<String, CrawlResult> store = new TtlStore<>(TTL, MAX_BYTES, SessionStore::estimateBytes);
+
+    public void save(String sessionId, CrawlResult result) {
+        store.put(sessionId, result);
+    }
+
+    /**
+     * Returns the stored result, or null if unknown or expired.
+     */
+    public CrawlResult get(String sessionId) {
+        return store.get(sessionId);
+    }
+
+    public int size() {
+        return store.size();
+    }
+
+    public long totalBytes() {
+        return store.totalBytes();
+    }
+
+    /* =========================
+       SIZE ESTIMATE
+       ========================= */
+
+    private static long estimateBytes(CrawlResult result) {
+
+        long bytes = OBJECT_OVERHEAD + sizeOf(result.getSummary()) + sizeOf(result.getInterpretedIntent())
+                + sizeOf(result.getTargetUrl()) + sizeOf(result.getUserPrompt());
+
+        if (result.getPages() == null) {
+            return bytes;
+        }
+
+        for (PageResult page : result.getPages()) {
+            if (page == null) continue;
+            bytes += OBJECT_OVERHEAD * 2;
+            bytes += sizeOf(page.getPageUrl()) + sizeOf(page.getError()) + sizeOf(page.getTruncationReason());
+            bytes += sizeOf(page.getHeadings());
+            bytes += sizeOf(page.getParagraphs());
+            bytes += sizeOf(page.getImages());
+            bytes += sizeOf(page.getLinks());
+        }
+
+        return bytes;
+    }
 
-    public static void save(String sessionId, CrawlResult result) {
-        STORE.put(sessionId, result);
+    private static long sizeOf(List<String> values) {
+        if (values == null) return 0;
+        long bytes = OBJECT_OVERHEAD;
+        for (String v : values) {
+            bytes += sizeOf(v);
+        }
+        return bytes;
     }
 
-    public static CrawlResult get(String sessionId) {
-        return STORE.get(sessionId);
+    private static long sizeOf(String value) {
+        return value == null ? 0 : OBJECT_OVERHEAD + 2L * value.length();
     }
 }
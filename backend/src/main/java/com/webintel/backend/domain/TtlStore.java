@@ -0,0 +1,137 @@
+package com.webintel.backend.domain;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Thread-safe key/value store bounded by age and by estimated bytes.
+ * Backs the session, conversation and page caches, which only differ in
+ * their limits and in how an entry's size is estimated.
+ *
+ * Guarantees:
+ * - Entries expire a fixed TTL after they were stored
+ * - Total estimated bytes stay under a budget (LRU eviction)
+ * - An entry over the whole budget is never stored, so one oversized
+ *   value cannot evict everything else
+ */
+public class TtlStore<K, V> {
+
+    private final long ttlMillis;
+    private final long maxBytes;
+    private final ToLongFunction<V> sizer;
+
+    // Access-ordered: iteration starts at the least recently used entry
+    private final LinkedHashMap<K, Entry<V>> store = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+
+    /**
+     * @param sizer estimated bytes of a value
+     */
+    public TtlStore(Duration ttl, long maxBytes, ToLongFunction<V> sizer) {
+        this.ttlMillis = ttl.toMillis();
+        this.maxBytes = maxBytes;
+        this.sizer = sizer;
+    }
+
+    /**
+     * Stores the value, replacing any previous one. Returns false if it
+     * was not stored (null, or larger than the whole budget).
+     */
+    public synchronized boolean put(K key, V value) {
+
+        if (key == null || value == null) {
+            return false;
+        }
+
+        long bytes = sizer.applyAsLong(value);
+        if (bytes > maxBytes) {
+            return false;
+        }
+
+        Entry<V> previous = store.put(key, new Entry<>(value, bytes, System.currentTimeMillis()));
+        if (previous != null) {
+            totalBytes -= previous.bytes;
+        }
+        totalBytes += bytes;
+
+        evict();
+        return true;
+    }
+
+    /**
+     * Returns the value, or null if unknown or expired.
+     */
+    public synchronized V get(K key) {
+
+        if (key == null) {
+            return null;
+        }
+
+        Entry<V> entry = store.get(key);
+        if (entry == null) {
+            return null;
+        }
+
+        if (isExpired(entry, System.currentTimeMillis())) {
+            store.remove(key);
+            totalBytes -= entry.bytes;
+            return null;
+        }
+
+        return entry.value;
+    }
+
+    public synchronized void remove(K key) {
+        Entry<V> entry = key == null ? null : store.remove(key);
+        if (entry != null) {
+            totalBytes -= entry.bytes;
+        }
+    }
+
+    public synchronized int size() {
+        return store.size();
+    }
+
+    public synchronized long totalBytes() {
+        return totalBytes;
+    }
+
+    /* =========================
+       INTERNAL
+       ========================= */
+
+    private void evict() {
+
+        long now = System.currentTimeMillis();
+        Iterator<Map.Entry<K, Entry<V>>> it = store.entrySet().iterator();
+
+        // Oldest-accessed first: drop expired entries and anything over budget
+        while (it.hasNext()) {
+            Entry<V> entry = it.next().getValue();
+            if (totalBytes <= maxBytes && !isExpired(entry, now)) {
+                continue;
+            }
+            it.remove();
+            totalBytes -= entry.bytes;
+        }
+    }
+
+    private boolean isExpired(Entry<V> entry, long now) {
+        return now - entry.storedAt > ttlMillis;
+    }
+
+    private static class Entry<V> {
+        final V value;
+        final long bytes;
+        final long storedAt;
+
+        Entry(V value, long bytes, long storedAt) {
+            this.value = value;
+            this.bytes = bytes;
+            this.storedAt = storedAt;
+        }
+    }
+}
@@ -1,8 +1,10 @@
 package com.webintel.backend.extractor;
 
+import com.webintel.backend.crawler.FetchSession;
+import com.webintel.backend.crawler.FetchedPage;
+import com.webintel.backend.crawler.PageFetcher;
 import com.webintel.backend.domain.CrawlIntent;
 import com.webintel.backend.domain.PageResult;
-import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
@@ -22,11 +24,25 @@ public class ContentExtractor {
     private static final int MAX_IMAGES = 60;
     private static final int MAX_LINKS = 150;
 
+    private final PageFetcher fetcher;
+
+    public ContentExtractor(PageFetcher fetcher) {
+        this.fetcher = fetcher;
+    }
+
     /**
      * Extracts content from a single page.
      * Hard-limited and UI-safe for large websites.
      */
     public PageResult extract(String url, CrawlIntent intent) {
+        return extract(url, intent, fetcher.openSession());
+    }
+
+    /**
+     * Extracts content from a single page, reusing any download
+     * already made by the crawler within the same session.
+     */
+    public PageResult extract(String url, CrawlIntent intent, FetchSession session) {
 
         PageResult result = new PageResult();
         result.setPageUrl(url);
@@ -35,10 +51,14 @@ public class ContentExtractor {
         List<String> truncationReasons = new ArrayList<>();
 
         try {
-            Document doc = Jsoup.connect(url)
-                    .userAgent("Mozilla/5.0 (WebIntelBot)")
-                    .timeout(15_000)
-                    .get();
+            FetchedPage page = session.fetch(url);
+
+            if (!page.isOk()) {
+                result.setError("Failed to extract page: " + page.getFailure());
+                return result;
+            }
+
+            Document doc = page.getDocument();
 
             /* =========================
                HEADINGS
@@ -3,51 +3,78 @@ package com.webintel.backend.packaging;
 import com.webintel.backend.domain.CrawlResult;
 import com.webintel.backend.domain.PageResult;
 
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 /**
  * Converts CrawlResult into a production-grade,
  * Excel / Sheets / BI-friendly CSV format.
+ *
+ * Streams rows straight to the output — memory use does not grow
+ * with export size.
  */
 public class CsvWriter {
 
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String HEADER =
+            "Page Index," +
+                    "Page URL," +
+                    "Content Type," +
+                    "Content Index," +
+                    "Content," +
+                    "Page Items Total," +
+                    "Truncated," +
+                    "Truncation Reason," +
+                    "Error\n";
+
     /**
      * Converts CrawlResult into a safe, structured CSV.
+     * Prefer {@link #write(CrawlResult, OutputStream)} for HTTP responses.
      */
     public static String toCsv(CrawlResult result) {
+        StringWriter out = new StringWriter();
+        try {
+            write(result, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // StringWriter never throws
+        }
+        return out.toString();
+    }
 
-        StringBuilder csv = new StringBuilder();
+    /**
+     * Streams the CSV as UTF-8. Flushes but does not close the stream.
+     */
+    public static void write(CrawlResult result, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        write(result, writer);
+        writer.flush();
+    }
+
+    private static void write(CrawlResult result, Writer csv) throws IOException {
 
         // ✅ UTF-8 BOM (prevents Excel encoding issues)
-        csv.append("\uFEFF");
+        csv.write('\uFEFF');
 
         /* =========================
            AI SUMMARY (HUMAN SECTION)
            ========================= */
         if (result.getSummary() != null && !result.getSummary().isBlank()) {
-            csv.append("AI SUMMARY\n");
-            csv.append(escape(result.getSummary())).append("\n\n");
+            csv.write("AI SUMMARY\n");
+            writeEscaped(csv, result.getSummary());
+            csv.write("\n\n");
         }
 
         /* =========================
            TABLE HEADER
            ========================= */
-        csv.append(
-                "Page Index," +
-                        "Page URL," +
-                        "Content Type," +
-                        "Content Index," +
-                        "Content," +
-                        "Page Items Total," +
-                        "Truncated," +
-                        "Truncation Reason," +
-                        "Error\n"
-        );
+        csv.write(HEADER);
 
         List<PageResult> pages = result.getPages();
 
         if (pages == null || pages.isEmpty()) {
-            return csv.toString();
+            return;
         }
 
         int pageIndex = 0;
@@ -56,129 +83,92 @@ public class CsvWriter {
 
             pageIndex++;
 
-            int contentIndex;
+            // Cells shared by every row of this page — encoded once
+            String prefix = pageIndex + "," + escape(page.getPageUrl()) + ",";
+            String suffix = "," + page.getTotalItems()
+                    + "," + page.isTruncated()
+                    + "," + escape(page.getTruncationReason())
+                    + "," + escape(page.getError())
+                    + "\n";
 
-            /* =========================
-               HEADINGS
-               ========================= */
-            contentIndex = 0;
-            if (page.getHeadings() != null) {
-                for (String h : page.getHeadings()) {
-                    contentIndex++;
-                    appendRow(
-                            csv,
-                            pageIndex,
-                            page.getPageUrl(),
-                            "Heading",
-                            contentIndex,
-                            h,
-                            page
-                    );
-                }
-            }
-
-            /* =========================
-               PARAGRAPHS
-               ========================= */
-            contentIndex = 0;
-            if (page.getParagraphs() != null) {
-                for (String p : page.getParagraphs()) {
-                    contentIndex++;
-                    appendRow(
-                            csv,
-                            pageIndex,
-                            page.getPageUrl(),
-                            "Paragraph",
-                            contentIndex,
-                            p,
-                            page
-                    );
-                }
-            }
-
-            /* =========================
-               LINKS
-               ========================= */
-            contentIndex = 0;
-            if (page.getLinks() != null) {
-                for (String l : page.getLinks()) {
-                    contentIndex++;
-                    appendRow(
-                            csv,
-                            pageIndex,
-                            page.getPageUrl(),
-                            "Link",
-                            contentIndex,
-                            l,
-                            page
-                    );
-                }
-            }
-
-            /* =========================
-               IMAGES
-               ========================= */
-            contentIndex = 0;
-            if (page.getImages() != null) {
-                for (String img : page.getImages()) {
-                    contentIndex++;
-                    appendRow(
-                            csv,
-                            pageIndex,
-                            page.getPageUrl(),
-                            "Image",
-                            contentIndex,
-                            img,
-                            page
-                    );
-                }
-            }
+            writeRows(csv, prefix, "Heading", page.getHeadings(), suffix);
+            writeRows(csv, prefix, "Paragraph", page.getParagraphs(), suffix);
+            writeRows(csv, prefix, "Link", page.getLinks(), suffix);
+            writeRows(csv, prefix, "Image", page.getImages(), suffix);
 
             /* =========================
                ERROR ROW (IF ANY)
                ========================= */
             if (page.getError() != null && !page.getError().isBlank()) {
-                appendRow(
-                        csv,
-                        pageIndex,
-                        page.getPageUrl(),
-                        "ERROR",
-                        0,
-                        page.getError(),
-                        page
-                );
+                writeRow(csv, prefix, "ERROR", 0, page.getError(), suffix);
             }
         }
-
-        return csv.toString();
     }
 
     /* ============================================================
        HELPERS
        ============================================================ */
 
-    private static void appendRow(
-            StringBuilder csv,
-            int pageIndex,
-            String pageUrl,
+    private static void writeRows(
+            Writer csv,
+            String prefix,
+            String type,
+            List<String> values,
+            String suffix
+    ) throws IOException {
+
+        if (values == null) {
+            return;
+        }
+
+        int contentIndex = 0;
+        for (String value : values) {
+            writeRow(csv, prefix, type, ++contentIndex, value, suffix);
+        }
+    }
+
+    private static void writeRow(
+            Writer csv,
+            String prefix,
             String type,
             int contentIndex,
             String content,
-            PageResult page
-    ) {
-        csv.append(pageIndex).append(",");
-        csv.append(escape(pageUrl)).append(",");
-        csv.append(type).append(",");
-        csv.append(contentIndex).append(",");
-        csv.append(escape(content)).append(",");
-        csv.append(page.getTotalItems()).append(",");
-        csv.append(page.isTruncated()).append(",");
-        csv.append(escape(page.getTruncationReason())).append(",");
-        csv.append(escape(page.getError())).append("\n");
+            String suffix
+    ) throws IOException {
+        csv.write(prefix);
+        csv.write(type);
+        csv.write(',');
+        csv.write(Integer.toString(contentIndex));
+        csv.write(',');
+        writeEscaped(csv, content);
+        csv.write(suffix);
+    }
+
+    /**
+     * Writes a quoted CSV value without building an intermediate String.
+     */
+    private static void writeEscaped(Writer csv, String value) throws IOException {
+
+        csv.write('"');
+
+        if (value != null) {
+            int start = 0;
+            int quote;
+
+            while ((quote = value.indexOf('"', start)) >= 0) {
+                csv.write(value, start, quote - start + 1);
+                csv.write('"'); // double the quote
+                start = quote + 1;
+            }
+
+            csv.write(value, start, value.length() - start);
+        }
+
+        csv.write('"');
     }
 
     /**
-     * Escapes CSV values safely.
+     * Escapes CSV values safely (used for per-page constant cells).
      */
     private static String escape(String value) {
         if (value == null) return "\"\"";
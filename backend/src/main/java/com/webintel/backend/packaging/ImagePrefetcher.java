@@ -0,0 +1,436 @@
+package com.webintel.backend.packaging;
+
+import com.webintel.backend.domain.CrawlResult;
+import com.webintel.backend.domain.PageResult;
+import org.jsoup.Connection;
+import org.jsoup.Jsoup;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Prepares report images before the PDF is rendered.
+ *
+ * Guarantees:
+ * - All images of a report are fetched concurrently (bounded pool)
+ * - Each download is capped in bytes and time
+ * - Dimensions are read from the header before decoding: images over
+ *   MAX_SOURCE_PIXELS are left out, large ones are decoded subsampled
+ * - Images are downscaled once to the PDF display box
+ * - Prepared images are cached on disk by URL hash for later reports
+ * - Failures just leave the image out — never crashes the export
+ */
+@Component
+public class ImagePrefetcher implements AutoCloseable {
+
+    /* =========================
+       CONFIGURATION
+       ========================= */
+
+    // Display box used by PdfWriterUtil
+    static final int MAX_WIDTH = 400;
+    static final int MAX_HEIGHT = 300;
+
+    private static final int FETCH_THREADS = 8;
+    private static final int MAX_IMAGE_BYTES = 5 * 1024 * 1024;
+    private static final int FETCH_TIMEOUT_MS = 10_000;
+
+    // A few KB of PNG can declare gigapixels; decoded ARGB is 4 bytes per pixel
+    static final long MAX_SOURCE_PIXELS = 40_000_000L;
+
+    // Whole report waits at most this long — slow images are dropped
+    private static final long PREFETCH_DEADLINE_MS = 20_000;
+
+    private static final float JPEG_QUALITY = 0.85f;
+
+    private static final String USER_AGENT = "Mozilla/5.0 (WebIntelBot/1.0)";
+
+    /* =========================
+       DISK CACHE
+       ========================= */
+
+    private static final String DEFAULT_CACHE_DIR = "${user.home}/.webintel/image-cache";
+
+    private static final long CACHE_MAX_BYTES = 256L * 1024 * 1024;
+
+    // Trim the cache directory every N writes
+    private static final int TRIM_EVERY_WRITES = 64;
+
+    private final ExecutorService pool =
+            Executors.newFixedThreadPool(FETCH_THREADS, new ImageThreadFactory());
+
+    private final AtomicInteger writesSinceTrim = new AtomicInteger();
+
+    // Null: no disk cache
+    private final Path cacheDir;
+
+    /**
+     * @param cacheDir where prepared images are cached; null or blank disables the cache
+     */
+    public ImagePrefetcher(@Value("${export.image.cache.dir:" + DEFAULT_CACHE_DIR + "}") String cacheDir) {
+        Path dir = null;
+        if (cacheDir != null && !cacheDir.isBlank()) {
+            try {
+                dir = Files.createDirectories(Path.of(cacheDir.trim()));
+            } catch (Exception e) {
+                dir = null; // run without disk cache
+            }
+        }
+        this.cacheDir = dir;
+    }
+
+    /* ============================================================
+       PUBLIC API
+       ============================================================ */
+
+    /**
+     * Fetches and downscales every image referenced by the result.
+     * Returns URL → encoded image bytes; missing entries failed or timed out.
+     */
+    public Map<String, byte[]> prefetch(CrawlResult result) {
+
+        // Same logo on every page is fetched once
+        Set<String> urls = new LinkedHashSet<>();
+        if (result != null && result.getPages() != null) {
+            for (PageResult page : result.getPages()) {
+                if (page.getImages() != null) {
+                    urls.addAll(page.getImages());
+                }
+            }
+        }
+
+        if (urls.isEmpty()) {
+            return Map.of();
+        }
+
+        Map<String, Future<byte[]>> futures = new LinkedHashMap<>();
+        for (String url : urls) {
+            if (url == null || url.isBlank()) continue;
+            try {
+                futures.put(url, pool.submit(() -> load(url)));
+            } catch (RejectedExecutionException e) {
+                break; // shutting down
+            }
+        }
+
+        Map<String, byte[]> images = new HashMap<>();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(PREFETCH_DEADLINE_MS);
+
+        for (Map.Entry<String, Future<byte[]>> entry : futures.entrySet()) {
+            try {
+                long remaining = Math.max(0, deadline - System.nanoTime());
+                byte[] bytes = entry.getValue().get(remaining, TimeUnit.NANOSECONDS);
+                if (bytes != null) {
+                    images.put(entry.getKey(), bytes);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception ignored) {
+                // timed out or failed — left out of the report
+            }
+        }
+
+        // Stop whatever did not make the deadline
+        for (Future<byte[]> future : futures.values()) {
+            future.cancel(true);
+        }
+
+        return images;
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    /* ============================================================
+       LOAD
+       ============================================================ */
+
+    private byte[] load(String url) {
+
+        Path cached = cachePath(url);
+        if (cached != null) {
+            try {
+                return Files.readAllBytes(cached);
+            } catch (NoSuchFileException ignored) {
+                // not cached yet
+            } catch (Exception ignored) {
+                // unreadable — fetch again
+            }
+        }
+
+        byte[] raw = download(url);
+        if (raw == null) {
+            return null;
+        }
+
+        byte[] prepared = downscale(raw);
+        if (prepared == null) {
+            return null;
+        }
+
+        store(cached, prepared);
+        return prepared;
+    }
+
+    private byte[] download(String url) {
+        try {
+            Connection.Response response = Jsoup.connect(url)
+                    .userAgent(USER_AGENT)
+                    .timeout(FETCH_TIMEOUT_MS)
+                    .ignoreContentType(true)
+                    .ignoreHttpErrors(true)
+                    // Read one byte past the cap so oversized images are detectable
+                    .maxBodySize(MAX_IMAGE_BYTES + 1)
+                    .execute();
+
+            if (response.statusCode() >= 400) {
+                return null;
+            }
+
+            byte[] bytes = response.bodyAsBytes();
+            if (bytes.length == 0 || bytes.length > MAX_IMAGE_BYTES) {
+                return null;
+            }
+
+            return bytes;
+
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Scales the image to fit the display box and re-encodes it.
+     * Formats ImageIO cannot decode are passed through untouched;
+     * images over MAX_SOURCE_PIXELS give null (left out of the report).
+     */
+    static byte[] downscale(byte[] raw) {
+
+        try {
+            BufferedImage source;
+            try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(raw))) {
+                Iterator<ImageReader> readers = input == null ? null : ImageIO.getImageReaders(input);
+                if (readers == null || !readers.hasNext()) {
+                    return raw;
+                }
+
+                ImageReader reader = readers.next();
+                try {
+                    reader.setInput(input, true, true);
+                    source = decodeBounded(reader);
+                } finally {
+                    reader.dispose();
+                }
+            }
+
+            if (source == null) {
+                return null; // too many pixels to decode safely
+            }
+
+            int width = source.getWidth();
+            int height = source.getHeight();
+            double scale = Math.min(1.0, Math.min((double) MAX_WIDTH / width, (double) MAX_HEIGHT / height));
+
+            boolean alpha = source.getColorModel().hasAlpha();
+
+            // Small opaque JPEGs are already as compact as they get
+            if (scale >= 1.0 && !alpha && isJpeg(raw)) {
+                return raw;
+            }
+
+            int targetWidth = Math.max(1, (int) Math.round(width * scale));
+            int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+            BufferedImage target = new BufferedImage(
+                    targetWidth,
+                    targetHeight,
+                    alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB
+            );
+
+            Graphics2D g = target.createGraphics();
+            try {
+                g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                g.drawImage(source, 0, 0, targetWidth, targetHeight, null);
+            } finally {
+                g.dispose();
+            }
+
+            byte[] encoded = alpha ? encodePng(target) : encodeJpeg(target);
+
+            // Never make an image bigger than it was
+            return encoded.length < raw.length ? encoded : raw;
+
+        } catch (Exception e) {
+            return raw;
+        }
+    }
+
+    /**
+     * Decodes only after checking the declared size: null above
+     * MAX_SOURCE_PIXELS, and images far larger than the display box are
+     * read subsampled, so the decoded raster stays near twice its size.
+     */
+    private static BufferedImage decodeBounded(ImageReader reader) throws IOException {
+
+        int width = reader.getWidth(0);
+        int height = reader.getHeight(0);
+
+        if (width <= 0 || height <= 0 || (long) width * height > MAX_SOURCE_PIXELS) {
+            return null;
+        }
+
+        int step = Math.max(1, Math.min(width / (MAX_WIDTH * 2), height / (MAX_HEIGHT * 2)));
+
+        ImageReadParam param = reader.getDefaultReadParam();
+        if (step > 1) {
+            param.setSourceSubsampling(step, step, 0, 0);
+        }
+        return reader.read(0, param);
+    }
+
+    private static byte[] encodeJpeg(BufferedImage image) throws IOException {
+
+        ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(JPEG_QUALITY);
+
+            writer.setOutput(stream);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+
+        return out.toByteArray();
+    }
+
+    private static byte[] encodePng(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    private static boolean isJpeg(byte[] bytes) {
+        return bytes.length > 2 && (bytes[0] & 0xFF) == 0xFF && (bytes[1] & 0xFF) == 0xD8;
+    }
+
+    /* ============================================================
+       DISK CACHE
+       ============================================================ */
+
+    private Path cachePath(String url) {
+
+        if (cacheDir == null) {
+            return null;
+        }
+
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(url.getBytes(StandardCharsets.UTF_8));
+            return cacheDir.resolve(HexFormat.of().formatHex(hash) + ".img");
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    private void store(Path path, byte[] bytes) {
+
+        if (path == null) {
+            return;
+        }
+
+        try {
+            // Write-then-rename so readers never see a partial file
+            Path tmp = Files.createTempFile(cacheDir, "img", ".tmp");
+            Files.write(tmp, bytes);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (Exception ignored) {
+            // cache is best-effort
+        }
+
+        if (writesSinceTrim.incrementAndGet() >= TRIM_EVERY_WRITES) {
+            writesSinceTrim.set(0);
+            trim();
+        }
+    }
+
+    /**
+     * Deletes least recently written files until the cache fits its budget.
+     */
+    private synchronized void trim() {
+
+        try (DirectoryStream<Path> dir = Files.newDirectoryStream(cacheDir, "*.img")) {
+
+            List<Path> files = new ArrayList<>();
+            long total = 0;
+
+            for (Path file : dir) {
+                files.add(file);
+                total += Files.size(file);
+            }
+
+            if (total <= CACHE_MAX_BYTES) {
+                return;
+            }
+
+            files.sort(Comparator.comparingLong(ImagePrefetcher::lastModified));
+
+            for (Path file : files) {
+                if (total <= CACHE_MAX_BYTES) break;
+                long size = Files.size(file);
+                if (Files.deleteIfExists(file)) {
+                    total -= size;
+                }
+            }
+
+        } catch (Exception ignored) {
+            // cache is best-effort
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static class ImageThreadFactory implements ThreadFactory {
+        private static final AtomicInteger COUNTER = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "pdf-image-" + COUNTER.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
@@ -9,26 +9,77 @@ import com.webintel.backend.domain.CrawlResult;
 import com.webintel.backend.domain.PageResult;
 
 import java.awt.*;
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URL;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Advanced PDF generator using OpenPDF.
  * - Structured tables
- * - Embedded images
+ * - Embedded images (prefetched and downscaled by {@link ImagePrefetcher})
+ * - Streams page by page — heap use does not grow with report size
  * - Exam & production ready
  */
 public class PdfWriterUtil {
 
+    // Rows buffered in a table before they are laid out and released
+    private static final int TABLE_FLUSH_ROWS = 50;
+
+    private static final int STREAM_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Renders the report, downloading images one by one as they are placed.
+     * Prefer {@link #write(CrawlResult, Map, OutputStream)} with prefetched images.
+     */
     public static byte[] toPdf(CrawlResult result) {
+        return toPdf(result, null);
+    }
 
+    /**
+     * Renders the report into memory. Returns an empty array on failure.
+     */
+    public static byte[] toPdf(CrawlResult result, Map<String, byte[]> images) {
         try {
             ByteArrayOutputStream out = new ByteArrayOutputStream();
+            write(result, images, out);
+            return out.toByteArray();
+        } catch (Exception e) {
+            // Fail-safe: never crash backend
+            return new byte[0];
+        }
+    }
+
+    /**
+     * Streams the report: each finished PDF page is written to {@code out}
+     * while later pages are still being laid out. The stream is flushed but
+     * not closed.
+     *
+     * Uses already prepared image bytes (URL → bytes); images missing from
+     * the map are reported as unavailable. A null map falls back to
+     * downloading each image inline.
+     */
+    public static void write(
+            CrawlResult result,
+            Map<String, byte[]> images,
+            OutputStream out
+    ) throws IOException {
+
+        BufferedOutputStream buffered = new BufferedOutputStream(out, STREAM_BUFFER_SIZE);
+        Document document = new Document(PageSize.A4, 40, 40, 40, 40);
 
-            Document document = new Document(PageSize.A4, 40, 40, 40, 40);
-            PdfWriter.getInstance(document, out);
+        try {
+            PdfWriter writer = PdfWriter.getInstance(document, buffered);
+            writer.setCloseStream(false); // caller owns the response stream
             document.open();
 
+            // Decoded once per report — repeated images share one PDF object
+            Map<String, Image> decoded = new HashMap<>();
+
             /* =========================
                FONTS
                ========================= */
@@ -73,12 +124,7 @@ public class PdfWriterUtil {
                        ========================= */
                     if (page.getHeadings() != null && !page.getHeadings().isEmpty()) {
                         document.add(new Paragraph("Headings", sectionFont));
-
-                        PdfPTable table = createSingleColumnTable("Heading");
-                        for (String h : page.getHeadings()) {
-                            table.addCell(new Phrase(h, textFont));
-                        }
-                        document.add(table);
+                        addTable(document, "Heading", page.getHeadings(), textFont);
                         document.add(Chunk.NEWLINE);
                     }
 
@@ -87,12 +133,7 @@ public class PdfWriterUtil {
                        ========================= */
                     if (page.getParagraphs() != null && !page.getParagraphs().isEmpty()) {
                         document.add(new Paragraph("Paragraphs", sectionFont));
-
-                        PdfPTable table = createSingleColumnTable("Paragraph");
-                        for (String p : page.getParagraphs()) {
-                            table.addCell(new Phrase(p, textFont));
-                        }
-                        document.add(table);
+                        addTable(document, "Paragraph", page.getParagraphs(), textFont);
                         document.add(Chunk.NEWLINE);
                     }
 
@@ -101,12 +142,7 @@ public class PdfWriterUtil {
                        ========================= */
                     if (page.getLinks() != null && !page.getLinks().isEmpty()) {
                         document.add(new Paragraph("Links", sectionFont));
-
-                        PdfPTable table = createSingleColumnTable("URL");
-                        for (String l : page.getLinks()) {
-                            table.addCell(new Phrase(l, smallFont));
-                        }
-                        document.add(table);
+                        addTable(document, "URL", page.getLinks(), smallFont);
                         document.add(Chunk.NEWLINE);
                     }
 
@@ -119,7 +155,7 @@ public class PdfWriterUtil {
 
                         for (String imgUrl : page.getImages()) {
                             try {
-                                Image img = Image.getInstance(new URL(imgUrl));
+                                Image img = loadImage(imgUrl, images, decoded);
                                 img.scaleToFit(400, 300);
                                 img.setAlignment(Image.ALIGN_CENTER);
                                 document.add(img);
@@ -137,17 +173,82 @@ public class PdfWriterUtil {
             }
 
             document.close();
-            return out.toByteArray();
+            buffered.flush();
 
-        } catch (Exception e) {
-            // Fail-safe: never crash backend
-            return new byte[0];
+        } catch (RuntimeException e) {
+            // DocumentException, or a stream failure (e.g. client gone) wrapped by OpenPDF
+            throw new IOException("PDF rendering failed", e);
+        } finally {
+            if (document.isOpen()) {
+                try {
+                    document.close();
+                } catch (Exception ignored) {
+                    // already failing — keep the original error
+                }
+            }
+        }
+    }
+
+    /* =========================
+       IMAGE HELPER
+       ========================= */
+    private static Image loadImage(
+            String imgUrl,
+            Map<String, byte[]> images,
+            Map<String, Image> decoded
+    ) throws Exception {
+
+        if (images == null) {
+            return Image.getInstance(new URL(imgUrl));
+        }
+
+        Image img = decoded.get(imgUrl);
+        if (img != null) {
+            return img;
         }
+
+        byte[] bytes = images.get(imgUrl);
+        if (bytes == null) {
+            throw new IllegalStateException("Image not prefetched: " + imgUrl);
+        }
+
+        img = Image.getInstance(bytes);
+        decoded.put(imgUrl, img);
+        return img;
     }
 
     /* =========================
-       TABLE HELPER
+       TABLE HELPERS
        ========================= */
+
+    /**
+     * Adds a single-column table in slices of {@link #TABLE_FLUSH_ROWS} rows
+     * (OpenPDF large-table mode), so completed rows are written out and
+     * released instead of accumulating until the table ends.
+     */
+    private static void addTable(
+            Document document,
+            String header,
+            List<String> values,
+            Font font
+    ) throws DocumentException {
+
+        PdfPTable table = createSingleColumnTable(header);
+        table.setComplete(false);
+
+        int pending = 0;
+        for (String value : values) {
+            table.addCell(new Phrase(value, font));
+            if (++pending == TABLE_FLUSH_ROWS) {
+                document.add(table);
+                pending = 0;
+            }
+        }
+
+        table.setComplete(true);
+        document.add(table);
+    }
+
     private static PdfPTable createSingleColumnTable(String header) {
         PdfPTable table = new PdfPTable(1);
         table.setWidthPercentage(100);
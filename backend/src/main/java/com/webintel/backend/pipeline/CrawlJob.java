@@ -0,0 +1,315 @@
+package com.webintel.backend.pipeline;
+
+import com.webintel.backend.domain.CrawlJobStatus;
+import com.webintel.backend.domain.CrawlResult;
+import com.webintel.backend.domain.PageResult;
+
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+/**
+ * One asynchronous preview run.
+ *
+ * Guarantees:
+ * - Events are kept (up to MAX_HISTORY_EVENTS), so late subscribers replay
+ *   the history; summary tokens are live-only — the summary event carries
+ *   the full text
+ * - Exactly one terminal event (done / failed / cancelled)
+ * - Publishing never waits for a subscriber: each one has a bounded queue
+ *   drained on the delivery executor. A subscriber that falls behind by
+ *   MAX_PENDING_EVENTS skips tokens, then is dropped (and told so)
+ * - A failing subscriber is dropped without affecting the job
+ */
+public class CrawlJob implements PreviewListener {
+
+    public enum State { QUEUED, RUNNING, COMPLETED, FAILED, CANCELLED }
+
+    /* =========================
+       LIMITS
+       ========================= */
+    private static final int MAX_HISTORY_EVENTS = 256;
+    private static final int MAX_PENDING_EVENTS = 512;
+
+    private final String id;
+    private final Instant createdAt = Instant.now();
+    private final Executor delivery;
+
+    private final List<JobEvent> events = new ArrayList<>();
+    private final List<Subscription> subscribers = new ArrayList<>();
+    private long sequence = 0;
+
+    private State state = State.QUEUED;
+    private Instant finishedAt;
+    private String error;
+    private int pagesExtracted;
+    private boolean summaryReady;
+    private CrawlResult result;
+
+    private volatile Future<?> future;
+
+    CrawlJob(String id, Executor delivery) {
+        this.id = id;
+        this.delivery = delivery;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    /* ============================================================
+       PIPELINE CALLBACKS
+       ============================================================ */
+
+    @Override
+    public void onIntent(String interpretedIntent) {
+        publish(JobEvent.INTENT, interpretedIntent);
+    }
+
+    @Override
+    public synchronized void onPage(PageResult page) {
+        pagesExtracted++;
+        publish(JobEvent.PAGE, page);
+    }
+
+    @Override
+    public void onSummaryToken(String token) {
+        publish(JobEvent.SUMMARY_TOKEN, token);
+    }
+
+    @Override
+    public synchronized void onSummary(String summary) {
+        summaryReady = true;
+        publish(JobEvent.SUMMARY, summary);
+    }
+
+    /* ============================================================
+       LIFECYCLE
+       ============================================================ */
+
+    synchronized void markRunning() {
+        if (state == State.QUEUED) {
+            state = State.RUNNING;
+        }
+    }
+
+    synchronized void complete(CrawlResult result) {
+        if (finish(State.COMPLETED)) {
+            this.result = result;
+            publish(JobEvent.DONE, result);
+        }
+    }
+
+    synchronized void fail(String message) {
+        if (finish(State.FAILED)) {
+            this.error = message;
+            publish(JobEvent.FAILED, message);
+        }
+    }
+
+    synchronized void cancel() {
+        if (finish(State.CANCELLED)) {
+            Future<?> f = future;
+            if (f != null) {
+                f.cancel(true);
+            }
+            publish(JobEvent.CANCELLED, "Job cancelled");
+        }
+    }
+
+    void attach(Future<?> future) {
+        this.future = future;
+    }
+
+    private boolean finish(State terminal) {
+        if (isFinished()) {
+            return false;
+        }
+        state = terminal;
+        finishedAt = Instant.now();
+        return true;
+    }
+
+    public synchronized boolean isFinished() {
+        return state == State.COMPLETED || state == State.FAILED || state == State.CANCELLED;
+    }
+
+    synchronized Instant getFinishedAt() {
+        return finishedAt;
+    }
+
+    /* ============================================================
+       EVENTS
+       ============================================================ */
+
+    /**
+     * Replays past events, then streams new ones until the terminal event.
+     * Events arrive in order on a delivery thread. {@code onDropped} runs
+     * if the subscriber fell too far behind and was dropped; it may
+     * subscribe again to replay the history.
+     */
+    public synchronized void subscribe(Consumer<JobEvent> subscriber, Runnable onDropped) {
+
+        Subscription subscription = new Subscription(subscriber, onDropped, delivery);
+
+        for (JobEvent event : events) {
+            if (!subscription.offer(event)) {
+                subscription.drop();
+                return;
+            }
+        }
+
+        if (!isFinished()) {
+            subscribers.add(subscription);
+        }
+    }
+
+    public synchronized void unsubscribe(Consumer<JobEvent> subscriber) {
+        Iterator<Subscription> it = subscribers.iterator();
+        while (it.hasNext()) {
+            Subscription subscription = it.next();
+            if (subscription.consumer == subscriber) {
+                subscription.close();
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Queues the event for every subscriber; never blocks on delivery.
+     */
+    private synchronized void publish(String name, Object data) {
+
+        JobEvent event = new JobEvent(sequence++, name, data);
+
+        // Tokens only make sense live; the summary event repeats them
+        if (!JobEvent.SUMMARY_TOKEN.equals(name) && events.size() < MAX_HISTORY_EVENTS) {
+            events.add(event);
+        }
+
+        Iterator<Subscription> it = subscribers.iterator();
+        while (it.hasNext()) {
+            Subscription subscription = it.next();
+            if (!subscription.offer(event)) {
+                it.remove();
+                subscription.drop();
+            }
+        }
+
+        if (event.isTerminal()) {
+            subscribers.clear();
+        }
+    }
+
+    /* ============================================================
+       STATUS
+       ============================================================ */
+
+    public synchronized CrawlJobStatus toStatus() {
+
+        CrawlJobStatus status = new CrawlJobStatus();
+        status.setJobId(id);
+        status.setState(state.name());
+        status.setPagesExtracted(pagesExtracted);
+        status.setSummaryReady(summaryReady);
+        status.setError(error);
+        status.setCreatedAt(createdAt.toString());
+        status.setFinishedAt(finishedAt != null ? finishedAt.toString() : null);
+        status.setResult(result);
+        return status;
+    }
+
+    /* ============================================================
+       INTERNAL MODEL
+       ============================================================ */
+
+    /**
+     * One subscriber's queue. At most one drain task runs per subscription,
+     * so events are delivered in order.
+     */
+    private static final class Subscription implements Runnable {
+
+        final Consumer<JobEvent> consumer;
+        private final Runnable onDropped;
+        private final Executor delivery;
+
+        private final ArrayDeque<JobEvent> pending = new ArrayDeque<>();
+        private boolean scheduled;
+        private boolean closed;
+
+        Subscription(Consumer<JobEvent> consumer, Runnable onDropped, Executor delivery) {
+            this.consumer = consumer;
+            this.onDropped = onDropped;
+            this.delivery = delivery;
+        }
+
+        /**
+         * Queues the event; false if the subscriber must be dropped.
+         */
+        synchronized boolean offer(JobEvent event) {
+
+            if (closed) {
+                return false;
+            }
+
+            if (pending.size() >= MAX_PENDING_EVENTS) {
+                // Too far behind: skip tokens, give up on anything else
+                return JobEvent.SUMMARY_TOKEN.equals(event.getName());
+            }
+
+            pending.add(event);
+
+            if (!scheduled) {
+                scheduled = true;
+                try {
+                    delivery.execute(this);
+                } catch (RejectedExecutionException e) {
+                    scheduled = false;
+                    return false; // shutting down
+                }
+            }
+            return true;
+        }
+
+        synchronized void close() {
+            closed = true;
+            pending.clear();
+        }
+
+        void drop() {
+            close();
+            try {
+                delivery.execute(onDropped);
+            } catch (RejectedExecutionException ignored) {
+                // shutting down
+            }
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                JobEvent event;
+                synchronized (this) {
+                    event = closed ? null : pending.poll();
+                    if (event == null) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+
+                try {
+                    consumer.accept(event);
+                } catch (Exception e) {
+                    // Client went away — drop it, keep the job running
+                    close();
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.webintel.backend.pipeline;
+
+import com.webintel.backend.domain.CrawlRequest;
+import com.webintel.backend.domain.CrawlResult;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs previews as background jobs so no servlet thread is held
+ * for the whole crawl, embedding and summary.
+ *
+ * Guarantees:
+ * - Bounded concurrency and a bounded wait queue (overflow is rejected)
+ * - Finished jobs are kept for a TTL, then evicted (checked periodically)
+ * - Events reach subscribers on their own delivery threads, so a slow
+ *   client never holds up a pipeline worker
+ */
+@Service
+public class CrawlJobService implements AutoCloseable {
+
+    /* =========================
+       LIMITS
+       ========================= */
+    private static final int MAX_RUNNING_JOBS = 4;
+    private static final int MAX_QUEUED_JOBS = 16;
+    private static final Duration FINISHED_JOB_TTL = Duration.ofMinutes(15);
+    private static final Duration EVICTION_INTERVAL = Duration.ofMinutes(1);
+
+    // Threads sending events; a stalled client ties up at most one
+    private static final int DELIVERY_THREADS = 8;
+
+    private final PreviewPipeline pipeline;
+    private final ThreadPoolExecutor executor;
+    private final ExecutorService delivery;
+    private final ScheduledExecutorService evictor;
+    private final Map<String, CrawlJob> jobs = new ConcurrentHashMap<>();
+
+    public CrawlJobService(PreviewPipeline pipeline) {
+        this.pipeline = pipeline;
+
+        AtomicInteger counter = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(
+                MAX_RUNNING_JOBS,
+                MAX_RUNNING_JOBS,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(MAX_QUEUED_JOBS),
+                r -> {
+                    Thread t = new Thread(r, "crawl-job-" + counter.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }
+        );
+
+        AtomicInteger deliveryCounter = new AtomicInteger();
+        this.delivery = Executors.newFixedThreadPool(DELIVERY_THREADS, r -> {
+            Thread t = new Thread(r, "crawl-job-events-" + deliveryCounter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "crawl-job-evictor");
+            t.setDaemon(true);
+            return t;
+        });
+        evictor.scheduleWithFixedDelay(
+                this::evictExpired,
+                EVICTION_INTERVAL.toMillis(), EVICTION_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Queues a preview.
+     *
+     * @throws RejectedExecutionException when the job queue is full
+     */
+    public CrawlJob submit(CrawlRequest req) {
+
+        evictExpired();
+
+        CrawlJob job = new CrawlJob(UUID.randomUUID().toString(), delivery);
+        jobs.put(job.getId(), job);
+
+        try {
+            job.attach(executor.submit(() -> run(job, req)));
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.getId());
+            throw e;
+        }
+
+        return job;
+    }
+
+    public CrawlJob get(String jobId) {
+        return jobId != null ? jobs.get(jobId) : null;
+    }
+
+    /**
+     * @return the job, or null if unknown
+     */
+    public CrawlJob cancel(String jobId) {
+        CrawlJob job = get(jobId);
+        if (job != null) {
+            job.cancel();
+        }
+        return job;
+    }
+
+    @Override
+    public void close() {
+        evictor.shutdownNow();
+        executor.shutdownNow();
+        delivery.shutdownNow();
+    }
+
+    /* ============================================================
+       INTERNAL
+       ============================================================ */
+
+    private void run(CrawlJob job, CrawlRequest req) {
+
+        if (job.isFinished()) {
+            return; // cancelled while queued
+        }
+
+        job.markRunning();
+
+        try {
+            CrawlResult result = pipeline.run(req, job);
+            job.complete(result);
+
+        } catch (CancellationException e) {
+            job.cancel();
+        } catch (Exception e) {
+            if (Thread.currentThread().isInterrupted()) {
+                job.cancel();
+            } else {
+                job.fail("AI processing failed safely.");
+            }
+        }
+    }
+
+    private void evictExpired() {
+        Instant cutoff = Instant.now().minus(FINISHED_JOB_TTL);
+        jobs.values().removeIf(job -> {
+            Instant finished = job.getFinishedAt();
+            return finished != null && finished.isBefore(cutoff);
+        });
+    }
+}
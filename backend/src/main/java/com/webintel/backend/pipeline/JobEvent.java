@@ -0,0 +1,44 @@
+package com.webintel.backend.pipeline;
+
+/**
+ * A single progress event of a crawl job.
+ */
+public final class JobEvent {
+
+    public static final String INTENT = "intent";
+    public static final String PAGE = "page";
+    public static final String SUMMARY_TOKEN = "summary-token";
+    public static final String SUMMARY = "summary";
+    public static final String DONE = "done";
+    public static final String FAILED = "failed";
+    public static final String CANCELLED = "cancelled";
+
+    private final long sequence;
+    private final String name;
+    private final Object data;
+
+    JobEvent(long sequence, String name, Object data) {
+        this.sequence = sequence;
+        this.name = name;
+        this.data = data;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Object getData() {
+        return data;
+    }
+
+    /**
+     * True for the last event a job will ever publish.
+     */
+    public boolean isTerminal() {
+        return DONE.equals(name) || FAILED.equals(name) || CANCELLED.equals(name);
+    }
+}
@@ -0,0 +1,28 @@
+package com.webintel.backend.pipeline;
+
+import com.webintel.backend.domain.PageResult;
+
+/**
+ * Receives preview progress as it happens.
+ * Callbacks may arrive from pipeline worker threads.
+ */
+public interface PreviewListener {
+
+    PreviewListener NONE = new PreviewListener() { };
+
+    default void onIntent(String interpretedIntent) {
+    }
+
+    default void onPage(PageResult page) {
+    }
+
+    /**
+     * Raw summary text as the model generates it, before {@link #onSummary}
+     * delivers the final, cleaned summary.
+     */
+    default void onSummaryToken(String token) {
+    }
+
+    default void onSummary(String summary) {
+    }
+}
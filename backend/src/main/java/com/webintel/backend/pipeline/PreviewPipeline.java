@@ -0,0 +1,452 @@
+package com.webintel.backend.pipeline;
+
+import com.webintel.backend.ai.AiIntentRefiner;
+import com.webintel.backend.ai.AiSummaryService;
+import com.webintel.backend.ai.IntentInterpreter;
+import com.webintel.backend.crawler.FetchSession;
+import com.webintel.backend.crawler.MultiPageCrawler;
+import com.webintel.backend.crawler.PageFetcher;
+import com.webintel.backend.domain.CrawlIntent;
+import com.webintel.backend.domain.CrawlRequest;
+import com.webintel.backend.domain.CrawlResult;
+import com.webintel.backend.domain.PageResult;
+import com.webintel.backend.domain.SessionStore;
+import com.webintel.backend.extractor.ContentExtractor;
+import com.webintel.backend.vector.ContentChunker;
+import com.webintel.backend.vector.Embedding;
+import com.webintel.backend.vector.EmbeddingService;
+import com.webintel.backend.vector.VectorNamespaces;
+import com.webintel.backend.vector.VectorStore;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Streaming preview: fetch → extract → chunk → embed → index.
+ *
+ * Each stage has a bounded queue and a cap on its workers, so fetching
+ * page N+1 overlaps with embedding page N. The workers come from pools
+ * shared by every preview, so concurrent previews add queued work, not
+ * threads. The summary starts as soon as extraction finishes and runs
+ * while embedding is still draining.
+ *
+ * Backpressure:
+ * - Full queues block the upstream stage (ultimately the crawler)
+ * - MAX_VECTOR_CHUNKS: counts indexed chunks; once reached, no further
+ *   chunks are produced (chunks already in flight are embedded, not indexed)
+ * - The summarizer bounds its own LLM work (map-reduce over all pages)
+ *
+ * Intent refinement overlaps with downloading: while the LLM refines a
+ * prompt, the pages the likely intent needs are already being fetched.
+ * That speculative work is cancelled when its preview ends, however it ends.
+ *
+ * Interrupting the calling thread cancels the run: queued work is
+ * dropped and a CancellationException is thrown.
+ */
+@Service
+public class PreviewPipeline implements AutoCloseable {
+
+    /* =========================
+       HARD SAFETY LIMITS
+       ========================= */
+    public static final int MAX_VECTOR_CHUNKS = 1_200;
+
+    /* =========================
+       STAGE SIZING
+       ========================= */
+    // Threads per stage, shared by all previews — also each preview's cap
+    private static final int EXTRACT_WORKERS = 4;
+    private static final int CHUNK_WORKERS = 2;
+    // Concurrent embedAll callers — the embedding service batches across them
+    private static final int EMBED_WORKERS = 4;
+    private static final int INDEX_WORKERS = 1;
+    private static final int QUEUE_CAPACITY = 16;
+
+    // Concurrent speculative downloads (one per preview waiting on the LLM);
+    // past the queue, a preview simply gets no head start
+    private static final int SPECULATION_WORKERS = 2;
+    private static final int SPECULATION_QUEUE = 8;
+
+    private final IntentInterpreter intentInterpreter;
+    private final AiIntentRefiner intentRefiner;
+    private final MultiPageCrawler crawler;
+    private final PageFetcher pageFetcher;
+    private final ContentExtractor extractor;
+    private final ContentChunker chunker;
+    private final EmbeddingService embeddingService;
+    private final VectorNamespaces vectorNamespaces;
+    private final AiSummaryService summaryService;
+    private final SessionStore sessionStore;
+
+    private final ExecutorService speculationPool = new ThreadPoolExecutor(
+            SPECULATION_WORKERS, SPECULATION_WORKERS, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(SPECULATION_QUEUE), new PreviewThreadFactory("preview-speculate"));
+
+    private final ExecutorService extractPool = stagePool("preview-extract", EXTRACT_WORKERS);
+    private final ExecutorService chunkPool = stagePool("preview-chunk", CHUNK_WORKERS);
+    private final ExecutorService embedPool = stagePool("preview-embed", EMBED_WORKERS);
+    private final ExecutorService indexPool = stagePool("preview-index", INDEX_WORKERS);
+
+    public PreviewPipeline(
+            IntentInterpreter intentInterpreter,
+            AiIntentRefiner intentRefiner,
+            MultiPageCrawler crawler,
+            PageFetcher pageFetcher,
+            ContentExtractor extractor,
+            ContentChunker chunker,
+            EmbeddingService embeddingService,
+            VectorNamespaces vectorNamespaces,
+            AiSummaryService summaryService,
+            SessionStore sessionStore
+    ) {
+        this.intentInterpreter = intentInterpreter;
+        this.intentRefiner = intentRefiner;
+        this.crawler = crawler;
+        this.pageFetcher = pageFetcher;
+        this.extractor = extractor;
+        this.chunker = chunker;
+        this.embeddingService = embeddingService;
+        this.vectorNamespaces = vectorNamespaces;
+        this.summaryService = summaryService;
+        this.sessionStore = sessionStore;
+    }
+
+    public CrawlResult run(CrawlRequest req) {
+        return run(req, PreviewListener.NONE);
+    }
+
+    /**
+     * Runs the full preview, reporting progress to the listener.
+     * Returns once the summary is ready and every chunk is indexed.
+     * The result is stored in the SessionStore under its resultId, and its
+     * vectors in the namespace of the same id.
+     */
+    public CrawlResult run(CrawlRequest req, PreviewListener listener) {
+
+        CrawlResult out = new CrawlResult();
+
+        // One id for the stored result and its isolated vector namespace
+        String resultId = UUID.randomUUID().toString();
+        out.setResultId(resultId);
+        out.setTargetUrl(req.getTargetUrl());
+        out.setUserPrompt(req.getUserPrompt());
+        VectorStore vectorStore = vectorNamespaces.create(resultId);
+        Future<?> speculation = null;
+
+        // From here on the namespace must be finished, whatever fails
+        try {
+            /* 1️⃣ AI intent refinement — skipped when the rules are sure,
+                   overlapped with speculative downloads when it is not */
+            AiIntentRefiner.Refinement refinement = intentRefiner.begin(req.getUserPrompt());
+            FetchSession session = pageFetcher.openSession();
+
+            if (!refinement.isSettled()) {
+                speculation = speculate(req.getTargetUrl(), refinement, session);
+            }
+
+            return runStages(req, listener, out, vectorStore, refinement, session);
+        } finally {
+            // Never outlives its preview — a queued head start must not run late
+            if (speculation != null) {
+                speculation.cancel(true);
+            }
+
+            // Persists the vectors and lets the namespace be unloaded
+            vectorNamespaces.finish(resultId);
+        }
+    }
+
+    private CrawlResult runStages(
+            CrawlRequest req,
+            PreviewListener listener,
+            CrawlResult out,
+            VectorStore vectorStore,
+            AiIntentRefiner.Refinement refinement,
+            FetchSession session
+    ) {
+        String refinedIntent = refinement.await();
+        out.setInterpretedIntent(refinedIntent);
+        listener.onIntent(refinedIntent);
+
+        CrawlIntent intent = intentInterpreter.interpret(refinedIntent);
+
+        List<PageResult> extracted = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger chunkBudget = new AtomicInteger(MAX_VECTOR_CHUNKS);
+        AtomicInteger arrival = new AtomicInteger();
+
+        /* 2️⃣ Stages, wired downstream-first */
+        Stage<Embedding> index = new Stage<>(
+                indexPool, INDEX_WORKERS, QUEUE_CAPACITY,
+                embedding -> {
+                    // Only indexed chunks use up the budget; failed embeddings never get here
+                    if (!reserve(chunkBudget)) return;
+                    try {
+                        vectorStore.add(embedding);
+                    } catch (RuntimeException e) {
+                        chunkBudget.incrementAndGet();
+                        throw e;
+                    }
+                }
+        );
+
+        Stage<List<String>> embed = new Stage<>(
+                embedPool, EMBED_WORKERS, QUEUE_CAPACITY,
+                chunks -> {
+                    List<double[]> vectors = embeddingService.embedAll(chunks);
+                    for (int i = 0; i < chunks.size(); i++) {
+                        if (vectors.get(i).length == 0) continue;
+                        index.submit(new Embedding(UUID.randomUUID().toString(), chunks.get(i), vectors.get(i)));
+                    }
+                }
+        );
+
+        Stage<PageResult> chunk = new Stage<>(
+                chunkPool, CHUNK_WORKERS, QUEUE_CAPACITY,
+                page -> {
+                    List<String> pageChunks = chunkPage(page, chunkBudget);
+                    if (!pageChunks.isEmpty()) {
+                        embed.submit(pageChunks);
+                    }
+                }
+        );
+
+        Stage<String> extract = new Stage<>(
+                extractPool, EXTRACT_WORKERS, QUEUE_CAPACITY,
+                url -> {
+                    PageResult page = extractor.extract(url, intent, session);
+                    page.setPageIndex(arrival.getAndIncrement());
+                    extracted.add(page);
+                    listener.onPage(page);
+
+                    if (chunkBudget.get() > 0 && page.getParagraphs() != null) {
+                        chunk.submit(page);
+                    }
+                }
+        );
+
+        extract.then(chunk);
+        chunk.then(embed);
+        embed.then(index);
+
+        try {
+            /* 3️⃣ Feed pages as soon as they are downloaded */
+            List<String> pages;
+            if (intent.isMultiPage()) {
+                pages = crawler.crawl(req.getTargetUrl(), session, extract::submit);
+            } else {
+                pages = List.of(req.getTargetUrl());
+                extract.submit(req.getTargetUrl());
+            }
+
+            if (Thread.currentThread().isInterrupted()) {
+                throw new CancellationException("Preview cancelled");
+            }
+
+            extract.close();
+            await(extract.completion());
+
+            /* 4️⃣ Stable output order: crawl order, not completion order */
+            List<PageResult> results = inCrawlOrder(extracted, pages);
+            out.setPages(results);
+
+            /* 5️⃣ AI SUMMARY — every page, map-reduced; overlaps with embedding */
+            List<String> pageTexts = summaryInput(results);
+            String summary = pageTexts.isEmpty()
+                    ? "No meaningful textual content was found to generate a summary."
+                    : summaryService.summarizeAll(pageTexts, listener::onSummaryToken);
+
+            out.setSummary(summary);
+            listener.onSummary(summary);
+
+            /* 6️⃣ Make sure /search sees every vector */
+            await(index.completion());
+
+            /* 7️⃣ Keep for exports */
+            sessionStore.save(out.getResultId(), out);
+
+            return out;
+
+        } finally {
+            extract.cancel();
+            chunk.cancel();
+            embed.cancel();
+            index.cancel();
+        }
+    }
+
+    @Override
+    public void close() {
+        speculationPool.shutdownNow();
+        extractPool.shutdownNow();
+        chunkPool.shutdownNow();
+        embedPool.shutdownNow();
+        indexPool.shutdownNow();
+    }
+
+    /* ============================================================
+       HELPERS
+       ============================================================ */
+
+    /**
+     * Downloads what the likely intent needs while the LLM refines it:
+     * the whole crawl if the rules probably read it right and it spans the
+     * site, else just the start page (needed either way). The real crawl
+     * then finds these pages in the session, done or in flight; a wrong
+     * guess costs only bandwidth.
+     */
+    private Future<?> speculate(String url, AiIntentRefiner.Refinement refinement, FetchSession session) {
+
+        if (url == null || url.isBlank()) {
+            return null;
+        }
+
+        boolean crawlAhead = refinement.isLikely()
+                && intentInterpreter.interpret(refinement.guess()).isMultiPage();
+
+        try {
+            return speculationPool.submit(() -> {
+                if (crawlAhead) {
+                    crawler.crawl(url, session);
+                } else {
+                    session.fetch(url);
+                }
+            });
+        } catch (RejectedExecutionException ignored) {
+            // queue full or shutting down — no head start
+            return null;
+        }
+    }
+
+    /**
+     * Interruptible wait — turns an interrupt into a cancellation.
+     */
+    private static void await(CompletableFuture<?> stage) {
+        try {
+            stage.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Preview cancelled");
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Preview stage failed", e.getCause());
+        }
+    }
+
+    /**
+     * Takes one unit of the chunk budget; false once it is used up.
+     */
+    private static boolean reserve(AtomicInteger budget) {
+        return budget.getAndUpdate(b -> b > 0 ? b - 1 : 0) > 0;
+    }
+
+    /**
+     * Chunks a page's paragraphs, at most as many as the budget has left.
+     * Nothing is reserved here — the index stage does that — so a few
+     * pages chunked at once may overshoot and their extra chunks are dropped.
+     */
+    private List<String> chunkPage(PageResult page, AtomicInteger budget) {
+
+        List<String> chunks = new ArrayList<>();
+        int remaining = budget.get();
+
+        for (String paragraph : page.getParagraphs()) {
+
+            if (paragraph == null || paragraph.isBlank()) continue;
+
+            for (String c : chunker.chunk(paragraph)) {
+
+                if (c == null || c.isBlank()) continue;
+
+                if (chunks.size() >= remaining) {
+                    return chunks;
+                }
+                chunks.add(c);
+            }
+        }
+
+        return chunks;
+    }
+
+    private List<PageResult> inCrawlOrder(List<PageResult> extracted, List<String> crawlOrder) {
+
+        Map<String, Integer> position = new HashMap<>();
+        for (int i = 0; i < crawlOrder.size(); i++) {
+            position.putIfAbsent(crawlOrder.get(i), i);
+        }
+
+        List<PageResult> results;
+        synchronized (extracted) {
+            results = new ArrayList<>(extracted);
+        }
+
+        results.sort(Comparator.comparingInt(
+                (PageResult p) -> position.getOrDefault(p.getPageUrl(), Integer.MAX_VALUE)
+        ));
+
+        for (int i = 0; i < results.size(); i++) {
+            results.get(i).setPageIndex(i);
+        }
+
+        return results;
+    }
+
+    /**
+     * One text per page, in crawl order; pages without text are skipped.
+     */
+    private List<String> summaryInput(List<PageResult> pages) {
+
+        List<String> texts = new ArrayList<>();
+
+        for (PageResult page : pages) {
+            if (page.getParagraphs() == null) continue;
+
+            StringBuilder pageText = new StringBuilder();
+            for (String paragraph : page.getParagraphs()) {
+                if (paragraph == null || paragraph.isBlank()) continue;
+                pageText.append(paragraph).append("\n");
+            }
+
+            if (!pageText.isEmpty()) {
+                texts.add(pageText.toString());
+            }
+        }
+
+        return texts;
+    }
+
+    /**
+     * Stage workers: a fixed set of threads. Its queue holds at most one
+     * task per running stage worker, bounded by each stage's cap.
+     */
+    private static ExecutorService stagePool(String name, int threads) {
+        return Executors.newFixedThreadPool(threads, new PreviewThreadFactory(name));
+    }
+
+    private static final class PreviewThreadFactory implements ThreadFactory {
+
+        private final String name;
+        private final AtomicInteger counter = new AtomicInteger();
+
+        PreviewThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, name + "-" + counter.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+}
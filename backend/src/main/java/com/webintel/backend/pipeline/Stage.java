@@ -0,0 +1,175 @@
+package com.webintel.backend.pipeline;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * One step of a streaming pipeline: a bounded input queue drained on a
+ * shared executor by at most {@code concurrency} workers at a time.
+ *
+ * Stages own no threads, so many pipelines can run on the same few
+ * pools. A worker handles one item and then re-queues itself behind
+ * the other stages' work, which keeps a busy pipeline from starving
+ * its neighbours.
+ *
+ * Guarantees:
+ * - submit() blocks while the queue is full (backpressure upstream)
+ * - Worker failures are swallowed — one bad item never stops the stage
+ * - completion() finishes once close() was called and every
+ *   accepted item has been processed
+ * - cancel() interrupts this stage's running items, never another's
+ */
+public final class Stage<I> implements AutoCloseable {
+
+    private final BlockingQueue<I> queue;
+    private final Executor executor;
+    private final int concurrency;
+    private final Consumer<I> handler;
+
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicInteger activeWorkers = new AtomicInteger();
+    private final Set<Thread> running = new HashSet<>();
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private volatile boolean closed = false;
+
+    public Stage(Executor executor, int concurrency, int queueCapacity, Consumer<I> handler) {
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        this.executor = executor;
+        this.concurrency = Math.max(1, concurrency);
+        this.handler = handler;
+    }
+
+    /* ============================================================
+       INPUT
+       ============================================================ */
+
+    /**
+     * Queues an item, blocking while the stage is saturated.
+     *
+     * @return false if the stage is already closed or cancelled
+     */
+    public boolean submit(I item) {
+
+        if (item == null || closed || done.isDone()) {
+            return false;
+        }
+
+        pending.incrementAndGet();
+        try {
+            queue.put(item);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            finishOne();
+            return false;
+        }
+
+        startWorkerIfIdle();
+        return true;
+    }
+
+    /**
+     * No more input. Completion follows once the queue drains.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        if (pending.get() == 0) {
+            done.complete(null);
+        }
+    }
+
+    /**
+     * Abandons queued work and interrupts items still running.
+     */
+    public void cancel() {
+        closed = true;
+        queue.clear();
+        done.cancel(true);
+
+        synchronized (running) {
+            running.forEach(Thread::interrupt);
+        }
+    }
+
+    public CompletableFuture<Void> completion() {
+        return done;
+    }
+
+    /**
+     * Closes {@code next} once this stage has completed, successfully or not.
+     */
+    public <O> Stage<I> then(Stage<O> next) {
+        done.whenComplete((ignored, error) -> {
+            if (error != null) {
+                next.cancel();
+            } else {
+                next.close();
+            }
+        });
+        return this;
+    }
+
+    /* ============================================================
+       WORKERS
+       ============================================================ */
+
+    private void startWorkerIfIdle() {
+
+        while (!queue.isEmpty() && !done.isDone()) {
+
+            int active = activeWorkers.get();
+            if (active >= concurrency) {
+                return;
+            }
+
+            if (activeWorkers.compareAndSet(active, active + 1)) {
+                try {
+                    executor.execute(this::workOnce);
+                } catch (RejectedExecutionException e) {
+                    // Executor shut down — nothing will ever drain the queue
+                    activeWorkers.decrementAndGet();
+                    cancel();
+                }
+                return;
+            }
+        }
+    }
+
+    private void workOnce() {
+
+        I item = done.isDone() ? null : queue.poll();
+
+        if (item != null) {
+            Thread current = Thread.currentThread();
+            synchronized (running) {
+                running.add(current);
+            }
+
+            try {
+                handler.accept(item);
+            } catch (Exception ignored) {
+                // Never let one item kill the stage
+            } finally {
+                synchronized (running) {
+                    running.remove(current);
+                    // A late cancel() must not leak into the next stage's item
+                    Thread.interrupted();
+                }
+                finishOne();
+            }
+        }
+
+        // Step aside; rejoin the executor queue if there is more to do
+        activeWorkers.decrementAndGet();
+        startWorkerIfIdle();
+    }
+
+    private void finishOne() {
+        if (pending.decrementAndGet() == 0 && closed) {
+            done.complete(null);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.webintel.backend.vector;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Size-bounded concurrent cache with CLOCK (second-chance) eviction.
+ *
+ * Guarantees:
+ * - Lock-free reads and writes (ConcurrentHashMap underneath)
+ * - Approximate LRU: recently read entries survive one eviction pass
+ * - Hit / miss counters for monitoring
+ */
+public class BoundedCache<K, V> {
+
+    private final int maxSize;
+    private final Map<K, Slot<V>> entries = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<K> clock = new ConcurrentLinkedQueue<>();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public BoundedCache(int maxSize) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.maxSize = maxSize;
+    }
+
+    public V get(K key) {
+
+        Slot<V> slot = key != null ? entries.get(key) : null;
+
+        if (slot == null) {
+            misses.increment();
+            return null;
+        }
+
+        slot.referenced = true;
+        hits.increment();
+        return slot.value;
+    }
+
+    /**
+     * Presence check that neither counts as a hit/miss nor marks the entry used.
+     */
+    public boolean containsKey(K key) {
+        return key != null && entries.containsKey(key);
+    }
+
+    public void put(K key, V value) {
+
+        if (key == null || value == null) {
+            return;
+        }
+
+        if (entries.put(key, new Slot<>(value)) == null) {
+            clock.add(key);
+            evictIfNeeded();
+        }
+    }
+
+    public void remove(K key) {
+        // Drop its clock slot too, or a later put would queue the key twice.
+        // O(size) scan — removal is rare next to get/put
+        if (key != null && entries.remove(key) != null) {
+            clock.remove(key);
+        }
+    }
+
+    public void clear() {
+        entries.clear();
+        clock.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    /* =========================
+       EVICTION
+       ========================= */
+
+    private void evictIfNeeded() {
+
+        // Bounded sweep: at most two passes of second chances
+        int budget = maxSize * 2;
+
+        while (entries.size() > maxSize && budget-- > 0) {
+
+            K candidate = clock.poll();
+            if (candidate == null) {
+                return;
+            }
+
+            Slot<V> slot = entries.get(candidate);
+            if (slot == null) {
+                continue; // already removed
+            }
+
+            if (slot.referenced) {
+                slot.referenced = false;
+                clock.add(candidate);
+            } else if (!entries.remove(candidate, slot)) {
+                clock.add(candidate); // replaced meanwhile — keep it on the clock
+            }
+        }
+    }
+
+    private static final class Slot<V> {
+        final V value;
+        volatile boolean referenced;
+
+        Slot(V value) {
+            this.value = value;
+        }
+    }
+}
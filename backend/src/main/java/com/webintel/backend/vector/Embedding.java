@@ -1,16 +1,25 @@
 package com.webintel.backend.vector;
 
-import java.util.Arrays;
+import java.nio.FloatBuffer;
 
 /**
  * Represents a single embedded text chunk.
  * Immutable, safe, and optimized for similarity search.
+ *
+ * Vectors are held as float32 — half the heap of double
+ * and the precision indexes actually search with.
+ * Rows of a sealed {@link VectorSegment} are not copied at all:
+ * their unit vector is read straight from the memory mapping.
  */
 public final class Embedding {
 
     private final String id;
     private final String text;
-    private final double[] vector;
+
+    // Exactly one is set: the raw vector on heap, or a mapped unit row
+    private final float[] vector;
+    private final FloatBuffer unitRow;
+    private final int dimension;
 
     // Cached norm for fast cosine similarity
     private final double norm;
@@ -31,10 +40,25 @@ public final class Embedding {
 
         this.id = id;
         this.text = text;
-        this.vector = vector.clone(); // protect immutability
+        this.vector = toFloats(vector); // copy protects immutability
+        this.unitRow = null;
+        this.dimension = vector.length;
         this.norm = computeNorm(this.vector);
     }
 
+    /**
+     * Zero-copy view of a stored unit vector and its original norm.
+     * The buffer must be read-only and never change.
+     */
+    Embedding(String id, String text, FloatBuffer unitRow, float norm) {
+        this.id = id;
+        this.text = text == null ? "" : text;
+        this.vector = null;
+        this.unitRow = unitRow;
+        this.dimension = unitRow.capacity();
+        this.norm = norm;
+    }
+
     /* =========================
        GETTERS
        ========================= */
@@ -48,7 +72,51 @@ public final class Embedding {
     }
 
     public double[] getVector() {
-        return vector.clone(); // defensive copy
+        double[] copy = new double[dimension]; // defensive copy
+        for (int i = 0; i < dimension; i++) {
+            copy[i] = vector != null ? vector[i] : unitRow.get(i) * (float) norm;
+        }
+        return copy;
+    }
+
+    /**
+     * Unit-length float32 copy for index insertion, or null for a zero vector.
+     */
+    public float[] getUnitVector() {
+
+        if (norm < 1e-12) {
+            return null;
+        }
+
+        if (unitRow != null) {
+            float[] unit = new float[dimension];
+            unitRow.get(0, unit);
+            return unit;
+        }
+
+        float[] unit = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            unit[i] = (float) (vector[i] / norm);
+        }
+        return unit;
+    }
+
+    /**
+     * Cosine similarity against a unit-length query of the same dimension.
+     * Returns 0 for a mismatched or zero vector.
+     */
+    public float cosine(float[] unitQuery) {
+
+        if (unitQuery == null || unitQuery.length != dimension || norm < 1e-12) {
+            return 0f;
+        }
+
+        if (unitRow != null) {
+            // Read in place — search calls this per candidate
+            return VectorMath.dot(unitRow, unitQuery, dimension);
+        }
+
+        return (float) (VectorMath.dot(vector, 0, unitQuery, 0, vector.length) / norm);
     }
 
     public double getNorm() {
@@ -56,17 +124,45 @@ public final class Embedding {
     }
 
     public int getDimension() {
-        return vector.length;
+        return dimension;
+    }
+
+    /**
+     * False for mapped rows, whose vector costs no heap.
+     */
+    boolean isOnHeap() {
+        return vector != null;
+    }
+
+    /**
+     * Same id, text and vector (compared through the norm, which a
+     * stored copy keeps as float32). Used to swap a heap embedding for
+     * its mapped copy without re-indexing.
+     */
+    boolean sameAs(Embedding other) {
+        return other != null
+                && id.equals(other.id)
+                && text.equals(other.text)
+                && dimension == other.dimension
+                && (float) norm == (float) other.norm;
     }
 
     /* =========================
        INTERNAL HELPERS
        ========================= */
 
-    private double computeNorm(double[] v) {
+    private static float[] toFloats(double[] v) {
+        float[] out = new float[v.length];
+        for (int i = 0; i < v.length; i++) {
+            out[i] = (float) v[i];
+        }
+        return out;
+    }
+
+    private static double computeNorm(float[] v) {
         double sum = 0.0;
-        for (double x : v) {
-            sum += x * x;
+        for (float x : v) {
+            sum += (double) x * x;
         }
         return Math.sqrt(sum);
     }
@@ -80,7 +176,7 @@ public final class Embedding {
         return "Embedding{" +
                 "id='" + id + '\'' +
                 ", textLength=" + text.length() +
-                ", dimension=" + vector.length +
+                ", dimension=" + dimension +
                 '}';
     }
 }
@@ -0,0 +1,778 @@
+package com.webintel.backend.vector;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Persistent, content-addressed embedding cache.
+ *
+ * Layout:
+ * - embeddings.dat  append-only records: magic, SHA-256 key, encoding, dimension, payload
+ * - embeddings.idx  memory-mapped open-addressing table: key fingerprint -> record offset
+ *
+ * Guarantees:
+ * - Keys are full SHA-256 digests, verified on every read (no silent collisions)
+ * - float16 or float32 payloads
+ * - Crash-safe: a torn tail is truncated and unindexed records are re-indexed on open
+ * - Oldest records are dropped by a background compaction once the data file
+ *   outgrows its byte budget; the index shrinks back with it
+ * - A replaced index mapping is unmapped at once, not left to the GC
+ * - Any I/O failure disables the cache — it NEVER breaks embedding
+ */
+public class EmbeddingDiskCache implements AutoCloseable {
+
+    /* =========================
+       FILE FORMAT
+       ========================= */
+
+    public static final int KEY_BYTES = 32;
+
+    private static final int RECORD_MAGIC = 0x45424431; // "EBD1"
+    private static final int RECORD_HEADER = 4 + KEY_BYTES + 1 + 4;
+
+    private static final byte ENCODING_FLOAT32 = 0;
+    private static final byte ENCODING_FLOAT16 = 1;
+
+    private static final long INDEX_MAGIC = 0x5745424944583031L; // "WEBIDX01"
+    private static final int INDEX_HEADER = 32; // magic, capacity, count, indexedLength, reserved
+    private static final int SLOT_BYTES = 16;   // fingerprint, offset + 1 (0 = empty)
+    private static final int INITIAL_CAPACITY = 1 << 14;
+
+    private static final String DATA_FILE = "embeddings.dat";
+    private static final String INDEX_FILE = "embeddings.idx";
+    private static final String COMPACT_FILE = "embeddings.dat.compact";
+    private static final String COMPACT_INDEX_FILE = "embeddings.idx.compact";
+
+    // Compaction keeps the newest records up to this share of the budget
+    private static final double COMPACT_TARGET_RATIO = 0.75;
+
+    private final Path dir;
+    private final boolean float16;
+    private final long maxDataBytes;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final ExecutorService compactor;
+    private final AtomicBoolean compacting = new AtomicBoolean(false);
+
+    private FileChannel data;
+    private IndexTable table;
+    private long dataLength;
+
+    // sun.misc.Unsafe#invokeCleaner, or null where unavailable (then the GC unmaps)
+    private static final Unmapper UNMAPPER = Unmapper.find();
+
+    private volatile boolean enabled;
+
+    /**
+     * @param dir cache directory; null disables the cache
+     */
+    public EmbeddingDiskCache(Path dir, boolean float16, long maxDataBytes) {
+        this.dir = dir;
+        this.float16 = float16;
+        this.maxDataBytes = maxDataBytes;
+
+        this.compactor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "embedding-cache-compactor");
+            t.setDaemon(true);
+            return t;
+        });
+
+        if (dir == null) {
+            enabled = false;
+            return;
+        }
+
+        try {
+            Files.createDirectories(dir);
+            openFiles();
+            enabled = true;
+        } catch (Exception e) {
+            // Read-only disk, bad permissions, corrupt files… run without persistence
+            enabled = false;
+            closeQuietly();
+        }
+    }
+
+    /* ============================================================
+       KEYS
+       ============================================================ */
+
+    /**
+     * SHA-256 of (model, normalized text).
+     */
+    public static byte[] contentKey(String model, String text) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            sha.update(model.getBytes(StandardCharsets.UTF_8));
+            sha.update((byte) 0);
+            sha.update(text.getBytes(StandardCharsets.UTF_8));
+            return sha.digest();
+        } catch (Exception e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+
+    /* ============================================================
+       READ / WRITE
+       ============================================================ */
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Returns the stored vector or null.
+     */
+    public double[] get(byte[] key) {
+
+        if (!enabled || key == null || key.length != KEY_BYTES) {
+            return null;
+        }
+
+        lock.readLock().lock();
+        try {
+            long offset = table.find(key, data);
+            return offset < 0 ? null : readVector(offset, key);
+        } catch (Exception e) {
+            return null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Appends a vector unless the key is already stored.
+     */
+    public void put(byte[] key, double[] vector) {
+
+        if (!enabled || key == null || key.length != KEY_BYTES || vector == null || vector.length == 0) {
+            return;
+        }
+
+        boolean overBudget;
+
+        lock.writeLock().lock();
+        try {
+            if (table.find(key, data) >= 0) {
+                return;
+            }
+
+            ByteBuffer record = encode(key, vector);
+            long offset = dataLength;
+            writeFully(data, record, offset);
+            dataLength += record.capacity();
+
+            table.insert(fingerprint(key), offset);
+            table.writeHeader(dataLength);
+
+            overBudget = dataLength > maxDataBytes;
+
+        } catch (Exception e) {
+            enabled = false;
+            return;
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        if (overBudget && compacting.compareAndSet(false, true)) {
+            compactor.execute(this::compact);
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return table.count();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long dataBytes() {
+        lock.readLock().lock();
+        try {
+            return dataLength;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        compactor.shutdownNow();
+        lock.writeLock().lock();
+        try {
+            if (table != null) {
+                table.force();
+            }
+        } catch (Exception ignored) {
+            // Best effort — open() repairs a stale index
+        } finally {
+            enabled = false;
+            closeQuietly();
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* ============================================================
+       OPEN / REPAIR
+       ============================================================ */
+
+    private void openFiles() throws IOException {
+
+        data = FileChannel.open(
+                dir.resolve(DATA_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+        );
+        FileChannel indexChannel = FileChannel.open(
+                dir.resolve(INDEX_FILE),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE
+        );
+
+        long fileSize = data.size();
+        long indexed = 0;
+
+        if (indexChannel.size() >= INDEX_HEADER) {
+            ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER);
+            readFully(indexChannel, header, 0);
+
+            long magic = header.getLong(0);
+            int storedCapacity = header.getInt(8);
+            long storedIndexed = header.getLong(16);
+
+            boolean valid = magic == INDEX_MAGIC
+                    && Integer.bitCount(storedCapacity) == 1
+                    && storedIndexed <= fileSize
+                    && indexChannel.size() >= IndexTable.bytes(storedCapacity);
+
+            if (valid) {
+                table = IndexTable.existing(indexChannel, storedCapacity, header.getInt(12));
+                indexed = storedIndexed;
+            }
+        }
+
+        if (table == null) {
+            try {
+                table = IndexTable.empty(indexChannel, INITIAL_CAPACITY);
+            } catch (IOException e) {
+                indexChannel.close();
+                throw e;
+            }
+        }
+
+        // Index anything appended after the last header write
+        dataLength = scanAndIndex(data, table, indexed, fileSize);
+        if (data.size() > dataLength) {
+            data.truncate(dataLength);
+        }
+        table.writeHeader(dataLength);
+    }
+
+    /**
+     * Indexes the records of {@code records} in [from, to) into {@code into},
+     * stopping at the first torn record. Returns where it stopped.
+     */
+    private static long scanAndIndex(FileChannel records, IndexTable into, long from, long to) throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        byte[] key = new byte[KEY_BYTES];
+        long offset = from;
+
+        while (offset + RECORD_HEADER <= to) {
+
+            header.clear();
+            readFully(records, header, offset);
+
+            int length = recordLength(header);
+            if (length < 0 || offset + length > to) {
+                break;
+            }
+
+            header.position(4);
+            header.get(key);
+
+            if (into.find(key, records) < 0) {
+                into.insert(fingerprint(key), offset);
+            }
+            offset += length;
+        }
+
+        return offset;
+    }
+
+    /* ============================================================
+       COMPACTION
+       ============================================================ */
+
+    /**
+     * Drops the oldest records so the file fits the target size.
+     * The bulk copy and its index are built without the lock; only
+     * the tail copy, indexing the tail and the swap block readers.
+     */
+    private void compact() {
+
+        Path compactPath = dir.resolve(COMPACT_FILE);
+        Path compactIndexPath = dir.resolve(COMPACT_INDEX_FILE);
+        IndexTable built = null;
+
+        try {
+            long snapshot;
+            long cut;
+
+            lock.readLock().lock();
+            try {
+                snapshot = dataLength;
+                cut = firstRecordAtOrAfter(snapshot - (long) (maxDataBytes * COMPACT_TARGET_RATIO));
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            try (FileChannel out = FileChannel.open(
+                    compactPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+                // Records below the snapshot are immutable — safe to copy unlocked
+                copyRange(data, cut, snapshot, out);
+
+                // Fewer records need a smaller table; offsets in the copy are already rebased by -cut
+                built = IndexTable.empty(FileChannel.open(
+                        compactIndexPath,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE), INITIAL_CAPACITY);
+                scanAndIndex(out, built, 0, snapshot - cut);
+
+                lock.writeLock().lock();
+                try {
+                    if (!enabled) {
+                        return;
+                    }
+
+                    // Only what was appended since the snapshot is copied and indexed here
+                    copyRange(data, snapshot, dataLength, out);
+                    long length = scanAndIndex(out, built, snapshot - cut, out.size());
+                    out.force(true);
+                    built.writeHeader(length);
+                    built.force();
+
+                    data.close();
+                    Files.move(compactPath, dir.resolve(DATA_FILE), StandardCopyOption.REPLACE_EXISTING);
+                    data = FileChannel.open(dir.resolve(DATA_FILE), StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+                    // The old table stays mapped until the new one has taken its name
+                    Files.move(compactIndexPath, dir.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING);
+                    IndexTable replaced = table;
+                    table = built;
+                    built = null;
+                    dataLength = length;
+                    replaced.close();
+
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            }
+
+        } catch (Exception e) {
+            enabled = false;
+        } finally {
+            compacting.set(false);
+            if (built != null) {
+                built.close();
+            }
+            try {
+                Files.deleteIfExists(compactPath);
+                Files.deleteIfExists(compactIndexPath);
+            } catch (IOException ignored) {
+                // Overwritten by the next compaction
+            }
+
+            // Records appended during this run may have pushed it over again
+            if (enabled && dataBytes() > maxDataBytes && compacting.compareAndSet(false, true)) {
+                try {
+                    compactor.execute(this::compact);
+                } catch (RejectedExecutionException e) {
+                    compacting.set(false); // closing
+                }
+            }
+        }
+    }
+
+    private long firstRecordAtOrAfter(long target) throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        long offset = 0;
+
+        while (offset < target && offset + RECORD_HEADER <= dataLength) {
+            header.clear();
+            readFully(data, header, offset);
+            int length = recordLength(header);
+            if (length < 0) break;
+            offset += length;
+        }
+
+        return Math.min(offset, dataLength);
+    }
+
+    private static void copyRange(FileChannel from, long start, long end, FileChannel to) throws IOException {
+        long position = start;
+        while (position < end) {
+            position += from.transferTo(position, end - position, to);
+        }
+    }
+
+    /* ============================================================
+       INDEX
+       ============================================================ */
+
+    /**
+     * Memory-mapped open-addressing table: key fingerprint -> record offset.
+     * Callers serialize writes: the cache's write lock, or a table nobody
+     * else can see yet.
+     */
+    private static final class IndexTable {
+
+        private final FileChannel channel;
+        private MappedByteBuffer map;
+        private int capacity;
+        private int count;
+
+        private IndexTable(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        static long bytes(int capacity) {
+            return INDEX_HEADER + (long) capacity * SLOT_BYTES;
+        }
+
+        /**
+         * Maps a table already on disk.
+         */
+        static IndexTable existing(FileChannel channel, int capacity, int count) throws IOException {
+            IndexTable table = new IndexTable(channel);
+            table.capacity = capacity;
+            table.count = count;
+            table.map = channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes(capacity));
+            return table;
+        }
+
+        /**
+         * An empty table of {@code capacity} slots.
+         */
+        static IndexTable empty(FileChannel channel, int capacity) throws IOException {
+            IndexTable table = new IndexTable(channel);
+            table.capacity = capacity;
+            try {
+                table.mapEmpty();
+            } catch (IOException e) {
+                table.close();
+                throw e;
+            }
+            return table;
+        }
+
+        int count() {
+            return count;
+        }
+
+        /**
+         * Offset of the record holding {@code key} in {@code records}, or -1.
+         */
+        long find(byte[] key, FileChannel records) throws IOException {
+
+            long fp = fingerprint(key);
+            int mask = capacity - 1;
+            int slot = (int) (mix(fp) & mask);
+
+            for (int probes = 0; probes < capacity; probes++) {
+
+                int position = INDEX_HEADER + slot * SLOT_BYTES;
+                long stored = map.getLong(position + 8);
+
+                if (stored == 0) {
+                    return -1;
+                }
+
+                if (map.getLong(position) == fp && keyMatches(records, stored - 1, key)) {
+                    return stored - 1;
+                }
+
+                slot = (slot + 1) & mask;
+            }
+
+            return -1;
+        }
+
+        void insert(long fp, long offset) throws IOException {
+
+            if ((count + 1) * 2L > capacity) {
+                grow();
+            }
+
+            int mask = capacity - 1;
+            int slot = (int) (mix(fp) & mask);
+
+            while (map.getLong(INDEX_HEADER + slot * SLOT_BYTES + 8) != 0) {
+                slot = (slot + 1) & mask;
+            }
+
+            int position = INDEX_HEADER + slot * SLOT_BYTES;
+            map.putLong(position, fp);
+            map.putLong(position + 8, offset + 1);
+            count++;
+        }
+
+        void writeHeader(long indexedLength) {
+            map.putLong(0, INDEX_MAGIC);
+            map.putInt(8, capacity);
+            map.putInt(12, count);
+            map.putLong(16, indexedLength);
+        }
+
+        void force() {
+            map.force();
+        }
+
+        void close() {
+            MappedByteBuffer mapped = map;
+            map = null;
+            unmap(mapped);
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // Nothing left to protect
+            }
+        }
+
+        /**
+         * Doubles the table in place (the mapping is extended, never renamed).
+         */
+        private void grow() throws IOException {
+
+            long[] fps = new long[count];
+            long[] offsets = new long[count];
+            int n = 0;
+
+            for (int slot = 0; slot < capacity; slot++) {
+                int position = INDEX_HEADER + slot * SLOT_BYTES;
+                long stored = map.getLong(position + 8);
+                if (stored != 0) {
+                    fps[n] = map.getLong(position);
+                    offsets[n] = stored - 1;
+                    n++;
+                }
+            }
+
+            capacity *= 2;
+            mapEmpty();
+
+            for (int i = 0; i < n; i++) {
+                insert(fps[i], offsets[i]);
+            }
+        }
+
+        /**
+         * Replaces the mapping with an empty table of {@code capacity} slots,
+         * resizing the file to match.
+         */
+        private void mapEmpty() throws IOException {
+
+            long size = bytes(capacity);
+
+            unmap(map);
+            map = null;
+
+            if (channel.size() > size) {
+                channel.truncate(size);
+            }
+
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            for (int i = INDEX_HEADER; i < map.capacity(); i += 8) {
+                map.putLong(i, 0L);
+            }
+            count = 0;
+        }
+    }
+
+    private static long fingerprint(byte[] key) {
+        return ByteBuffer.wrap(key, 0, 8).getLong();
+    }
+
+    private static long mix(long x) {
+        x ^= x >>> 33;
+        x *= 0xff51afd7ed558ccdL;
+        x ^= x >>> 33;
+        return x;
+    }
+
+    /* ============================================================
+       RECORDS
+       ============================================================ */
+
+    private ByteBuffer encode(byte[] key, double[] vector) {
+
+        int width = float16 ? 2 : 4;
+        ByteBuffer buf = ByteBuffer.allocate(RECORD_HEADER + vector.length * width);
+
+        buf.putInt(RECORD_MAGIC);
+        buf.put(key);
+        buf.put(float16 ? ENCODING_FLOAT16 : ENCODING_FLOAT32);
+        buf.putInt(vector.length);
+
+        for (double v : vector) {
+            if (float16) {
+                buf.putShort(VectorMath.floatToHalf((float) v));
+            } else {
+                buf.putFloat((float) v);
+            }
+        }
+
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Full record length from its header, or -1 if the header is invalid.
+     */
+    private static int recordLength(ByteBuffer header) {
+
+        if (header.getInt(0) != RECORD_MAGIC) {
+            return -1;
+        }
+
+        byte encoding = header.get(4 + KEY_BYTES);
+        int dimension = header.getInt(4 + KEY_BYTES + 1);
+
+        if (dimension <= 0 || (encoding != ENCODING_FLOAT16 && encoding != ENCODING_FLOAT32)) {
+            return -1;
+        }
+
+        return RECORD_HEADER + dimension * (encoding == ENCODING_FLOAT16 ? 2 : 4);
+    }
+
+    private static boolean keyMatches(FileChannel records, long offset, byte[] key) throws IOException {
+        ByteBuffer stored = ByteBuffer.allocate(KEY_BYTES);
+        readFully(records, stored, offset + 4);
+        return Arrays.equals(stored.array(), key);
+    }
+
+    private double[] readVector(long offset, byte[] key) throws IOException {
+
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER);
+        readFully(data, header, offset);
+
+        int length = recordLength(header);
+        if (length < 0) {
+            return null;
+        }
+
+        byte[] storedKey = new byte[KEY_BYTES];
+        header.position(4);
+        header.get(storedKey);
+        if (!Arrays.equals(storedKey, key)) {
+            return null;
+        }
+
+        boolean half = header.get(4 + KEY_BYTES) == ENCODING_FLOAT16;
+        int dimension = header.getInt(4 + KEY_BYTES + 1);
+
+        ByteBuffer payload = ByteBuffer.allocate(length - RECORD_HEADER);
+        readFully(data, payload, offset + RECORD_HEADER);
+        payload.flip();
+
+        double[] vector = new double[dimension];
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = half ? VectorMath.halfToFloat(payload.getShort()) : payload.getFloat();
+        }
+        return vector;
+    }
+
+    /* ============================================================
+       I/O HELPERS
+       ============================================================ */
+
+    private static void readFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position + buf.position());
+            if (n < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buf, long position) throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf, position + buf.position());
+        }
+    }
+
+    /**
+     * Releases a mapping now. Only safe once nothing can touch it again.
+     */
+    private static void unmap(MappedByteBuffer buffer) {
+        if (buffer != null && UNMAPPER != null) {
+            UNMAPPER.unmap(buffer);
+        }
+    }
+
+    private void closeQuietly() {
+        if (table != null) {
+            table.close();
+            table = null;
+        }
+
+        try {
+            if (data != null) data.close();
+        } catch (IOException ignored) {
+            // Nothing left to protect
+        }
+    }
+
+    /**
+     * JDK 17 has no public unmap; sun.misc.Unsafe (jdk.unsupported) does.
+     */
+    private static final class Unmapper {
+
+        private final Object unsafe;
+        private final Method invokeCleaner;
+
+        private Unmapper(Object unsafe, Method invokeCleaner) {
+            this.unsafe = unsafe;
+            this.invokeCleaner = invokeCleaner;
+        }
+
+        static Unmapper find() {
+            try {
+                Class<?> type = Class.forName("sun.misc.Unsafe");
+                Field field = type.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                return new Unmapper(field.get(null), type.getMethod("invokeCleaner", ByteBuffer.class));
+            } catch (Throwable e) {
+                return null;
+            }
+        }
+
+        void unmap(MappedByteBuffer buffer) {
+            try {
+                invokeCleaner.invoke(unsafe, buffer);
+            } catch (Throwable ignored) {
+                // Left to the GC
+            }
+        }
+    }
+}
@@ -2,29 +2,50 @@ package com.webintel.backend.vector;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.webintel.backend.ai.OllamaPool;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.file.Path;
 import java.time.Duration;
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.*;
 
 /**
  * Generates high-quality, deterministic embeddings using Ollama.
- * Optimized with LRU cache for FAST semantic search.
+ *
+ * Guarantees:
+ * - Callers never block each other (no global lock)
+ * - Concurrent requests are micro-batched into one /api/embed call
+ * - Bounded number of batches in flight, spread over the Ollama pool
+ * - Identical pending texts share a single model call
+ * - Content-addressed caching: small in-heap LRU in front of a
+ *   persistent disk cache, so unchanged pages never hit the model again
+ * - Returned vectors may be shared with the cache and other callers:
+ *   they are read-only (every consumer copies, e.g. {@link Embedding})
  */
 @Service
-public class EmbeddingService {
+public class EmbeddingService implements AutoCloseable {
 
     /* =========================
        CONFIGURATION
        ========================= */
 
-    private static final String OLLAMA_EMBED_URL =
-            "http://localhost:11434/api/embeddings";
+    private static final String EMBED_PATH = "/api/embed";
+
+    // Pre-batch endpoint, used if the server does not know /api/embed
+    private static final String LEGACY_EMBED_PATH = "/api/embeddings";
+
+    // After a 404 for the endpoint itself, batch calls are retried this much later
+    // (an instance may have been upgraded, or only one instance is old)
+    private static final Duration BATCH_ENDPOINT_RETRY = Duration.ofMinutes(10);
 
     private static final String MODEL = "llama3";
 
@@ -35,37 +56,108 @@ public class EmbeddingService {
     private static final int EXPECTED_DIMENSION = 4096;
 
     /* =========================
-       EMBEDDING CACHE (LRU)
+       BATCHING
        ========================= */
 
-    private static final int MAX_CACHE_SIZE = 2_000;
+    private static final int BATCH_SIZE = 32;
+    private static final long LINGER_MS = 10;
+    private static final int MAX_IN_FLIGHT_BATCHES = 4;
 
-    private final Map<String, double[]> cache =
-            new LinkedHashMap<>(MAX_CACHE_SIZE, 0.75f, true) {
-                @Override
-                protected boolean removeEldestEntry(Map.Entry<String, double[]> eldest) {
-                    return size() > MAX_CACHE_SIZE;
-                }
-            };
+    /* =========================
+       EMBEDDING CACHE
+       ========================= */
+
+    private static final int MAX_CACHE_SIZE = 512;
+
+    private static final String DEFAULT_DISK_CACHE_DIR = "${user.home}/.webintel/embedding-cache";
+
+    private static final long DISK_CACHE_MAX_BYTES = 2L * 1024 * 1024 * 1024;
 
-    private final HttpClient client;
+    // Half precision halves disk use; cosine ranking is unaffected in practice
+    private static final boolean DISK_CACHE_FLOAT16 = true;
+
+    private final BoundedCache<String, double[]> cache = new BoundedCache<>(MAX_CACHE_SIZE);
+
+    private final EmbeddingDiskCache diskCache;
+
+    // Texts queued or in flight — lets duplicate submissions share one call
+    private final Map<String, CompletableFuture<double[]>> pending = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<PendingEmbedding> queue = new LinkedBlockingQueue<>();
+    private final Semaphore inFlightBatches = new Semaphore(MAX_IN_FLIGHT_BATCHES);
+
+    private final OllamaPool pool;
     private final ObjectMapper mapper;
+    private final Thread dispatcher;
+    private final long batchEndpointRetryNanos;
+
+    // System.nanoTime() before which /api/embed is skipped; 0 = use it
+    private volatile long batchEndpointRetryAt = 0;
+    private volatile boolean running = true;
+
+    /**
+     * @param diskCacheDir where embeddings are persisted; null or blank keeps them in memory only
+     */
+    @Autowired
+    public EmbeddingService(
+            OllamaPool pool,
+            @Value("${vector.embedding.cache.dir:" + DEFAULT_DISK_CACHE_DIR + "}") String diskCacheDir
+    ) {
+        this(pool, diskCacheDir, BATCH_ENDPOINT_RETRY);
+    }
 
-    public EmbeddingService() {
-        this.client = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
+    EmbeddingService(OllamaPool pool, String diskCacheDir, Duration batchEndpointRetry) {
+        this.pool = pool;
         this.mapper = new ObjectMapper();
+        this.batchEndpointRetryNanos = batchEndpointRetry.toNanos();
+
+        Path dir = diskCacheDir == null || diskCacheDir.isBlank() ? null : Path.of(diskCacheDir.trim());
+        this.diskCache = new EmbeddingDiskCache(dir, DISK_CACHE_FLOAT16, DISK_CACHE_MAX_BYTES);
+
+        this.dispatcher = new Thread(this::dispatchLoop, "embedding-dispatcher");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
     }
 
+    /* ============================================================
+       PUBLIC API
+       ============================================================ */
+
     /**
      * Generates or retrieves cached embedding.
-     * NEVER crashes pipeline.
+     * NEVER crashes pipeline — returns an empty vector on failure.
+     * The vector may be shared — callers must not modify it.
+     */
+    public double[] embed(String text) {
+        return await(submit(text));
+    }
+
+    /**
+     * Embeds many texts at once; results keep input order.
+     * Failed entries are empty vectors.
+     */
+    public List<double[]> embedAll(List<String> texts) {
+
+        List<CompletableFuture<double[]>> futures = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            futures.add(submit(text));
+        }
+
+        List<double[]> vectors = new ArrayList<>(futures.size());
+        for (CompletableFuture<double[]> future : futures) {
+            vectors.add(await(future));
+        }
+        return vectors;
+    }
+
+    /**
+     * Queues a text for batched embedding.
+     * The future completes with an empty vector on failure — never exceptionally.
      */
-    public synchronized double[] embed(String text) {
+    public CompletableFuture<double[]> submit(String text) {
 
         if (text == null || text.isBlank()) {
-            return new double[0];
+            return CompletableFuture.completedFuture(new double[0]);
         }
 
         String cleaned = normalize(text);
@@ -74,71 +166,267 @@ public class EmbeddingService {
             cleaned = cleaned.substring(0, MAX_INPUT_CHARS);
         }
 
-        String key = Integer.toHexString(cleaned.hashCode());
+        // Strong content address: SHA-256 of (model, normalized text)
+        byte[] contentKey = EmbeddingDiskCache.contentKey(MODEL, cleaned);
+        String key = HexFormat.of().formatHex(contentKey);
 
         /* ===== CACHE HIT ===== */
         double[] cached = cache.get(key);
         if (cached != null) {
-            return cached;
+            return CompletableFuture.completedFuture(cached);
         }
 
-        /* ===== OLLAMA CALL ===== */
-        try {
-            String body = """
-            {
-              "model": "%s",
-              "prompt": "%s"
-            }
-            """.formatted(MODEL, escapeJson(cleaned));
+        double[] stored = diskCache.get(contentKey);
+        if (stored != null) {
+            cache.put(key, stored);
+            return CompletableFuture.completedFuture(stored);
+        }
 
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(OLLAMA_EMBED_URL))
-                    .timeout(TIMEOUT)
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(body))
-                    .build();
+        /* ===== ALREADY QUEUED ===== */
+        CompletableFuture<double[]> created = new CompletableFuture<>();
+        CompletableFuture<double[]> existing = pending.putIfAbsent(key, created);
+        if (existing != null) {
+            return existing;
+        }
 
-            HttpResponse<String> response =
-                    client.send(request, HttpResponse.BodyHandlers.ofString());
+        if (!running) {
+            complete(new PendingEmbedding(key, contentKey, cleaned, created), new double[0]);
+            return created;
+        }
 
-            if (response.statusCode() != 200 || response.body() == null) {
-                return new double[0];
-            }
+        queue.add(new PendingEmbedding(key, contentKey, cleaned, created));
+        return created;
+    }
+
+    /**
+     * Model the vectors come from — part of any cache key over them.
+     */
+    public String model() {
+        return MODEL;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        dispatcher.interrupt();
+
+        PendingEmbedding leftover;
+        while ((leftover = queue.poll()) != null) {
+            complete(leftover, new double[0]);
+        }
+
+        diskCache.close();
+    }
+
+    /* ============================================================
+       DISPATCHER
+       ============================================================ */
+
+    /**
+     * Collects up to BATCH_SIZE requests or waits LINGER_MS,
+     * whichever comes first, then fires one batch.
+     */
+    private void dispatchLoop() {
+
+        while (running) {
+            try {
+                List<PendingEmbedding> batch = new ArrayList<>(BATCH_SIZE);
+                batch.add(queue.take());
+
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LINGER_MS);
+
+                while (batch.size() < BATCH_SIZE) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        queue.drainTo(batch, BATCH_SIZE - batch.size());
+                        break;
+                    }
+
+                    PendingEmbedding next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) break;
+                    batch.add(next);
+                }
 
-            JsonNode root = mapper.readTree(response.body());
-            JsonNode embeddingNode = root.path("embedding");
+                inFlightBatches.acquire();
+                sendBatch(batch).whenComplete((ignored, error) -> inFlightBatches.release());
 
-            if (!embeddingNode.isArray()
-                    || embeddingNode.size() != EXPECTED_DIMENSION) {
-                return new double[0];
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception ignored) {
+                // Dispatcher must survive any single bad batch
             }
+        }
+    }
+
+    private CompletableFuture<Void> sendBatch(List<PendingEmbedding> batch) {
+
+        long retryAt = batchEndpointRetryAt;
+        if (retryAt != 0 && System.nanoTime() - retryAt < 0) {
+            return sendLegacy(batch);
+        }
 
-            double[] vector = new double[EXPECTED_DIMENSION];
-            for (int i = 0; i < EXPECTED_DIMENSION; i++) {
-                vector[i] = embeddingNode.get(i).asDouble();
+        try {
+            ObjectNode body = mapper.createObjectNode();
+            body.put("model", MODEL);
+            body.put("keep_alive", OllamaPool.KEEP_ALIVE);
+            ArrayNode input = body.putArray("input");
+            for (PendingEmbedding p : batch) {
+                input.add(p.text);
             }
 
-            cache.put(key, vector);
-            return vector;
+            // Embedding is idempotent — safe to hedge
+            return pool.post(EMBED_PATH, mapper.writeValueAsString(body), TIMEOUT,
+                            HttpResponse.BodyHandlers.ofString(), true)
+                    .thenCompose(response -> {
+
+                        if (response.statusCode() == 404) {
+                            if (isModelMissing(response)) {
+                                failAll(batch); // the legacy endpoint would not know it either
+                                return CompletableFuture.<Void>completedFuture(null);
+                            }
+                            // Server predates /api/embed
+                            batchEndpointRetryAt = System.nanoTime() + batchEndpointRetryNanos;
+                            return sendLegacy(batch);
+                        }
+
+                        JsonNode embeddings = parse(response).path("embeddings");
+
+                        for (int i = 0; i < batch.size(); i++) {
+                            complete(batch.get(i), toVector(embeddings.path(i)));
+                        }
+                        return CompletableFuture.<Void>completedFuture(null);
+                    })
+                    .exceptionally(error -> {
+                        failAll(batch);
+                        return null;
+                    });
 
         } catch (Exception e) {
-            return new double[0];
+            failAll(batch);
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * One request per text against the old /api/embeddings endpoint.
+     */
+    private CompletableFuture<Void> sendLegacy(List<PendingEmbedding> batch) {
+
+        List<CompletableFuture<Void>> calls = new ArrayList<>(batch.size());
+
+        for (PendingEmbedding p : batch) {
+            try {
+                ObjectNode body = mapper.createObjectNode();
+                body.put("model", MODEL);
+                body.put("keep_alive", OllamaPool.KEEP_ALIVE);
+                body.put("prompt", p.text);
+
+                calls.add(
+                        pool.post(LEGACY_EMBED_PATH, mapper.writeValueAsString(body), TIMEOUT,
+                                        HttpResponse.BodyHandlers.ofString(), true)
+                                .thenAccept(response ->
+                                        complete(p, toVector(parse(response).path("embedding"))))
+                                .exceptionally(error -> {
+                                    complete(p, new double[0]);
+                                    return null;
+                                })
+                );
+
+            } catch (Exception e) {
+                complete(p, new double[0]);
+            }
         }
+
+        return CompletableFuture.allOf(calls.toArray(new CompletableFuture[0]));
     }
 
     /* =========================
        HELPERS
        ========================= */
 
+    private JsonNode parse(HttpResponse<String> response) {
+        try {
+            if (response.statusCode() != 200 || response.body() == null) {
+                return mapper.missingNode();
+            }
+            return mapper.readTree(response.body());
+        } catch (Exception e) {
+            return mapper.missingNode();
+        }
+    }
+
+    /**
+     * Ollama answers 404 both for an unknown path and for a model that is
+     * not pulled; only the latter carries a JSON error naming the model.
+     */
+    private boolean isModelMissing(HttpResponse<String> response) {
+        try {
+            String error = mapper.readTree(response.body()).path("error").asText("");
+            return error.contains("model") && error.contains("not found");
+        } catch (Exception e) {
+            return false; // plain-text "404 page not found"
+        }
+    }
+
+    private double[] toVector(JsonNode node) {
+
+        if (!node.isArray() || node.size() != EXPECTED_DIMENSION) {
+            return new double[0];
+        }
+
+        double[] vector = new double[EXPECTED_DIMENSION];
+        for (int i = 0; i < EXPECTED_DIMENSION; i++) {
+            vector[i] = node.get(i).asDouble();
+        }
+        return vector;
+    }
+
+    private void complete(PendingEmbedding p, double[] vector) {
+        if (vector.length > 0) {
+            cache.put(p.key, vector);
+            diskCache.put(p.contentKey, vector);
+        }
+        pending.remove(p.key, p.future);
+        p.future.complete(vector);
+    }
+
+    private void failAll(List<PendingEmbedding> batch) {
+        for (PendingEmbedding p : batch) {
+            complete(p, new double[0]);
+        }
+    }
+
+    private double[] await(CompletableFuture<double[]> future) {
+        try {
+            return future.get(TIMEOUT.toMillis() * 2, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return new double[0];
+        } catch (Exception e) {
+            return new double[0];
+        }
+    }
+
     private String normalize(String text) {
         return text.replaceAll("\\s+", " ").trim();
     }
 
-    private String escapeJson(String text) {
-        return text
-                .replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", " ")
-                .replace("\r", " ");
+    /* =========================
+       INTERNAL
+       ========================= */
+
+    private static final class PendingEmbedding {
+        final String key;
+        final byte[] contentKey;
+        final String text;
+        final CompletableFuture<double[]> future;
+
+        PendingEmbedding(String key, byte[] contentKey, String text, CompletableFuture<double[]> future) {
+            this.key = key;
+            this.contentKey = contentKey;
+            this.text = text;
+            this.future = future;
+        }
     }
 }
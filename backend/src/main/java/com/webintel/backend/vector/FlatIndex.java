@@ -0,0 +1,246 @@
+package com.webintel.backend.vector;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Exact (brute-force) cosine search over a contiguous float32 matrix.
+ *
+ * Guarantees:
+ * - Vectors normalized once at insert — scoring is a single dot product
+ * - No per-query allocation beyond the top-k heap
+ * - O(1) removal by swapping the last row into the hole
+ */
+public class FlatIndex implements VectorIndex {
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private FloatMatrix vectors;
+    private final List<Embedding> rows = new ArrayList<>();
+    private final Map<String, Integer> idToRow = new HashMap<>();
+
+    /* ============================================================
+       ADD / REMOVE
+       ============================================================ */
+
+    @Override
+    public void add(Embedding embedding) {
+
+        if (embedding == null) {
+            return;
+        }
+
+        float[] unit = embedding.getUnitVector();
+        if (unit == null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (vectors == null) {
+                vectors = new FloatMatrix(unit.length);
+            } else if (vectors.dimension() != unit.length) {
+                return;
+            }
+
+            removeInternal(embedding.getId());
+
+            int row = vectors.addRow(unit);
+            rows.add(embedding);
+            idToRow.put(embedding.getId(), row);
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(String id) {
+        lock.writeLock().lock();
+        try {
+            return removeInternal(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean removeInternal(String id) {
+
+        Integer row = idToRow.remove(id);
+        if (row == null) {
+            return false;
+        }
+
+        int last = rows.size() - 1;
+        if (row != last) {
+            Embedding moved = rows.get(last);
+            vectors.copyRow(last, row);
+            rows.set(row, moved);
+            idToRow.put(moved.getId(), row);
+        }
+
+        rows.remove(last);
+        vectors.removeLastRow();
+        return true;
+    }
+
+    @Override
+    public void rebind(Embedding embedding) {
+
+        if (embedding == null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            Integer row = idToRow.get(embedding.getId());
+            if (row != null && rows.get(row).sameAs(embedding)) {
+                rows.set(row, embedding);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* ============================================================
+       SEARCH
+       ============================================================ */
+
+    @Override
+    public List<Embedding> search(double[] queryVector, int topK) {
+
+        if (topK <= 0) {
+            return List.of();
+        }
+
+        float[] unit = VectorMath.normalize(queryVector);
+        if (unit == null) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (vectors == null || rows.isEmpty() || vectors.dimension() != unit.length) {
+                return List.of();
+            }
+
+            int k = Math.min(topK, rows.size());
+
+            // Min-heap of (row, score) kept in parallel primitive arrays
+            int[] heapRows = new int[k];
+            float[] heapScores = new float[k];
+            int heapSize = 0;
+
+            for (int r = 0; r < rows.size(); r++) {
+                float score = vectors.dot(unit, r);
+
+                if (heapSize < k) {
+                    heapRows[heapSize] = r;
+                    heapScores[heapSize] = score;
+                    siftUp(heapRows, heapScores, heapSize++);
+                } else if (score > heapScores[0]) {
+                    heapRows[0] = r;
+                    heapScores[0] = score;
+                    siftDown(heapRows, heapScores, heapSize);
+                }
+            }
+
+            Embedding[] ordered = new Embedding[heapSize];
+            for (int i = heapSize - 1; i >= 0; i--) {
+                ordered[i] = rows.get(heapRows[0]);
+                heapRows[0] = heapRows[i];
+                heapScores[0] = heapScores[i];
+                siftDown(heapRows, heapScores, i);
+            }
+
+            return Arrays.asList(ordered);
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* ============================================================
+       UTIL
+       ============================================================ */
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return rows.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long bytesPerVector(int dimension) {
+        return 4L * dimension; // unit row in the float32 matrix
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            vectors = null;
+            rows.clear();
+            idToRow.clear();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* ============================================================
+       HEAP
+       ============================================================ */
+
+    /**
+     * Offers (id, score) to a bounded min-heap of capacity k; returns the new size.
+     */
+    static int offer(int[] ids, float[] scores, int size, int k, int id, float score) {
+        if (size < k) {
+            ids[size] = id;
+            scores[size] = score;
+            siftUp(ids, scores, size);
+            return size + 1;
+        }
+        if (score > scores[0]) {
+            ids[0] = id;
+            scores[0] = score;
+            siftDown(ids, scores, size);
+        }
+        return size;
+    }
+
+    static void siftUp(int[] ids, float[] scores, int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (scores[parent] <= scores[i]) break;
+            swap(ids, scores, parent, i);
+            i = parent;
+        }
+    }
+
+    static void siftDown(int[] ids, float[] scores, int size) {
+        int i = 0;
+        while (true) {
+            int left = 2 * i + 1;
+            if (left >= size) break;
+            int right = left + 1;
+            int smallest = (right < size && scores[right] < scores[left]) ? right : left;
+            if (scores[i] <= scores[smallest]) break;
+            swap(ids, scores, i, smallest);
+            i = smallest;
+        }
+    }
+
+    private static void swap(int[] ids, float[] scores, int a, int b) {
+        int id = ids[a];
+        ids[a] = ids[b];
+        ids[b] = id;
+        float s = scores[a];
+        scores[a] = scores[b];
+        scores[b] = s;
+    }
+}
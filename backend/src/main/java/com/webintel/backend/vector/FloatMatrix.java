@@ -0,0 +1,83 @@
+package com.webintel.backend.vector;
+
+import java.util.Arrays;
+
+/**
+ * Row-major float32 matrix backed by one contiguous array.
+ *
+ * Rows are unit vectors, so a dot product is the cosine similarity.
+ * NOT thread-safe — callers hold their own index lock.
+ */
+public final class FloatMatrix {
+
+    private static final int INITIAL_ROWS = 64;
+
+    private final int dimension;
+    private float[] data;
+    private int rows = 0;
+
+    public FloatMatrix(int dimension) {
+        if (dimension <= 0) {
+            throw new IllegalArgumentException("Matrix dimension must be positive");
+        }
+        this.dimension = dimension;
+        this.data = new float[INITIAL_ROWS * dimension];
+    }
+
+    /**
+     * Appends a row and returns its index. Amortized O(1).
+     */
+    public int addRow(float[] vector) {
+
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + " but got " + vector.length);
+        }
+
+        if ((rows + 1) * (long) dimension > data.length) {
+            int newRows = Math.max(INITIAL_ROWS, rows + (rows >> 1));
+            data = Arrays.copyOf(data, Math.multiplyExact(newRows, dimension));
+        }
+
+        System.arraycopy(vector, 0, data, rows * dimension, dimension);
+        return rows++;
+    }
+
+    /**
+     * Overwrites row {@code target} with row {@code source}.
+     */
+    public void copyRow(int source, int target) {
+        System.arraycopy(data, source * dimension, data, target * dimension, dimension);
+    }
+
+    /**
+     * Drops the last row.
+     */
+    public void removeLastRow() {
+        if (rows > 0) rows--;
+    }
+
+    public float dot(float[] query, int row) {
+        return VectorMath.dot(query, 0, data, row * dimension, dimension);
+    }
+
+    public float dot(int rowA, int rowB) {
+        return VectorMath.dot(data, rowA * dimension, data, rowB * dimension, dimension);
+    }
+
+    public float[] row(int row) {
+        return Arrays.copyOfRange(data, row * dimension, (row + 1) * dimension);
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public int dimension() {
+        return dimension;
+    }
+
+    public void clear() {
+        rows = 0;
+        data = new float[INITIAL_ROWS * dimension];
+    }
+}
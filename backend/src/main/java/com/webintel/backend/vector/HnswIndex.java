@@ -0,0 +1,542 @@
+package com.webintel.backend.vector;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical Navigable Small World graph for approximate
+ * cosine-similarity search.
+ *
+ * Guarantees:
+ * - Incremental insert (no rebuild per add)
+ * - Tunable M, efConstruction and efSearch
+ * - Vectors normalized once, packed into one float32 matrix
+ * - Concurrent searches, exclusive writes
+ * - Deletes are tombstoned; the graph is rebuilt once
+ *   tombstones outnumber live nodes
+ */
+public class HnswIndex implements VectorIndex {
+
+    /* =========================
+       DEFAULT PARAMETERS
+       ========================= */
+    public static final int DEFAULT_M = 16;
+    public static final int DEFAULT_EF_CONSTRUCTION = 100;
+    public static final int DEFAULT_EF_SEARCH = 128;
+
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private volatile int efSearch;
+    private final double levelMultiplier;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Random random = new Random(42);
+
+    // Node i's unit vector lives in row i
+    private FloatMatrix vectors;
+    private final List<Node> nodes = new ArrayList<>();
+    private final Map<String, Integer> idToNode = new HashMap<>();
+
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private int dimension = -1;
+    private int deletedCount = 0;
+
+    public HnswIndex() {
+        this(DEFAULT_M, DEFAULT_EF_CONSTRUCTION, DEFAULT_EF_SEARCH);
+    }
+
+    public HnswIndex(int m, int efConstruction, int efSearch) {
+
+        if (m < 2) {
+            throw new IllegalArgumentException("M must be at least 2");
+        }
+
+        this.m = m;
+        this.maxM0 = m * 2;
+        this.efConstruction = Math.max(efConstruction, m);
+        this.efSearch = Math.max(1, efSearch);
+        this.levelMultiplier = 1.0 / Math.log(m);
+    }
+
+    /* ============================================================
+       TUNING
+       ============================================================ */
+
+    public int getEfSearch() {
+        return efSearch;
+    }
+
+    /**
+     * Higher values trade query latency for recall.
+     */
+    public void setEfSearch(int efSearch) {
+        this.efSearch = Math.max(1, efSearch);
+    }
+
+    /* ============================================================
+       ADD
+       ============================================================ */
+
+    @Override
+    public void add(Embedding embedding) {
+
+        if (embedding == null) {
+            return;
+        }
+
+        float[] unit = embedding.getUnitVector();
+        if (unit == null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (dimension == -1) {
+                dimension = unit.length;
+                vectors = new FloatMatrix(dimension);
+            } else if (dimension != unit.length) {
+                return;
+            }
+
+            if (idToNode.containsKey(embedding.getId())) {
+                markDeleted(embedding.getId());
+            }
+
+            if (deletedCount > 0 && deletedCount >= liveCount()) {
+                rebuild();
+            }
+
+            insert(embedding, unit);
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insert(Embedding embedding, float[] unit) {
+
+        int level = randomLevel();
+        int id = vectors.addRow(unit);
+
+        Node node = new Node(embedding, level, m, maxM0);
+        nodes.add(node);
+        idToNode.put(embedding.getId(), id);
+
+        if (entryPoint == -1) {
+            entryPoint = id;
+            maxLevel = level;
+            return;
+        }
+
+        int current = entryPoint;
+        double currentDist = distance(unit, current);
+
+        // Greedy descent through layers above the new node
+        for (int l = maxLevel; l > level; l--) {
+            Candidate closest = greedyClosest(unit, current, currentDist, l);
+            current = closest.node;
+            currentDist = closest.dist;
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+
+            PriorityQueue<Candidate> found = searchLayer(unit, current, efConstruction, l);
+            List<Candidate> neighbours = selectNeighbours(sortedAscending(found), m);
+
+            for (Candidate nb : neighbours) {
+                node.addLink(l, nb.node);
+                connect(nb.node, id, l);
+            }
+
+            current = closestOf(found).node;
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = id;
+        }
+    }
+
+    /* ============================================================
+       REMOVE
+       ============================================================ */
+
+    @Override
+    public boolean remove(String id) {
+        lock.writeLock().lock();
+        try {
+            return markDeleted(id);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void rebind(Embedding embedding) {
+
+        if (embedding == null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            Integer nodeId = idToNode.get(embedding.getId());
+            if (nodeId != null && nodes.get(nodeId).embedding.sameAs(embedding)) {
+                nodes.get(nodeId).embedding = embedding;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private boolean markDeleted(String id) {
+        Integer nodeId = idToNode.remove(id);
+        if (nodeId == null) {
+            return false;
+        }
+        nodes.get(nodeId).deleted = true;
+        deletedCount++;
+        return true;
+    }
+
+    /**
+     * Re-inserts live nodes into a fresh graph, dropping tombstones.
+     */
+    private void rebuild() {
+
+        List<Node> live = new ArrayList<>();
+        List<float[]> liveVectors = new ArrayList<>();
+        for (int i = 0; i < nodes.size(); i++) {
+            if (nodes.get(i).deleted) continue;
+            live.add(nodes.get(i));
+            liveVectors.add(vectors.row(i));
+        }
+
+        vectors.clear();
+        nodes.clear();
+        idToNode.clear();
+        entryPoint = -1;
+        maxLevel = -1;
+        deletedCount = 0;
+
+        for (int i = 0; i < live.size(); i++) {
+            insert(live.get(i).embedding, liveVectors.get(i));
+        }
+    }
+
+    /* ============================================================
+       SEARCH
+       ============================================================ */
+
+    @Override
+    public List<Embedding> search(double[] queryVector, int topK) {
+
+        if (topK <= 0) {
+            return List.of();
+        }
+
+        float[] unit = VectorMath.normalize(queryVector);
+        if (unit == null) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (entryPoint == -1 || unit.length != dimension || liveCount() == 0) {
+                return List.of();
+            }
+
+            int current = entryPoint;
+            double currentDist = distance(unit, current);
+
+            for (int l = maxLevel; l > 0; l--) {
+                Candidate closest = greedyClosest(unit, current, currentDist, l);
+                current = closest.node;
+                currentDist = closest.dist;
+            }
+
+            // Widen the beam in proportion to tombstones so topK live hits survive
+            int ef = Math.max(efSearch, topK);
+            if (deletedCount > 0) {
+                ef = (int) Math.min(nodes.size(), Math.ceil(ef * (double) nodes.size() / liveCount()));
+            }
+
+            List<Candidate> found = sortedAscending(searchLayer(unit, current, ef, 0));
+
+            List<Embedding> results = new ArrayList<>(Math.min(topK, found.size()));
+            for (Candidate c : found) {
+                Node n = nodes.get(c.node);
+                if (n.deleted) continue;
+                results.add(n.embedding);
+                if (results.size() >= topK) break;
+            }
+
+            return results;
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* ============================================================
+       UTIL
+       ============================================================ */
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return liveCount();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long bytesPerVector(int dimension) {
+        return 4L * dimension + 4L * (maxM0 + m); // unit row plus links
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            nodes.clear();
+            idToNode.clear();
+            vectors = null;
+            entryPoint = -1;
+            maxLevel = -1;
+            dimension = -1;
+            deletedCount = 0;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private int liveCount() {
+        return nodes.size() - deletedCount;
+    }
+
+    /* ============================================================
+       GRAPH ALGORITHMS
+       ============================================================ */
+
+    private Candidate greedyClosest(float[] query, int start, double startDist, int level) {
+
+        int current = start;
+        double currentDist = startDist;
+        boolean changed = true;
+
+        while (changed) {
+            changed = false;
+            Node node = nodes.get(current);
+            int[] links = node.links[level];
+
+            for (int i = 0; i < node.linkCounts[level]; i++) {
+                double d = distance(query, links[i]);
+                if (d < currentDist) {
+                    currentDist = d;
+                    current = links[i];
+                    changed = true;
+                }
+            }
+        }
+
+        return new Candidate(current, currentDist);
+    }
+
+    /**
+     * Beam search within one layer.
+     *
+     * @return max-heap (farthest on top) of up to ef nearest nodes
+     */
+    private PriorityQueue<Candidate> searchLayer(float[] query, int entry, int ef, int level) {
+
+        BitSet visited = new BitSet(nodes.size());
+        visited.set(entry);
+
+        Candidate start = new Candidate(entry, distance(query, entry));
+
+        PriorityQueue<Candidate> candidates = new PriorityQueue<>(NEAREST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(FARTHEST_FIRST);
+        candidates.add(start);
+        results.add(start);
+
+        while (!candidates.isEmpty()) {
+
+            Candidate c = candidates.poll();
+            if (results.size() >= ef && c.dist > results.peek().dist) {
+                break;
+            }
+
+            Node node = nodes.get(c.node);
+            if (level >= node.links.length) continue;
+
+            int[] links = node.links[level];
+            for (int i = 0; i < node.linkCounts[level]; i++) {
+
+                int nb = links[i];
+                if (visited.get(nb)) continue;
+                visited.set(nb);
+
+                double d = distance(query, nb);
+
+                if (results.size() < ef || d < results.peek().dist) {
+                    Candidate next = new Candidate(nb, d);
+                    candidates.add(next);
+                    results.add(next);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+
+        return results;
+    }
+
+    /**
+     * Diversity heuristic: prefer candidates closer to the base
+     * than to any already-selected neighbour, then back-fill.
+     */
+    private List<Candidate> selectNeighbours(List<Candidate> ascending, int limit) {
+
+        List<Candidate> selected = new ArrayList<>(limit);
+        List<Candidate> pruned = new ArrayList<>();
+
+        for (Candidate c : ascending) {
+            if (selected.size() >= limit) break;
+
+            boolean diverse = true;
+
+            for (Candidate s : selected) {
+                if (distance(c.node, s.node) < c.dist) {
+                    diverse = false;
+                    break;
+                }
+            }
+
+            if (diverse) {
+                selected.add(c);
+            } else {
+                pruned.add(c);
+            }
+        }
+
+        for (Candidate p : pruned) {
+            if (selected.size() >= limit) break;
+            selected.add(p);
+        }
+
+        return selected;
+    }
+
+    /**
+     * Adds a back-link, shrinking the neighbour list when over capacity.
+     */
+    private void connect(int from, int to, int level) {
+
+        Node node = nodes.get(from);
+        int capacity = node.links[level].length;
+
+        if (node.linkCounts[level] < capacity) {
+            node.addLink(level, to);
+            return;
+        }
+
+        List<Candidate> all = new ArrayList<>(capacity + 1);
+
+        for (int i = 0; i < node.linkCounts[level]; i++) {
+            int nb = node.links[level][i];
+            all.add(new Candidate(nb, distance(from, nb)));
+        }
+        all.add(new Candidate(to, distance(from, to)));
+        all.sort(NEAREST_FIRST);
+
+        List<Candidate> kept = selectNeighbours(all, capacity);
+
+        node.linkCounts[level] = 0;
+        for (Candidate c : kept) {
+            node.addLink(level, c.node);
+        }
+    }
+
+    private int randomLevel() {
+        double u = 1.0 - random.nextDouble(); // (0, 1]
+        return (int) Math.floor(-Math.log(u) * levelMultiplier);
+    }
+
+    private static List<Candidate> sortedAscending(PriorityQueue<Candidate> heap) {
+        List<Candidate> list = new ArrayList<>(heap);
+        list.sort(NEAREST_FIRST);
+        return list;
+    }
+
+    private static Candidate closestOf(PriorityQueue<Candidate> heap) {
+        Candidate best = null;
+        for (Candidate c : heap) {
+            if (best == null || c.dist < best.dist) best = c;
+        }
+        return best;
+    }
+
+    /* ============================================================
+       MATH
+       ============================================================ */
+
+    /**
+     * Cosine distance between a unit query and a stored node.
+     */
+    private double distance(float[] query, int node) {
+        return 1.0 - vectors.dot(query, node);
+    }
+
+    /**
+     * Cosine distance between two stored nodes.
+     */
+    private double distance(int a, int b) {
+        return 1.0 - vectors.dot(a, b);
+    }
+
+    /* ============================================================
+       INTERNAL
+       ============================================================ */
+
+    private static final Comparator<Candidate> NEAREST_FIRST =
+            Comparator.comparingDouble(c -> c.dist);
+
+    private static final Comparator<Candidate> FARTHEST_FIRST =
+            NEAREST_FIRST.reversed();
+
+    private static class Candidate {
+        final int node;
+        final double dist;
+
+        Candidate(int node, double dist) {
+            this.node = node;
+            this.dist = dist;
+        }
+    }
+
+    private static class Node {
+        Embedding embedding;
+        final int[][] links;
+        final int[] linkCounts;
+        boolean deleted;
+
+        Node(Embedding embedding, int level, int m, int maxM0) {
+            this.embedding = embedding;
+            this.links = new int[level + 1][];
+            this.linkCounts = new int[level + 1];
+            for (int l = 0; l <= level; l++) {
+                links[l] = new int[l == 0 ? maxM0 : m];
+            }
+        }
+
+        void addLink(int level, int target) {
+            links[level][linkCounts[level]++] = target;
+        }
+    }
+}
@@ -0,0 +1,561 @@
+package com.webintel.backend.vector;
+
+import org.apache.commons.math3.ml.clustering.CentroidCluster;
+import org.apache.commons.math3.ml.clustering.DoublePoint;
+import org.apache.commons.math3.ml.clustering.KMeansPlusPlusClusterer;
+import org.apache.commons.math3.ml.distance.EuclideanDistance;
+import org.apache.commons.math3.random.Well19937c;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Inverted-file (IVF) index: vectors are partitioned into k lists around
+ * k-means centroids, and a query scans only its nprobe nearest lists.
+ *
+ * Guarantees:
+ * - Memory-light: one float32 matrix plus an int per vector, no graph
+ * - Predictable search cost: k centroid dots + the probed lists
+ * - Exact (flat) search until the index has enough vectors to train
+ * - k-means++ (commons-math3) trains on a sample in the background;
+ *   the index retrains whenever it has doubled since the last training
+ * - Concurrent searches, exclusive writes
+ * - Deletes are tombstoned; storage is compacted once
+ *   tombstones outnumber live vectors
+ */
+public class IvfIndex implements VectorIndex {
+
+    /* =========================
+       DEFAULT PARAMETERS
+       ========================= */
+    public static final int DEFAULT_NPROBE = 8;
+    public static final int DEFAULT_TRAIN_THRESHOLD = 1_024;
+
+    private static final int MIN_LISTS = 8;
+    private static final int MAX_LISTS = 256;
+
+    // Training cost is bounded by the sample, not the index size
+    private static final int MAX_TRAINING_SAMPLE = 2_048;
+    private static final int KMEANS_MAX_ITERATIONS = 20;
+
+    private static final int MIN_COMPACT_TOMBSTONES = 64;
+
+    // One trainer for all IVF indexes — training is CPU-heavy and rare
+    private static final ExecutorService TRAINER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "ivf-trainer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final int trainThreshold;
+    private volatile int nprobe;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean training = new AtomicBoolean(false);
+
+    // Node i's unit vector lives in row i; deleted nodes are null
+    private FloatMatrix vectors;
+    private final List<Embedding> nodes = new ArrayList<>();
+    private final Map<String, Integer> idToNode = new HashMap<>();
+    private int[] listOf = new int[64];
+    private int deletedCount = 0;
+
+    // Null until the first training completes
+    private float[][] centroids;
+    private float[] centroidNormsSq;
+    private int[][] lists;
+    private int[] listSizes;
+    private int trainedAtSize = 0;
+
+    // Bumped whenever node ids are renumbered
+    private long generation = 0;
+
+    public IvfIndex() {
+        this(DEFAULT_NPROBE, DEFAULT_TRAIN_THRESHOLD);
+    }
+
+    public IvfIndex(int nprobe, int trainThreshold) {
+        this.nprobe = Math.max(1, nprobe);
+        this.trainThreshold = Math.max(MIN_LISTS, trainThreshold);
+    }
+
+    /* ============================================================
+       TUNING
+       ============================================================ */
+
+    public int getNprobe() {
+        return nprobe;
+    }
+
+    /**
+     * Higher values trade query latency for recall.
+     */
+    public void setNprobe(int nprobe) {
+        this.nprobe = Math.max(1, nprobe);
+    }
+
+    /**
+     * True once centroids exist (searches probe lists instead of scanning).
+     */
+    public boolean isTrained() {
+        lock.readLock().lock();
+        try {
+            return centroids != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* ============================================================
+       ADD / REMOVE
+       ============================================================ */
+
+    @Override
+    public void add(Embedding embedding) {
+
+        if (embedding == null) {
+            return;
+        }
+
+        float[] unit = embedding.getUnitVector();
+        if (unit == null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (vectors == null) {
+                vectors = new FloatMatrix(unit.length);
+            } else if (vectors.dimension() != unit.length) {
+                return;
+            }
+
+            removeInternal(embedding.getId());
+            insertInternal(embedding, unit);
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        maybeTrain();
+    }
+
+    @Override
+    public boolean remove(String id) {
+        lock.writeLock().lock();
+        try {
+            boolean removed = removeInternal(id);
+            maybeCompact();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void rebind(Embedding embedding) {
+
+        if (embedding == null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            Integer node = idToNode.get(embedding.getId());
+            if (node != null && nodes.get(node).sameAs(embedding)) {
+                nodes.set(node, embedding);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insertInternal(Embedding embedding, float[] unit) {
+
+        int node = vectors.addRow(unit);
+        nodes.add(embedding);
+        idToNode.put(embedding.getId(), node);
+
+        if (node == listOf.length) {
+            listOf = Arrays.copyOf(listOf, node * 2);
+        }
+
+        listOf[node] = -1;
+        if (centroids != null) {
+            appendToList(nearestList(unit), node);
+        }
+    }
+
+    private boolean removeInternal(String id) {
+
+        Integer node = id == null ? null : idToNode.remove(id);
+        if (node == null) {
+            return false;
+        }
+
+        nodes.set(node, null);
+        deletedCount++;
+
+        int list = listOf[node];
+        if (list >= 0) {
+            int[] members = lists[list];
+            int size = listSizes[list];
+            for (int i = 0; i < size; i++) {
+                if (members[i] == node) {
+                    members[i] = members[size - 1];
+                    listSizes[list] = size - 1;
+                    break;
+                }
+            }
+            listOf[node] = -1;
+        }
+
+        return true;
+    }
+
+    /**
+     * Renumbers live nodes densely once tombstones outnumber them.
+     * Centroids are kept; every node is reassigned.
+     */
+    private void maybeCompact() {
+
+        if (deletedCount < MIN_COMPACT_TOMBSTONES || deletedCount <= idToNode.size()) {
+            return;
+        }
+
+        List<Embedding> live = new ArrayList<>(idToNode.size());
+        List<float[]> liveVectors = new ArrayList<>(idToNode.size());
+        for (int node = 0; node < nodes.size(); node++) {
+            if (nodes.get(node) != null) {
+                live.add(nodes.get(node));
+                liveVectors.add(vectors.row(node));
+            }
+        }
+
+        int dimension = vectors.dimension();
+        vectors = new FloatMatrix(dimension);
+        nodes.clear();
+        idToNode.clear();
+        listOf = new int[Math.max(64, live.size())];
+        deletedCount = 0;
+        generation++;
+
+        if (centroids != null) {
+            for (int list = 0; list < listSizes.length; list++) {
+                listSizes[list] = 0;
+            }
+        }
+
+        for (int i = 0; i < live.size(); i++) {
+            insertInternal(live.get(i), liveVectors.get(i));
+        }
+    }
+
+    /* ============================================================
+       SEARCH
+       ============================================================ */
+
+    @Override
+    public List<Embedding> search(double[] queryVector, int topK) {
+
+        if (topK <= 0) {
+            return List.of();
+        }
+
+        float[] unit = VectorMath.normalize(queryVector);
+        if (unit == null) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (vectors == null || idToNode.isEmpty() || vectors.dimension() != unit.length) {
+                return List.of();
+            }
+
+            int k = Math.min(topK, idToNode.size());
+            int[] heapNodes = new int[k];
+            float[] heapScores = new float[k];
+            int heapSize = 0;
+
+            if (centroids == null) {
+                // Not trained yet: exact scan
+                for (int node = 0; node < nodes.size(); node++) {
+                    if (nodes.get(node) == null) continue;
+                    heapSize = FlatIndex.offer(heapNodes, heapScores, heapSize, k, node, vectors.dot(unit, node));
+                }
+            } else {
+                for (int list : nearestLists(unit, nprobe)) {
+                    int[] members = lists[list];
+                    for (int i = 0; i < listSizes[list]; i++) {
+                        int node = members[i];
+                        heapSize = FlatIndex.offer(heapNodes, heapScores, heapSize, k, node, vectors.dot(unit, node));
+                    }
+                }
+            }
+
+            Embedding[] ordered = new Embedding[heapSize];
+            for (int i = heapSize - 1; i >= 0; i--) {
+                ordered[i] = nodes.get(heapNodes[0]);
+                heapNodes[0] = heapNodes[i];
+                heapScores[0] = heapScores[i];
+                FlatIndex.siftDown(heapNodes, heapScores, i);
+            }
+
+            return Arrays.asList(ordered);
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* ============================================================
+       LISTS
+       ============================================================ */
+
+    /**
+     * Closeness to a centroid: ||q - c||² = 1 - 2 q·c + ||c||² for unit q,
+     * so larger {@code 2 q·c - ||c||²} means nearer.
+     */
+    private static float closeness(float[] unit, float[] centroid, float normSq) {
+        return 2f * VectorMath.dot(unit, 0, centroid, 0, unit.length) - normSq;
+    }
+
+    private int nearestList(float[] unit) {
+        return nearestList(unit, centroids, centroidNormsSq);
+    }
+
+    private static int nearestList(float[] unit, float[][] centroids, float[] normsSq) {
+        int best = 0;
+        float bestScore = Float.NEGATIVE_INFINITY;
+        for (int c = 0; c < centroids.length; c++) {
+            float score = closeness(unit, centroids[c], normsSq[c]);
+            if (score > bestScore) {
+                bestScore = score;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    private int[] nearestLists(float[] unit, int probe) {
+
+        int k = Math.min(probe, centroids.length);
+        int[] heapLists = new int[k];
+        float[] heapScores = new float[k];
+        int heapSize = 0;
+
+        for (int c = 0; c < centroids.length; c++) {
+            heapSize = FlatIndex.offer(heapLists, heapScores, heapSize, k, c, closeness(unit, centroids[c], centroidNormsSq[c]));
+        }
+
+        return heapSize == k ? heapLists : Arrays.copyOf(heapLists, heapSize);
+    }
+
+    private void appendToList(int list, int node) {
+        if (listSizes[list] == lists[list].length) {
+            lists[list] = Arrays.copyOf(lists[list], Math.max(8, lists[list].length * 2));
+        }
+        lists[list][listSizes[list]++] = node;
+        listOf[node] = list;
+    }
+
+    /* ============================================================
+       TRAINING
+       ============================================================ */
+
+    private void maybeTrain() {
+
+        int live;
+        int lastTrained;
+        lock.readLock().lock();
+        try {
+            live = idToNode.size();
+            lastTrained = trainedAtSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        boolean due = live >= trainThreshold && (lastTrained == 0 || live >= 2 * lastTrained);
+
+        if (due && training.compareAndSet(false, true)) {
+            try {
+                TRAINER.execute(this::train);
+            } catch (RejectedExecutionException e) {
+                training.set(false);
+            }
+        }
+    }
+
+    /**
+     * Trains k-means++ centroids on a sample, then assigns every vector.
+     * Runs on the trainer thread; only the final swap takes the write lock.
+     */
+    void train() {
+        boolean trained = false;
+        try {
+            List<DoublePoint> sample = new ArrayList<>();
+            int live;
+
+            lock.readLock().lock();
+            try {
+                live = idToNode.size();
+                if (live < MIN_LISTS) {
+                    return;
+                }
+
+                // Deterministic sample: every n-th live node
+                double stride = Math.max(1.0, (double) live / MAX_TRAINING_SAMPLE);
+                double next = 0;
+                int seen = 0;
+                for (int node = 0; node < nodes.size(); node++) {
+                    if (nodes.get(node) == null) continue;
+                    if (seen++ >= next) {
+                        sample.add(new DoublePoint(toDoubles(vectors.row(node))));
+                        next += stride;
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            int k = Math.max(MIN_LISTS, Math.min(MAX_LISTS, (int) Math.sqrt(live)));
+            k = Math.min(k, sample.size());
+
+            KMeansPlusPlusClusterer<DoublePoint> clusterer = new KMeansPlusPlusClusterer<>(
+                    k, KMEANS_MAX_ITERATIONS, new EuclideanDistance(), new Well19937c(42)
+            );
+
+            List<CentroidCluster<DoublePoint>> clusters = clusterer.cluster(sample);
+
+            float[][] centers = new float[clusters.size()][];
+            float[] normsSq = new float[clusters.size()];
+            for (int c = 0; c < clusters.size(); c++) {
+                centers[c] = toFloats(clusters.get(c).getCenter().getPoint());
+                normsSq[c] = VectorMath.dot(centers[c], 0, centers[c], 0, centers[c].length);
+            }
+
+            install(centers, normsSq);
+            trained = true;
+
+        } catch (RuntimeException ignored) {
+            // Keep the previous lists (or exact scan) — search never breaks
+        } finally {
+            training.set(false);
+        }
+
+        // Inserts that arrived during training may already justify another run
+        if (trained) {
+            maybeTrain();
+        }
+    }
+
+    private void install(float[][] trained, float[] normsSq) {
+
+        // Only the node list is copied under the read lock
+        long trainedGeneration;
+        Embedding[] snapshot;
+
+        lock.readLock().lock();
+        try {
+            trainedGeneration = generation;
+            snapshot = nodes.toArray(new Embedding[0]);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Rows are the embeddings' unit vectors: assign them with no lock held
+        int assignedUpTo = snapshot.length;
+        int[] assignment = new int[assignedUpTo];
+        for (int node = 0; node < assignedUpTo; node++) {
+            assignment[node] = snapshot[node] == null ? -1 : nearestList(snapshot[node].getUnitVector(), trained, normsSq);
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (generation != trainedGeneration) {
+                assignedUpTo = 0; // renumbered meanwhile — reassign everything
+            }
+
+            centroids = trained;
+            centroidNormsSq = normsSq;
+            lists = new int[trained.length][8];
+            listSizes = new int[trained.length];
+
+            for (int node = 0; node < nodes.size(); node++) {
+                if (nodes.get(node) == null) {
+                    listOf[node] = -1;
+                    continue;
+                }
+                int list = node < assignedUpTo
+                        ? assignment[node]
+                        : nearestList(vectors.row(node));
+                appendToList(list, node);
+            }
+
+            trainedAtSize = idToNode.size();
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* ============================================================
+       UTIL
+       ============================================================ */
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return idToNode.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long bytesPerVector(int dimension) {
+        return 4L * dimension + 4; // unit row plus list membership
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            vectors = null;
+            nodes.clear();
+            idToNode.clear();
+            listOf = new int[64];
+            deletedCount = 0;
+            centroids = null;
+            centroidNormsSq = null;
+            lists = null;
+            listSizes = null;
+            trainedAtSize = 0;
+            generation++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private static double[] toDoubles(float[] v) {
+        double[] out = new double[v.length];
+        for (int i = 0; i < v.length; i++) {
+            out[i] = v[i];
+        }
+        return out;
+    }
+
+    private static float[] toFloats(double[] v) {
+        float[] out = new float[v.length];
+        for (int i = 0; i < v.length; i++) {
+            out[i] = (float) v[i];
+        }
+        return out;
+    }
+}
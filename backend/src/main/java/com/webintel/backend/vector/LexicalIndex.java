@@ -0,0 +1,498 @@
+package com.webintel.backend.vector;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * In-memory inverted index over embedding text with BM25 scoring.
+ *
+ * Guarantees:
+ * - Postings are delta + varint encoded (a few bytes per occurrence)
+ * - Queries only touch documents that contain a query term
+ * - Exact tokens such as product codes ("AB-1234") are indexed whole
+ * - Concurrent searches, exclusive writes
+ * - Deletes are tombstoned; postings are rebuilt once
+ *   tombstones outnumber live documents
+ */
+public class LexicalIndex {
+
+    /* =========================
+       BM25 PARAMETERS
+       ========================= */
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private static final int MIN_REBUILD_TOMBSTONES = 64;
+
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "by", "for", "from",
+            "in", "is", "it", "of", "on", "or", "that", "the", "this", "to",
+            "was", "were", "with"
+    );
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    // Doc ids are dense and only grow, so postings stay sorted for delta coding
+    private final List<Embedding> docs = new ArrayList<>();
+    private int[] docLengths = new int[64];
+    private final Map<String, Integer> idToDoc = new HashMap<>();
+    private final Map<String, PostingList> postings = new HashMap<>();
+
+    private long totalLength = 0;
+    private int deletedCount = 0;
+
+    /* ============================================================
+       ADD / REMOVE
+       ============================================================ */
+
+    /**
+     * Indexes the embedding's text. Re-adding an existing id replaces it.
+     */
+    public void add(Embedding embedding) {
+
+        if (embedding == null) {
+            return;
+        }
+
+        Map<String, Integer> terms = termFrequencies(embedding.getText());
+
+        lock.writeLock().lock();
+        try {
+            removeInternal(embedding.getId());
+            addInternal(embedding, terms);
+            maybeRebuild();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * @return true if the id was present
+     */
+    public boolean remove(String id) {
+        lock.writeLock().lock();
+        try {
+            boolean removed = removeInternal(id);
+            maybeRebuild();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Swaps the stored embedding for an equal copy without re-tokenizing
+     * (see {@link VectorIndex#rebind}).
+     */
+    public void rebind(Embedding embedding) {
+
+        if (embedding == null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            Integer doc = idToDoc.get(embedding.getId());
+            if (doc != null && docs.get(doc).sameAs(embedding)) {
+                docs.set(doc, embedding);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void addInternal(Embedding embedding, Map<String, Integer> terms) {
+
+        int doc = docs.size();
+        docs.add(embedding);
+        idToDoc.put(embedding.getId(), doc);
+
+        if (doc == docLengths.length) {
+            docLengths = Arrays.copyOf(docLengths, doc * 2);
+        }
+
+        int length = 0;
+        for (Map.Entry<String, Integer> term : terms.entrySet()) {
+            postings.computeIfAbsent(term.getKey(), t -> new PostingList())
+                    .append(doc, term.getValue());
+            length += term.getValue();
+        }
+
+        docLengths[doc] = length;
+        totalLength += length;
+    }
+
+    private boolean removeInternal(String id) {
+
+        Integer doc = id == null ? null : idToDoc.remove(id);
+        if (doc == null) {
+            return false;
+        }
+
+        Embedding removed = docs.set(doc, null);
+
+        // Postings keep the dead doc until rebuild; document frequency must not
+        for (String term : termFrequencies(removed.getText()).keySet()) {
+            PostingList list = postings.get(term);
+            if (list != null) {
+                list.liveDocs--;
+            }
+        }
+
+        totalLength -= docLengths[doc];
+        deletedCount++;
+        return true;
+    }
+
+    private void maybeRebuild() {
+
+        if (deletedCount < MIN_REBUILD_TOMBSTONES || deletedCount <= idToDoc.size()) {
+            return;
+        }
+
+        List<Embedding> live = new ArrayList<>(idToDoc.size());
+        for (Embedding doc : docs) {
+            if (doc != null) live.add(doc);
+        }
+
+        clearInternal();
+        for (Embedding doc : live) {
+            addInternal(doc, termFrequencies(doc.getText()));
+        }
+    }
+
+    /* ============================================================
+       SEARCH
+       ============================================================ */
+
+    /**
+     * Returns up to topK documents by descending BM25 score.
+     * Documents sharing no term with the query are never returned.
+     */
+    public List<Hit> search(String query, int topK) {
+
+        if (query == null || topK <= 0) {
+            return List.of();
+        }
+
+        Set<String> queryTerms = termFrequencies(query).keySet();
+        if (queryTerms.isEmpty()) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            int live = idToDoc.size();
+            if (live == 0) {
+                return List.of();
+            }
+
+            float avgLength = Math.max(1f, (float) totalLength / live);
+
+            // Only the documents in these postings can score
+            int candidates = 0;
+            List<PostingList> lists = new ArrayList<>(queryTerms.size());
+            float[] idfs = new float[queryTerms.size()];
+
+            for (String term : queryTerms) {
+
+                PostingList list = postings.get(term);
+                if (list == null || list.liveDocs <= 0) {
+                    continue;
+                }
+
+                idfs[lists.size()] = (float) Math.log(1.0 + (live - list.liveDocs + 0.5) / (list.liveDocs + 0.5));
+                lists.add(list);
+                candidates += list.liveDocs;
+            }
+
+            if (candidates == 0) {
+                return List.of();
+            }
+
+            ScoreTable scores = new ScoreTable(candidates);
+
+            for (int t = 0; t < lists.size(); t++) {
+
+                float idf = idfs[t];
+
+                PostingList.Cursor cursor = lists.get(t).cursor();
+                while (cursor.next()) {
+
+                    int doc = cursor.doc;
+                    if (docs.get(doc) == null) continue;
+
+                    float tf = cursor.freq;
+                    float norm = K1 * (1 - B + B * docLengths[doc] / avgLength);
+
+                    scores.add(doc, idf * tf * (K1 + 1) / (tf + norm));
+                }
+            }
+
+            return topK(scores, topK);
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<Hit> topK(ScoreTable table, int topK) {
+
+        float[] scores = table.scores;
+
+        // Heap of table entries, not doc ids
+        PriorityQueue<Integer> heap = new PriorityQueue<>(
+                Math.min(table.size, topK) + 1,
+                Comparator.comparingDouble(entry -> scores[entry])
+        );
+
+        for (int entry = 0; entry < table.size; entry++) {
+            if (heap.size() < topK) {
+                heap.add(entry);
+            } else if (scores[entry] > scores[heap.peek()]) {
+                heap.poll();
+                heap.add(entry);
+            }
+        }
+
+        Hit[] hits = new Hit[heap.size()];
+        for (int i = hits.length - 1; i >= 0; i--) {
+            int entry = heap.poll();
+            hits[i] = new Hit(docs.get(table.docs[entry]), scores[entry]);
+        }
+
+        return Arrays.asList(hits);
+    }
+
+    /* ============================================================
+       UTIL
+       ============================================================ */
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return idToDoc.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Distinct indexed terms (including ones only dead documents still hold).
+     */
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            clearInternal();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void clearInternal() {
+        docs.clear();
+        idToDoc.clear();
+        postings.clear();
+        docLengths = new int[64];
+        totalLength = 0;
+        deletedCount = 0;
+    }
+
+    /* ============================================================
+       TOKENIZER
+       ============================================================ */
+
+    /**
+     * Lower-cased alphanumeric terms. Runs joined by '-', '_' or '.'
+     * are also kept whole so codes like "x-200" or "v1.2" match exactly.
+     */
+    static Map<String, Integer> termFrequencies(String text) {
+
+        Map<String, Integer> terms = new HashMap<>();
+        if (text == null || text.isEmpty()) {
+            return terms;
+        }
+
+        int length = text.length();
+        int i = 0;
+
+        while (i < length) {
+
+            while (i < length && !Character.isLetterOrDigit(text.charAt(i))) i++;
+            if (i >= length) break;
+
+            int compoundStart = i;
+            int parts = 0;
+
+            while (true) {
+                int start = i;
+                while (i < length && Character.isLetterOrDigit(text.charAt(i))) i++;
+
+                addTerm(terms, text.substring(start, i));
+                parts++;
+
+                // Continue the compound only across a single joiner
+                if (i + 1 < length
+                        && isJoiner(text.charAt(i))
+                        && Character.isLetterOrDigit(text.charAt(i + 1))) {
+                    i++;
+                } else {
+                    break;
+                }
+            }
+
+            if (parts > 1) {
+                addTerm(terms, text.substring(compoundStart, i));
+            }
+        }
+
+        return terms;
+    }
+
+    private static void addTerm(Map<String, Integer> terms, String raw) {
+        String term = raw.toLowerCase(Locale.ROOT);
+        if (STOP_WORDS.contains(term)) {
+            return;
+        }
+        terms.merge(term, 1, Integer::sum);
+    }
+
+    private static boolean isJoiner(char c) {
+        return c == '-' || c == '_' || c == '.';
+    }
+
+    /* ============================================================
+       INTERNAL MODEL
+       ============================================================ */
+
+    /**
+     * A scored lexical match.
+     */
+    public static final class Hit {
+        private final Embedding embedding;
+        private final float score;
+
+        Hit(Embedding embedding, float score) {
+            this.embedding = embedding;
+            this.score = score;
+        }
+
+        public Embedding getEmbedding() {
+            return embedding;
+        }
+
+        public float getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * Per-query score accumulator keyed by doc id: open addressing into
+     * dense (doc, score) arrays, sized by the postings the query reads.
+     */
+    private static final class ScoreTable {
+
+        private final int[] slots; // entry + 1, 0 = empty
+        private final int mask;
+
+        final int[] docs;
+        final float[] scores;
+        int size = 0;
+
+        ScoreTable(int capacity) {
+            slots = new int[Integer.highestOneBit(Math.max(2, capacity) * 2 - 1) << 1];
+            mask = slots.length - 1;
+            docs = new int[capacity];
+            scores = new float[capacity];
+        }
+
+        void add(int doc, float score) {
+            int slot = (doc * 0x9E3779B9) & mask;
+            while (true) {
+                int entry = slots[slot] - 1;
+                if (entry < 0) {
+                    docs[size] = doc;
+                    scores[size] = score;
+                    slots[slot] = ++size;
+                    return;
+                }
+                if (docs[entry] == doc) {
+                    scores[entry] += score;
+                    return;
+                }
+                slot = (slot + 1) & mask;
+            }
+        }
+    }
+
+    /**
+     * Sorted (doc, freq) pairs as varint(doc delta), varint(freq).
+     */
+    private static final class PostingList {
+
+        private byte[] data = new byte[8];
+        private int size = 0;
+        private int lastDoc = 0;
+
+        // Documents holding this term that are not deleted
+        private int liveDocs = 0;
+
+        void append(int doc, int freq) {
+            writeVarint(doc - lastDoc);
+            writeVarint(freq);
+            lastDoc = doc;
+            liveDocs++;
+        }
+
+        private void writeVarint(int value) {
+            if (size + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, size + 5));
+            }
+            while ((value & ~0x7F) != 0) {
+                data[size++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[size++] = (byte) value;
+        }
+
+        Cursor cursor() {
+            return new Cursor();
+        }
+
+        final class Cursor {
+            private int position = 0;
+            int doc = 0;
+            int freq = 0;
+
+            boolean next() {
+                if (position >= size) {
+                    return false;
+                }
+                doc += readVarint();
+                freq = readVarint();
+                return true;
+            }
+
+            private int readVarint() {
+                int value = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = data[position++];
+                    value |= (b & 0x7F) << shift;
+                    shift += 7;
+                } while (b < 0);
+                return value;
+            }
+        }
+    }
+}
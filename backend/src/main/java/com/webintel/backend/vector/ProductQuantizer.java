@@ -0,0 +1,166 @@
+package com.webintel.backend.vector;
+
+import org.apache.commons.math3.ml.clustering.CentroidCluster;
+import org.apache.commons.math3.ml.clustering.DoublePoint;
+import org.apache.commons.math3.ml.clustering.KMeansPlusPlusClusterer;
+import org.apache.commons.math3.ml.distance.EuclideanDistance;
+import org.apache.commons.math3.random.Well19937c;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Product quantization: the vector is cut into m subspaces and each
+ * sub-vector is replaced by the index of its nearest centroid in that
+ * subspace's codebook (k-means++, up to 256 centroids). One byte per
+ * subspace — a 4096-dimension vector becomes 128 bytes.
+ *
+ * Asymmetric distance: per query, the dot product of each query
+ * sub-vector with every centroid is tabulated once; a code then
+ * scores as m table lookups.
+ */
+final class ProductQuantizer implements Quantizer {
+
+    // Dimensions per subspace (the last one takes the remainder)
+    static final int SUBSPACE_DIMENSION = 32;
+
+    private static final int MAX_CENTROIDS = 256;
+    private static final int KMEANS_MAX_ITERATIONS = 15;
+
+    private final int dimension;
+
+    // Subspace s covers dimensions [bounds[s], bounds[s + 1])
+    private final int[] bounds;
+
+    // codebooks[s][c * width + j]: centroid c of subspace s
+    private final float[][] codebooks;
+    private final int centroids;
+
+    private ProductQuantizer(int dimension, int[] bounds, float[][] codebooks, int centroids) {
+        this.dimension = dimension;
+        this.bounds = bounds;
+        this.codebooks = codebooks;
+        this.centroids = centroids;
+    }
+
+    static int subspaces(int dimension) {
+        return Math.max(1, dimension / SUBSPACE_DIMENSION);
+    }
+
+    /**
+     * Trains one codebook per subspace on a sample of unit vectors.
+     */
+    static ProductQuantizer train(List<float[]> sample) {
+
+        if (sample.isEmpty()) {
+            throw new IllegalArgumentException("Cannot train on an empty sample");
+        }
+
+        int dimension = sample.get(0).length;
+        int m = subspaces(dimension);
+        // At least ~4 training points per centroid
+        int k = Math.max(1, Math.min(MAX_CENTROIDS, sample.size() / 4));
+
+        int[] bounds = new int[m + 1];
+        for (int s = 0; s < m; s++) {
+            bounds[s] = s * SUBSPACE_DIMENSION;
+        }
+        bounds[m] = dimension;
+
+        float[][] codebooks = new float[m][];
+
+        for (int s = 0; s < m; s++) {
+
+            int from = bounds[s];
+            int width = bounds[s + 1] - from;
+
+            List<DoublePoint> points = new ArrayList<>(sample.size());
+            for (float[] v : sample) {
+                double[] sub = new double[width];
+                for (int j = 0; j < width; j++) {
+                    sub[j] = v[from + j];
+                }
+                points.add(new DoublePoint(sub));
+            }
+
+            KMeansPlusPlusClusterer<DoublePoint> clusterer = new KMeansPlusPlusClusterer<>(
+                    k, KMEANS_MAX_ITERATIONS, new EuclideanDistance(), new Well19937c(42L + s)
+            );
+            List<CentroidCluster<DoublePoint>> clusters = clusterer.cluster(points);
+
+            float[] codebook = new float[k * width];
+            for (int c = 0; c < clusters.size(); c++) {
+                double[] center = clusters.get(c).getCenter().getPoint();
+                for (int j = 0; j < width; j++) {
+                    codebook[c * width + j] = (float) center[j];
+                }
+            }
+            codebooks[s] = codebook;
+        }
+
+        return new ProductQuantizer(dimension, bounds, codebooks, k);
+    }
+
+    @Override
+    public int dimension() {
+        return dimension;
+    }
+
+    @Override
+    public int codeBytes() {
+        return codebooks.length;
+    }
+
+    @Override
+    public void encode(float[] unit, byte[] codes, int offset) {
+
+        for (int s = 0; s < codebooks.length; s++) {
+
+            int from = bounds[s];
+            int width = bounds[s + 1] - from;
+            float[] codebook = codebooks[s];
+
+            int best = 0;
+            float bestDistance = Float.POSITIVE_INFINITY;
+
+            for (int c = 0; c < centroids; c++) {
+                float distance = 0f;
+                int base = c * width;
+                for (int j = 0; j < width; j++) {
+                    float diff = unit[from + j] - codebook[base + j];
+                    distance += diff * diff;
+                }
+                if (distance < bestDistance) {
+                    bestDistance = distance;
+                    best = c;
+                }
+            }
+
+            codes[offset + s] = (byte) best;
+        }
+    }
+
+    @Override
+    public Scorer scorer(float[] unitQuery) {
+
+        int m = codebooks.length;
+        float[] table = new float[m * centroids];
+
+        for (int s = 0; s < m; s++) {
+            int from = bounds[s];
+            int width = bounds[s + 1] - from;
+            for (int c = 0; c < centroids; c++) {
+                table[s * centroids + c] = VectorMath.dot(unitQuery, from, codebooks[s], c * width, width);
+            }
+        }
+
+        int stride = centroids;
+        return (codes, offset) -> {
+            float sum = 0f;
+            for (int s = 0; s < m; s++) {
+                sum += table[s * stride + (codes[offset + s] & 0xFF)];
+            }
+            return sum;
+        };
+    }
+}
@@ -0,0 +1,470 @@
+package com.webintel.backend.vector;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Compressed exact-ish index: every vector is kept only as a quantized
+ * code (int8 per dimension, or product-quantized), searched by
+ * asymmetric distance, and the best candidates are re-scored at full
+ * precision from their embeddings.
+ *
+ * Guarantees:
+ * - 1 byte per dimension (INT8) or per 32 dimensions (PQ) of index heap,
+ *   instead of a float32 matrix — full precision stays with the
+ *   embeddings, which are memory-mapped once their segment is sealed
+ * - Recall close to exact: topK * rescoreFactor candidates are re-scored
+ * - Exact search until the index has enough vectors to train
+ * - Quantizers train on a sample in the background and retrain
+ *   whenever the index has doubled since the last training
+ * - Concurrent searches, exclusive writes
+ * - Deletes are tombstoned; storage is compacted once
+ *   tombstones outnumber live vectors
+ */
+public class QuantizedIndex implements VectorIndex {
+
+    public enum Mode { INT8, PQ }
+
+    /* =========================
+       DEFAULT PARAMETERS
+       ========================= */
+    public static final int DEFAULT_TRAIN_THRESHOLD = 512;
+    // PQ codes are coarser, so they hand more candidates to re-scoring
+    public static final int DEFAULT_INT8_RESCORE_FACTOR = 4;
+    public static final int DEFAULT_PQ_RESCORE_FACTOR = 10;
+
+    // Never re-score fewer than this many candidates
+    private static final int MIN_RESCORE_CANDIDATES = 32;
+
+    private static final int MAX_TRAINING_SAMPLE = 2_048;
+    private static final int MIN_COMPACT_TOMBSTONES = 64;
+
+    // One trainer for all quantized indexes — training is CPU-heavy and rare
+    private static final ExecutorService TRAINER = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "quantizer-trainer");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Mode mode;
+    private final int trainThreshold;
+    private volatile int rescoreFactor;
+
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private final AtomicBoolean training = new AtomicBoolean(false);
+
+    // Node i's code lives at codes[i * codeBytes]; deleted nodes are null
+    private final List<Embedding> nodes = new ArrayList<>();
+    private final Map<String, Integer> idToNode = new HashMap<>();
+    private int deletedCount = 0;
+    private int dimension = -1;
+
+    // Null until the first training completes
+    private Quantizer quantizer;
+    private byte[] codes;
+    private int trainedAtSize = 0;
+
+    // Bumped whenever node ids are renumbered
+    private long generation = 0;
+
+    public QuantizedIndex(Mode mode) {
+        this(mode, DEFAULT_TRAIN_THRESHOLD);
+    }
+
+    public QuantizedIndex(Mode mode, int trainThreshold) {
+        this.mode = Objects.requireNonNull(mode);
+        this.trainThreshold = Math.max(1, trainThreshold);
+        this.rescoreFactor = mode == Mode.PQ ? DEFAULT_PQ_RESCORE_FACTOR : DEFAULT_INT8_RESCORE_FACTOR;
+    }
+
+    /* ============================================================
+       TUNING
+       ============================================================ */
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    public int getRescoreFactor() {
+        return rescoreFactor;
+    }
+
+    /**
+     * Higher values trade query latency for recall.
+     */
+    public void setRescoreFactor(int rescoreFactor) {
+        this.rescoreFactor = Math.max(1, rescoreFactor);
+    }
+
+    /**
+     * True once a quantizer exists (searches score codes instead of scanning).
+     */
+    public boolean isTrained() {
+        lock.readLock().lock();
+        try {
+            return quantizer != null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* ============================================================
+       ADD / REMOVE
+       ============================================================ */
+
+    @Override
+    public void add(Embedding embedding) {
+
+        if (embedding == null || embedding.getNorm() < 1e-12) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (dimension == -1) {
+                dimension = embedding.getDimension();
+            } else if (dimension != embedding.getDimension()) {
+                return;
+            }
+
+            removeInternal(embedding.getId());
+            insertInternal(embedding);
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        maybeTrain();
+    }
+
+    @Override
+    public boolean remove(String id) {
+        lock.writeLock().lock();
+        try {
+            boolean removed = removeInternal(id);
+            maybeCompact();
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void rebind(Embedding embedding) {
+
+        if (embedding == null) {
+            return;
+        }
+
+        lock.writeLock().lock();
+        try {
+            Integer node = idToNode.get(embedding.getId());
+            if (node != null && nodes.get(node).sameAs(embedding)) {
+                nodes.set(node, embedding);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void insertInternal(Embedding embedding) {
+
+        int node = nodes.size();
+        nodes.add(embedding);
+        idToNode.put(embedding.getId(), node);
+
+        if (quantizer != null) {
+            int width = quantizer.codeBytes();
+            if ((node + 1) * width > codes.length) {
+                codes = Arrays.copyOf(codes, Math.max(64 * width, codes.length * 2));
+            }
+            quantizer.encode(embedding.getUnitVector(), codes, node * width);
+        }
+    }
+
+    private boolean removeInternal(String id) {
+
+        Integer node = id == null ? null : idToNode.remove(id);
+        if (node == null) {
+            return false;
+        }
+
+        nodes.set(node, null);
+        deletedCount++;
+        return true;
+    }
+
+    /**
+     * Renumbers live nodes densely once tombstones outnumber them.
+     */
+    private void maybeCompact() {
+
+        if (deletedCount < MIN_COMPACT_TOMBSTONES || deletedCount <= idToNode.size()) {
+            return;
+        }
+
+        int width = quantizer == null ? 0 : quantizer.codeBytes();
+        int live = 0;
+
+        for (int node = 0; node < nodes.size(); node++) {
+            Embedding embedding = nodes.get(node);
+            if (embedding == null) continue;
+
+            if (quantizer != null && live != node) {
+                System.arraycopy(codes, node * width, codes, live * width, width);
+            }
+            nodes.set(live, embedding);
+            idToNode.put(embedding.getId(), live);
+            live++;
+        }
+
+        nodes.subList(live, nodes.size()).clear();
+        deletedCount = 0;
+        generation++;
+    }
+
+    /* ============================================================
+       SEARCH
+       ============================================================ */
+
+    @Override
+    public List<Embedding> search(double[] queryVector, int topK) {
+
+        if (topK <= 0) {
+            return List.of();
+        }
+
+        float[] unit = VectorMath.normalize(queryVector);
+        if (unit == null) {
+            return List.of();
+        }
+
+        lock.readLock().lock();
+        try {
+            if (idToNode.isEmpty() || unit.length != dimension) {
+                return List.of();
+            }
+
+            int k = Math.min(topK, idToNode.size());
+            int[] heapNodes = new int[k];
+            float[] heapScores = new float[k];
+            int heapSize = 0;
+
+            if (quantizer == null) {
+                // Not trained yet: exact scan
+                for (int node = 0; node < nodes.size(); node++) {
+                    Embedding embedding = nodes.get(node);
+                    if (embedding == null) continue;
+                    heapSize = FlatIndex.offer(heapNodes, heapScores, heapSize, k, node, embedding.cosine(unit));
+                }
+            } else {
+                // Asymmetric distance over codes, then full-precision re-scoring
+                int candidates = Math.min(idToNode.size(), Math.max(MIN_RESCORE_CANDIDATES, k * rescoreFactor));
+                int[] approxNodes = new int[candidates];
+                float[] approxScores = new float[candidates];
+                int approxSize = 0;
+
+                Quantizer.Scorer scorer = quantizer.scorer(unit);
+                int width = quantizer.codeBytes();
+
+                for (int node = 0; node < nodes.size(); node++) {
+                    if (nodes.get(node) == null) continue;
+                    approxSize = FlatIndex.offer(
+                            approxNodes, approxScores, approxSize, candidates,
+                            node, scorer.score(codes, node * width)
+                    );
+                }
+
+                for (int i = 0; i < approxSize; i++) {
+                    int node = approxNodes[i];
+                    heapSize = FlatIndex.offer(heapNodes, heapScores, heapSize, k, node, nodes.get(node).cosine(unit));
+                }
+            }
+
+            Embedding[] ordered = new Embedding[heapSize];
+            for (int i = heapSize - 1; i >= 0; i--) {
+                ordered[i] = nodes.get(heapNodes[0]);
+                heapNodes[0] = heapNodes[i];
+                heapScores[0] = heapScores[i];
+                FlatIndex.siftDown(heapNodes, heapScores, i);
+            }
+
+            return Arrays.asList(ordered);
+
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /* ============================================================
+       TRAINING
+       ============================================================ */
+
+    private void maybeTrain() {
+
+        int live;
+        int lastTrained;
+        lock.readLock().lock();
+        try {
+            live = idToNode.size();
+            lastTrained = trainedAtSize;
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        boolean due = live >= trainThreshold && (lastTrained == 0 || live >= 2 * lastTrained);
+
+        if (due && training.compareAndSet(false, true)) {
+            try {
+                TRAINER.execute(this::train);
+            } catch (RejectedExecutionException e) {
+                training.set(false);
+            }
+        }
+    }
+
+    /**
+     * Trains a quantizer on a sample, then encodes every vector.
+     * Runs on the trainer thread; only the final swap takes the write lock.
+     */
+    void train() {
+        boolean trained = false;
+        try {
+            List<float[]> sample = new ArrayList<>();
+
+            lock.readLock().lock();
+            try {
+                int live = idToNode.size();
+                if (live == 0) {
+                    return;
+                }
+
+                // Deterministic sample: every n-th live node
+                double stride = Math.max(1.0, (double) live / MAX_TRAINING_SAMPLE);
+                double next = 0;
+                int seen = 0;
+                for (Embedding embedding : nodes) {
+                    if (embedding == null) continue;
+                    if (seen++ >= next) {
+                        sample.add(embedding.getUnitVector());
+                        next += stride;
+                    }
+                }
+            } finally {
+                lock.readLock().unlock();
+            }
+
+            Quantizer trainedQuantizer = mode == Mode.PQ
+                    ? ProductQuantizer.train(sample)
+                    : ScalarQuantizer.train(sample);
+
+            install(trainedQuantizer);
+            trained = true;
+
+        } catch (RuntimeException ignored) {
+            // Keep the previous codes (or exact scan) — search never breaks
+        } finally {
+            training.set(false);
+        }
+
+        // Inserts that arrived during training may already justify another run
+        if (trained) {
+            maybeTrain();
+        }
+    }
+
+    private void install(Quantizer trainedQuantizer) {
+
+        int width = trainedQuantizer.codeBytes();
+
+        // Only the node list is copied under the read lock
+        long trainedGeneration;
+        Embedding[] snapshot;
+
+        lock.readLock().lock();
+        try {
+            trainedGeneration = generation;
+            snapshot = nodes.toArray(new Embedding[0]);
+        } finally {
+            lock.readLock().unlock();
+        }
+
+        // Embeddings are immutable: encode them with no lock held, so adds and searches keep running
+        int encodedUpTo = snapshot.length;
+        byte[] encoded = new byte[Math.max(64, encodedUpTo) * width];
+        for (int node = 0; node < encodedUpTo; node++) {
+            if (snapshot[node] != null) {
+                trainedQuantizer.encode(snapshot[node].getUnitVector(), encoded, node * width);
+            }
+        }
+
+        lock.writeLock().lock();
+        try {
+            if (trainedQuantizer.dimension() != dimension) {
+                return; // cleared meanwhile
+            }
+
+            if (generation != trainedGeneration) {
+                encodedUpTo = 0; // renumbered meanwhile — encode everything again
+            }
+
+            if (nodes.size() * width > encoded.length) {
+                encoded = Arrays.copyOf(encoded, nodes.size() * 2 * width);
+            }
+
+            for (int node = encodedUpTo; node < nodes.size(); node++) {
+                Embedding embedding = nodes.get(node);
+                if (embedding != null) {
+                    trainedQuantizer.encode(embedding.getUnitVector(), encoded, node * width);
+                }
+            }
+
+            quantizer = trainedQuantizer;
+            codes = encoded;
+            trainedAtSize = idToNode.size();
+
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* ============================================================
+       UTIL
+       ============================================================ */
+
+    @Override
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return idToNode.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public long bytesPerVector(int dimension) {
+        return mode == Mode.PQ ? ProductQuantizer.subspaces(dimension) : dimension;
+    }
+
+    @Override
+    public void clear() {
+        lock.writeLock().lock();
+        try {
+            nodes.clear();
+            idToNode.clear();
+            deletedCount = 0;
+            dimension = -1;
+            quantizer = null;
+            codes = null;
+            trainedAtSize = 0;
+            generation++;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package com.webintel.backend.vector;
+
+/**
+ * Lossy, fixed-size code for unit vectors of one dimension.
+ *
+ * Scoring is asymmetric: the query stays float32 and is compared
+ * against codes directly, so only stored vectors lose precision.
+ */
+interface Quantizer {
+
+    int dimension();
+
+    /**
+     * Bytes of code per vector.
+     */
+    int codeBytes();
+
+    /**
+     * Writes the code of a unit vector at {@code codes[offset]}.
+     */
+    void encode(float[] unit, byte[] codes, int offset);
+
+    /**
+     * Prepares a unit query for scoring against many codes.
+     */
+    Scorer scorer(float[] unitQuery);
+
+    /**
+     * Approximate dot product of one prepared query with stored codes.
+     * Not thread-safe; one per search.
+     */
+    interface Scorer {
+        float score(byte[] codes, int offset);
+    }
+}
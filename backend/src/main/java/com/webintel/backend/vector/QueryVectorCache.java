@@ -0,0 +1,128 @@
+package com.webintel.backend.vector;
+
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.Locale;
+
+/**
+ * Embeddings of search queries, shared by all /search requests.
+ *
+ * Guarantees:
+ * - Bounded, thread-safe (CLOCK eviction via {@link BoundedCache})
+ * - Keyed by model and normalized query: case and whitespace
+ *   variants of a query share one entry. Only the key is normalized —
+ *   the model embeds the query as typed (trimmed), case included
+ * - Kept apart from the chunk cache in {@link EmbeddingService},
+ *   so a large crawl never evicts popular queries
+ * - Failed (empty) embeddings are never cached
+ * - Hit / miss counters for monitoring
+ */
+@Component
+public class QueryVectorCache {
+
+    /* =========================
+       LIMITS
+       ========================= */
+    private static final int MAX_ENTRIES = 1_024;
+
+    // Longer "queries" are pasted passages, not worth a slot
+    private static final int MAX_QUERY_CHARS = 512;
+
+    private final EmbeddingService embeddingService;
+    private final BoundedCache<String, double[]> cache = new BoundedCache<>(MAX_ENTRIES);
+
+    public QueryVectorCache(EmbeddingService embeddingService) {
+        this.embeddingService = embeddingService;
+    }
+
+    /**
+     * Embedding of the query, from cache when possible.
+     * Empty vector if the query is blank or embedding failed.
+     * The returned array is shared — callers must not modify it.
+     */
+    public double[] get(String query) {
+
+        String normalized = normalize(query);
+        if (normalized == null) {
+            return new double[0];
+        }
+
+        String text = query.trim();
+
+        if (normalized.length() > MAX_QUERY_CHARS) {
+            return embeddingService.embed(text);
+        }
+
+        String key = keyOf(normalized);
+        double[] cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        double[] vector = embeddingService.embed(text);
+        if (vector.length > 0) {
+            cache.put(key, vector);
+        }
+        return vector;
+    }
+
+    /**
+     * Embeds the queries in the background (batched with other embedding
+     * work) so their first search is already a hit. Never blocks.
+     */
+    public void warm(Collection<String> queries) {
+
+        if (queries == null) {
+            return;
+        }
+
+        for (String query : queries) {
+
+            String normalized = normalize(query);
+            if (normalized == null || normalized.length() > MAX_QUERY_CHARS) continue;
+
+            String key = keyOf(normalized);
+            if (cache.containsKey(key)) continue;
+
+            embeddingService.submit(query.trim()).thenAccept(vector -> {
+                if (vector.length > 0) {
+                    cache.put(key, vector);
+                }
+            });
+        }
+    }
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long hits() {
+        return cache.hits();
+    }
+
+    public long misses() {
+        return cache.misses();
+    }
+
+    /* =========================
+       INTERNAL HELPERS
+       ========================= */
+
+    private String keyOf(String normalized) {
+        return embeddingService.model() + '\u0000' + normalized;
+    }
+
+    /**
+     * Lowercased, whitespace-collapsed query; null if blank.
+     */
+    static String normalize(String query) {
+
+        if (query == null) {
+            return null;
+        }
+
+        String normalized = query.replaceAll("\\s+", " ").trim().toLowerCase(Locale.ROOT);
+        return normalized.isEmpty() ? null : normalized;
+    }
+}
@@ -0,0 +1,98 @@
+package com.webintel.backend.vector;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Per-dimension int8 scalar quantization: each dimension is mapped
+ * linearly from its trained [min, max] onto 256 levels, one byte
+ * instead of four. Values outside the trained range are clamped.
+ *
+ * Asymmetric score of query q against code c:
+ *   sum q[d] * (min[d] + step[d] * (c[d] + 128))
+ *   = bias + sum (q[d] * step[d]) * c[d]
+ * so a search pays one multiply-add per dimension, like float32.
+ */
+final class ScalarQuantizer implements Quantizer {
+
+    private static final int LEVELS = 255;
+
+    private final float[] min;
+    private final float[] step;
+
+    private ScalarQuantizer(float[] min, float[] step) {
+        this.min = min;
+        this.step = step;
+    }
+
+    /**
+     * Trains the per-dimension ranges on a sample of unit vectors.
+     */
+    static ScalarQuantizer train(List<float[]> sample) {
+
+        if (sample.isEmpty()) {
+            throw new IllegalArgumentException("Cannot train on an empty sample");
+        }
+
+        int dimension = sample.get(0).length;
+        float[] min = new float[dimension];
+        float[] max = new float[dimension];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+
+        for (float[] v : sample) {
+            for (int d = 0; d < dimension; d++) {
+                min[d] = Math.min(min[d], v[d]);
+                max[d] = Math.max(max[d], v[d]);
+            }
+        }
+
+        float[] step = new float[dimension];
+        for (int d = 0; d < dimension; d++) {
+            // Constant dimensions still need a non-zero step
+            step[d] = Math.max((max[d] - min[d]) / LEVELS, 1e-9f);
+        }
+
+        return new ScalarQuantizer(min, step);
+    }
+
+    @Override
+    public int dimension() {
+        return min.length;
+    }
+
+    @Override
+    public int codeBytes() {
+        return min.length;
+    }
+
+    @Override
+    public void encode(float[] unit, byte[] codes, int offset) {
+        for (int d = 0; d < min.length; d++) {
+            int level = Math.round((unit[d] - min[d]) / step[d]);
+            level = Math.max(0, Math.min(LEVELS, level));
+            codes[offset + d] = (byte) (level - 128);
+        }
+    }
+
+    @Override
+    public Scorer scorer(float[] unitQuery) {
+
+        float[] weights = new float[min.length];
+        float bias = 0f;
+
+        for (int d = 0; d < min.length; d++) {
+            weights[d] = unitQuery[d] * step[d];
+            bias += unitQuery[d] * min[d] + 128f * weights[d];
+        }
+
+        float queryBias = bias;
+        return (codes, offset) -> {
+            float sum = 0f;
+            for (int d = 0; d < weights.length; d++) {
+                sum += weights[d] * codes[offset + d];
+            }
+            return queryBias + sum;
+        };
+    }
+}
@@ -0,0 +1,364 @@
+package com.webintel.backend.vector;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+
+/**
+ * Append-only storage of a namespace's embeddings, in segments.
+ *
+ * New embeddings go to an in-memory active segment (O(1) append).
+ * A full active segment is sealed: written once as an immutable,
+ * memory-mapped {@link VectorSegment} and recorded in the manifest.
+ * Eviction always drops the oldest segment whole.
+ *
+ * The manifest lists sealed segments oldest first; rewriting it
+ * (write-then-rename) is the snapshot, reading it back is the restore.
+ * With no directory, sealed segments are kept in memory only.
+ *
+ * Write failures never lose data: a segment that cannot be written stays
+ * sealed in memory (and is simply missing from the next restore).
+ *
+ * Not thread-safe — {@link VectorStore} serializes access.
+ */
+final class SegmentLog {
+
+    static final String MANIFEST = "manifest";
+    private static final String MANIFEST_HEADER = "webintel-vector-manifest 1";
+    private static final String SEGMENT_SUFFIX = ".vseg";
+
+    private final Path dir;
+    private final int segmentCapacity;
+
+    private final Deque<Sealed> sealed = new ArrayDeque<>();
+    private List<Embedding> active = new ArrayList<>();
+    private long activeBytes = 0;
+    private long nextSequence = 0;
+
+    private int size = 0;
+    private long bytes = 0;
+
+    SegmentLog(Path dir, int segmentCapacity) {
+        this.dir = dir;
+        this.segmentCapacity = Math.max(1, segmentCapacity);
+    }
+
+    /**
+     * Maps every segment listed in the directory's manifest, charging each
+     * the caller's heap estimate. Files not in the manifest (unfinished
+     * seals) are deleted.
+     */
+    static SegmentLog open(Path dir, int segmentCapacity, ToLongFunction<VectorSegment> estimate) throws IOException {
+
+        SegmentLog log = new SegmentLog(dir, segmentCapacity);
+
+        List<String> lines = Files.readAllLines(dir.resolve(MANIFEST), StandardCharsets.UTF_8);
+        if (lines.isEmpty() || !MANIFEST_HEADER.equals(lines.get(0))) {
+            throw new IOException("Unknown vector manifest in " + dir);
+        }
+
+        Set<String> listed = new HashSet<>();
+        for (String name : lines.subList(1, lines.size())) {
+            if (name.isBlank() || !Files.exists(dir.resolve(name))) continue;
+
+            VectorSegment segment = VectorSegment.open(dir.resolve(name));
+            Sealed restored = new Sealed(segment, estimate.applyAsLong(segment));
+            log.sealed.addLast(restored);
+            log.size += restored.size();
+            log.bytes += restored.bytes;
+            listed.add(name);
+            log.nextSequence = Math.max(log.nextSequence, sequenceOf(name) + 1);
+        }
+
+        try (Stream<Path> files = Files.list(dir)) {
+            files.filter(f -> !listed.contains(f.getFileName().toString()))
+                    .filter(f -> !f.getFileName().toString().equals(MANIFEST))
+                    .forEach(SegmentLog::deleteQuietly);
+        }
+
+        return log;
+    }
+
+    static boolean exists(Path dir) {
+        return dir != null && Files.isRegularFile(dir.resolve(MANIFEST));
+    }
+
+    /* ============================================================
+       APPEND / SEAL / EVICT
+       ============================================================ */
+
+    /**
+     * Appends to the active segment, sealing it once full.
+     * {@code heapBytes} is the caller's estimate, summed per segment.
+     *
+     * @return the segment sealed by this append, or null
+     */
+    Sealed append(Embedding embedding, long heapBytes) {
+
+        active.add(embedding);
+        activeBytes += heapBytes;
+        size++;
+        bytes += heapBytes;
+
+        if (active.size() >= segmentCapacity) {
+            return seal();
+        }
+        return null;
+    }
+
+    /**
+     * Seals the active segment (if non-empty) and records it in the manifest.
+     *
+     * @return the newly sealed segment, or null if the active one was empty
+     */
+    Sealed seal() {
+
+        if (active.isEmpty()) {
+            return null;
+        }
+
+        List<Embedding> embeddings = active;
+        long segmentBytes = activeBytes;
+        active = new ArrayList<>();
+        activeBytes = 0;
+
+        if (dir == null) {
+            sealed.addLast(new Sealed(embeddings, segmentBytes));
+            return sealed.peekLast();
+        }
+
+        String name = String.format("seg-%08d%s", nextSequence++, SEGMENT_SUFFIX);
+        try {
+            sealed.addLast(new Sealed(VectorSegment.write(dir.resolve(name), embeddings), segmentBytes));
+        } catch (IOException | RuntimeException e) {
+            // Keep serving from memory; the segment is just not persisted
+            sealed.addLast(new Sealed(embeddings, segmentBytes));
+            return sealed.peekLast();
+        }
+
+        try {
+            writeManifest();
+        } catch (IOException ignored) {
+            // the next seal or snapshot lists it
+        }
+        return sealed.peekLast();
+    }
+
+    /**
+     * Replaces a sealed segment's heap estimate, e.g. once its
+     * embeddings have been swapped for memory-mapped rows.
+     */
+    void recharge(Sealed segment, long heapBytes) {
+        bytes += heapBytes - segment.bytes;
+        segment.bytes = heapBytes;
+    }
+
+    /**
+     * Drops the oldest segment (the active one if nothing is sealed).
+     * Returns the ids it held; empty if the log is empty.
+     */
+    List<String> evictOldest() {
+
+        Sealed oldest = sealed.pollFirst();
+
+        if (oldest == null) {
+            List<String> ids = idsOf(active);
+            active = new ArrayList<>();
+            activeBytes = 0;
+            size = 0;
+            bytes = 0;
+            return ids;
+        }
+
+        size -= oldest.size();
+        bytes -= oldest.bytes;
+
+        if (oldest.segment != null) {
+            try {
+                writeManifest(); // forget it before the file disappears
+            } catch (IOException ignored) {
+                // restore skips listed segments whose file is gone
+            }
+            oldest.segment.delete();
+        }
+
+        return oldest.ids();
+    }
+
+    /**
+     * Persists everything appended so far: seals the partial active segment
+     * and rewrites the manifest. Returns false if it could not be written.
+     */
+    boolean snapshot() {
+
+        seal();
+        if (dir == null) {
+            return false;
+        }
+
+        try {
+            writeManifest();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Drops every segment; the (empty) manifest is kept.
+     */
+    void clear() {
+
+        for (Sealed s : sealed) {
+            if (s.segment != null) s.segment.delete();
+        }
+        sealed.clear();
+        active = new ArrayList<>();
+        activeBytes = 0;
+        size = 0;
+        bytes = 0;
+
+        if (dir != null) {
+            try {
+                writeManifest();
+            } catch (IOException ignored) {
+                // next successful seal rewrites it
+            }
+        }
+    }
+
+    /**
+     * Forgets all segments and removes the directory.
+     */
+    void delete() {
+
+        sealed.clear();
+        active = new ArrayList<>();
+        activeBytes = 0;
+        size = 0;
+        bytes = 0;
+
+        if (dir == null || !Files.isDirectory(dir)) {
+            return;
+        }
+
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(SegmentLog::deleteQuietly);
+        } catch (IOException ignored) {
+            // best-effort
+        }
+        deleteQuietly(dir);
+    }
+
+    /* ============================================================
+       READ
+       ============================================================ */
+
+    Collection<Sealed> sealed() {
+        return sealed;
+    }
+
+    List<Embedding> active() {
+        return active;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Estimated heap bytes of everything in the log, as passed to append.
+     */
+    long bytes() {
+        return bytes;
+    }
+
+    /* ============================================================
+       MANIFEST
+       ============================================================ */
+
+    private void writeManifest() throws IOException {
+
+        StringBuilder manifest = new StringBuilder(MANIFEST_HEADER).append('\n');
+        for (Sealed s : sealed) {
+            if (s.segment != null) {
+                manifest.append(s.segment.path().getFileName()).append('\n');
+            }
+        }
+
+        Path tmp = dir.resolve(MANIFEST + ".tmp");
+        Files.writeString(tmp, manifest, StandardCharsets.UTF_8);
+        Files.move(tmp, dir.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static long sequenceOf(String name) {
+        try {
+            return Long.parseLong(name.substring(4, name.length() - SEGMENT_SUFFIX.length()));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static List<String> idsOf(List<Embedding> embeddings) {
+        List<String> ids = new ArrayList<>(embeddings.size());
+        for (Embedding e : embeddings) {
+            ids.add(e.getId());
+        }
+        return ids;
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // best-effort
+        }
+    }
+
+    /* ============================================================
+       INTERNAL MODEL
+       ============================================================ */
+
+    /**
+     * A sealed segment: memory-mapped, or heap-only when the log has no directory.
+     */
+    static final class Sealed {
+        final VectorSegment segment;
+        final List<Embedding> embeddings;
+        long bytes;
+
+        Sealed(VectorSegment segment, long bytes) {
+            this.segment = segment;
+            this.embeddings = null;
+            this.bytes = bytes;
+        }
+
+        Sealed(List<Embedding> embeddings, long bytes) {
+            this.segment = null;
+            this.embeddings = embeddings;
+            this.bytes = bytes;
+        }
+
+        int size() {
+            return segment != null ? segment.size() : embeddings.size();
+        }
+
+        Embedding embedding(int row) {
+            return segment != null ? segment.embedding(row) : embeddings.get(row);
+        }
+
+        List<String> ids() {
+            if (segment == null) {
+                return idsOf(embeddings);
+            }
+            List<String> ids = new ArrayList<>(segment.size());
+            for (int i = 0; i < segment.size(); i++) {
+                ids.add(segment.id(i));
+            }
+            return ids;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.webintel.backend.vector;
+
+import java.util.List;
+
+/**
+ * Nearest-neighbour index over embeddings.
+ *
+ * Implementations MUST be thread-safe: ingestion and search
+ * run concurrently from different requests.
+ */
+public interface VectorIndex {
+
+    /**
+     * Adds an embedding. Re-adding an existing id replaces it.
+     */
+    void add(Embedding embedding);
+
+    /**
+     * Removes an embedding by id.
+     *
+     * @return true if the id was present
+     */
+    boolean remove(String id);
+
+    /**
+     * Returns up to topK embeddings ordered by descending cosine similarity.
+     */
+    List<Embedding> search(double[] queryVector, int topK);
+
+    /**
+     * Swaps the stored embedding of an indexed id for an equal copy
+     * (see {@link Embedding#sameAs}), e.g. its memory-mapped row once
+     * sealed. Nothing is re-indexed; no-op if absent or different.
+     */
+    void rebind(Embedding embedding);
+
+    /**
+     * Heap the index itself keeps per vector of this dimension,
+     * beyond the embedding it references.
+     */
+    long bytesPerVector(int dimension);
+
+    int size();
+
+    void clear();
+}
@@ -0,0 +1,202 @@
+package com.webintel.backend.vector;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.nio.FloatBuffer;
+
+/**
+ * Float32 vector kernels shared by all indexes.
+ *
+ * Uses the jdk.incubator.vector API when {@link SimdKernels} was built
+ * (mvn -Psimd) and the module is present (--add-modules jdk.incubator.vector),
+ * otherwise a scalar loop. Set -Dwebintel.vector.simd=false to force the
+ * scalar path.
+ */
+public final class VectorMath {
+
+    // SimdKernels.dot, looked up reflectively — the class may not be compiled in
+    private static final MethodHandle SIMD_DOT = detectSimd();
+    private static final boolean SIMD = SIMD_DOT != null;
+
+    private VectorMath() {
+    }
+
+    public static boolean isSimdEnabled() {
+        return SIMD;
+    }
+
+    /**
+     * Dot product of a[aOff .. aOff+len) and b[bOff .. bOff+len).
+     */
+    public static float dot(float[] a, int aOff, float[] b, int bOff, int len) {
+        if (SIMD) {
+            try {
+                return (float) SIMD_DOT.invokeExact(a, aOff, b, bOff, len);
+            } catch (Throwable t) {
+                throw new IllegalStateException("SIMD kernel failed", t);
+            }
+        }
+        return scalarDot(a, aOff, b, bOff, len);
+    }
+
+    static float scalarDot(float[] a, int aOff, float[] b, int bOff, int len) {
+
+        // Four accumulators break the dependency chain for the JIT
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        int bound = len & ~3;
+
+        for (; i < bound; i += 4) {
+            s0 += a[aOff + i] * b[bOff + i];
+            s1 += a[aOff + i + 1] * b[bOff + i + 1];
+            s2 += a[aOff + i + 2] * b[bOff + i + 2];
+            s3 += a[aOff + i + 3] * b[bOff + i + 3];
+        }
+        for (; i < len; i++) {
+            s0 += a[aOff + i] * b[bOff + i];
+        }
+
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Dot product of a mapped row a[0 .. len) and b[0 .. len), read in place
+     * with absolute gets — no copy of the row onto the heap.
+     */
+    public static float dot(FloatBuffer a, float[] b, int len) {
+
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        int bound = len & ~3;
+
+        for (; i < bound; i += 4) {
+            s0 += a.get(i) * b[i];
+            s1 += a.get(i + 1) * b[i + 1];
+            s2 += a.get(i + 2) * b[i + 2];
+            s3 += a.get(i + 3) * b[i + 3];
+        }
+        for (; i < len; i++) {
+            s0 += a.get(i) * b[i];
+        }
+
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * L2-normalized float32 copy, or null for empty / zero vectors.
+     */
+    public static float[] normalize(double[] v) {
+
+        if (v == null || v.length == 0) {
+            return null;
+        }
+
+        double sum = 0.0;
+        for (double x : v) {
+            sum += x * x;
+        }
+
+        double norm = Math.sqrt(sum);
+        if (norm < 1e-12) {
+            return null;
+        }
+
+        float[] unit = new float[v.length];
+        for (int i = 0; i < v.length; i++) {
+            unit[i] = (float) (v[i] / norm);
+        }
+        return unit;
+    }
+
+    /* =========================
+       FLOAT16 CONVERSION
+       ========================= */
+
+    /**
+     * IEEE 754 binary16 encoding, round-to-nearest-even.
+     */
+    public static short floatToHalf(float value) {
+
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exp = (bits >>> 23) & 0xff;
+        int mant = bits & 0x7fffff;
+
+        // Infinity / NaN
+        if (exp == 0xff) {
+            return (short) (sign | 0x7c00 | (mant != 0 ? 0x200 : 0));
+        }
+
+        int e = exp - 127 + 15;
+
+        // Overflow -> infinity
+        if (e >= 0x1f) {
+            return (short) (sign | 0x7c00);
+        }
+
+        // Subnormal or zero
+        if (e <= 0) {
+            if (e < -10) {
+                return (short) sign;
+            }
+            mant |= 0x800000;
+            int shift = 14 - e;
+            int half = mant >> shift;
+            int rem = mant & ((1 << shift) - 1);
+            int mid = 1 << (shift - 1);
+            if (rem > mid || (rem == mid && (half & 1) != 0)) half++;
+            return (short) (sign | half);
+        }
+
+        int half = (e << 10) | (mant >> 13);
+        int rem = mant & 0x1fff;
+        if (rem > 0x1000 || (rem == 0x1000 && (half & 1) != 0)) half++; // carry may round up to infinity
+        return (short) (sign | half);
+    }
+
+    public static float halfToFloat(short value) {
+
+        int bits = value & 0xffff;
+        int sign = (bits & 0x8000) << 16;
+        int exp = (bits >>> 10) & 0x1f;
+        int mant = bits & 0x3ff;
+
+        if (exp == 0) {
+            float magnitude = mant * 0x1p-24f;
+            return sign == 0 ? magnitude : -magnitude;
+        }
+
+        if (exp == 0x1f) {
+            return Float.intBitsToFloat(sign | 0x7f800000 | (mant << 13));
+        }
+
+        return Float.intBitsToFloat(sign | ((exp - 15 + 127) << 23) | (mant << 13));
+    }
+
+    /* =========================
+       SIMD DETECTION
+       ========================= */
+
+    private static MethodHandle detectSimd() {
+
+        if ("false".equalsIgnoreCase(System.getProperty("webintel.vector.simd"))) {
+            return null;
+        }
+
+        try {
+            Class.forName("jdk.incubator.vector.FloatVector");
+            MethodHandle dot = MethodHandles.lookup().findStatic(
+                    Class.forName("com.webintel.backend.vector.SimdKernels"),
+                    "dot",
+                    MethodType.methodType(float.class, float[].class, int.class, float[].class, int.class, int.class)
+            );
+
+            float[] probe = {1f, 2f, 3f, 4f, 5f};
+            return (float) dot.invokeExact(probe, 0, probe, 0, probe.length) == 55f ? dot : null;
+        } catch (Throwable t) {
+            // Not built with -Psimd, or module not resolved at runtime — scalar fallback
+            return null;
+        }
+    }
+}
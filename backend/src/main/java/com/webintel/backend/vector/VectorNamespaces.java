@@ -0,0 +1,539 @@
+package com.webintel.backend.vector;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Isolated vector stores, one per namespace (a crawl's resultId).
+ *
+ * Guarantees:
+ * - Concurrent previews never see or wipe each other's vectors
+ * - Each namespace has its own vector and byte quota
+ * - Namespaces expire after a fixed TTL of inactivity
+ * - Total estimated heap stays under a global budget
+ *   (least recently used namespaces are dropped first)
+ * - Namespaces are persisted as memory-mapped segments: one dropped from
+ *   memory (or lost to a restart) is reopened from disk on next use
+ * - A namespace is never unloaded while it is being ingested, and never
+ *   reopened before its unload snapshot has landed — one writer per directory
+ * - Directory work (create, reopen, delete) runs outside the lock that every
+ *   lookup takes; the name is claimed meanwhile and published when done
+ * - Expiry in memory and on disk is also enforced every SWEEP_INTERVAL,
+ *   not only when namespaces are used
+ *
+ * Budget is checked whenever a namespace is created or looked up, so it can
+ * be exceeded by at most one quota per namespace still being ingested.
+ */
+@Service
+public class VectorNamespaces implements AutoCloseable {
+
+    /* =========================
+       LIMITS
+       ========================= */
+    private static final Duration TTL = Duration.ofMinutes(30);
+    private static final long MAX_TOTAL_BYTES = 512L * 1024 * 1024;
+    private static final int MAX_NAMESPACES = 256;
+
+    private static final int NAMESPACE_MAX_VECTORS = VectorStore.DEFAULT_MAX_VECTORS;
+    private static final long NAMESPACE_MAX_BYTES = VectorStore.DEFAULT_MAX_BYTES;
+
+    /* =========================
+       PERSISTENCE
+       ========================= */
+    private static final String DEFAULT_STORAGE_DIR = "${user.home}/.webintel/vectors";
+
+    // Persisted namespaces outlive their in-memory TTL, but not forever
+    private static final Duration DISK_TTL = Duration.ofHours(24);
+    private static final int MAX_DISK_NAMESPACES = 1_024;
+
+    private static final Duration SWEEP_INTERVAL = Duration.ofMinutes(10);
+
+    // Namespaces double as directory names
+    private static final Pattern SAFE_NAME = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+    // Access-ordered: iteration starts at the least recently used namespace
+    private final LinkedHashMap<String, Namespace> namespaces = new LinkedHashMap<>(16, 0.75f, true);
+
+    // Dropped from memory, final snapshot still being written
+    private final Map<String, Namespace> unloading = new HashMap<>();
+
+    // Directory being created, reopened or deleted outside the lock
+    private final Map<String, CompletableFuture<Void>> claimed = new HashMap<>();
+
+    // Index rebuilds for reopened namespaces, and periodic sweeps
+    private final ScheduledExecutorService background = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "vector-namespaces");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final Path rootDir;
+
+    // ANN index kind of every store (see VectorStore.newIndex)
+    private final String indexKind;
+
+    /**
+     * @param storageDir where namespaces are persisted; null or blank keeps them in memory only
+     * @param indexKind  hnsw, ivf, flat, int8 or pq
+     */
+    public VectorNamespaces(
+            @Value("${vector.storage.dir:" + DEFAULT_STORAGE_DIR + "}") String storageDir,
+            @Value("${vector.index:" + VectorStore.DEFAULT_INDEX + "}") String indexKind
+    ) {
+        this.indexKind = indexKind;
+
+        Path dir = null;
+        if (storageDir != null && !storageDir.isBlank()) {
+            try {
+                dir = Files.createDirectories(Path.of(storageDir.trim()));
+            } catch (Exception e) {
+                dir = null; // run without persistence
+            }
+        }
+        this.rootDir = dir;
+
+        try {
+            background.scheduleWithFixedDelay(
+                    this::sweep, 0, SWEEP_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            // shutting down
+        }
+    }
+
+    /**
+     * Creates an empty store for the namespace, replacing any previous one.
+     * The namespace stays in memory until {@link #finish} ends its ingestion.
+     */
+    public VectorStore create(String namespace) {
+
+        if (namespace == null || namespace.isBlank()) {
+            throw new IllegalArgumentException("Namespace cannot be null or empty");
+        }
+
+        CompletableFuture<Void> claim = new CompletableFuture<>();
+        Namespace previous = whenIdle(namespace, () -> {
+            claimed.put(namespace, claim);
+            return namespaces.remove(namespace);
+        });
+
+        Namespace created = null;
+        try {
+            // Stop the old store's writers before its directory is wiped
+            if (previous != null) {
+                previous.store.delete();
+            }
+            created = new Namespace(newStore(namespace), System.currentTimeMillis(), true);
+            return created.store;
+        } finally {
+            release(namespace, claim, created);
+        }
+    }
+
+    private VectorStore newStore(String namespace) {
+
+        Path dir = dirOf(namespace);
+        if (dir != null) {
+            try {
+                return VectorStore.create(dir, indexKind, NAMESPACE_MAX_VECTORS, NAMESPACE_MAX_BYTES);
+            } catch (IOException ignored) {
+                // fall back to memory only
+            }
+        }
+
+        return new VectorStore(indexKind, NAMESPACE_MAX_VECTORS, NAMESPACE_MAX_BYTES);
+    }
+
+    /**
+     * Returns the namespace's store, reopening it from disk if it is no
+     * longer in memory. Null if unknown, expired or unreadable.
+     */
+    public VectorStore get(String namespace) {
+
+        if (namespace == null) {
+            return null;
+        }
+
+        // Expired: unload it first, then reopen from what it persisted
+        synchronized (this) {
+            Namespace entry = namespaces.get(namespace);
+            if (entry != null && isExpired(entry, System.currentTimeMillis())) {
+                namespaces.remove(namespace);
+                unload(namespace, entry);
+            }
+        }
+
+        CompletableFuture<Void> claim = new CompletableFuture<>();
+        Namespace loaded = whenIdle(namespace, () -> {
+            Namespace entry = namespaces.get(namespace);
+            if (entry == null) {
+                claimed.put(namespace, claim);
+                return null;
+            }
+
+            entry.lastAccess = System.currentTimeMillis();
+            evict(namespace);
+            return entry;
+        });
+
+        if (loaded != null) {
+            return loaded.store;
+        }
+
+        Namespace reopened = null;
+        try {
+            reopened = reopen(namespace, System.currentTimeMillis());
+            return reopened == null ? null : reopened.store;
+        } finally {
+            release(namespace, claim, reopened);
+        }
+    }
+
+    /**
+     * Ends ingestion: persists everything added to the namespace, which
+     * may be unloaded from now on. Returns false if not persisted.
+     */
+    public boolean finish(String namespace) {
+
+        VectorStore store;
+        synchronized (this) {
+            Namespace entry = namespace == null ? null : namespaces.get(namespace);
+            if (entry == null) {
+                return false;
+            }
+            entry.ingesting = false;
+            entry.lastAccess = System.currentTimeMillis();
+            store = entry.store;
+        }
+
+        return store.snapshot();
+    }
+
+    /**
+     * Forgets the namespace, in memory and on disk.
+     */
+    public boolean remove(String namespace) {
+
+        if (namespace == null) {
+            return false;
+        }
+
+        CompletableFuture<Void> claim = new CompletableFuture<>();
+        Namespace entry = whenIdle(namespace, () -> {
+            claimed.put(namespace, claim);
+            return namespaces.remove(namespace);
+        });
+
+        try {
+            if (entry != null) {
+                entry.store.delete();
+                return true;
+            }
+
+            Path dir = dirOf(namespace);
+            if (VectorStore.exists(dir)) {
+                new SegmentLog(dir, VectorStore.SEGMENT_CAPACITY).delete();
+                return true;
+            }
+
+            return false;
+        } finally {
+            release(namespace, claim, null);
+        }
+    }
+
+    public synchronized int size() {
+        return namespaces.size();
+    }
+
+    public synchronized long totalBytes() {
+        long total = 0;
+        for (Namespace entry : namespaces.values()) {
+            total += entry.store.estimatedBytes();
+        }
+        return total;
+    }
+
+    /**
+     * Snapshots and closes every namespace still in memory or unloading.
+     */
+    @Override
+    public void close() {
+
+        // Queued unloads are dropped here; they are finished below instead
+        background.shutdownNow();
+
+        List<VectorStore> stores = new ArrayList<>();
+        Map<String, Namespace> unloads;
+        synchronized (this) {
+            for (Namespace entry : namespaces.values()) {
+                stores.add(entry.store);
+            }
+            unloads = new HashMap<>(unloading);
+        }
+
+        for (VectorStore store : stores) {
+            store.close();
+        }
+
+        // Only once its snapshot has landed may a waiter reopen the directory
+        unloads.forEach((namespace, entry) -> {
+            try {
+                entry.store.close();
+            } finally {
+                synchronized (this) {
+                    unloading.remove(namespace, entry);
+                }
+                entry.unloaded.complete(null);
+            }
+        });
+    }
+
+    /* =========================
+       INTERNAL
+       ========================= */
+
+    /**
+     * Opens a persisted namespace. Called without the lock, with the name
+     * claimed; the caller publishes the entry.
+     */
+    private Namespace reopen(String namespace, long now) {
+
+        Path dir = dirOf(namespace);
+        if (!VectorStore.exists(dir) || isStaleOnDisk(dir, now)) {
+            return null;
+        }
+
+        try {
+            VectorStore store = VectorStore.open(dir, indexKind, NAMESPACE_MAX_VECTORS, NAMESPACE_MAX_BYTES);
+
+            // Disk TTL counts from last use
+            Files.setLastModifiedTime(dir.resolve(SegmentLog.MANIFEST), FileTime.fromMillis(now));
+
+            // Exact scan serves queries until the indexes are rebuilt
+            submit(store::buildIndexes);
+            return new Namespace(store, now, false);
+
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs {@code action} under the lock once the namespace is neither being
+     * unloaded nor claimed: its directory must not be reopened, recreated or
+     * deleted before the final snapshot has landed, nor by two threads at
+     * once. Waits without holding the lock.
+     */
+    private <T> T whenIdle(String namespace, Supplier<T> action) {
+        while (true) {
+            CompletableFuture<?> pending;
+            synchronized (this) {
+                pending = pendingWork(namespace);
+                if (pending == null) {
+                    return action.get();
+                }
+            }
+            pending.join();
+        }
+    }
+
+    /**
+     * What a user of the namespace's directory must wait for, or null. Lock held.
+     */
+    private CompletableFuture<?> pendingWork(String namespace) {
+        Namespace unload = unloading.get(namespace);
+        return unload != null ? unload.unloaded : claimed.get(namespace);
+    }
+
+    /**
+     * Ends a claim taken in {@link #whenIdle}: publishes {@code entry} (if
+     * not null) and wakes the threads waiting on the namespace.
+     */
+    private void release(String namespace, CompletableFuture<Void> claim, Namespace entry) {
+        synchronized (this) {
+            if (entry != null) {
+                namespaces.put(namespace, entry);
+                evict(namespace);
+            }
+            claimed.remove(namespace, claim);
+        }
+        claim.complete(null);
+    }
+
+    /**
+     * Drops expired namespaces, then least recently used ones until the
+     * count and byte budgets hold. {@code keep} (if not null) and namespaces
+     * still being ingested are never dropped.
+     * Dropped namespaces stay on disk and can be reopened.
+     */
+    private void evict(String keep) {
+
+        long now = System.currentTimeMillis();
+        long total = 0;
+
+        Iterator<Map.Entry<String, Namespace>> it = namespaces.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Namespace> entry = it.next();
+            if (isEvictable(entry, keep) && isExpired(entry.getValue(), now)) {
+                it.remove();
+                unload(entry.getKey(), entry.getValue());
+            } else {
+                total += entry.getValue().store.estimatedBytes();
+            }
+        }
+
+        it = namespaces.entrySet().iterator();
+        while (it.hasNext() && (total > MAX_TOTAL_BYTES || namespaces.size() > MAX_NAMESPACES)) {
+            Map.Entry<String, Namespace> entry = it.next();
+            if (!isEvictable(entry, keep)) continue;
+            total -= entry.getValue().store.estimatedBytes();
+            it.remove();
+            unload(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static boolean isEvictable(Map.Entry<String, Namespace> entry, String keep) {
+        return !entry.getKey().equals(keep) && !entry.getValue().ingesting;
+    }
+
+    /**
+     * Closes a namespace just removed from memory. Until its snapshot is
+     * written the name stays marked as unloading (see {@link #whenIdle}).
+     */
+    private void unload(String namespace, Namespace entry) {
+
+        unloading.put(namespace, entry);
+
+        Runnable close = () -> {
+            try {
+                entry.store.close();
+            } finally {
+                synchronized (this) {
+                    unloading.remove(namespace, entry);
+                }
+                entry.unloaded.complete(null);
+            }
+        };
+
+        if (!submit(close)) {
+            close.run(); // shutting down — close inline
+        }
+    }
+
+    private boolean isExpired(Namespace entry, long now) {
+        return !entry.ingesting && now - entry.lastAccess > TTL.toMillis();
+    }
+
+    private Path dirOf(String namespace) {
+        if (rootDir == null || namespace == null || !SAFE_NAME.matcher(namespace).matches()) {
+            return null;
+        }
+        return rootDir.resolve(namespace);
+    }
+
+    private static boolean isStaleOnDisk(Path dir, long now) {
+        return now - lastModified(dir.resolve(SegmentLog.MANIFEST)) > DISK_TTL.toMillis();
+    }
+
+    /**
+     * Unloads namespaces idle past the TTL, then cleans up the disk.
+     * Never throws — a failed run would cancel the schedule.
+     */
+    private void sweep() {
+        try {
+            synchronized (this) {
+                evict(null);
+            }
+            sweepDisk();
+        } catch (RuntimeException ignored) {
+            // try again next interval
+        }
+    }
+
+    /**
+     * Deletes persisted namespaces past the disk TTL, then the oldest
+     * beyond the disk count limit.
+     */
+    private void sweepDisk() {
+
+        if (rootDir == null) {
+            return;
+        }
+
+        List<Path> dirs;
+        try (Stream<Path> list = Files.list(rootDir)) {
+            dirs = new ArrayList<>(list.filter(Files::isDirectory).toList());
+        } catch (IOException e) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        dirs.sort(Comparator.comparingLong((Path d) -> lastModified(d.resolve(SegmentLog.MANIFEST))).reversed());
+
+        for (int i = 0; i < dirs.size(); i++) {
+            Path dir = dirs.get(i);
+            if (i >= MAX_DISK_NAMESPACES || isStaleOnDisk(dir, now)) {
+                String name = dir.getFileName().toString();
+                CompletableFuture<Void> claim = new CompletableFuture<>();
+                synchronized (this) {
+                    if (namespaces.containsKey(name) || pendingWork(name) != null) {
+                        continue;
+                    }
+                    claimed.put(name, claim);
+                }
+                try {
+                    new SegmentLog(dir, VectorStore.SEGMENT_CAPACITY).delete();
+                } finally {
+                    release(name, claim, null);
+                }
+            }
+        }
+    }
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private boolean submit(Runnable task) {
+        try {
+            background.execute(task);
+            return true;
+        } catch (RejectedExecutionException ignored) {
+            return false; // shutting down
+        }
+    }
+
+    private static class Namespace {
+        final VectorStore store;
+        final CompletableFuture<Void> unloaded = new CompletableFuture<>();
+        long lastAccess;
+
+        // Pinned in memory: a pipeline still writes to this store
+        boolean ingesting;
+
+        Namespace(VectorStore store, long lastAccess, boolean ingesting) {
+            this.store = store;
+            this.lastAccess = lastAccess;
+            this.ingesting = ingesting;
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.webintel.backend.vector;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Immutable, memory-mapped block of embeddings.
+ *
+ * Layout (little-endian):
+ *   MAGIC, VERSION, count, dimension       (4 ints)
+ *   norms                                   (count floats)
+ *   idOffsets, textOffsets                  (count + 1 ints each)
+ *   unit vectors                            (count * dimension floats)
+ *   id bytes, text bytes                    (UTF-8 blobs)
+ *
+ * Vectors stay off-heap: search reads rows straight from the mapping,
+ * and the Embeddings built for its rows are views of it, not copies.
+ */
+final class VectorSegment {
+
+    private static final int MAGIC = 0x47455356; // "VSEG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+
+    private final Path path;
+    private final int count;
+    private final int dimension;
+
+    private final FloatBuffer norms;
+    private final IntBuffer idOffsets;
+    private final IntBuffer textOffsets;
+    private final FloatBuffer vectors;
+    private final ByteBuffer idBlob;
+    private final ByteBuffer textBlob;
+
+    private VectorSegment(Path path, MappedByteBuffer map) throws IOException {
+
+        map.order(ByteOrder.LITTLE_ENDIAN);
+
+        if (map.capacity() < HEADER_BYTES || map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            throw new IOException("Not a vector segment: " + path);
+        }
+
+        this.path = path;
+        this.count = map.getInt(8);
+        this.dimension = map.getInt(12);
+
+        int normsAt = HEADER_BYTES;
+        int idOffsetsAt = normsAt + 4 * count;
+        int textOffsetsAt = idOffsetsAt + 4 * (count + 1);
+        int vectorsAt = textOffsetsAt + 4 * (count + 1);
+        int idBlobAt = vectorsAt + 4 * count * dimension;
+
+        this.norms = slice(map, normsAt, 4 * count).asFloatBuffer();
+        this.idOffsets = slice(map, idOffsetsAt, 4 * (count + 1)).asIntBuffer();
+        this.textOffsets = slice(map, textOffsetsAt, 4 * (count + 1)).asIntBuffer();
+        this.vectors = slice(map, vectorsAt, 4 * count * dimension).asFloatBuffer();
+
+        int textBlobAt = idBlobAt + idOffsets.get(count);
+        if (textBlobAt + textOffsets.get(count) > map.capacity()) {
+            throw new IOException("Truncated vector segment: " + path);
+        }
+
+        this.idBlob = slice(map, idBlobAt, idOffsets.get(count));
+        this.textBlob = slice(map, textBlobAt, textOffsets.get(count));
+    }
+
+    /* ============================================================
+       WRITE / OPEN
+       ============================================================ */
+
+    /**
+     * Writes the embeddings as a new segment file (write-then-rename, fsynced)
+     * and maps it. All embeddings must share one dimension.
+     */
+    static VectorSegment write(Path path, List<Embedding> embeddings) throws IOException {
+
+        int count = embeddings.size();
+        int dimension = count == 0 ? 0 : embeddings.get(0).getDimension();
+
+        byte[][] ids = new byte[count][];
+        byte[][] texts = new byte[count][];
+        long idBytes = 0;
+        long textBytes = 0;
+
+        for (int i = 0; i < count; i++) {
+            Embedding e = embeddings.get(i);
+            if (e.getDimension() != dimension) {
+                throw new IllegalArgumentException("Mixed dimensions in one segment");
+            }
+            ids[i] = e.getId().getBytes(StandardCharsets.UTF_8);
+            texts[i] = e.getText().getBytes(StandardCharsets.UTF_8);
+            idBytes += ids[i].length;
+            textBytes += texts[i].length;
+        }
+
+        long total = HEADER_BYTES
+                + 4L * count
+                + 8L * (count + 1)
+                + 4L * count * dimension
+                + idBytes
+                + textBytes;
+
+        if (total > Integer.MAX_VALUE) {
+            throw new IOException("Vector segment too large");
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate((int) total).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(MAGIC).putInt(VERSION).putInt(count).putInt(dimension);
+
+        for (Embedding e : embeddings) {
+            buf.putFloat((float) e.getNorm());
+        }
+
+        int offset = 0;
+        for (byte[] id : ids) {
+            buf.putInt(offset);
+            offset += id.length;
+        }
+        buf.putInt(offset);
+
+        offset = 0;
+        for (byte[] text : texts) {
+            buf.putInt(offset);
+            offset += text.length;
+        }
+        buf.putInt(offset);
+
+        for (Embedding e : embeddings) {
+            float[] unit = e.getUnitVector();
+            for (int d = 0; d < dimension; d++) {
+                buf.putFloat(unit == null ? 0f : unit[d]);
+            }
+        }
+
+        for (byte[] id : ids) buf.put(id);
+        for (byte[] text : texts) buf.put(text);
+        buf.flip();
+
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(
+                tmp,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        )) {
+            while (buf.hasRemaining()) {
+                channel.write(buf);
+            }
+            channel.force(true);
+        }
+
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return open(path);
+    }
+
+    static VectorSegment open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new VectorSegment(path, map);
+        }
+    }
+
+    /* ============================================================
+       READ
+       ============================================================ */
+
+    Path path() {
+        return path;
+    }
+
+    int size() {
+        return count;
+    }
+
+    int dimension() {
+        return dimension;
+    }
+
+    /**
+     * Total UTF-8 bytes of all texts.
+     */
+    long textBytes() {
+        return textOffsets.get(count);
+    }
+
+    String id(int row) {
+        return string(idBlob, idOffsets.get(row), idOffsets.get(row + 1));
+    }
+
+    String text(int row) {
+        return string(textBlob, textOffsets.get(row), textOffsets.get(row + 1));
+    }
+
+    /**
+     * Dot product of a unit query with a stored unit row (cosine similarity).
+     * {@code scratch} must hold at least {@link #dimension()} floats.
+     */
+    float dot(float[] unitQuery, int row, float[] scratch) {
+        vectors.get(row * dimension, scratch, 0, dimension);
+        return VectorMath.dot(unitQuery, 0, scratch, 0, dimension);
+    }
+
+    /**
+     * The embedding of one row. Its vector is a view of the mapping,
+     * not a heap copy; only id and text are decoded.
+     */
+    Embedding embedding(int row) {
+        FloatBuffer unitRow = vectors.slice(row * dimension, dimension).asReadOnlyBuffer();
+        return new Embedding(id(row), text(row), unitRow, norms.get(row));
+    }
+
+    /**
+     * Deletes the file. The mapping stays valid until it is garbage collected.
+     */
+    void delete() {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException ignored) {
+            // best-effort: orphans are removed with the namespace directory
+        }
+    }
+
+    /* =========================
+       INTERNAL HELPERS
+       ========================= */
+
+    private static ByteBuffer slice(ByteBuffer map, int offset, int length) {
+        return map.slice(offset, length).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static String string(ByteBuffer blob, int from, int to) {
+        byte[] bytes = new byte[to - from];
+        blob.get(from, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
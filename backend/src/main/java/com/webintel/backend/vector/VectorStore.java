@@ -1,151 +1,528 @@
 package com.webintel.backend.vector;
 
-import org.springframework.stereotype.Service;
-
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
 
-@Service
+/**
+ * Vectors of one namespace (see {@link VectorNamespaces}).
+ *
+ * Guarantees:
+ * - Quota on vector count and estimated heap bytes;
+ *   the oldest segment is evicted whole
+ * - O(1) append to an in-memory segment; full segments are sealed
+ *   into immutable memory-mapped files when the store is persistent
+ * - ANN and BM25 indexes always hold the same embeddings; once a segment
+ *   is sealed to disk they hold its memory-mapped rows, so full-precision
+ *   vectors stop costing heap
+ * - A reopened store answers immediately by exact scan over the mapped
+ *   segments, until {@link #buildIndexes()} has rebuilt the in-heap indexes
+ * - Once closed or deleted it ignores writes, so a store dropped by its
+ *   namespace can never write into the directory after it
+ * - Re-adding an id replaces it; evicting the older copy's segment leaves
+ *   the newer copy searchable
+ */
 public class VectorStore {
 
     /* =========================
        HARD LIMITS
        ========================= */
 
-    private static final int MAX_VECTORS = 5_000;
-    private static final int PREFILTER_LIMIT = 400; // 🔥 key speed boost
+    public static final int DEFAULT_MAX_VECTORS = 5_000;
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+
+    // Unit of sealing and eviction
+    public static final int SEGMENT_CAPACITY = 256;
+
+    // Text, ids and index bookkeeping per vector, beyond the float data
+    private static final int VECTOR_OVERHEAD = 256;
+
+    /* =========================
+       HYBRID SEARCH
+       ========================= */
+
+    // Lexical candidates handed to the vector re-ranker
+    private static final int LEXICAL_CANDIDATES = 300;
+
+    // Share of the final score taken by normalized BM25 (rest is cosine)
+    public static final double DEFAULT_LEXICAL_WEIGHT = 0.3;
+
+    /* =========================
+       INDEX SELECTION
+       ========================= */
+
+    // hnsw|ivf|flat|int8|pq — see newIndex(String)
+    public static final String DEFAULT_INDEX = "hnsw";
+
+    /**
+     * Thread-safe ANN index (HNSW by default, see {@link #newIndex(String)})
+     */
+    private final VectorIndex index;
+
+    /**
+     * BM25 inverted index over the same embeddings' text
+     */
+    private final LexicalIndex lexicalIndex = new LexicalIndex();
+
+    /**
+     * Segmented storage — also the eviction order
+     */
+    private final SegmentLog log;
 
     /**
-     * Thread-safe store
+     * Rows in the log per id — more than one after a re-add
      */
-    private final List<Embedding> store = new CopyOnWriteArrayList<>();
+    private final Map<String, Integer> rowsPerId = new HashMap<>();
+
+    private final int maxVectors;
+    private final long maxBytes;
+
+    // Mapped segments searched by exact scan until the indexes are built
+    private volatile List<VectorSegment> unindexed = null;
+
+    private volatile int size = 0;
+    private volatile long bytes = 0;
+    private int dimension = -1;
+
+    private boolean closed = false;
+
+    public VectorStore() {
+        this(DEFAULT_MAX_VECTORS, DEFAULT_MAX_BYTES);
+    }
+
+    public VectorStore(int maxVectors, long maxBytes) {
+        this(DEFAULT_INDEX, maxVectors, maxBytes);
+    }
+
+    /**
+     * In-memory store over the given ANN index kind.
+     */
+    public VectorStore(String indexKind, int maxVectors, long maxBytes) {
+        this(newIndex(indexKind), maxVectors, maxBytes, new SegmentLog(null, SEGMENT_CAPACITY));
+    }
+
+    VectorStore(VectorIndex index) {
+        this(index, DEFAULT_MAX_VECTORS, DEFAULT_MAX_BYTES, new SegmentLog(null, SEGMENT_CAPACITY));
+    }
+
+    VectorStore(VectorIndex index, int maxVectors, long maxBytes, SegmentLog log) {
+        this.index = index;
+        this.maxVectors = Math.max(1, maxVectors);
+        this.maxBytes = Math.max(1, maxBytes);
+        this.log = log;
+    }
 
     /* ============================================================
-       ADD
+       PERSISTENCE
        ============================================================ */
 
-    public void add(Embedding embedding) {
+    /**
+     * New, empty store that seals its segments into {@code dir}.
+     * Anything already in the directory is discarded.
+     */
+    public static VectorStore create(Path dir, int maxVectors, long maxBytes) throws IOException {
+        return create(dir, DEFAULT_INDEX, maxVectors, maxBytes);
+    }
+
+    public static VectorStore create(Path dir, String indexKind, int maxVectors, long maxBytes) throws IOException {
+
+        new SegmentLog(dir, SEGMENT_CAPACITY).delete();
+        Files.createDirectories(dir);
+
+        SegmentLog log = new SegmentLog(dir, SEGMENT_CAPACITY);
+        if (!log.snapshot()) {
+            throw new IOException("Cannot write vector manifest in " + dir);
+        }
+
+        return new VectorStore(newIndex(indexKind), maxVectors, maxBytes, log);
+    }
+
+    /**
+     * Reopens a persisted store by mapping its segments (no vector is read).
+     * It is searchable right away by exact scan; ANN and BM25 search
+     * take over once {@link #buildIndexes()} has run.
+     */
+    public static VectorStore open(Path dir, int maxVectors, long maxBytes) throws IOException {
+        return open(dir, DEFAULT_INDEX, maxVectors, maxBytes);
+    }
+
+    public static VectorStore open(Path dir, String indexKind, int maxVectors, long maxBytes) throws IOException {
 
-        if (embedding == null || embedding.getVector() == null) {
+        VectorIndex index = newIndex(indexKind);
+        SegmentLog log = SegmentLog.open(dir, SEGMENT_CAPACITY, segment -> estimateBytes(index, segment));
+        VectorStore store = new VectorStore(index, maxVectors, maxBytes, log);
+
+        List<VectorSegment> segments = new ArrayList<>();
+        for (SegmentLog.Sealed sealed : log.sealed()) {
+            segments.add(sealed.segment);
+            store.dimension = sealed.segment.dimension();
+            for (String id : sealed.ids()) {
+                store.rowsPerId.merge(id, 1, Integer::sum);
+            }
+        }
+
+        store.size = log.size();
+        store.bytes = log.bytes();
+        store.unindexed = segments.isEmpty() ? null : List.copyOf(segments);
+        return store;
+    }
+
+    public static boolean exists(Path dir) {
+        return SegmentLog.exists(dir);
+    }
+
+    /**
+     * Loads reopened segments into the ANN and BM25 indexes.
+     * No-op for stores that were never reopened. Writers wait until it is done.
+     */
+    public synchronized void buildIndexes() {
+
+        List<VectorSegment> segments = unindexed;
+        if (segments == null) {
             return;
         }
 
-        if (store.size() >= MAX_VECTORS) {
-            store.remove(0);
+        for (VectorSegment segment : segments) {
+            for (int row = 0; row < segment.size(); row++) {
+                Embedding embedding = segment.embedding(row);
+                index.add(embedding);
+                lexicalIndex.add(embedding);
+            }
+        }
+
+        unindexed = null;
+    }
+
+    /**
+     * Seals the partial segment and writes the manifest, so a restart
+     * restores everything added so far. Returns false if not persisted.
+     */
+    public synchronized boolean snapshot() {
+        if (closed) {
+            return false;
+        }
+        rebind(log.seal());
+        return log.snapshot();
+    }
+
+    /**
+     * Final snapshot; later writes are ignored. Searches keep working for
+     * readers still holding the store. Returns false if not persisted.
+     */
+    public synchronized boolean close() {
+        if (closed) {
+            return false;
         }
+        boolean persisted = snapshot();
+        closed = true;
+        return persisted;
+    }
 
-        store.add(embedding);
+    /**
+     * Drops all vectors and removes the persisted files; later writes are ignored.
+     */
+    public synchronized void delete() {
+        closed = true;
+        index.clear();
+        lexicalIndex.clear();
+        log.delete();
+        rowsPerId.clear();
+        unindexed = null;
+        size = 0;
+        bytes = 0;
     }
 
     /* ============================================================
-       FAST SEMANTIC SEARCH
+       ADD
        ============================================================ */
 
-    public List<Embedding> search(double[] queryVector, int topK) {
+    public synchronized void add(Embedding embedding) {
 
-        if (queryVector == null || store.isEmpty()) {
-            return List.of();
+        if (closed || embedding == null || embedding.getDimension() == 0) {
+            return;
         }
 
-        // 1️⃣ FAST keyword pre-filter
-        List<Embedding> candidates = prefilterByText(queryVector, PREFILTER_LIMIT);
+        // One dimension per store — segments are fixed-width
+        if (dimension != -1 && embedding.getDimension() != dimension) {
+            return;
+        }
 
-        // 2️⃣ Cosine similarity only on reduced set
-        PriorityQueue<ScoredEmbedding> heap =
-                new PriorityQueue<>(Comparator.comparingDouble(se -> se.score));
+        long added = estimateBytes(embedding);
+        if (added > maxBytes) {
+            return;
+        }
 
-        for (Embedding embedding : candidates) {
+        buildIndexes();
 
-            double[] vec = embedding.getVector();
-            if (vec == null || vec.length != queryVector.length) continue;
+        while (log.size() > 0 && (log.size() >= maxVectors || log.bytes() + added > maxBytes)) {
+            for (String evicted : log.evictOldest()) {
+                forgetRow(evicted);
+            }
+        }
 
-            double score = cosineSimilarity(queryVector, vec);
+        index.add(embedding);
+        lexicalIndex.add(embedding);
+        rowsPerId.merge(embedding.getId(), 1, Integer::sum);
+        rebind(log.append(embedding, added));
 
-            if (heap.size() < topK) {
-                heap.offer(new ScoredEmbedding(embedding, score));
-            } else if (score > heap.peek().score) {
-                heap.poll();
-                heap.offer(new ScoredEmbedding(embedding, score));
-            }
+        dimension = embedding.getDimension();
+        size = log.size();
+        bytes = log.bytes();
+    }
+
+    /**
+     * An evicted row leaves the indexes only if it was the id's last row —
+     * eviction is oldest first, so any other row is a newer copy.
+     */
+    private void forgetRow(String id) {
+
+        Integer rows = rowsPerId.get(id);
+        if (rows != null && rows > 1) {
+            rowsPerId.put(id, rows - 1);
+            return;
         }
 
-        List<Embedding> results = new ArrayList<>();
-        while (!heap.isEmpty()) {
-            results.add(heap.poll().embedding);
+        rowsPerId.remove(id);
+        index.remove(id);
+        lexicalIndex.remove(id);
+    }
+
+    /**
+     * Points both indexes at a freshly sealed segment's mapped rows,
+     * releasing the heap copies, and lowers its charge accordingly.
+     */
+    private void rebind(SegmentLog.Sealed sealed) {
+
+        if (sealed == null || sealed.segment == null) {
+            return;
         }
 
-        Collections.reverse(results);
-        return results;
+        VectorSegment segment = sealed.segment;
+        for (int row = 0; row < segment.size(); row++) {
+            Embedding mapped = segment.embedding(row);
+            index.rebind(mapped);
+            lexicalIndex.rebind(mapped);
+        }
+
+        log.recharge(sealed, estimateBytes(index, segment));
     }
 
     /* ============================================================
-       PREFILTER
+       FAST SEMANTIC SEARCH
        ============================================================ */
 
     /**
-     * Reduces search space using cheap string matching.
-     * This gives a HUGE speedup.
+     * Returns the topK most similar embeddings, best first.
      */
-    private List<Embedding> prefilterByText(double[] queryVector, int limit) {
+    public List<Embedding> search(double[] queryVector, int topK) {
 
-        // If store is already small, skip filter
-        if (store.size() <= limit) {
-            return store;
+        if (queryVector == null || isEmpty()) {
+            return List.of();
         }
 
-        // Randomized sampling (prevents bias)
-        List<Embedding> shuffled = new ArrayList<>(store);
-        Collections.shuffle(shuffled);
+        List<VectorSegment> segments = unindexed;
+        if (segments != null) {
+            return scan(segments, queryVector, topK);
+        }
 
-        return shuffled.subList(0, limit);
+        return index.search(queryVector, topK);
+    }
+
+    /**
+     * Hybrid search: the top BM25 candidates plus the ANN top-k are
+     * re-ranked by {@code lexicalWeight * bm25 / maxBm25 + (1 - lexicalWeight) * cosine}.
+     *
+     * Works lexically alone if the query vector is empty (embedding failed),
+     * and falls back to pure ANN search when no indexed text shares a term.
+     */
+    public List<Embedding> hybridSearch(
+            String query,
+            double[] queryVector,
+            int topK,
+            double lexicalWeight
+    ) {
+
+        if (topK <= 0 || isEmpty()) {
+            return List.of();
+        }
+
+        double weight = Math.max(0.0, Math.min(1.0, lexicalWeight));
+
+        List<LexicalIndex.Hit> lexical = lexicalIndex.search(query, LEXICAL_CANDIDATES);
+
+        boolean hasVector = queryVector != null && queryVector.length > 0;
+        float[] unitQuery = hasVector ? VectorMath.normalize(queryVector) : null;
+
+        if (lexical.isEmpty()) {
+            return unitQuery == null ? List.of() : search(queryVector, topK);
+        }
+
+        float maxLexical = lexical.get(0).getScore();
+
+        Map<String, Candidate> candidates = new HashMap<>();
+        for (LexicalIndex.Hit hit : lexical) {
+            candidates.put(
+                    hit.getEmbedding().getId(),
+                    new Candidate(hit.getEmbedding(), hit.getScore() / maxLexical)
+            );
+        }
+
+        // Semantic neighbours with no shared keyword still compete
+        if (unitQuery != null) {
+            for (Embedding neighbour : search(queryVector, topK)) {
+                candidates.putIfAbsent(neighbour.getId(), new Candidate(neighbour, 0f));
+            }
+        }
+
+        for (Candidate candidate : candidates.values()) {
+            double cosine = candidate.embedding.cosine(unitQuery);
+            candidate.score = weight * candidate.lexical + (1.0 - weight) * cosine;
+        }
+
+        return candidates.values()
+                .stream()
+                .sorted(Comparator.comparingDouble((Candidate c) -> c.score).reversed())
+                .limit(topK)
+                .map(c -> c.embedding)
+                .toList();
     }
 
     /* ============================================================
        UTIL
        ============================================================ */
 
-    public void clear() {
-        store.clear();
+    public synchronized void clear() {
+        if (closed) {
+            return;
+        }
+        index.clear();
+        lexicalIndex.clear();
+        log.clear();
+        rowsPerId.clear();
+        unindexed = null;
+        size = 0;
+        bytes = 0;
     }
 
     public boolean isEmpty() {
-        return store.isEmpty();
+        return size == 0;
     }
 
     public int size() {
-        return store.size();
+        return size;
     }
 
-    /* ============================================================
-       MATH
-       ============================================================ */
+    /**
+     * True until reopened segments have been loaded into the indexes.
+     */
+    public boolean isScanOnly() {
+        return unindexed != null;
+    }
+
+    /**
+     * Estimated heap held by this store's vectors and indexes.
+     */
+    public long estimatedBytes() {
+        return bytes;
+    }
+
+    private long estimateBytes(Embedding embedding) {
+        // The index's own copy (float32 row or quantized code), plus the
+        // Embedding's float32 vector while it is not memory-mapped
+        int dimension = embedding.getDimension();
+        return VECTOR_OVERHEAD
+                + index.bytesPerVector(dimension)
+                + (embedding.isOnHeap() ? 4L * dimension : 0)
+                + 2L * embedding.getText().length();
+    }
+
+    /**
+     * Heap the segment takes once its mapped rows are in the indexes.
+     */
+    static long estimateBytes(VectorIndex index, VectorSegment segment) {
+        return segment.size() * (VECTOR_OVERHEAD + index.bytesPerVector(segment.dimension()))
+                + 2L * segment.textBytes();
+    }
+
+    /**
+     * Exact top-k over mapped segments; only the winners become Embeddings.
+     */
+    private static List<Embedding> scan(List<VectorSegment> segments, double[] queryVector, int topK) {
+
+        float[] unit = VectorMath.normalize(queryVector);
+        if (unit == null || topK <= 0) {
+            return List.of();
+        }
+
+        PriorityQueue<ScanHit> heap = new PriorityQueue<>(topK + 1, Comparator.comparingDouble(h -> h.score));
+
+        for (VectorSegment segment : segments) {
 
-    private double cosineSimilarity(double[] a, double[] b) {
+            if (segment.dimension() != unit.length) continue;
 
-        double dot = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
+            float[] scratch = new float[segment.dimension()];
+            for (int row = 0; row < segment.size(); row++) {
+                float score = segment.dot(unit, row, scratch);
+                if (heap.size() < topK) {
+                    heap.add(new ScanHit(score, segment, row));
+                } else if (score > heap.peek().score) {
+                    heap.poll();
+                    heap.add(new ScanHit(score, segment, row));
+                }
+            }
+        }
 
-        for (int i = 0; i < a.length; i++) {
-            dot += a[i] * b[i];
-            normA += a[i] * a[i];
-            normB += b[i] * b[i];
+        Embedding[] results = new Embedding[heap.size()];
+        for (int i = results.length - 1; i >= 0; i--) {
+            ScanHit hit = heap.poll();
+            results[i] = hit.segment.embedding(hit.row);
         }
 
-        return dot / (Math.sqrt(normA) * Math.sqrt(normB) + 1e-9);
+        return Arrays.asList(results);
+    }
+
+    /**
+     * ANN index by kind (the {@code vector.index} property):
+     * hnsw (default, best recall), ivf (k-means lists), flat (exact scan),
+     * int8 or pq (quantized codes re-scored at full precision — the least
+     * heap per vector). Unknown or missing values fall back to HNSW.
+     */
+    static VectorIndex newIndex(String indexKind) {
+        String kind = indexKind == null ? DEFAULT_INDEX : indexKind.trim().toLowerCase(Locale.ROOT);
+        return switch (kind) {
+            case "ivf" -> new IvfIndex();
+            case "flat" -> new FlatIndex();
+            case "int8" -> new QuantizedIndex(QuantizedIndex.Mode.INT8);
+            case "pq" -> new QuantizedIndex(QuantizedIndex.Mode.PQ);
+            default -> new HnswIndex();
+        };
     }
 
     /* ============================================================
-       INTERNAL
+       INTERNAL MODEL
        ============================================================ */
 
-    private static class ScoredEmbedding {
+    private static class Candidate {
         final Embedding embedding;
-        final double score;
+        final float lexical;
+        double score;
 
-        ScoredEmbedding(Embedding embedding, double score) {
+        Candidate(Embedding embedding, float lexical) {
             this.embedding = embedding;
+            this.lexical = lexical;
+        }
+    }
+
+    private static class ScanHit {
+        final float score;
+        final VectorSegment segment;
+        final int row;
+
+        ScanHit(float score, VectorSegment segment, int row) {
             this.score = score;
+            this.segment = segment;
+            this.row = row;
         }
     }
 }
@@ -3,7 +3,12 @@ package com.webintel.backend;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// Nothing under the user's home
+@SpringBootTest(properties = {
+		"vector.storage.dir=${java.io.tmpdir}/webintel-tests/vectors",
+		"vector.embedding.cache.dir=${java.io.tmpdir}/webintel-tests/embedding-cache",
+		"export.image.cache.dir=${java.io.tmpdir}/webintel-tests/image-cache"
+})
 class BackendApplicationTests {
 
 	@Test
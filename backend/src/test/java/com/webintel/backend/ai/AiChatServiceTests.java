@@ -0,0 +1,119 @@
+package com.webintel.backend.ai;
+
+import com.webintel.backend.ai.LlmScheduler.Priority;
+import com.webintel.backend.domain.PageResult;
+import com.webintel.backend.vector.QueryVectorCache;
+import com.webintel.backend.vector.VectorNamespaces;
+import com.webintel.backend.vector.VectorStore;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AiChatServiceTests {
+
+	@Test
+	void packingKeepsRelevanceOrderWithinTheBudget() {
+		List<String> ranked = new ArrayList<>();
+		ranked.add("a".repeat(400));  // 100 tokens
+		ranked.add("b".repeat(400));
+		ranked.add("a".repeat(400));  // duplicate
+		ranked.add("c".repeat(800));  // 200 tokens: does not fit after the first two
+		ranked.add("d".repeat(200));  // 50 tokens: still fits
+		for (int i = 0; i < 1_000; i++) {
+			ranked.add("page text " + i + " ".repeat(100));
+		}
+
+		List<String> packed = AiChatService.pack(ranked, 300);
+
+		assertEquals("a".repeat(400), packed.get(0));
+		assertEquals("b".repeat(400), packed.get(1));
+		assertEquals("d".repeat(200), packed.get(2));
+		assertTrue(packed.stream().mapToInt(AiChatService::estimateTokens).sum() <= 300);
+	}
+
+	@Test
+	void followUpsSendOnlyTheNewTurn() {
+		List<String> prompts = new ArrayList<>();
+		List<int[]> contexts = new ArrayList<>();
+		List<String> backends = new ArrayList<>();
+
+		LocalAiClient fake = new LocalAiClient(
+				new LlmScheduler(LlmScheduler.DEFAULT_MAX_IN_FLIGHT),
+				new OllamaPool(List.of(OllamaPool.DEFAULT_ENDPOINT))) {
+			@Override
+			public Reply generate(String prompt, int[] context, String backend, Priority priority) {
+				prompts.add(prompt);
+				contexts.add(context);
+				backends.add(backend);
+				int[] next = context == null ? new int[0] : context;
+				next = Arrays.copyOf(next, next.length + AiChatService.estimateTokens(prompt) + 20);
+				return new Reply("An answer.", next, backend == null ? "http://gpu-" + prompts.size() : backend);
+			}
+		};
+
+		PageResult page = new PageResult();
+		page.setParagraphs(List.of("The shop sells red bicycles for 300 euros.", "Delivery takes two days."));
+
+		try (VectorNamespaces namespaces = new VectorNamespaces(null, VectorStore.DEFAULT_INDEX);
+			 AiChatService chat = new AiChatService(fake, namespaces, new QueryVectorCache(null), new ConversationStore())) {
+
+			for (int turn = 0; turn < 3; turn++) {
+				chat.chat("no-vectors", "c1", "question " + turn + "?", List.of(page));
+			}
+
+			assertNull(contexts.get(0));
+			assertNull(backends.get(0));
+			assertTrue(prompts.get(0).contains("red bicycles"));
+
+			for (int turn = 1; turn < 3; turn++) {
+				assertNotNull(contexts.get(turn));
+				assertEquals("http://gpu-1", backends.get(turn)); // pinned to the first turn's instance
+				assertFalse(prompts.get(turn).contains("red bicycles"));
+				assertTrue(prompts.get(turn).contains("question " + turn + "?"));
+				assertEquals(prompts.get(1).length(), prompts.get(turn).length());
+			}
+
+			// Another conversation on the same result starts fresh
+			chat.chat("no-vectors", "c2", "question 0?", List.of(page));
+			assertNull(contexts.get(3));
+		}
+	}
+
+	@Test
+	void chatsWithoutConversationIdDoNotShareContext() {
+		List<String> prompts = new ArrayList<>();
+		List<int[]> contexts = new ArrayList<>();
+
+		LocalAiClient fake = new LocalAiClient(
+				new LlmScheduler(LlmScheduler.DEFAULT_MAX_IN_FLIGHT),
+				new OllamaPool(List.of(OllamaPool.DEFAULT_ENDPOINT))) {
+			@Override
+			public Reply generate(String prompt, int[] context, String backend, Priority priority) {
+				prompts.add(prompt);
+				contexts.add(context);
+				return new Reply("An answer.", new int[]{1, 2, 3}, "http://gpu-1");
+			}
+		};
+
+		PageResult page = new PageResult();
+		page.setParagraphs(List.of("The shop sells red bicycles for 300 euros."));
+
+		ConversationStore conversations = new ConversationStore();
+		try (VectorNamespaces namespaces = new VectorNamespaces(null, VectorStore.DEFAULT_INDEX);
+			 AiChatService chat = new AiChatService(fake, namespaces, new QueryVectorCache(null), conversations)) {
+
+			chat.chat("no-vectors", null, "What is sold?", List.of(page));
+			chat.chat("no-vectors", " ", "What does it cost?", List.of(page));
+
+			// Both are first turns: no earlier state, full passages each time
+			assertNull(contexts.get(0));
+			assertNull(contexts.get(1));
+			assertTrue(prompts.get(1).contains("red bicycles"));
+			assertEquals(0, conversations.size());
+		}
+	}
+}
@@ -0,0 +1,108 @@
+package com.webintel.backend.ai;
+
+import com.webintel.backend.ai.LlmScheduler.Priority;
+import com.webintel.backend.domain.CrawlIntent;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AiIntentRefinerTests {
+
+	private final AtomicInteger llmCalls = new AtomicInteger();
+	private final IntentInterpreter interpreter = new IntentInterpreter();
+
+	private final LocalAiClient fake = new LocalAiClient(
+			new LlmScheduler(LlmScheduler.DEFAULT_MAX_IN_FLIGHT),
+			new OllamaPool(List.of(OllamaPool.DEFAULT_ENDPOINT))) {
+		@Override
+		public String generate(String prompt, Priority priority) {
+			llmCalls.incrementAndGet();
+			return "Extract headings, images and links from the entire website.";
+		}
+	};
+
+	@Test
+	void unambiguousPromptsSkipTheModel() {
+		try (AiIntentRefiner refiner = new AiIntentRefiner(fake, interpreter)) {
+			String refined = refiner.refine("extract headings and links from the entire website");
+
+			CrawlIntent intent = interpreter.interpret(refined);
+			assertEquals(List.of("headings", "links"), intent.getContentTypes());
+			assertTrue(intent.isMultiPage());
+			assertEquals(0, llmCalls.get());
+		}
+	}
+
+	@Test
+	void promptsWithRepeatedWordsAreScored() {
+		String prompt = "extract the headings and the links from the entire website";
+
+		assertEquals(1.0, interpreter.confidence(prompt));
+
+		try (AiIntentRefiner refiner = new AiIntentRefiner(fake, interpreter)) {
+			CrawlIntent intent = interpreter.interpret(refiner.refine(prompt));
+			assertEquals(List.of("headings", "links"), intent.getContentTypes());
+			assertEquals(0, llmCalls.get());
+		}
+	}
+
+	@Test
+	void pluralPagesAreNotASinglePageScope() {
+		String prompt = "extract headings from all the pages";
+
+		assertTrue(interpreter.interpret(prompt).isMultiPage());
+
+		try (AiIntentRefiner refiner = new AiIntentRefiner(fake, interpreter)) {
+			CrawlIntent intent = interpreter.interpret(refiner.refine(prompt));
+			assertEquals(List.of("headings"), intent.getContentTypes());
+			assertTrue(intent.isMultiPage());
+			assertEquals(0, llmCalls.get());
+
+			// "the pages" states no scope at all — the model decides
+			refiner.refine("extract headings from the pages");
+			assertEquals(1, llmCalls.get());
+		}
+	}
+
+	@Test
+	void pluralScopePhrasesStillMeanMultiPage() {
+		for (String instruction : List.of(
+				"Crawl websites and extract headings.",
+				"Extract links from the websites.",
+				"Extract images from the entire websites.",
+				"Crawl sites and extract paragraphs.")) {
+			assertTrue(interpreter.interpret(instruction).isMultiPage(), instruction);
+		}
+	}
+
+	@Test
+	void longPromptsReachTheModelEvenWithExplicitScope() {
+		String prompt = "extract the headings from the entire website but only the ones that look like"
+				+ " product names and skip anything about shipping or returns";
+
+		assertTrue(interpreter.confidence(prompt) < AiIntentRefiner.FAST_PATH_CONFIDENCE);
+
+		try (AiIntentRefiner refiner = new AiIntentRefiner(fake, interpreter)) {
+			refiner.refine(prompt);
+			assertEquals(1, llmCalls.get());
+		}
+	}
+
+	@Test
+	void vaguePromptsReachTheModelOnce() {
+		try (AiIntentRefiner refiner = new AiIntentRefiner(fake, interpreter)) {
+			AiIntentRefiner.Refinement first = refiner.begin("What does this company sell?");
+			assertFalse(first.isLikely());
+
+			String refined = first.await();
+			String again = refiner.refine("  what does this   company SELL? ");
+
+			assertEquals(refined, again);
+			assertTrue(interpreter.interpret(again).wantsImages());
+			assertEquals(1, llmCalls.get());
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package com.webintel.backend.ai;
+
+import com.webintel.backend.ai.LlmScheduler.Priority;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AiSummaryServiceTests {
+
+	private final LlmScheduler scheduler = new LlmScheduler(4);
+
+	@Test
+	void everyPageReachesTheModelWithBoundedConcurrency() {
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger peak = new AtomicInteger();
+		Set<String> seenPages = ConcurrentHashMap.newKeySet();
+
+		LocalAiClient fake = new LocalAiClient(scheduler, new OllamaPool(List.of(OllamaPool.DEFAULT_ENDPOINT))) {
+			@Override
+			public String generate(String prompt, Priority priority, Duration deadline) {
+				peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+				try {
+					Thread.sleep(20);
+					for (String word : prompt.split("\\s+")) {
+						if (word.startsWith("page-")) seenPages.add(word);
+					}
+					return "- facts from " + prompt.length() + " chars";
+				} catch (InterruptedException e) {
+					return "";
+				} finally {
+					inFlight.decrementAndGet();
+				}
+			}
+		};
+
+		List<String> pages = new ArrayList<>();
+		for (int i = 0; i < 40; i++) {
+			pages.add("page-" + i + " " + "lorem ipsum ".repeat(400));
+		}
+
+		try (AiSummaryService service = new AiSummaryService(fake, scheduler)) {
+			String summary = service.summarizeAll(pages);
+			assertFalse(summary.isBlank());
+			assertFalse(summary.contains("not covered"));
+		}
+
+		assertEquals(40, seenPages.size());
+		assertTrue(peak.get() > 1, "map calls never overlapped");
+		assertTrue(peak.get() <= 4, "peak concurrency was " + peak.get());
+	}
+
+	@Test
+	void mapCallsThatFailAreReported() {
+		LocalAiClient fake = new LocalAiClient(scheduler, new OllamaPool(List.of(OllamaPool.DEFAULT_ENDPOINT))) {
+			@Override
+			public String generate(String prompt, Priority priority, Duration deadline) {
+				// Shed, as the scheduler does when a deadline is lost
+				return prompt.contains("page-3 ") ? "" : "- facts";
+			}
+		};
+
+		List<String> pages = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			pages.add("page-" + i + " " + "lorem ipsum ".repeat(500));
+		}
+
+		try (AiSummaryService service = new AiSummaryService(fake, scheduler)) {
+			String summary = service.summarizeAll(pages);
+			assertTrue(summary.startsWith("- facts"), summary);
+			assertTrue(summary.contains("Note: 1 of "), summary);
+			assertTrue(summary.endsWith("could not be summarized in time and are not covered."), summary);
+		}
+	}
+
+	@Test
+	void interruptingTheCallerInterruptsRunningMapCalls() throws Exception {
+		CountDownLatch started = new CountDownLatch(4);
+		CountDownLatch interrupted = new CountDownLatch(4);
+		AtomicInteger calls = new AtomicInteger();
+
+		LocalAiClient fake = new LocalAiClient(scheduler, new OllamaPool(List.of(OllamaPool.DEFAULT_ENDPOINT))) {
+			@Override
+			public String generate(String prompt, Priority priority, Duration deadline) {
+				calls.incrementAndGet();
+				started.countDown();
+				try {
+					Thread.sleep(60_000);
+					return "- facts";
+				} catch (InterruptedException e) {
+					interrupted.countDown();
+					return "";
+				}
+			}
+		};
+
+		List<String> pages = new ArrayList<>();
+		for (int i = 0; i < 12; i++) {
+			pages.add("page-" + i + " " + "lorem ipsum ".repeat(500));
+		}
+
+		try (AiSummaryService service = new AiSummaryService(fake, scheduler)) {
+			Thread caller = new Thread(() -> service.summarizeAll(pages));
+			caller.start();
+
+			assertTrue(started.await(5, TimeUnit.SECONDS));
+			caller.interrupt();
+			caller.join(5_000);
+
+			assertFalse(caller.isAlive());
+			assertTrue(interrupted.await(5, TimeUnit.SECONDS), "running map calls were left to finish");
+
+			// Queued groups were cancelled, not started
+			Thread.sleep(100);
+			assertEquals(4, calls.get());
+		}
+	}
+
+	@Test
+	void finalSummaryTokensReachTheListener() {
+		try (OllamaStub stub = OllamaStub.streaming(200,
+				"{\"response\":\"- red \"}",
+				"",
+				"{\"response\":\"bicycles\"}",
+				"{\"response\":\"\",\"done\":true}");
+			 OllamaPool pool = new OllamaPool(List.of(stub.endpoint()));
+			 AiSummaryService service = new AiSummaryService(new LocalAiClient(scheduler, pool), scheduler)) {
+
+			List<String> tokens = new ArrayList<>();
+			String summary = service.summarizeAll(List.of("The shop sells red bicycles."), tokens::add);
+
+			assertEquals(List.of("- red ", "bicycles"), tokens);
+			assertEquals("- red bicycles", summary);
+		}
+	}
+
+	@Test
+	void batchDeadlinesCoverEveryRound() {
+		LlmScheduler two = new LlmScheduler(2);
+
+		assertEquals(Priority.BATCH.defaultDeadline(), two.deadlineFor(Priority.BATCH, 2));
+		assertTrue(two.deadlineFor(Priority.BATCH, 1_000).compareTo(Priority.BATCH.defaultDeadline()) > 0);
+	}
+}
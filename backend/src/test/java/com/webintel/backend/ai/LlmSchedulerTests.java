@@ -0,0 +1,91 @@
+package com.webintel.backend.ai;
+
+import com.webintel.backend.ai.LlmScheduler.Permit;
+import com.webintel.backend.ai.LlmScheduler.Priority;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LlmSchedulerTests {
+
+	@Test
+	void interactiveCallsOvertakeQueuedBatchCalls() throws InterruptedException {
+		LlmScheduler scheduler = new LlmScheduler(1);
+		List<Priority> order = new CopyOnWriteArrayList<>();
+
+		Permit running = scheduler.acquire(Priority.BATCH);
+		assertNotNull(running);
+
+		Thread batch = waiter(scheduler, Priority.BATCH, order);
+		awaitQueueDepth(scheduler, 1);
+		Thread interactive = waiter(scheduler, Priority.INTERACTIVE, order);
+		awaitQueueDepth(scheduler, 2);
+
+		running.close();
+		batch.join(5_000);
+		interactive.join(5_000);
+
+		assertEquals(List.of(Priority.INTERACTIVE, Priority.BATCH), order);
+		assertEquals(0, scheduler.stats().get("inFlight"));
+	}
+
+	@Test
+	void callsThatCannotMeetTheirDeadlineAreShed() {
+		LlmScheduler scheduler = new LlmScheduler(1);
+
+		try (Permit running = scheduler.acquire(Priority.BATCH)) {
+			assertNotNull(running);
+			assertNull(scheduler.acquire(Priority.INTERACTIVE, Duration.ofMillis(50)));
+		}
+
+		assertEquals(1L, scheduler.stats().get("shed"));
+		assertEquals(0, scheduler.queueDepth());
+	}
+
+	@Test
+	void sparePermitsOnlyUseIdleSlots() {
+		LlmScheduler scheduler = new LlmScheduler(2);
+
+		try (Permit running = scheduler.acquire(Priority.BATCH);
+			 Permit spare = scheduler.tryAcquire()) {
+			assertNotNull(running);
+			assertNotNull(spare);
+
+			// Both slots taken: neither a call nor another spare fits
+			assertNull(scheduler.tryAcquire());
+			assertNull(scheduler.acquire(Priority.INTERACTIVE, Duration.ofMillis(50)));
+		}
+
+		assertEquals(0, scheduler.stats().get("inFlight"));
+		assertEquals(1L, scheduler.stats().get("spare"));
+	}
+
+	@Test
+	void capacityScalesWithInstances() {
+		try (OllamaPool pool = new OllamaPool(List.of("http://127.0.0.1:1", "http://127.0.0.1:2", "http://127.0.0.1:3"))) {
+			assertEquals(6, new LlmScheduler(2, pool).maxInFlight());
+		}
+	}
+
+	private static Thread waiter(LlmScheduler scheduler, Priority priority, List<Priority> order) {
+		Thread t = new Thread(() -> {
+			try (Permit permit = scheduler.acquire(priority)) {
+				if (permit != null) order.add(priority);
+			}
+		});
+		t.start();
+		return t;
+	}
+
+	private static void awaitQueueDepth(LlmScheduler scheduler, int depth) throws InterruptedException {
+		long until = System.currentTimeMillis() + 5_000;
+		while (scheduler.queueDepth() < depth && System.currentTimeMillis() < until) {
+			Thread.sleep(5);
+		}
+		assertEquals(depth, scheduler.queueDepth());
+	}
+}
@@ -0,0 +1,119 @@
+package com.webintel.backend.ai;
+
+import com.webintel.backend.ai.LlmScheduler.Permit;
+import com.webintel.backend.ai.LlmScheduler.Priority;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LocalAiClientTests {
+
+	@Test
+	void streamSkipsBlankLinesAndKeepsTheFinalContext() {
+		try (OllamaStub stub = OllamaStub.streaming(200,
+				"{\"response\":\"Hel\",\"done\":false}",
+				"",
+				"{\"response\":\"lo\",\"done\":false}",
+				"   ",
+				"{\"response\":\"\",\"done\":true,\"context\":[1,2,3]}");
+			 OllamaPool pool = new OllamaPool(List.of(stub.endpoint()))) {
+
+			List<String> tokens = new ArrayList<>();
+			LocalAiClient.Reply reply = new LocalAiClient(new LlmScheduler(1), pool)
+					.generateStream("q", null, null, Priority.INTERACTIVE, tokens::add);
+
+			assertEquals(List.of("Hel", "lo"), tokens);
+			assertEquals("Hello", reply.getAnswer());
+			assertArrayEquals(new int[] { 1, 2, 3 }, reply.getContext());
+			assertEquals(stub.endpoint(), reply.getBackend());
+		}
+	}
+
+	@Test
+	void throwingListenerStopsTheStream() {
+		try (OllamaStub stub = OllamaStub.streaming(200,
+				"{\"response\":\"one \"}",
+				"{\"response\":\"two \"}",
+				"{\"response\":\"three\"}",
+				"{\"response\":\"\",\"done\":true,\"context\":[7]}");
+			 OllamaPool pool = new OllamaPool(List.of(stub.endpoint()))) {
+
+			List<String> tokens = new ArrayList<>();
+			LocalAiClient.Reply reply = new LocalAiClient(new LlmScheduler(1), pool)
+					.generateStream("q", null, null, Priority.INTERACTIVE, token -> {
+						tokens.add(token);
+						if (tokens.size() == 2) throw new IllegalStateException("client gone");
+					});
+
+			assertEquals(List.of("one ", "two "), tokens);
+			assertEquals("one two", reply.getAnswer());
+			assertNull(reply.getContext()); // cut off: cannot be continued
+		}
+	}
+
+	@Test
+	void errorStatusYieldsNoAnswer() {
+		try (OllamaStub stub = OllamaStub.streaming(404, "{\"error\":\"model 'llama3' not found\"}");
+			 OllamaPool pool = new OllamaPool(List.of(stub.endpoint()))) {
+
+			List<String> tokens = new ArrayList<>();
+			String answer = new LocalAiClient(new LlmScheduler(1), pool)
+					.generateStream("q", Priority.INTERACTIVE, tokens::add);
+
+			assertEquals("", answer);
+			assertTrue(tokens.isEmpty());
+		}
+	}
+
+	@Test
+	void stalledStreamEndsAfterTheIdleTimeout() {
+		LlmScheduler scheduler = new LlmScheduler(1);
+
+		try (OllamaStub stub = OllamaStub.stalling("{\"response\":\"Hel\"}");
+			 OllamaPool pool = new OllamaPool(List.of(stub.endpoint()))) {
+
+			LocalAiClient client = new LocalAiClient(scheduler, pool, Duration.ofMillis(300));
+			List<String> tokens = new ArrayList<>();
+
+			LocalAiClient.Reply reply = assertTimeoutPreemptively(Duration.ofSeconds(5),
+					() -> client.generateStream("q", null, null, Priority.INTERACTIVE, tokens::add));
+
+			assertEquals("Hel", reply.getAnswer());
+			assertNull(reply.getContext());
+			assertEquals(List.of("Hel"), tokens);
+
+			// The permit went back with the stalled call
+			try (Permit permit = scheduler.tryAcquire()) {
+				assertNotNull(permit);
+			}
+		}
+	}
+
+	@Test
+	void interruptEndsAStalledStream() throws Exception {
+		try (OllamaStub stub = OllamaStub.stalling("{\"response\":\"Hel\"}");
+			 OllamaPool pool = new OllamaPool(List.of(stub.endpoint()))) {
+
+			LocalAiClient client = new LocalAiClient(new LlmScheduler(1), pool, Duration.ofMinutes(5));
+			CountDownLatch firstToken = new CountDownLatch(1);
+			AtomicReference<String> answer = new AtomicReference<>();
+
+			Thread caller = new Thread(() -> answer.set(
+					client.generateStream("q", Priority.INTERACTIVE, token -> firstToken.countDown())));
+			caller.start();
+
+			firstToken.await();
+			caller.interrupt();
+			caller.join(5_000);
+
+			assertFalse(caller.isAlive());
+			assertEquals("Hel", answer.get());
+		}
+	}
+}
@@ -0,0 +1,164 @@
+package com.webintel.backend.ai;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OllamaPoolTests {
+
+	private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+	private final List<HttpServer> servers = new ArrayList<>();
+
+	@AfterEach
+	void stopServers() {
+		servers.forEach(s -> s.stop(0));
+	}
+
+	@Test
+	void failingInstanceIsTakenOutOfRotation() throws Exception {
+		AtomicInteger brokenHits = new AtomicInteger();
+		String broken = stub(500, brokenHits, new AtomicBoolean());
+		String healthy = stub(200, new AtomicInteger(), new AtomicBoolean());
+
+		try (OllamaPool pool = new OllamaPool(List.of(broken, healthy))) {
+			for (int i = 0; i < 10; i++) {
+				HttpResponse<String> response = pool.send("/api/generate", "{}", TIMEOUT,
+						HttpResponse.BodyHandlers.ofString(), false);
+				assertEquals(200, response.statusCode());
+			}
+
+			assertEquals(3, brokenHits.get());
+			assertEquals("OPEN", backend(pool, 0).get("state"));
+			assertEquals("CLOSED", backend(pool, 1).get("state"));
+		}
+	}
+
+	@Test
+	void stalledInstanceIsHedgedAround() throws Exception {
+		AtomicBoolean stalled = new AtomicBoolean();
+		String flaky = stub(200, new AtomicInteger(), stalled);
+		String steady = stub(200, new AtomicInteger(), new AtomicBoolean());
+
+		try (OllamaPool pool = new OllamaPool(List.of(flaky, steady))) {
+			for (int i = 0; i < 40; i++) {
+				pool.send("/api/embed", "{}", TIMEOUT, HttpResponse.BodyHandlers.ofString(), true);
+			}
+
+			stalled.set(true);
+			for (int i = 0; i < 6; i++) {
+				long start = System.nanoTime();
+				HttpResponse<String> response = pool.send("/api/embed", "{}", TIMEOUT,
+						HttpResponse.BodyHandlers.ofString(), true);
+				assertEquals(200, response.statusCode());
+				assertTrue(System.nanoTime() - start < Duration.ofSeconds(1).toNanos());
+			}
+
+			assertTrue((Long) pool.stats().get("hedgeWins") > 0);
+		}
+	}
+
+	@Test
+	void hedgesWaitForASpareSlot() throws Exception {
+		AtomicBoolean stalled = new AtomicBoolean();
+		String first = stub(200, new AtomicInteger(), stalled);
+		String second = stub(200, new AtomicInteger(), stalled);
+
+		LlmScheduler scheduler = new LlmScheduler(1);
+
+		try (OllamaPool pool = new OllamaPool(List.of(first, second))) {
+			for (int i = 0; i < 40; i++) {
+				pool.send("/api/generate", "{}", TIMEOUT, HttpResponse.BodyHandlers.ofString(), true);
+			}
+
+			stalled.set(true);
+			try (LlmScheduler.Permit permit = scheduler.acquire(LlmScheduler.Priority.BATCH)) {
+				assertNotNull(permit);
+				HttpResponse<String> response = pool.send("/api/generate", "{}", TIMEOUT,
+						HttpResponse.BodyHandlers.ofString(), scheduler::tryAcquire);
+				assertEquals(200, response.statusCode());
+			}
+
+			assertTrue((Long) pool.stats().get("hedgesDenied") > 0);
+			assertEquals(0L, scheduler.stats().get("spare"));
+		}
+	}
+
+	@Test
+	void latencyClassesKeepSeparateWindows() throws Exception {
+		String first = stub(200, new AtomicInteger(), new AtomicBoolean());
+		String second = stub(200, new AtomicInteger(), new AtomicBoolean());
+
+		try (OllamaPool pool = new OllamaPool(List.of(first, second))) {
+			for (int i = 0; i < 40; i++) {
+				pool.send("/api/generate", "{}", TIMEOUT, HttpResponse.BodyHandlers.ofString(),
+						OllamaPool.HedgeBudget.UNLIMITED, null, i % 2 == 0 ? "interactive" : "batch");
+			}
+
+			Map<?, ?> p95 = (Map<?, ?>) pool.stats().get("p95Ms");
+			assertTrue(p95.containsKey("/api/generate#interactive"));
+			assertTrue(p95.containsKey("/api/generate#batch"));
+			assertFalse(p95.containsKey("/api/generate"));
+		}
+	}
+
+	@Test
+	void callsWithAffinityStayOnTheirInstance() throws Exception {
+		AtomicInteger firstHits = new AtomicInteger();
+		AtomicInteger secondHits = new AtomicInteger();
+		String first = stub(200, firstHits, new AtomicBoolean());
+		String second = stub(200, secondHits, new AtomicBoolean());
+
+		try (OllamaPool pool = new OllamaPool(List.of(first, second))) {
+			for (int i = 0; i < 6; i++) {
+				HttpResponse<String> response = pool.send("/api/generate", "{}", TIMEOUT,
+						HttpResponse.BodyHandlers.ofString(), OllamaPool.HedgeBudget.NONE, second);
+				assertEquals(second, pool.endpointOf(response));
+			}
+
+			assertEquals(0, firstHits.get());
+			assertEquals(6, secondHits.get());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Map<String, Object> backend(OllamaPool pool, int index) {
+		return ((List<Map<String, Object>>) pool.stats().get("backends")).get(index);
+	}
+
+	private String stub(int status, AtomicInteger hits, AtomicBoolean stalled) throws IOException {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/", exchange -> {
+			hits.incrementAndGet();
+			exchange.getRequestBody().readAllBytes();
+			if (stalled.get()) {
+				try {
+					Thread.sleep(3_000);
+				} catch (InterruptedException ignored) {
+				}
+			}
+			byte[] body = "{\"response\":\"ok\"}".getBytes(StandardCharsets.UTF_8);
+			exchange.sendResponseHeaders(status, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		server.start();
+		servers.add(server);
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+}
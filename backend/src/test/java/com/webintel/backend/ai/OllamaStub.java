@@ -0,0 +1,67 @@
+package com.webintel.backend.ai;
+
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+/**
+ * Local stand-in for an Ollama instance that streams a fixed NDJSON reply:
+ * each line is written and flushed on its own. A stalling stub then keeps
+ * the connection open without another byte until it is closed.
+ */
+public final class OllamaStub implements AutoCloseable {
+
+	private final HttpServer server;
+	private final CountDownLatch unstall = new CountDownLatch(1);
+
+	private OllamaStub(int status, boolean stall, List<String> lines) {
+		try {
+			server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.createContext("/", exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			exchange.sendResponseHeaders(status, 0);
+			OutputStream out = exchange.getResponseBody();
+			for (String line : lines) {
+				out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+				out.flush();
+			}
+			if (stall) {
+				try {
+					unstall.await();
+				} catch (InterruptedException ignored) {
+				}
+			}
+			exchange.close();
+		});
+		server.start();
+	}
+
+	public static OllamaStub streaming(int status, String... lines) {
+		return new OllamaStub(status, false, List.of(lines));
+	}
+
+	public static OllamaStub stalling(String... lines) {
+		return new OllamaStub(200, true, List.of(lines));
+	}
+
+	public String endpoint() {
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@Override
+	public void close() {
+		unstall.countDown();
+		server.stop(0);
+	}
+}
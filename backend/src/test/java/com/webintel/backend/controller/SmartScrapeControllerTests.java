@@ -0,0 +1,153 @@
+package com.webintel.backend.controller;
+
+import com.webintel.backend.ai.AiChatService;
+import com.webintel.backend.ai.ConversationStore;
+import com.webintel.backend.ai.LlmScheduler;
+import com.webintel.backend.ai.LocalAiClient;
+import com.webintel.backend.ai.OllamaPool;
+import com.webintel.backend.ai.OllamaStub;
+import com.webintel.backend.domain.CrawlResult;
+import com.webintel.backend.domain.PageResult;
+import com.webintel.backend.domain.SessionStore;
+import com.webintel.backend.vector.QueryVectorCache;
+import com.webintel.backend.vector.VectorNamespaces;
+import com.webintel.backend.vector.VectorStore;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class SmartScrapeControllerTests {
+
+	@Test
+	void chatStreamRelaysTokensThenTheAnswer() throws Exception {
+		String events = chatStream(OllamaStub.streaming(200,
+				"{\"response\":\"Red \"}",
+				"",
+				"{\"response\":\"bikes.\"}",
+				"{\"response\":\"\",\"done\":true,\"context\":[4,5]}"));
+
+		// Strings go out as plain text; the passage list as JSON
+		assertTrue(events.contains("event:sources\ndata:[\"The shop sells red bicycles.\"]\n\n"), events);
+		assertTrue(events.contains("event:token\ndata:Red \n\nevent:token\ndata:bikes.\n\n"), events);
+		assertTrue(events.endsWith("event:done\ndata:Red bikes.\n\n"), events);
+	}
+
+	@Test
+	void chatStreamReportsAFailedAnswer() throws Exception {
+		String events = chatStream(OllamaStub.streaming(500, "{\"error\":\"out of memory\"}"));
+
+		assertTrue(events.contains("event:sources"), events);
+		assertFalse(events.contains("event:token"), events);
+		assertTrue(events.endsWith("event:failed\ndata:AI answer could not be generated.\n\n"), events);
+	}
+
+	@Test
+	void chatStreamRejectsUnknownResults() throws Exception {
+		try (OllamaStub stub = OllamaStub.streaming(200); Fixture fixture = fixture(stub)) {
+			fixture.mvc.perform(post("/api/smart-scrape/chat/stream")
+							.contentType(MediaType.APPLICATION_JSON)
+							.content("{\"resultId\":\"missing\",\"question\":\"Price?\"}"))
+					.andExpect(status().isBadRequest());
+		}
+	}
+
+	@Test
+	void exportReusesTheStoredResultForTheSameRequest() throws Exception {
+		try (OllamaStub stub = OllamaStub.streaming(200); Fixture fixture = fixture(stub)) {
+			MvcResult result = fixture.mvc.perform(post("/api/smart-scrape/export/csv")
+							.contentType(MediaType.APPLICATION_JSON)
+							.content("{\"resultId\":\"r1\",\"targetUrl\":\"https://shop.example\",\"userPrompt\":\"What is sold?\"}"))
+					.andExpect(request().asyncStarted())
+					.andReturn();
+
+			result.getAsyncResult(5_000);
+			String csv = result.getResponse().getContentAsString();
+			assertTrue(csv.contains("The shop sells red bicycles."), csv);
+		}
+	}
+
+	@Test
+	void exportIgnoresAStoredResultMadeForAnotherUrl() throws Exception {
+		try (OllamaStub stub = OllamaStub.streaming(200); Fixture fixture = fixture(stub)) {
+			// The URL was cleared after the preview: no stored rows, nothing to crawl
+			fixture.mvc.perform(post("/api/smart-scrape/export/csv")
+							.contentType(MediaType.APPLICATION_JSON)
+							.content("{\"resultId\":\"r1\",\"targetUrl\":\" \",\"userPrompt\":\"What is sold?\"}"))
+					.andExpect(status().isNotFound());
+		}
+	}
+
+	/* =========================
+	   FIXTURE
+	   ========================= */
+
+	private static String chatStream(OllamaStub stub) throws Exception {
+		try (stub; Fixture fixture = fixture(stub)) {
+
+			MvcResult result = fixture.mvc.perform(post("/api/smart-scrape/chat/stream")
+							.contentType(MediaType.APPLICATION_JSON)
+							.content("{\"resultId\":\"r1\",\"question\":\"What is sold?\"}"))
+					.andExpect(request().asyncStarted())
+					.andReturn();
+
+			result.getAsyncResult(5_000);
+			return result.getResponse().getContentAsString();
+		}
+	}
+
+	private static Fixture fixture(OllamaStub stub) {
+		PageResult page = new PageResult();
+		page.setParagraphs(List.of("The shop sells red bicycles."));
+
+		CrawlResult stored = new CrawlResult();
+		stored.setResultId("r1");
+		stored.setTargetUrl("https://shop.example");
+		stored.setUserPrompt("What is sold?");
+		stored.setPages(List.of(page));
+
+		SessionStore sessions = new SessionStore();
+		sessions.save("r1", stored);
+
+		return new Fixture(stub, sessions);
+	}
+
+	/**
+	 * The controller with only what the chat endpoints use.
+	 */
+	private static final class Fixture implements AutoCloseable {
+
+		final OllamaPool pool;
+		final VectorNamespaces namespaces = new VectorNamespaces(null, VectorStore.DEFAULT_INDEX);
+		final AiChatService chat;
+		final MockMvc mvc;
+
+		Fixture(OllamaStub stub, SessionStore sessions) {
+			LlmScheduler scheduler = new LlmScheduler(1);
+			QueryVectorCache queryVectors = new QueryVectorCache(null);
+
+			pool = new OllamaPool(List.of(stub.endpoint()));
+			chat = new AiChatService(new LocalAiClient(scheduler, pool), namespaces, queryVectors, new ConversationStore());
+
+			mvc = MockMvcBuilders.standaloneSetup(new SmartScrapeController(
+					null, null, null, null, null, null,
+					sessions, null, chat, scheduler, pool, namespaces, queryVectors
+			)).build();
+		}
+
+		@Override
+		public void close() {
+			chat.close();
+			namespaces.close();
+			pool.close();
+		}
+	}
+}
@@ -0,0 +1,134 @@
+package com.webintel.backend.crawler;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FetchSessionTests {
+
+	@Test
+	void concurrentFetchesOfOneUrlDownloadOnce() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		PageFetcher fetcher = new PageFetcher() {
+			@Override
+			FetchedPage load(String url) {
+				loads.incrementAndGet();
+				loading.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				return FetchedPage.success(url, url, 200, "UTF-8", "<p>hi</p>".getBytes(StandardCharsets.UTF_8));
+			}
+		};
+
+		FetchSession session = fetcher.openSession();
+		ExecutorService callers = Executors.newFixedThreadPool(8);
+
+		try {
+			List<Future<FetchedPage>> results = new ArrayList<>();
+			for (int i = 0; i < 8; i++) {
+				results.add(callers.submit(() -> session.fetch("http://example.test/")));
+			}
+
+			loading.await();
+			Thread.sleep(50); // let the others find the download in flight
+			release.countDown();
+
+			FetchedPage first = results.get(0).get();
+			for (Future<FetchedPage> result : results) {
+				assertSame(first, result.get());
+			}
+			assertEquals(1, loads.get());
+			assertEquals(1, session.size());
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+
+	@Test
+	void waitersAreReleasedWhenTheDownloadDiesWithAnError() throws Exception {
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		PageFetcher fetcher = new PageFetcher() {
+			@Override
+			FetchedPage load(String url) {
+				loading.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				throw new OutOfMemoryError("simulated");
+			}
+		};
+
+		FetchSession session = fetcher.openSession();
+		ExecutorService callers = Executors.newFixedThreadPool(2);
+
+		try {
+			Future<FetchedPage> loader = callers.submit(() -> session.fetch("http://example.test/"));
+			loading.await();
+			Future<FetchedPage> waiter = callers.submit(() -> session.fetch("http://example.test/"));
+			release.countDown();
+
+			assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+				Exception thrown = assertThrows(Exception.class, loader::get);
+				assertInstanceOf(OutOfMemoryError.class, thrown.getCause());
+
+				FetchedPage page = waiter.get();
+				assertFalse(page.isOk());
+				assertTrue(page.getFailure().contains("Fetch aborted"), page.getFailure());
+			});
+		} finally {
+			callers.shutdownNow();
+		}
+	}
+
+	@Test
+	void redirectedPagesKeepTheirFinalUrl() throws Exception {
+		HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/old/", exchange -> {
+			exchange.getResponseHeaders().add("Location", "/new/");
+			exchange.sendResponseHeaders(302, -1);
+			exchange.close();
+		});
+		server.createContext("/new/", exchange -> {
+			byte[] body = "<html><body><a href=\"next\">next</a></body></html>".getBytes(StandardCharsets.UTF_8);
+			exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		server.start();
+
+		try {
+			String base = "http://127.0.0.1:" + server.getAddress().getPort();
+			FetchedPage page = new PageFetcher().openSession().fetch(base + "/old/");
+
+			assertTrue(page.isOk(), page.getFailure());
+			assertEquals(base + "/old/", page.getUrl());
+			assertEquals(base + "/new/", page.getFinalUrl());
+			assertEquals(base + "/new/next", page.getDocument().select("a").attr("abs:href"));
+		} finally {
+			server.stop(0);
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package com.webintel.backend.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MultiPageCrawlerTests {
+
+	private static final String ROOT = "http://example.test/";
+
+	// depth 0: /   depth 1: /a /b /c   depth 2: /a1 /a2 /b1   depth 3: /a1x
+	private static final Map<String, String> SITE = Map.of(
+			ROOT, links("/c", "/a", "/b", "/login", "https://other.test/x", "/logo.png"),
+			"http://example.test/a", links("/a2", "/a1", "/"),
+			"http://example.test/b", links("/b1", "/a"),
+			"http://example.test/c", links(),
+			"http://example.test/a1", links("/a1x"),
+			"http://example.test/a2", links(),
+			"http://example.test/b1", links("/b/"),
+			"http://example.test/a1x", links()
+	);
+
+	@Test
+	void concurrentCrawlsReturnDepthThenUrlOrder() {
+		List<String> expected = List.of(
+				ROOT,
+				"http://example.test/a", "http://example.test/b", "http://example.test/c",
+				"http://example.test/a1", "http://example.test/a2", "http://example.test/b1"
+		);
+
+		for (int concurrency : new int[] { 1, 4, 16 }) {
+			FakeSite site = new FakeSite();
+			Set<String> reported = ConcurrentHashMap.newKeySet();
+
+			try (MultiPageCrawler crawler = new MultiPageCrawler(site)) {
+				List<String> pages = crawler.crawl(ROOT, 50, 2, concurrency, site.openSession(), reported::add);
+
+				assertEquals(expected, pages, "concurrency " + concurrency);
+			}
+			assertEquals(Set.copyOf(expected), reported);
+			site.loads.forEach((url, n) -> assertEquals(1, n.get(), url + " fetched twice"));
+		}
+	}
+
+	@Test
+	void depthLimitStopsLinkFollowing() {
+		FakeSite site = new FakeSite();
+
+		try (MultiPageCrawler crawler = new MultiPageCrawler(site)) {
+			assertEquals(List.of(ROOT), crawler.crawl(ROOT, 50, 0, 4, site.openSession()));
+			assertEquals(4, crawler.crawl(ROOT, 50, 1, 4, site.openSession()).size());
+			assertTrue(crawler.crawl(ROOT, 50, 3, 4, site.openSession()).contains("http://example.test/a1x"));
+		}
+	}
+
+	@Test
+	void pageLimitCapsAdmissionInLinkOrder() {
+		FakeSite site = new FakeSite();
+
+		try (MultiPageCrawler crawler = new MultiPageCrawler(site)) {
+			List<String> pages = crawler.crawl(ROOT, 3, 5, 4, site.openSession());
+
+			assertEquals(List.of(ROOT, "http://example.test/a", "http://example.test/b"), pages);
+		}
+		assertEquals(3, site.loads.size(), "fetched past the page limit: " + site.loads.keySet());
+	}
+
+	@Test
+	void pageLimitInsideALevelFollowsParentOrderNotTiming() {
+		// /a answers last, so /b's links are known first — they must still wait their turn
+		FakeSite site = new FakeSite("http://example.test/a");
+
+		try (MultiPageCrawler crawler = new MultiPageCrawler(site)) {
+			for (int run = 0; run < 3; run++) {
+				List<String> pages = crawler.crawl(ROOT, 6, 2, 4, site.openSession());
+
+				assertEquals(List.of(
+						ROOT,
+						"http://example.test/a", "http://example.test/b", "http://example.test/c",
+						"http://example.test/a1", "http://example.test/a2"
+				), pages);
+			}
+		}
+	}
+
+	/* =========================
+	   FIXTURE
+	   ========================= */
+
+	private static String links(String... hrefs) {
+		StringBuilder html = new StringBuilder("<html><body>");
+		for (String href : hrefs) {
+			html.append("<a href=\"").append(href).append("\">link</a>");
+		}
+		return html.append("</body></html>").toString();
+	}
+
+	/**
+	 * Serves SITE from memory; staggered delays shuffle completion order.
+	 */
+	private static final class FakeSite extends PageFetcher {
+
+		final Map<String, AtomicInteger> loads = new ConcurrentHashMap<>();
+		final Set<String> slow;
+
+		FakeSite(String... slow) {
+			this.slow = Set.of(slow);
+		}
+
+		@Override
+		FetchedPage load(String url) {
+			loads.computeIfAbsent(url, u -> new AtomicInteger()).incrementAndGet();
+
+			try {
+				Thread.sleep(slow.contains(url) ? 100L : (url.hashCode() & 0x7) * 2L);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+
+			String html = SITE.get(url);
+			return html == null
+					? FetchedPage.success(url, url, 404, "UTF-8", new byte[0])
+					: FetchedPage.success(url, url, 200, "UTF-8", html.getBytes(StandardCharsets.UTF_8));
+		}
+	}
+}
@@ -0,0 +1,58 @@
+package com.webintel.backend.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageCacheTests {
+
+	@Test
+	void byteCapEvictsLeastRecentlyUsed() {
+		PageCache cache = new PageCache(100, 60, 60_000);
+
+		cache.put("a", page("a", 40));
+		cache.put("b", page("b", 40));
+		assertNotNull(cache.get("a")); // b is now the eldest
+		cache.put("c", page("c", 40));
+
+		assertNotNull(cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNotNull(cache.get("c"));
+		assertEquals(80, cache.totalBytes());
+
+		// Replacing an entry swaps its bytes instead of adding them
+		cache.put("a", page("a", 20));
+		assertEquals(60, cache.totalBytes());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	void oversizedAndFailedPagesAreNeverCached() {
+		PageCache cache = new PageCache(100, 60, 60_000);
+
+		cache.put("big", page("big", 61));
+		cache.put("missing", FetchedPage.success("missing", "missing", 404, "UTF-8", new byte[10]));
+		cache.put("down", FetchedPage.failure("down", "Connection refused"));
+
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.totalBytes());
+	}
+
+	@Test
+	void expiredEntriesAreDroppedOnRead() throws InterruptedException {
+		PageCache cache = new PageCache(100, 60, 50);
+
+		cache.put("a", page("a", 30));
+		assertNotNull(cache.get("a"));
+
+		Thread.sleep(120);
+
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.totalBytes());
+	}
+
+	private static FetchedPage page(String url, int bytes) {
+		return FetchedPage.success(url, url, 200, "UTF-8", new byte[bytes]);
+	}
+}
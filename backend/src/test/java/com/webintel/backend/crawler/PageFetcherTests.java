@@ -0,0 +1,28 @@
+package com.webintel.backend.crawler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PageFetcherTests {
+
+	@Test
+	void idleHostThrottlesAreEvicted() throws InterruptedException {
+		PageFetcher fetcher = new PageFetcher();
+
+		// Distinct loopback hosts on a closed port: each load fails at once
+		loadHosts(fetcher, 0, 300);
+
+		Thread.sleep(300); // past every host's minimum delay
+
+		loadHosts(fetcher, 300, 600);
+		assertTrue(fetcher.throttledHosts() <= 300, "throttles kept: " + fetcher.throttledHosts());
+	}
+
+	private static void loadHosts(PageFetcher fetcher, int from, int to) {
+		for (int i = from; i < to; i++) {
+			FetchedPage page = fetcher.load("http://127.0." + (i / 250 + 1) + "." + (i % 250 + 1) + ":9/");
+			assertFalse(page.isOk());
+		}
+	}
+}
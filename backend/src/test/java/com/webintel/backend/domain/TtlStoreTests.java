@@ -0,0 +1,35 @@
+package com.webintel.backend.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TtlStoreTests {
+
+	@Test
+	void oversizedValuesAreRejectedWithoutEvictingOthers() {
+		TtlStore<String, String> store = new TtlStore<>(Duration.ofMinutes(1), 10, String::length);
+
+		assertTrue(store.put("a", "12345"));
+		assertFalse(store.put("big", "12345678901"));
+
+		assertEquals("12345", store.get("a"));
+		assertNull(store.get("big"));
+		assertEquals(5, store.totalBytes());
+	}
+
+	@Test
+	void expiredEntriesAreDroppedWhenOthersAreStored() throws InterruptedException {
+		TtlStore<String, String> store = new TtlStore<>(Duration.ofMillis(50), 100, String::length);
+
+		store.put("old", "1234");
+		Thread.sleep(120);
+		store.put("new", "12");
+
+		assertEquals(1, store.size());
+		assertEquals(2, store.totalBytes());
+		assertEquals("12", store.get("new"));
+	}
+}
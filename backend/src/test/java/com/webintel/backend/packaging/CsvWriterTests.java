@@ -0,0 +1,72 @@
+package com.webintel.backend.packaging;
+
+import com.webintel.backend.domain.CrawlResult;
+import com.webintel.backend.domain.PageResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CsvWriterTests {
+
+	// Byte-for-byte what the StringBuilder-based writer produced for fixture()
+	private static final String BASELINE =
+			"\uFEFF"
+					+ "AI SUMMARY\n"
+					+ "\"Shop says \"\"hi\"\", then\nleaves\"\n\n"
+					+ "Page Index,Page URL,Content Type,Content Index,Content,Page Items Total,Truncated,Truncation Reason,Error\n"
+					+ "1,\"https://x.test/a,b\",Heading,1,\"Title \"\"quoted\"\"\",4,true,\"max \"\"items\"\"\",\"\"\n"
+					+ "1,\"https://x.test/a,b\",Paragraph,1,\"line1\nline2\",4,true,\"max \"\"items\"\"\",\"\"\n"
+					+ "1,\"https://x.test/a,b\",Paragraph,2,\"\",4,true,\"max \"\"items\"\"\",\"\"\n"
+					+ "1,\"https://x.test/a,b\",Link,1,\"https://x.test/?q=1,2\",4,true,\"max \"\"items\"\"\",\"\"\n"
+					+ "2,\"https://x.test/err\",ERROR,0,\"Timeout, \"\"read\"\"\",0,false,\"\",\"Timeout, \"\"read\"\"\"\n";
+
+	@Test
+	void escapingAndRowLayoutMatchTheBaseline() {
+		assertEquals(BASELINE, CsvWriter.toCsv(fixture()));
+	}
+
+	@Test
+	void streamedOutputIsTheSameCsvInUtf8() throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		CsvWriter.write(fixture(), out);
+
+		assertArrayEquals(BASELINE.getBytes(StandardCharsets.UTF_8), out.toByteArray());
+	}
+
+	@Test
+	void emptyResultsKeepTheHeader() {
+		CrawlResult empty = new CrawlResult();
+
+		assertEquals(
+				"\uFEFFPage Index,Page URL,Content Type,Content Index,Content,Page Items Total,Truncated,Truncation Reason,Error\n",
+				CsvWriter.toCsv(empty)
+		);
+	}
+
+	private static CrawlResult fixture() {
+		PageResult page = new PageResult();
+		page.setPageUrl("https://x.test/a,b");
+		page.setHeadings(List.of("Title \"quoted\""));
+		page.setParagraphs(Arrays.asList("line1\nline2", null));
+		page.setLinks(List.of("https://x.test/?q=1,2"));
+		page.setImages(List.of());
+		page.setTruncated(true);
+		page.setTruncationReason("max \"items\"");
+
+		PageResult failed = new PageResult();
+		failed.setPageUrl("https://x.test/err");
+		failed.setError("Timeout, \"read\"");
+
+		CrawlResult result = new CrawlResult();
+		result.setSummary("Shop says \"hi\", then\nleaves");
+		result.setPages(List.of(page, failed));
+		return result;
+	}
+}
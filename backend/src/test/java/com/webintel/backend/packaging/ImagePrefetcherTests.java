@@ -0,0 +1,95 @@
+package com.webintel.backend.packaging;
+
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ImagePrefetcherTests {
+
+	@Test
+	void largeImagesAreShrunkToDisplayBox() throws IOException {
+		byte[] raw = png(2000, 1000, false);
+
+		byte[] prepared = ImagePrefetcher.downscale(raw);
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(prepared));
+
+		assertEquals(ImagePrefetcher.MAX_WIDTH, image.getWidth());
+		assertEquals(200, image.getHeight());
+		assertTrue(prepared.length < raw.length);
+	}
+
+	@Test
+	void transparencyIsKept() throws IOException {
+		byte[] prepared = ImagePrefetcher.downscale(png(1200, 1200, true));
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(prepared));
+
+		assertEquals(ImagePrefetcher.MAX_HEIGHT, image.getHeight());
+		assertTrue(image.getColorModel().hasAlpha());
+	}
+
+	@Test
+	void undecodableBytesPassThrough() {
+		byte[] raw = {1, 2, 3, 4};
+		assertSame(raw, ImagePrefetcher.downscale(raw));
+	}
+
+	@Test
+	void declaredGigapixelImagesAreRejectedBeforeDecoding() throws IOException {
+		// Header only: 100k x 100k would need 40 GB decoded
+		assertNull(ImagePrefetcher.downscale(pngHeader(100_000, 100_000)));
+	}
+
+	@Test
+	void hugeButAllowedImagesAreDecodedSubsampled() throws IOException {
+		byte[] prepared = ImagePrefetcher.downscale(png(4000, 3000, false));
+		BufferedImage image = ImageIO.read(new ByteArrayInputStream(prepared));
+
+		assertEquals(ImagePrefetcher.MAX_WIDTH, image.getWidth());
+		assertEquals(ImagePrefetcher.MAX_HEIGHT, image.getHeight());
+	}
+
+	private static byte[] pngHeader(int width, int height) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		DataOutputStream data = new DataOutputStream(out);
+		data.write(new byte[]{(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+
+		ByteArrayOutputStream ihdr = new ByteArrayOutputStream();
+		DataOutputStream fields = new DataOutputStream(ihdr);
+		fields.write("IHDR".getBytes(StandardCharsets.US_ASCII));
+		fields.writeInt(width);
+		fields.writeInt(height);
+		fields.write(new byte[]{8, 2, 0, 0, 0}); // 8-bit RGB
+
+		CRC32 crc = new CRC32();
+		crc.update(ihdr.toByteArray());
+		data.writeInt(13);
+		data.write(ihdr.toByteArray());
+		data.writeInt((int) crc.getValue());
+		return out.toByteArray();
+	}
+
+	private static byte[] png(int width, int height, boolean alpha) throws IOException {
+		BufferedImage image = new BufferedImage(
+				width,
+				height,
+				alpha ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB
+		);
+		for (int y = 0; y < height; y++) {
+			for (int x = 0; x < width; x++) {
+				image.setRGB(x, y, (x * 31 + y * 17) ^ (x * y));
+			}
+		}
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		ImageIO.write(image, "png", out);
+		return out.toByteArray();
+	}
+}
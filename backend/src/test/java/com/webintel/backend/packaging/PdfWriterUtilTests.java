@@ -0,0 +1,54 @@
+package com.webintel.backend.packaging;
+
+import com.lowagie.text.pdf.PdfReader;
+import com.lowagie.text.pdf.parser.PdfTextExtractor;
+import com.webintel.backend.domain.CrawlResult;
+import com.webintel.backend.domain.PageResult;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PdfWriterUtilTests {
+
+	@Test
+	void largeTablesRenderEveryRow() throws IOException {
+		List<String> paragraphs = new ArrayList<>();
+		for (int i = 0; i < 1_000; i++) {
+			paragraphs.add("paragraph-" + i);
+		}
+
+		PageResult page = new PageResult();
+		page.setPageUrl("https://example.com");
+		page.setParagraphs(paragraphs);
+		page.setLinks(List.of("https://example.com/a"));
+
+		CrawlResult result = new CrawlResult();
+		result.setPages(List.of(page));
+
+		StreamOutput out = new StreamOutput();
+		PdfWriterUtil.write(result, Map.of(), out);
+		assertFalse(out.closed);
+
+		PdfReader reader = new PdfReader(out.toByteArray());
+		assertTrue(reader.getNumberOfPages() > 10);
+
+		PdfTextExtractor text = new PdfTextExtractor(reader);
+		assertTrue(text.getTextFromPage(1).contains("paragraph-0"));
+		assertTrue(text.getTextFromPage(reader.getNumberOfPages()).contains("https://example.com/a"));
+	}
+
+	private static class StreamOutput extends ByteArrayOutputStream {
+		boolean closed;
+
+		@Override
+		public void close() {
+			closed = true;
+		}
+	}
+}
@@ -0,0 +1,65 @@
+package com.webintel.backend.pipeline;
+
+import com.webintel.backend.domain.CrawlResult;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CrawlJobTests {
+
+	@Test
+	void publishingNeverWaitsForAStalledSubscriber() throws InterruptedException {
+		ExecutorService delivery = Executors.newCachedThreadPool();
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch dropped = new CountDownLatch(1);
+
+		try {
+			CrawlJob job = new CrawlJob("stalled", delivery);
+			job.subscribe(event -> {
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}, dropped::countDown);
+
+			assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+				job.onIntent("intent");
+				for (int i = 0; i < 2_000; i++) {
+					job.onSummaryToken("token ");
+				}
+				// Backlog is full of tokens: skipped so far, but not this one
+				job.onSummary("summary");
+			});
+
+			assertTrue(dropped.await(5, TimeUnit.SECONDS));
+		} finally {
+			release.countDown();
+			delivery.shutdownNow();
+		}
+	}
+
+	@Test
+	void lateSubscribersReplayEverythingButTokens() {
+		CrawlJob job = new CrawlJob("late", Runnable::run);
+
+		job.onIntent("intent");
+		job.onSummaryToken("Hello ");
+		job.onSummaryToken("world");
+		job.onSummary("Hello world");
+		job.complete(new CrawlResult());
+
+		List<String> names = new ArrayList<>();
+		job.subscribe(event -> names.add(event.getName()), () -> fail("dropped"));
+
+		assertEquals(List.of(JobEvent.INTENT, JobEvent.SUMMARY, JobEvent.DONE), names);
+	}
+}
@@ -0,0 +1,85 @@
+package com.webintel.backend.pipeline;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StageTests {
+
+	@Test
+	void pipelinesShareOnePoolWithinTheirCaps() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		AtomicInteger inFlight = new AtomicInteger();
+		AtomicInteger peak = new AtomicInteger();
+		List<Integer> seen = new CopyOnWriteArrayList<>();
+
+		try {
+			Stage<Integer> first = new Stage<>(pool, 2, 4, item -> {
+				peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+				try {
+					Thread.sleep(5);
+				} catch (InterruptedException ignored) {
+				}
+				seen.add(item);
+				inFlight.decrementAndGet();
+			});
+			Stage<Integer> second = new Stage<>(pool, 2, 4, item -> seen.add(-item));
+
+			for (int i = 1; i <= 20; i++) {
+				assertTrue(first.submit(i));
+				assertTrue(second.submit(i));
+			}
+			first.close();
+			second.close();
+
+			first.completion().get(5, TimeUnit.SECONDS);
+			second.completion().get(5, TimeUnit.SECONDS);
+
+			assertEquals(40, seen.size());
+			assertTrue(peak.get() <= 2, "peak concurrency was " + peak.get());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	@Test
+	void cancelInterruptsOnlyItsOwnItems() throws Exception {
+		ExecutorService pool = Executors.newFixedThreadPool(1);
+		AtomicInteger interrupted = new AtomicInteger();
+
+		try {
+			Stage<String> slow = new Stage<>(pool, 1, 1, item -> {
+				try {
+					Thread.sleep(10_000);
+				} catch (InterruptedException e) {
+					interrupted.incrementAndGet();
+				}
+			});
+			slow.submit("blocking");
+			Thread.sleep(50);
+			slow.cancel();
+
+			// The same thread then serves another stage, uninterrupted
+			AtomicInteger clean = new AtomicInteger();
+			Stage<String> next = new Stage<>(pool, 1, 1, item -> {
+				if (!Thread.currentThread().isInterrupted()) clean.incrementAndGet();
+			});
+			next.submit("x");
+			next.close();
+			next.completion().get(5, TimeUnit.SECONDS);
+
+			assertTrue(slow.completion().isCancelled());
+			assertEquals(1, interrupted.get());
+			assertEquals(1, clean.get());
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+}
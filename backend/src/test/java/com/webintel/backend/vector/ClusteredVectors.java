@@ -0,0 +1,79 @@
+package com.webintel.backend.vector;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Seeded test vectors clustered around random topic centres, plus the
+ * recall check the approximate indexes are measured with.
+ */
+final class ClusteredVectors {
+
+	private final int dimension;
+	private final Random random;
+	private final double[][] topics;
+
+	ClusteredVectors(int dimension, int topics, long seed) {
+		this.dimension = dimension;
+		this.random = new Random(seed);
+		this.topics = new double[topics][];
+		for (int t = 0; t < topics; t++) {
+			this.topics[t] = gaussian(1.0);
+		}
+	}
+
+	/**
+	 * A random topic centre plus noise.
+	 */
+	double[] nearTopic() {
+		double[] topic = topics[random.nextInt(topics.length)];
+		double[] noise = gaussian(0.3);
+		for (int i = 0; i < dimension; i++) {
+			noise[i] += topic[i];
+		}
+		return noise;
+	}
+
+	double[] gaussian(double scale) {
+		double[] v = new double[dimension];
+		for (int i = 0; i < dimension; i++) {
+			v[i] = random.nextGaussian() * scale;
+		}
+		return v;
+	}
+
+	/**
+	 * Adds {@code count} clustered embeddings to the index and returns an
+	 * exact index holding the same ones.
+	 */
+	FlatIndex fill(VectorIndex index, int count) {
+		FlatIndex exact = new FlatIndex();
+		for (int i = 0; i < count; i++) {
+			Embedding e = new Embedding("id-" + i, "chunk " + i, nearTopic());
+			index.add(e);
+			exact.add(e);
+		}
+		return exact;
+	}
+
+	/**
+	 * Share of the exact top-k the index also returns, over clustered queries.
+	 */
+	double recall(VectorIndex index, FlatIndex exact, int queries, int topK) {
+		int hits = 0;
+		for (int q = 0; q < queries; q++) {
+			double[] query = nearTopic();
+
+			Set<String> expected = new HashSet<>();
+			for (Embedding e : exact.search(query, topK)) {
+				expected.add(e.getId());
+			}
+
+			for (Embedding e : index.search(query, topK)) {
+				if (expected.contains(e.getId())) hits++;
+			}
+		}
+		return hits / (double) (queries * topK);
+	}
+}
@@ -0,0 +1,144 @@
+package com.webintel.backend.vector;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingDiskCacheTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void vectorsSurviveReopen() {
+		try (EmbeddingDiskCache cache = new EmbeddingDiskCache(dir, false, Long.MAX_VALUE)) {
+			assertTrue(cache.isEnabled());
+			for (int i = 0; i < 50_000; i++) {
+				cache.put(key(i), vector(i, 8));
+			}
+		}
+
+		try (EmbeddingDiskCache cache = new EmbeddingDiskCache(dir, false, Long.MAX_VALUE)) {
+			assertEquals(50_000, cache.size());
+			assertArrayEquals(vector(12_345, 8), cache.get(key(12_345)));
+			assertNull(cache.get(key(50_000)));
+		}
+	}
+
+	@Test
+	void float16PayloadsRoundTripWithinHalfPrecision() {
+		try (EmbeddingDiskCache cache = new EmbeddingDiskCache(dir, true, Long.MAX_VALUE)) {
+			double[] original = {0.5, -0.0123, 3.14159, 1e-3, -2.0};
+			cache.put(key(1), original);
+			assertArrayEquals(original, cache.get(key(1)), 2e-3);
+		}
+	}
+
+	@Test
+	void tornTailIsTruncatedOnOpen() throws IOException {
+		try (EmbeddingDiskCache cache = new EmbeddingDiskCache(dir, false, Long.MAX_VALUE)) {
+			cache.put(key(1), vector(1, 8));
+			cache.put(key(2), vector(2, 8));
+		}
+
+		Path data = dir.resolve("embeddings.dat");
+		try (FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 5);
+		}
+
+		try (EmbeddingDiskCache cache = new EmbeddingDiskCache(dir, false, Long.MAX_VALUE)) {
+			assertArrayEquals(vector(1, 8), cache.get(key(1)));
+			assertNull(cache.get(key(2)));
+		}
+	}
+
+	@Test
+	void compactionDropsOldestRecords() throws InterruptedException {
+		long budget = 64 * 1024;
+
+		try (EmbeddingDiskCache cache = new EmbeddingDiskCache(dir, false, budget)) {
+			for (int i = 0; i < 2_000; i++) {
+				cache.put(key(i), vector(i, 16));
+			}
+
+			for (int i = 0; i < 100 && cache.dataBytes() > budget; i++) {
+				Thread.sleep(20);
+			}
+
+			assertTrue(cache.dataBytes() <= budget);
+			assertNull(cache.get(key(0)));
+			assertArrayEquals(vector(1_999, 16), cache.get(key(1_999)));
+		}
+	}
+
+	@Test
+	void indexShrinksWhenCompactionDropsMostRecords() throws IOException, InterruptedException {
+		try (EmbeddingDiskCache cache = new EmbeddingDiskCache(dir, false, Long.MAX_VALUE)) {
+			for (int i = 0; i < 20_000; i++) {
+				cache.put(key(i), vector(i, 8));
+			}
+		}
+		Path index = dir.resolve("embeddings.idx");
+		long grown = Files.size(index);
+
+		long budget = 64 * 1024;
+		try (EmbeddingDiskCache cache = new EmbeddingDiskCache(dir, false, budget)) {
+			cache.put(key(20_000), vector(20_000, 8));
+
+			for (int i = 0; i < 100 && cache.dataBytes() > budget; i++) {
+				Thread.sleep(20);
+			}
+
+			assertTrue(cache.dataBytes() <= budget);
+			assertArrayEquals(vector(20_000, 8), cache.get(key(20_000)));
+		}
+
+		assertTrue(Files.size(index) < grown / 2, "index stayed at " + Files.size(index) + " bytes");
+	}
+
+	@Test
+	void compactedIndexSurvivesReopen() throws InterruptedException {
+		long budget = 64 * 1024;
+		int kept;
+
+		try (EmbeddingDiskCache cache = new EmbeddingDiskCache(dir, false, budget)) {
+			for (int i = 0; i < 2_000; i++) {
+				cache.put(key(i), vector(i, 16));
+			}
+
+			for (int i = 0; i < 100 && cache.dataBytes() > budget; i++) {
+				Thread.sleep(20);
+			}
+			assertTrue(cache.dataBytes() <= budget);
+			kept = cache.size();
+		}
+
+		assertFalse(Files.exists(dir.resolve("embeddings.idx.compact")));
+
+		try (EmbeddingDiskCache cache = new EmbeddingDiskCache(dir, false, budget)) {
+			assertEquals(kept, cache.size());
+			assertNull(cache.get(key(0)));
+			assertArrayEquals(vector(1_999, 16), cache.get(key(1_999)));
+			assertArrayEquals(vector(2_000 - kept, 16), cache.get(key(2_000 - kept)));
+		}
+	}
+
+	private static byte[] key(int i) {
+		return EmbeddingDiskCache.contentKey("test-model", "chunk " + i);
+	}
+
+	private static double[] vector(int seed, int dimension) {
+		double[] v = new double[dimension];
+		for (int d = 0; d < dimension; d++) {
+			v[d] = seed + d;
+		}
+		return v;
+	}
+}
@@ -0,0 +1,215 @@
+package com.webintel.backend.vector;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.webintel.backend.ai.OllamaPool;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EmbeddingServiceTests {
+
+	private static final int DIM = 4096;
+	private static final ObjectMapper JSON = new ObjectMapper();
+
+	private final AtomicInteger batchCalls = new AtomicInteger();
+	private final AtomicInteger batchedTexts = new AtomicInteger();
+	private final AtomicInteger legacyCalls = new AtomicInteger();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger peakInFlight = new AtomicInteger();
+
+	// How /api/embed answers: a vector per input, or a 404 of some kind
+	private final AtomicBoolean batchEndpointMissing = new AtomicBoolean();
+	private volatile String batchNotFoundBody = "404 page not found";
+	private volatile CountDownLatch batchGate = new CountDownLatch(0);
+
+	private HttpServer server;
+
+	@AfterEach
+	void stopServer() {
+		batchGate.countDown();
+		if (server != null) server.stop(0);
+	}
+
+	@Test
+	void concurrentSubmitsShareFullBatches() throws Exception {
+		try (OllamaPool pool = new OllamaPool(List.of(stub()));
+			 EmbeddingService service = new EmbeddingService(pool, null)) {
+
+			List<CompletableFuture<double[]>> futures = submitAll(service, "batched", 100);
+
+			for (CompletableFuture<double[]> future : futures) {
+				assertEquals(DIM, future.get(5, TimeUnit.SECONDS).length);
+			}
+			assertEquals(4, batchCalls.get()); // ceil(100 / 32)
+			assertEquals(100, batchedTexts.get());
+			assertEquals(0, legacyCalls.get());
+
+			// Cached now: no further model call
+			assertEquals(DIM, service.embed("batched 7").length);
+			assertEquals(4, batchCalls.get());
+		}
+	}
+
+	@Test
+	void batchesInFlightAreCapped() throws Exception {
+		batchGate = new CountDownLatch(1);
+
+		try (OllamaPool pool = new OllamaPool(List.of(stub()));
+			 EmbeddingService service = new EmbeddingService(pool, null)) {
+
+			List<CompletableFuture<double[]>> futures = submitAll(service, "capped", 32 * 6);
+
+			waitFor(() -> batchCalls.get() >= 4);
+			Thread.sleep(100); // a fifth batch would have been sent by now
+			assertEquals(4, batchCalls.get());
+
+			batchGate.countDown();
+			for (CompletableFuture<double[]> future : futures) {
+				assertEquals(DIM, future.get(5, TimeUnit.SECONDS).length);
+			}
+			assertEquals(6, batchCalls.get());
+			assertEquals(4, peakInFlight.get());
+		}
+	}
+
+	@Test
+	void missingBatchEndpointFallsBackAndIsRetriedLater() throws Exception {
+		batchEndpointMissing.set(true);
+
+		try (OllamaPool pool = new OllamaPool(List.of(stub()));
+			 EmbeddingService service = new EmbeddingService(pool, null, Duration.ofMillis(300))) {
+
+			for (CompletableFuture<double[]> future : submitAll(service, "old server", 3)) {
+				assertEquals(DIM, future.get(5, TimeUnit.SECONDS).length);
+			}
+			assertEquals(1, batchCalls.get());
+			assertEquals(3, legacyCalls.get());
+
+			// Upgraded meanwhile, but the retry window is still open: legacy only
+			batchEndpointMissing.set(false);
+			assertEquals(DIM, service.embed("inside the window").length);
+			assertEquals(1, batchCalls.get());
+			assertEquals(4, legacyCalls.get());
+
+			Thread.sleep(400);
+			assertEquals(DIM, service.embed("after the window").length);
+			assertEquals(2, batchCalls.get());
+			assertEquals(4, legacyCalls.get());
+		}
+	}
+
+	@Test
+	void missingModelFailsTheBatchWithoutFallback() throws Exception {
+		batchEndpointMissing.set(true);
+		batchNotFoundBody = "{\"error\":\"model \\\"llama3\\\" not found, try pulling it first\"}";
+
+		try (OllamaPool pool = new OllamaPool(List.of(stub()));
+			 EmbeddingService service = new EmbeddingService(pool, null)) {
+
+			for (CompletableFuture<double[]> future : submitAll(service, "no model", 3)) {
+				assertEquals(0, future.get(5, TimeUnit.SECONDS).length);
+			}
+			assertEquals(0, legacyCalls.get());
+
+			// Not cached as a failure, and the batch endpoint is still used
+			batchEndpointMissing.set(false);
+			assertEquals(DIM, service.embed("no model 0").length);
+			assertEquals(2, batchCalls.get());
+		}
+	}
+
+	/* =========================
+	   FIXTURE
+	   ========================= */
+
+	private static List<CompletableFuture<double[]>> submitAll(EmbeddingService service, String prefix, int count) {
+		List<CompletableFuture<double[]>> futures = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			futures.add(service.submit(prefix + " " + i));
+		}
+		return futures;
+	}
+
+	private static void waitFor(BooleanSupplier condition) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (!condition.getAsBoolean()) {
+			assertTrue(System.nanoTime() < deadline, "timed out");
+			Thread.sleep(5);
+		}
+	}
+
+	/**
+	 * Ollama stand-in serving /api/embed (batch) and /api/embeddings (legacy).
+	 */
+	private String stub() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.setExecutor(Executors.newCachedThreadPool());
+
+		server.createContext("/api/embed", exchange -> {
+			JsonNode request = JSON.readTree(exchange.getRequestBody());
+			batchCalls.incrementAndGet();
+
+			if (batchEndpointMissing.get()) {
+				respond(exchange, 404, batchNotFoundBody);
+				return;
+			}
+
+			peakInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			try {
+				batchGate.await();
+			} catch (InterruptedException ignored) {
+			}
+			inFlight.decrementAndGet();
+
+			int inputs = request.path("input").size();
+			batchedTexts.addAndGet(inputs);
+
+			List<double[]> vectors = new ArrayList<>();
+			for (int i = 0; i < inputs; i++) {
+				vectors.add(vector());
+			}
+			respond(exchange, 200, JSON.writeValueAsString(Map.of("embeddings", vectors)));
+		});
+
+		server.createContext("/api/embeddings", exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			legacyCalls.incrementAndGet();
+			respond(exchange, 200, JSON.writeValueAsString(Map.of("embedding", vector())));
+		});
+
+		server.start();
+		return "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	private static double[] vector() {
+		double[] v = new double[DIM];
+		v[0] = 1.0;
+		return v;
+	}
+
+	private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.sendResponseHeaders(status, bytes.length);
+		exchange.getResponseBody().write(bytes);
+		exchange.close();
+	}
+}
@@ -0,0 +1,104 @@
+package com.webintel.backend.vector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HnswIndexTests {
+
+	private static final int DIMENSION = 64;
+	private static final int VECTORS = 5_000;
+	private static final int QUERIES = 100;
+	private static final int TOP_K = 10;
+
+	@Test
+	void recallAgainstExactSearchIsAboveNinetyFivePercent() {
+		Random random = new Random(7);
+		HnswIndex index = new HnswIndex();
+		List<double[]> vectors = new ArrayList<>();
+
+		for (int i = 0; i < VECTORS; i++) {
+			double[] v = randomVector(random);
+			vectors.add(v);
+			index.add(new Embedding("id-" + i, "chunk " + i, v));
+		}
+
+		int hits = 0;
+		for (int q = 0; q < QUERIES; q++) {
+			double[] query = randomVector(random);
+			Set<String> expected = bruteForceTopK(vectors, query);
+
+			for (Embedding e : index.search(query, TOP_K)) {
+				if (expected.contains(e.getId())) hits++;
+			}
+		}
+
+		double recall = hits / (double) (QUERIES * TOP_K);
+		assertTrue(recall > 0.95, "recall was " + recall);
+	}
+
+	@Test
+	void removedEmbeddingsAreNeverReturned() {
+		Random random = new Random(11);
+		HnswIndex index = new HnswIndex();
+
+		for (int i = 0; i < 500; i++) {
+			index.add(new Embedding("id-" + i, "", randomVector(random)));
+		}
+		for (int i = 0; i < 400; i++) {
+			assertTrue(index.remove("id-" + i));
+		}
+
+		assertEquals(100, index.size());
+
+		List<Embedding> results = index.search(randomVector(random), 50);
+		assertEquals(50, results.size());
+		for (Embedding e : results) {
+			assertTrue(Integer.parseInt(e.getId().substring(3)) >= 400);
+		}
+	}
+
+	/**
+	 * Independent oracle: exact cosine in double precision, no shared kernels.
+	 */
+	private static Set<String> bruteForceTopK(List<double[]> vectors, double[] query) {
+		Integer[] order = new Integer[vectors.size()];
+		double[] scores = new double[vectors.size()];
+		for (int i = 0; i < order.length; i++) {
+			order[i] = i;
+			scores[i] = cosine(vectors.get(i), query);
+		}
+		Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+
+		Set<String> ids = new HashSet<>();
+		for (int i = 0; i < TOP_K; i++) {
+			ids.add("id-" + order[i]);
+		}
+		return ids;
+	}
+
+	private static double cosine(double[] a, double[] b) {
+		double dot = 0, na = 0, nb = 0;
+		for (int i = 0; i < a.length; i++) {
+			dot += a[i] * b[i];
+			na += a[i] * a[i];
+			nb += b[i] * b[i];
+		}
+		return dot / Math.sqrt(na * nb);
+	}
+
+	private static double[] randomVector(Random random) {
+		double[] v = new double[DIMENSION];
+		for (int i = 0; i < DIMENSION; i++) {
+			v[i] = random.nextGaussian();
+		}
+		return v;
+	}
+}
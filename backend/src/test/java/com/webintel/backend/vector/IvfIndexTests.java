@@ -0,0 +1,55 @@
+package com.webintel.backend.vector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class IvfIndexTests {
+
+	private static final int DIMENSION = 64;
+	private static final int TOPICS = 40;
+	private static final int VECTORS = 4_000;
+	private static final int QUERIES = 100;
+	private static final int TOP_K = 10;
+
+	@Test
+	void trainedRecallAgainstExactSearchIsAboveNinetyPercent() {
+		ClusteredVectors vectors = new ClusteredVectors(DIMENSION, TOPICS, 7);
+
+		// Training is triggered by hand below, never in the background
+		IvfIndex index = new IvfIndex(IvfIndex.DEFAULT_NPROBE, Integer.MAX_VALUE);
+		FlatIndex exact = vectors.fill(index, VECTORS);
+
+		assertFalse(index.isTrained());
+		index.train();
+		assertTrue(index.isTrained());
+
+		double recall = vectors.recall(index, exact, QUERIES, TOP_K);
+		assertTrue(recall > 0.90, "recall was " + recall);
+	}
+
+	@Test
+	void removedEmbeddingsAreNeverReturnedAfterCompaction() {
+		ClusteredVectors vectors = new ClusteredVectors(DIMENSION, 0, 11);
+		IvfIndex index = new IvfIndex(64, Integer.MAX_VALUE);
+
+		for (int i = 0; i < 500; i++) {
+			index.add(new Embedding("id-" + i, "", vectors.gaussian(1.0)));
+		}
+		index.train();
+
+		for (int i = 0; i < 400; i++) {
+			assertTrue(index.remove("id-" + i));
+		}
+
+		assertEquals(100, index.size());
+
+		List<Embedding> results = index.search(vectors.gaussian(1.0), 50);
+		assertEquals(50, results.size());
+		for (Embedding e : results) {
+			assertTrue(Integer.parseInt(e.getId().substring(3)) >= 400);
+		}
+	}
+}
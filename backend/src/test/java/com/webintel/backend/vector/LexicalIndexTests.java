@@ -0,0 +1,67 @@
+package com.webintel.backend.vector;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LexicalIndexTests {
+
+	@Test
+	void exactCodesAndRareTermsRankFirst() {
+		LexicalIndex index = new LexicalIndex();
+		for (int i = 0; i < 500; i++) {
+			index.add(doc("filler-" + i, "pricing plans and product overview page " + i));
+		}
+		index.add(doc("code", "Order the WX-4410 router today"));
+		index.add(doc("rare", "our router ships worldwide"));
+
+		List<LexicalIndex.Hit> byCode = index.search("wx-4410", 5);
+		assertEquals("code", byCode.get(0).getEmbedding().getId());
+
+		List<LexicalIndex.Hit> byTerm = index.search("product router", 10);
+		assertTrue(byTerm.get(0).getEmbedding().getId().equals("code")
+				|| byTerm.get(0).getEmbedding().getId().equals("rare"));
+		assertTrue(byTerm.get(0).getScore() >= byTerm.get(byTerm.size() - 1).getScore());
+	}
+
+	@Test
+	void removedDocumentsDisappearAcrossRebuild() {
+		LexicalIndex index = new LexicalIndex();
+		for (int i = 0; i < 300; i++) {
+			index.add(doc("d" + i, "shared term unique" + i));
+		}
+		for (int i = 0; i < 200; i++) {
+			assertTrue(index.remove("d" + i));
+		}
+
+		assertEquals(100, index.size());
+		assertTrue(index.search("unique5", 5).isEmpty());
+		assertEquals("d250", index.search("unique250", 5).get(0).getEmbedding().getId());
+		assertEquals(100, index.search("shared", 1_000).size());
+	}
+
+	@Test
+	void scoresFromEveryQueryTermAddUpPerDocument() {
+		LexicalIndex index = new LexicalIndex();
+		for (int i = 0; i < 200; i++) {
+			index.add(doc("one" + i, "alpha filler " + i));
+		}
+		index.add(doc("two", "alpha beta"));
+		index.add(doc("three", "alpha beta gamma"));
+
+		List<LexicalIndex.Hit> hits = index.search("alpha beta gamma", 1_000);
+
+		// One hit per document, most shared terms first
+		assertEquals(202, hits.size());
+		assertEquals(202, hits.stream().map(hit -> hit.getEmbedding().getId()).distinct().count());
+		assertEquals("three", hits.get(0).getEmbedding().getId());
+		assertEquals("two", hits.get(1).getEmbedding().getId());
+		assertTrue(hits.get(1).getScore() > hits.get(2).getScore());
+	}
+
+	private static Embedding doc(String id, String text) {
+		return new Embedding(id, text, new double[] {1.0, 0.0});
+	}
+}
@@ -0,0 +1,39 @@
+package com.webintel.backend.vector;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QuantizedIndexTests {
+
+	private static final int DIMENSION = 256;
+	private static final int TOPICS = 40;
+	private static final int VECTORS = 2_000;
+	private static final int QUERIES = 100;
+	private static final int TOP_K = 10;
+
+	@Test
+	void int8RecallAgainstExactSearchIsAboveNinetyFivePercent() {
+		double recall = recall(QuantizedIndex.Mode.INT8);
+		assertTrue(recall > 0.95, "recall was " + recall);
+	}
+
+	@Test
+	void productQuantizedRecallAgainstExactSearchIsAboveNinetyPercent() {
+		double recall = recall(QuantizedIndex.Mode.PQ);
+		assertTrue(recall > 0.90, "recall was " + recall);
+	}
+
+	private static double recall(QuantizedIndex.Mode mode) {
+		ClusteredVectors vectors = new ClusteredVectors(DIMENSION, TOPICS, 7);
+
+		// Training is triggered by hand below, never in the background
+		QuantizedIndex index = new QuantizedIndex(mode, Integer.MAX_VALUE);
+		FlatIndex exact = vectors.fill(index, VECTORS);
+
+		index.train();
+		assertTrue(index.isTrained());
+
+		return vectors.recall(index, exact, QUERIES, TOP_K);
+	}
+}
@@ -0,0 +1,109 @@
+package com.webintel.backend.vector;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class QueryVectorCacheTests {
+
+	private final FakeEmbeddings embeddings = new FakeEmbeddings();
+	private final QueryVectorCache cache = new QueryVectorCache(embeddings);
+
+	@AfterEach
+	void closeEmbeddings() {
+		embeddings.close();
+	}
+
+	@Test
+	void caseAndWhitespaceVariantsShareOneEntry() {
+		double[] first = cache.get("  Red   Bikes ");
+		double[] second = cache.get("red bikes");
+		double[] third = cache.get("RED\tbikes");
+
+		assertSame(first, second);
+		assertSame(first, third);
+		assertEquals(1, cache.size());
+
+		// Only the key is normalized: the model saw the query as typed
+		assertEquals(List.of("Red   Bikes"), embeddings.embedded);
+
+		assertEquals(1, cache.misses());
+		assertEquals(2, cache.hits());
+	}
+
+	@Test
+	void warmSkipsCachedQueriesAndFillsTheRest() {
+		cache.get("red bikes");
+		embeddings.embedded.clear();
+
+		cache.warm(List.of("Red Bikes", "blue bikes", "  ", "blue  BIKES"));
+
+		// The fake completes at once, so the blue variant is already cached
+		assertEquals(List.of("blue bikes"), embeddings.embedded);
+		assertEquals(2, cache.size());
+
+		long misses = cache.misses();
+		cache.get("Blue Bikes");
+		assertEquals(misses, cache.misses());
+		assertEquals(1, embeddings.embedded.size());
+	}
+
+	@Test
+	void failedEmbeddingsAreNotCached() {
+		embeddings.failing = true;
+		assertEquals(0, cache.get("red bikes").length);
+		cache.warm(List.of("blue bikes"));
+		assertEquals(0, cache.size());
+
+		embeddings.failing = false;
+		assertEquals(2, cache.get("red bikes").length);
+		assertEquals(1, cache.size());
+		assertEquals(2, cache.misses());
+		assertEquals(0, cache.hits());
+	}
+
+	@Test
+	void blankAndOversizedQueriesBypassTheCache() {
+		assertEquals(0, cache.get("   ").length);
+		assertEquals(0, cache.get(null).length);
+		assertTrue(embeddings.embedded.isEmpty());
+
+		String passage = "word ".repeat(200);
+		cache.get(passage);
+		cache.get(passage);
+
+		assertEquals(2, embeddings.embedded.size());
+		assertEquals(0, cache.size());
+		assertEquals(0, cache.hits() + cache.misses());
+	}
+
+	/**
+	 * Embeds synchronously without a model: every text becomes a fresh
+	 * 2-d vector, or an empty one while failing.
+	 */
+	private static final class FakeEmbeddings extends EmbeddingService {
+
+		final List<String> embedded = new CopyOnWriteArrayList<>();
+		volatile boolean failing;
+
+		FakeEmbeddings() {
+			super(null, null);
+		}
+
+		@Override
+		public double[] embed(String text) {
+			return submit(text).join();
+		}
+
+		@Override
+		public CompletableFuture<double[]> submit(String text) {
+			embedded.add(text);
+			return CompletableFuture.completedFuture(failing ? new double[0] : new double[] {1.0, 0.0});
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package com.webintel.backend.vector;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorNamespacesTests {
+
+	// One more than the in-memory namespace limit
+	private static final int NAMESPACES = 257;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void unloadedNamespaceIsReopenedFromItsFinalSnapshot() throws IOException {
+		try (VectorNamespaces namespaces = new VectorNamespaces(dir.toString(), VectorStore.DEFAULT_INDEX)) {
+			VectorStore first = namespaces.create("first");
+			for (int i = 0; i < 10; i++) {
+				first.add(embedding(i));
+			}
+			namespaces.finish("first");
+
+			fill(namespaces);
+
+			VectorStore reopened = namespaces.get("first");
+			assertNotSame(first, reopened);
+			assertEquals(10, reopened.size());
+
+			// The dropped store no longer writes into the directory
+			first.add(embedding(10));
+			assertFalse(first.snapshot());
+			assertEquals(10, VectorStore.open(dir.resolve("first"), 100, Long.MAX_VALUE).size());
+		}
+	}
+
+	@Test
+	void namespaceBeingIngestedStaysInMemory() {
+		try (VectorNamespaces namespaces = new VectorNamespaces(dir.toString(), VectorStore.DEFAULT_INDEX)) {
+			VectorStore ingesting = namespaces.create("ingesting");
+
+			fill(namespaces);
+
+			assertSame(ingesting, namespaces.get("ingesting"));
+		}
+	}
+
+	@Test
+	void closeFinishesUnloadsStillQueued() throws Exception {
+		VectorNamespaces namespaces = new VectorNamespaces(dir.toString(), VectorStore.DEFAULT_INDEX);
+
+		VectorStore big = namespaces.create("big");
+		for (int i = 0; i < 3_000; i++) {
+			big.add(embedding(i));
+		}
+		namespaces.finish("big");
+
+		// Evicts "big", then reopening it keeps the background thread rebuilding its index
+		fill(namespaces);
+		namespaces.get("big");
+
+		// Evicts n1: its unload queues behind the rebuild, and close drops it
+		namespaces.create("late");
+		namespaces.close();
+
+		// Would wait forever on the dropped unload
+		VectorStore reopened = CompletableFuture.supplyAsync(() -> namespaces.get("n1"))
+				.get(5, TimeUnit.SECONDS);
+		assertNotNull(reopened);
+		reopened.close();
+	}
+
+	private static void fill(VectorNamespaces namespaces) {
+		for (int i = 0; i < NAMESPACES; i++) {
+			namespaces.create("n" + i);
+			namespaces.finish("n" + i);
+		}
+	}
+
+	private static Embedding embedding(int i) {
+		Random random = new Random(i);
+		double[] v = new double[16];
+		for (int d = 0; d < v.length; d++) {
+			v[d] = random.nextGaussian();
+		}
+		return new Embedding("e" + i, "chunk " + i, v);
+	}
+}
@@ -0,0 +1,120 @@
+package com.webintel.backend.vector;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VectorStoreTests {
+
+	private static final int DIM = 32;
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void reopenedStoreAnswersBeforeAndAfterIndexing() throws IOException {
+		VectorStore store = VectorStore.create(dir, 10_000, Long.MAX_VALUE);
+		for (int i = 0; i < 600; i++) {
+			store.add(embedding(i));
+		}
+		assertTrue(store.snapshot());
+
+		double[] query = embedding(123).getVector();
+		String expected = store.search(query, 1).get(0).getId();
+
+		VectorStore reopened = VectorStore.open(dir, 10_000, Long.MAX_VALUE);
+		assertEquals(600, reopened.size());
+		assertTrue(reopened.isScanOnly());
+
+		Embedding scanned = reopened.search(query, 1).get(0);
+		assertEquals(expected, scanned.getId());
+		assertEquals("chunk 123", scanned.getText());
+		assertArrayEquals(query, scanned.getVector(), 1e-5);
+
+		reopened.buildIndexes();
+		assertFalse(reopened.isScanOnly());
+		assertEquals(expected, reopened.hybridSearch("chunk 123", query, 1, 0.5).get(0).getId());
+	}
+
+	@Test
+	void quotaEvictsOldestSegmentWhole() throws IOException {
+		VectorStore store = VectorStore.create(dir, 600, Long.MAX_VALUE);
+		for (int i = 0; i < 700; i++) {
+			store.add(embedding(i));
+		}
+
+		// 600 reached at id 599: the first 256 went in one step
+		assertEquals(700 - VectorStore.SEGMENT_CAPACITY, store.size());
+		assertTrue(store.hybridSearch("chunk 5", null, 5, 1.0).stream()
+				.noneMatch(e -> e.getId().equals("e5")));
+
+		store.snapshot();
+		assertEquals(2, segmentFiles());
+
+		VectorStore reopened = VectorStore.open(dir, 600, Long.MAX_VALUE);
+		assertEquals(store.size(), reopened.size());
+	}
+
+	@Test
+	void readdedIdOutlivesItsEvictedOlderCopy() {
+		VectorStore store = new VectorStore(600, Long.MAX_VALUE);
+		for (int i = 0; i < 300; i++) {
+			store.add(embedding(i));
+		}
+		store.add(embedding(5)); // newer copy, in the second segment
+
+		for (int i = 300; i < 700; i++) {
+			store.add(embedding(i));
+		}
+
+		// The first segment, with the old e5 row, is gone — e5 itself is not
+		assertTrue(store.hybridSearch("chunk 6", null, 5, 1.0).stream()
+				.noneMatch(e -> e.getId().equals("e6")));
+		assertEquals("e5", store.search(embedding(5).getVector(), 1).get(0).getId());
+		assertEquals("e5", store.hybridSearch("chunk 5", null, 1, 1.0).get(0).getId());
+	}
+
+	@Test
+	void sealedSegmentsAreServedFromTheMapping() throws IOException {
+		VectorStore store = VectorStore.create(dir, 10_000, Long.MAX_VALUE);
+		for (int i = 0; i < VectorStore.SEGMENT_CAPACITY - 1; i++) {
+			store.add(embedding(i));
+		}
+		long heapBytes = store.estimatedBytes();
+
+		store.add(embedding(VectorStore.SEGMENT_CAPACITY - 1));
+		assertTrue(store.estimatedBytes() < heapBytes);
+
+		Embedding found = store.search(embedding(42).getVector(), 1).get(0);
+		assertEquals("e42", found.getId());
+		assertFalse(found.isOnHeap());
+		assertArrayEquals(embedding(42).getVector(), found.getVector(), 1e-5);
+
+		// Scored in place against the mapping, same as the heap copy
+		float[] query = embedding(7).getUnitVector();
+		assertEquals(embedding(42).cosine(query), found.cosine(query), 1e-5);
+	}
+
+	private long segmentFiles() throws IOException {
+		try (Stream<Path> files = Files.list(dir)) {
+			return files.filter(f -> f.toString().endsWith(".vseg")).count();
+		}
+	}
+
+	private static Embedding embedding(int i) {
+		Random random = new Random(i);
+		double[] v = new double[DIM];
+		for (int d = 0; d < DIM; d++) {
+			v[d] = random.nextGaussian();
+		}
+		return new Embedding("e" + i, "chunk " + i, v);
+	}
+}
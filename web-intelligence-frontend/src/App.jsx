@@ -57,7 +57,11 @@ export default function App() {
             {
                 method: "POST",
                 headers: { "Content-Type": "application/json" },
-                body: JSON.stringify({ targetUrl: url, userPrompt: prompt }),
+                body: JSON.stringify({
+                    targetUrl: url,
+                    userPrompt: prompt,
+                    resultId: result?.resultId,
+                }),
             }
         );
 
@@ -77,7 +81,11 @@ export default function App() {
             {
                 method: "POST",
                 headers: { "Content-Type": "application/json" },
-                body: JSON.stringify({ targetUrl: url, userPrompt: prompt }),
+                body: JSON.stringify({
+                    targetUrl: url,
+                    userPrompt: prompt,
+                    resultId: result?.resultId,
+                }),
             }
         );
 
@@ -155,14 +163,20 @@ export default function App() {
                     <label>Website URL</label>
                     <input
                         value={url}
-                        onChange={(e) => setUrl(e.target.value)}
+                        onChange={(e) => {
+                            setUrl(e.target.value);
+                            setResult(null);
+                        }}
                         placeholder="https://example.com"
                     />
 
                     <label>What do you want to extract?</label>
                     <textarea
                         value={prompt}
-                        onChange={(e) => setPrompt(e.target.value)}
+                        onChange={(e) => {
+                            setPrompt(e.target.value);
+                            setResult(null);
+                        }}
                         placeholder="Extract main content, images and links"
                     />
 